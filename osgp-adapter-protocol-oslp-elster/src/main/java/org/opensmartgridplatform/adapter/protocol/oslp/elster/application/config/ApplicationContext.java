@@ -15,9 +15,11 @@ import org.joda.time.DateTimeZone;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.PropertySources;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.device.FirmwareLocation;
@@ -31,6 +33,7 @@ import org.opensmartgridplatform.shared.application.config.PagingSettings;
 @Configuration
 @ComponentScan(basePackages = {"org.opensmartgridplatform.adapter.protocol.oslp.elster", "org.opensmartgridplatform.core.db.api"})
 @EnableTransactionManagement()
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
 @Import({ MessagingConfig.class, OslpConfig.class, OslpPersistenceConfig.class, OsgpCoreDbApiPersistenceConfig.class })
 @PropertySources({ @PropertySource("classpath:osgp-adapter-protocol-oslp-elster.properties"),
         @PropertySource(value = "file:${osgp/Global/config}", ignoreResourceNotFound = true),
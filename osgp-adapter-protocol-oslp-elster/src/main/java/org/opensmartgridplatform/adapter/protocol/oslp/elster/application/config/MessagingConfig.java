@@ -62,9 +62,19 @@ public class MessagingConfig extends AbstractMessagingConfig {
     private static final String PROPERTY_NAME_JMS_DEFAULT_BACK_OFF_MULTIPLIER = "jms.default.back.off.multiplier";
     private static final String PROPERTY_NAME_JMS_DEFAULT_USE_EXPONENTIAL_BACK_OFF = "jms.default.use.exponential.back.off";
 
+    // JMS Settings: outgoing signing server requests
+    private static final String PROPERTY_NAME_JMS_SIGNING_SERVER_REQUESTS_BYTES_MESSAGES = "jms.signing.server.requests.bytes.messages";
+
     // JMS Settings: incoming signing server responses
     private static final String PROPERTY_NAME_JMS_SIGNING_SERVER_RESPONSES_QUEUE = "jms.signing.server.responses.queue";
 
+    // OSLP log item sending
+    private static final String PROPERTY_NAME_OSLP_LOG_ITEM_QUEUE_CAPACITY = "oslp.log.item.queue.capacity";
+    private static final String PROPERTY_NAME_OSLP_LOG_ITEM_BATCH_SIZE = "oslp.log.item.batch.size";
+    private static final String PROPERTY_NAME_OSLP_LOG_ITEM_OVERFLOW_POLICY = "oslp.log.item.overflow.policy";
+    private static final String PROPERTY_NAME_OSLP_LOG_ITEM_OVERFLOW_SAMPLE_RATE = "oslp.log.item.overflow.sample.rate";
+    private static final String PROPERTY_NAME_OSLP_LOG_ITEM_DECODED_MESSAGE_ENABLED = "oslp.log.item.decoded.message.enabled";
+
     @Resource
     private Environment environment;
 
@@ -116,6 +126,14 @@ public class MessagingConfig extends AbstractMessagingConfig {
         return oslpRequestJmsConfiguration.getMessageListenerContainer();
     }
 
+    /**
+     * Template to send parked requests to the requests queue again.
+     */
+    @Bean
+    public JmsTemplate oslpRequestsJmsTemplate(final JmsConfigurationFactory jmsConfigurationFactory) {
+        return jmsConfigurationFactory.initializeConfiguration("jms.oslp.elster.requests").getJmsTemplate();
+    }
+
     // === JMS SETTINGS: OSLP ELSTER RESPONSES ===
 
     @Bean
@@ -146,9 +164,17 @@ public class MessagingConfig extends AbstractMessagingConfig {
         return oslpLogItemRequestJmsConfiguration.getJmsTemplate();
     }
 
-    @Bean
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
     public OslpLogItemRequestMessageSender oslpLogItemRequestMessageSender() {
-        return new OslpLogItemRequestMessageSender();
+        return new OslpLogItemRequestMessageSender(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_LOG_ITEM_QUEUE_CAPACITY)),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_LOG_ITEM_BATCH_SIZE)),
+                OslpLogItemRequestMessageSender.OverflowPolicy
+                        .valueOf(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_LOG_ITEM_OVERFLOW_POLICY)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_LOG_ITEM_OVERFLOW_SAMPLE_RATE)),
+                Boolean.parseBoolean(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_LOG_ITEM_DECODED_MESSAGE_ENABLED)));
     }
 
     // === OSGP REQUESTS ===
@@ -202,7 +228,8 @@ public class MessagingConfig extends AbstractMessagingConfig {
 
     @Bean
     public SigningServerRequestMessageSender signingServerRequestMessageSender() {
-        return new SigningServerRequestMessageSender();
+        return new SigningServerRequestMessageSender(Boolean.parseBoolean(
+                this.environment.getRequiredProperty(PROPERTY_NAME_JMS_SIGNING_SERVER_REQUESTS_BYTES_MESSAGES)));
     }
 
     // === JMS SETTINGS SIGNING SERVER RESPONSES ===
@@ -8,21 +8,30 @@
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.config;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioClientBossPool;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerBossPool;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.logging.InternalLogLevel;
 import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.logging.Slf4JLoggerFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -30,11 +39,31 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.PropertySources;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
-
+import org.springframework.util.StringUtils;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.FileOslpPrivateKeyProvider;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceCache;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpParkedRequestStore;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpPrivateKeyProvider;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpPresignedEnvelopes;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpPublicKeyCache;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSigningRequestBatcher;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.exceptions.ProtocolAdapterException;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpCallbackHandler;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpChannelHandlerClient;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpChannelHandlerServer;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpChannelRegistry;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpConnectAdmission;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceAddressCache;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceMailboxes;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceReachability;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpNioWorkerPool;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpOrderedExecutor;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpPowerUsageHistoryStore;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpResponseDeadlines;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpSchedulePaging;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpSecurityHandler;
 import org.opensmartgridplatform.oslp.OslpDecoder;
 import org.opensmartgridplatform.oslp.OslpEncoder;
@@ -59,6 +88,52 @@ public class OslpConfig extends AbstractConfig {
     private static final String PROPERTY_NAME_OSLP_SECURITY_KEYTYPE = "oslp.security.keytype";
     private static final String PROPERTY_NAME_OSLP_SECURITY_SIGNATURE = "oslp.security.signature";
     private static final String PROPERTY_NAME_OSLP_SECURITY_PROVIDER = "oslp.security.provider";
+    private static final String PROPERTY_NAME_OSLP_SIGNING_IN_PROCESS = "oslp.signing.in.process";
+    private static final String PROPERTY_NAME_OSLP_SIGNING_SIGNKEY_PATH = "oslp.signing.signkey.path";
+    private static final String PROPERTY_NAME_OSLP_ADDRESS_CACHE_MAXIMUM_SIZE = "oslp.address.cache.maximum.size";
+    private static final String PROPERTY_NAME_OSLP_ADDRESS_CACHE_EXPIRE_AFTER_WRITE = "oslp.address.cache.expire.after.write.minutes";
+    private static final String PROPERTY_NAME_OSLP_POWER_USAGE_HISTORY_STORE_MAXIMUM_SIZE = "oslp.power.usage.history.store.maximum.size";
+    private static final String PROPERTY_NAME_OSLP_POWER_USAGE_HISTORY_STORE_EXPIRE_AFTER_WRITE = "oslp.power.usage.history.store.expire.after.write.minutes";
+    private static final String PROPERTY_NAME_OSLP_SCHEDULE_PAGE_SIZE_MAXIMUM = "oslp.schedule.page.size.maximum";
+    private static final String PROPERTY_NAME_OSLP_SCHEDULE_PAGE_SIZE_MAXIMUM_OVERRIDES = "oslp.schedule.page.size.maximum.overrides";
+    private static final String PROPERTY_NAME_OSLP_SCHEDULE_FRAME_SIZE_MAXIMUM = "oslp.schedule.frame.size.maximum.bytes";
+    private static final String PROPERTY_NAME_OSLP_SCHEDULE_FRAME_SIZE_MAXIMUM_OVERRIDES = "oslp.schedule.frame.size.maximum.bytes.overrides";
+    private static final String PROPERTY_NAME_OSLP_PRESIGN_FOLLOW_UP_REQUESTS = "oslp.presign.follow.up.requests";
+    private static final String PROPERTY_NAME_OSLP_PRESIGNED_ENVELOPES_MAXIMUM_SIZE = "oslp.presigned.envelopes.maximum.size";
+    private static final String PROPERTY_NAME_OSLP_PRESIGNED_ENVELOPES_EXPIRE_AFTER_WRITE = "oslp.presigned.envelopes.expire.after.write.minutes";
+    private static final String PROPERTY_NAME_OSLP_SIGNING_BATCH_MAX_SIZE = "oslp.signing.batch.max.size";
+    private static final String PROPERTY_NAME_OSLP_SIGNING_BATCH_WINDOW = "oslp.signing.batch.window.millis";
+    private static final String PROPERTY_NAME_OSLP_CLIENT_BOSS_COUNT = "oslp.client.boss.count";
+    private static final String PROPERTY_NAME_OSLP_CLIENT_WORKER_COUNT = "oslp.client.worker.count";
+    private static final String PROPERTY_NAME_OSLP_SERVER_BOSS_COUNT = "oslp.server.boss.count";
+    private static final String PROPERTY_NAME_OSLP_SERVER_WORKER_COUNT = "oslp.server.worker.count";
+    private static final String PROPERTY_NAME_OSLP_CHANNEL_REGISTRY_TIME_TO_LIVE = "oslp.channel.registry.time.to.live.milliseconds";
+    private static final String PROPERTY_NAME_OSLP_RESPONSE_DEADLINE = "oslp.response.deadline.milliseconds";
+    private static final String PROPERTY_NAME_OSLP_RESPONSE_DEADLINE_OVERRIDES = "oslp.response.deadline.overrides";
+    private static final String PROPERTY_NAME_OSLP_CONNECT_MAX_CONCURRENT = "oslp.connect.max.concurrent";
+    private static final String PROPERTY_NAME_OSLP_CONNECT_MAX_PER_DEVICE = "oslp.connect.max.per.device";
+    private static final String PROPERTY_NAME_OSLP_CONNECT_MAX_PENDING = "oslp.connect.max.pending";
+    private static final String PROPERTY_NAME_OSLP_CONNECT_MAX_QUEUE_WAIT = "oslp.connect.max.queue.wait.milliseconds";
+    private static final String PROPERTY_NAME_OSLP_REACHABILITY_FAILURE_THRESHOLD = "oslp.reachability.failure.threshold";
+    private static final String PROPERTY_NAME_OSLP_REACHABILITY_INITIAL_BACKOFF = "oslp.reachability.initial.backoff.milliseconds";
+    private static final String PROPERTY_NAME_OSLP_REACHABILITY_MAX_BACKOFF = "oslp.reachability.max.backoff.milliseconds";
+    private static final String PROPERTY_NAME_OSLP_PARKED_REQUEST_MESSAGE_TYPES = "oslp.parked.request.message.types";
+    private static final String PROPERTY_NAME_OSLP_PARKED_REQUEST_COALESCED_MESSAGE_TYPES = "oslp.parked.request.coalesced.message.types";
+    private static final String PROPERTY_NAME_OSLP_PARKED_REQUEST_MAX_PER_DEVICE = "oslp.parked.request.max.per.device";
+    private static final String PROPERTY_NAME_OSLP_PARKED_REQUEST_EXPIRE_AFTER = "oslp.parked.request.expire.after.minutes";
+    private static final String PROPERTY_NAME_OSLP_PARKED_REQUEST_MAX_TRACKED = "oslp.parked.request.max.tracked";
+    private static final String PROPERTY_NAME_OSLP_MAILBOX_POOL_SIZE = "oslp.mailbox.pool.size";
+    private static final String PROPERTY_NAME_OSLP_MAILBOX_MAX_QUEUED_REQUESTS = "oslp.mailbox.max.queued.requests";
+    private static final String PROPERTY_NAME_OSLP_MAILBOX_EXCHANGE_TIMEOUT = "oslp.mailbox.exchange.timeout.milliseconds";
+    private static final String PROPERTY_NAME_OSLP_EXECUTION_POOL_SIZE = "oslp.execution.pool.size";
+    private static final String PROPERTY_NAME_OSLP_EXECUTION_MAX_CHANNEL_PENDING_EVENTS = "oslp.execution.max.channel.pending.events";
+    private static final String PROPERTY_NAME_OSLP_EXECUTION_MAX_TOTAL_PENDING_EVENTS = "oslp.execution.max.total.pending.events";
+    private static final String PROPERTY_NAME_OSLP_CALLBACK_POOL_SIZE = "oslp.callback.pool.size";
+    private static final String PROPERTY_NAME_OSLP_PUBLIC_KEY_CACHE_MAXIMUM_SIZE = "oslp.public.key.cache.maximum.size";
+    private static final String PROPERTY_NAME_OSLP_PUBLIC_KEY_CACHE_EXPIRE_AFTER_ACCESS = "oslp.public.key.cache.expire.after.access.minutes";
+    private static final String PROPERTY_NAME_OSLP_DEVICE_CACHE_MAXIMUM_SIZE = "oslp.device.cache.maximum.size";
+    private static final String PROPERTY_NAME_OSLP_DEVICE_CACHE_EXPIRE_AFTER_WRITE = "oslp.device.cache.expire.after.write.minutes";
+    private static final String PROPERTY_NAME_OSLP_DEVICE_CACHE_PRELOAD = "oslp.device.cache.preload";
     private static final String PROPERTY_NAME_OSLP_SEQUENCE_NUMBER_WINDOW = "oslp.sequence.number.window";
     private static final String PROPERTY_NAME_OSLP_SEQUENCE_NUMBER_MAXIMUM = "oslp.sequence.number.maximum";
 
@@ -72,8 +147,11 @@ public class OslpConfig extends AbstractConfig {
     @Bean(destroyMethod = "releaseExternalResources")
     public ClientBootstrap clientBootstrap() {
         InternalLoggerFactory.setDefaultFactory(new Slf4JLoggerFactory());
-        final ChannelFactory factory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
-                Executors.newCachedThreadPool());
+        final ChannelFactory factory = new NioClientSocketChannelFactory(
+                new NioClientBossPool(Executors.newCachedThreadPool(new CustomizableThreadFactory("oslp-client-boss-")),
+                        Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CLIENT_BOSS_COUNT)),
+                        this.oslpTimer(), ThreadNameDeterminer.CURRENT),
+                this.oslpClientWorkerPool());
 
         final ChannelPipelineFactory pipelineFactory = new ChannelPipelineFactory() {
             @Override
@@ -100,8 +178,11 @@ public class OslpConfig extends AbstractConfig {
 
     @Bean(destroyMethod = "releaseExternalResources")
     public ServerBootstrap serverBootstrap() {
-        final ChannelFactory factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
-                Executors.newCachedThreadPool());
+        final ChannelFactory factory = new NioServerSocketChannelFactory(
+                new NioServerBossPool(Executors.newCachedThreadPool(new CustomizableThreadFactory("oslp-server-boss-")),
+                        Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SERVER_BOSS_COUNT)),
+                        ThreadNameDeterminer.CURRENT),
+                this.oslpServerWorkerPool());
 
         final ServerBootstrap bootstrap = new ServerBootstrap(factory);
 
@@ -125,6 +206,26 @@ public class OslpConfig extends AbstractConfig {
         return bootstrap;
     }
 
+    /**
+     * I/O workers of the connections to devices, released by the client
+     * bootstrap.
+     */
+    @Bean(destroyMethod = "")
+    public OslpNioWorkerPool oslpClientWorkerPool() {
+        return new OslpNioWorkerPool("oslp-client-worker-",
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CLIENT_WORKER_COUNT)));
+    }
+
+    /**
+     * I/O workers of the connections from devices, released by the server
+     * bootstrap.
+     */
+    @Bean(destroyMethod = "")
+    public OslpNioWorkerPool oslpServerWorkerPool() {
+        return new OslpNioWorkerPool("oslp-server-worker-",
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SERVER_WORKER_COUNT)));
+    }
+
     private ChannelPipeline createChannelPipeline(final ChannelHandler handler) throws ProtocolAdapterException {
         final ChannelPipeline pipeline = Channels.pipeline();
 
@@ -132,6 +233,9 @@ public class OslpConfig extends AbstractConfig {
 
         pipeline.addLast("oslpEncoder", new OslpEncoder());
         pipeline.addLast("oslpDecoder", new OslpDecoder(this.oslpSignature(), this.oslpSignatureProvider()));
+        // Handlers below the execution handler run on the worker pool instead
+        // of the I/O threads.
+        pipeline.addLast("oslpExecution", this.oslpExecutionHandler());
         pipeline.addLast("oslpSecurity", this.oslpSecurityHandler());
 
         pipeline.addLast("oslpChannelHandler", handler);
@@ -139,11 +243,47 @@ public class OslpConfig extends AbstractConfig {
         return pipeline;
     }
 
+    @Bean(destroyMethod = "shutdownNow")
+    public OslpOrderedExecutor oslpOrderedExecutor() {
+        return new OslpOrderedExecutor(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_EXECUTION_POOL_SIZE)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_EXECUTION_MAX_CHANNEL_PENDING_EVENTS)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_EXECUTION_MAX_TOTAL_PENDING_EVENTS)));
+    }
+
+    @Bean
+    public ExecutionHandler oslpExecutionHandler() {
+        return new ExecutionHandler(this.oslpOrderedExecutor());
+    }
+
     @Bean
     public OslpSecurityHandler oslpSecurityHandler() {
         return new OslpSecurityHandler();
     }
 
+    @Bean
+    public OslpPublicKeyCache oslpPublicKeyCache() {
+        return new OslpPublicKeyCache(this.oslpKeyType(), this.oslpSignatureProvider(),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PUBLIC_KEY_CACHE_MAXIMUM_SIZE)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PUBLIC_KEY_CACHE_EXPIRE_AFTER_ACCESS)));
+    }
+
+    @Bean
+    public OslpDeviceCache oslpDeviceCache() {
+        return new OslpDeviceCache(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_DEVICE_CACHE_MAXIMUM_SIZE)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_DEVICE_CACHE_EXPIRE_AFTER_WRITE)));
+    }
+
+    @Bean
+    public boolean oslpDeviceCachePreload() {
+        return Boolean.parseBoolean(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_DEVICE_CACHE_PRELOAD));
+    }
+
     @Bean
     public OslpDecoder oslpDecoder() throws ProtocolAdapterException {
         return new OslpDecoder(this.oslpSignature(), this.oslpSignatureProvider());
@@ -164,6 +304,17 @@ public class OslpConfig extends AbstractConfig {
         return this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SECURITY_SIGNATURE);
     }
 
+    @Bean
+    public boolean oslpSigningInProcess() {
+        return Boolean.parseBoolean(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SIGNING_IN_PROCESS));
+    }
+
+    @Bean
+    public OslpPrivateKeyProvider oslpPrivateKeyProvider() {
+        return new FileOslpPrivateKeyProvider(this.environment.getProperty(PROPERTY_NAME_OSLP_SIGNING_SIGNKEY_PATH),
+                this.oslpKeyType(), this.oslpSignatureProvider());
+    }
+
     @Bean
     public int connectionTimeout() {
         return Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_TIMEOUT_CONNECT));
@@ -179,11 +330,157 @@ public class OslpConfig extends AbstractConfig {
         return Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PORT_CLIENTLOCAL));
     }
 
+    @Bean
+    public OslpDeviceAddressCache oslpDeviceAddressCache() {
+        return new OslpDeviceAddressCache(this.oslpPortClient(), this.oslpPortClientLocal(),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_ADDRESS_CACHE_MAXIMUM_SIZE)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_ADDRESS_CACHE_EXPIRE_AFTER_WRITE)));
+    }
+
+    @Bean
+    public OslpPowerUsageHistoryStore oslpPowerUsageHistoryStore() {
+        return new OslpPowerUsageHistoryStore(
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_POWER_USAGE_HISTORY_STORE_MAXIMUM_SIZE)),
+                Integer.parseInt(this.environment
+                        .getRequiredProperty(PROPERTY_NAME_OSLP_POWER_USAGE_HISTORY_STORE_EXPIRE_AFTER_WRITE)));
+    }
+
+    @Bean
+    public OslpSchedulePaging oslpSchedulePaging() {
+        return new OslpSchedulePaging(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SCHEDULE_PAGE_SIZE_MAXIMUM)),
+                this.environment.getProperty(PROPERTY_NAME_OSLP_SCHEDULE_PAGE_SIZE_MAXIMUM_OVERRIDES),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SCHEDULE_FRAME_SIZE_MAXIMUM)),
+                this.environment.getProperty(PROPERTY_NAME_OSLP_SCHEDULE_FRAME_SIZE_MAXIMUM_OVERRIDES));
+    }
+
+    /**
+     * Number of follow up requests of a multi-step exchange, like the next
+     * pages of a schedule, that are signed together with a request. Zero signs
+     * every request on its own.
+     */
+    @Bean
+    public int oslpPresignFollowUpRequests() {
+        return Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PRESIGN_FOLLOW_UP_REQUESTS));
+    }
+
+    @Bean
+    public OslpPresignedEnvelopes oslpPresignedEnvelopes() {
+        return new OslpPresignedEnvelopes(
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PRESIGNED_ENVELOPES_MAXIMUM_SIZE)),
+                Integer.parseInt(this.environment
+                        .getRequiredProperty(PROPERTY_NAME_OSLP_PRESIGNED_ENVELOPES_EXPIRE_AFTER_WRITE)));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public OslpSigningRequestBatcher oslpSigningRequestBatcher() {
+        return new OslpSigningRequestBatcher(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SIGNING_BATCH_MAX_SIZE)),
+                Long.parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SIGNING_BATCH_WINDOW)));
+    }
+
     @Bean
     public int oslpPortServer() {
         return Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PORT_SERVER));
     }
 
+    /**
+     * Timer wheel for the time outs of the OSLP channels, shared with the
+     * connect time outs of the client bootstrap.
+     */
+    @Bean(destroyMethod = "stop")
+    public Timer oslpTimer() {
+        return new HashedWheelTimer(new CustomizableThreadFactory("oslp-timer-"), 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Threads reporting the outcome of OSLP requests, which sends over JMS and
+     * uses the database, for events that occur on the timer or the Netty I/O
+     * threads.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService oslpCallbackExecutor() {
+        return Executors.newFixedThreadPool(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CALLBACK_POOL_SIZE)),
+                new CustomizableThreadFactory("oslp-callback-"));
+    }
+
+    @Bean
+    public OslpChannelRegistry<OslpCallbackHandler> oslpCallbackHandlerRegistry() {
+        return new OslpChannelRegistry<>(this.oslpTimer(), this.oslpChannelRegistryTimeToLive());
+    }
+
+    @Bean
+    public OslpChannelRegistry<Channel> oslpServerChannelRegistry() {
+        return new OslpChannelRegistry<>(this.oslpTimer(), this.oslpChannelRegistryTimeToLive());
+    }
+
+    private long oslpChannelRegistryTimeToLive() {
+        return Long.parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CHANNEL_REGISTRY_TIME_TO_LIVE));
+    }
+
+    @Bean
+    public OslpResponseDeadlines oslpResponseDeadlines() {
+        return new OslpResponseDeadlines(this.oslpTimer(),
+                Long.parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_RESPONSE_DEADLINE)),
+                this.environment.getProperty(PROPERTY_NAME_OSLP_RESPONSE_DEADLINE_OVERRIDES));
+    }
+
+    @Bean
+    public OslpConnectAdmission oslpConnectAdmission() {
+        return new OslpConnectAdmission(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CONNECT_MAX_CONCURRENT)),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CONNECT_MAX_PER_DEVICE)),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CONNECT_MAX_PENDING)),
+                Long.parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CONNECT_MAX_QUEUE_WAIT)));
+    }
+
+    @Bean
+    public OslpDeviceReachability oslpDeviceReachability() {
+        return new OslpDeviceReachability(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_REACHABILITY_FAILURE_THRESHOLD)),
+                Long.parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_REACHABILITY_INITIAL_BACKOFF)),
+                Long.parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_REACHABILITY_MAX_BACKOFF)));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public OslpParkedRequestStore oslpParkedRequestStore() {
+        return new OslpParkedRequestStore(
+                StringUtils.commaDelimitedListToSet(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PARKED_REQUEST_MESSAGE_TYPES)),
+                StringUtils.commaDelimitedListToSet(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PARKED_REQUEST_COALESCED_MESSAGE_TYPES)),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PARKED_REQUEST_MAX_PER_DEVICE)),
+                TimeUnit.MINUTES.toMillis(Long
+                        .parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PARKED_REQUEST_EXPIRE_AFTER))),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_PARKED_REQUEST_MAX_TRACKED)));
+    }
+
+    /**
+     * The exchange timeout of the mailboxes must not pass before the device
+     * could have responded, otherwise the next request of the device is
+     * signed while the exchange is still in progress.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public OslpDeviceMailboxes oslpDeviceMailboxes() {
+        final long exchangeTimeout = Long
+                .parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_MAILBOX_EXCHANGE_TIMEOUT));
+        final long longestExchange = Long
+                .parseLong(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CONNECT_MAX_QUEUE_WAIT))
+                + this.connectionTimeout() + this.oslpResponseDeadlines().getMaxDeadlineMillis();
+        if (exchangeTimeout < longestExchange) {
+            throw new IllegalStateException(PROPERTY_NAME_OSLP_MAILBOX_EXCHANGE_TIMEOUT + " must be at least "
+                    + longestExchange + " ms, the connect queue wait, connect timeout and longest response deadline");
+        }
+        return new OslpDeviceMailboxes(this.oslpTimer(),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_MAILBOX_POOL_SIZE)),
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_MAILBOX_MAX_QUEUED_REQUESTS)),
+                exchangeTimeout);
+    }
+
     @Bean
     public OslpChannelHandlerServer oslpChannelHandlerServer() {
         return new OslpChannelHandlerServer();
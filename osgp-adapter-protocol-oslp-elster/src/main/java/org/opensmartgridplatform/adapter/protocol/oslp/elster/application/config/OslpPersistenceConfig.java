@@ -19,10 +19,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSequenceNumberStore;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.repositories.OslpDeviceRepository;
 import org.opensmartgridplatform.shared.application.config.AbstractPersistenceConfig;
 import org.opensmartgridplatform.shared.infra.db.DefaultConnectionPoolFactory;
@@ -58,6 +60,15 @@ public class OslpPersistenceConfig extends AbstractPersistenceConfig {
     @Value("${entitymanager.packages.to.scan.oslp}")
     private String entitymanagerPackagesToScan;
 
+    @Value("${oslp.sequence.number.window}")
+    private int sequenceNumberWindow;
+
+    @Value("${oslp.sequence.number.maximum}")
+    private int sequenceNumberMaximum;
+
+    @Value("${oslp.sequence.number.flush.interval.milliseconds}")
+    private long sequenceNumberFlushIntervalMillis;
+
     private HikariDataSource dataSourceOslp;
 
     public OslpPersistenceConfig() {
@@ -99,6 +110,18 @@ public class OslpPersistenceConfig extends AbstractPersistenceConfig {
                 this.entitymanagerPackagesToScan);
     }
 
+    @Bean
+    public JdbcTemplate oslpJdbcTemplate() {
+        return new JdbcTemplate(this.getDataSourceOslp());
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @DependsOn("oslpFlyway")
+    public OslpSequenceNumberStore oslpSequenceNumberStore() {
+        return new OslpSequenceNumberStore(this.oslpJdbcTemplate(), this.sequenceNumberWindow,
+                this.sequenceNumberMaximum, this.sequenceNumberFlushIntervalMillis);
+    }
+
     @Override
     @PreDestroy
     public void destroyDataSource() {
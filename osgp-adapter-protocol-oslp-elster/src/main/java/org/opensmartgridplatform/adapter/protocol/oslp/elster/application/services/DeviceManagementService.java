@@ -23,10 +23,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceSettingsService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpParkedRequestStore;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpPublicKeyCache;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.exceptions.ProtocolAdapterException;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceResponseMessageSender;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.OsgpRequestMessageSender;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceReachability;
 import org.opensmartgridplatform.dto.valueobjects.DeviceFunctionDto;
 import org.opensmartgridplatform.dto.valueobjects.EventNotificationDto;
 import org.opensmartgridplatform.dto.valueobjects.EventTypeDto;
@@ -52,6 +55,15 @@ public class DeviceManagementService {
     @Autowired
     private OsgpRequestMessageSender osgpRequestMessageSender;
 
+    @Autowired
+    private OslpPublicKeyCache oslpPublicKeyCache;
+
+    @Autowired
+    private OslpDeviceReachability oslpDeviceReachability;
+
+    @Autowired
+    private OslpParkedRequestStore oslpParkedRequestStore;
+
     /**
      * Constructor
      */
@@ -115,6 +127,11 @@ public class DeviceManagementService {
         final OslpDevice oslpDevice = this.oslpDeviceSettingsService.getDeviceByUid(deviceUid);
         final String deviceIdentification = oslpDevice.getDeviceIdentification();
 
+        // A device sending events is reachable, send the requests parked
+        // while it was not.
+        this.oslpDeviceReachability.deviceSeen(deviceIdentification);
+        this.oslpParkedRequestStore.flush(deviceIdentification, null);
+
         final List<EventNotificationDto> eventNotificationDtos = new ArrayList<>();
         for (final Oslp.EventNotification eventNotification : eventNotifications) {
             final String eventType = eventNotification.getEvent().name();
@@ -162,6 +179,7 @@ public class DeviceManagementService {
 
             oslpDevice.updatePublicKey(publicKey);
             this.oslpDeviceSettingsService.updateDevice(oslpDevice);
+            this.oslpPublicKeyCache.invalidate(oslpDevice);
 
             this.sendResponseMessage(messageMetadata, ResponseMessageResultType.OK, null, responseMessageSender);
 
@@ -193,6 +211,7 @@ public class DeviceManagementService {
 
             oslpDevice.revokePublicKey();
             this.oslpDeviceSettingsService.updateDevice(oslpDevice);
+            this.oslpPublicKeyCache.invalidate(oslpDevice);
 
             this.sendResponseMessage(messageMetadata, ResponseMessageResultType.OK, null, responseMessageSender);
 
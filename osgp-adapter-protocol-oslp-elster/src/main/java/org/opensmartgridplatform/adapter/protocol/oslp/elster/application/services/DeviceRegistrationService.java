@@ -17,9 +17,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceSettingsService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpParkedRequestStore;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSequenceNumberStore;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.exceptions.ProtocolAdapterException;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.OsgpRequestMessageSender;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceAddressCache;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceReachability;
 import org.opensmartgridplatform.dto.valueobjects.DeviceRegistrationDataDto;
 import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
 
@@ -38,9 +42,21 @@ public class DeviceRegistrationService {
     @Autowired
     private OslpDeviceSettingsService oslpDeviceSettingsService;
 
+    @Autowired
+    private OslpSequenceNumberStore oslpSequenceNumberStore;
+
     @Autowired
     private OsgpRequestMessageSender osgpRequestMessageSender;
 
+    @Autowired
+    private OslpDeviceAddressCache oslpDeviceAddressCache;
+
+    @Autowired
+    private OslpDeviceReachability oslpDeviceReachability;
+
+    @Autowired
+    private OslpParkedRequestStore oslpParkedRequestStore;
+
     /**
      * Constructor
      */
@@ -78,7 +94,15 @@ public class DeviceRegistrationService {
         final RequestMessage requestMessage = new RequestMessage("no-correlationUid", "no-organisation",
                 deviceIdentification, deviceRegistrationData);
 
+        // Requests resolve the address reported by the registration again.
+        this.oslpDeviceAddressCache.invalidate(deviceIdentification);
+        this.oslpDeviceReachability.deviceSeen(deviceIdentification);
+
         this.osgpRequestMessageSender.send(requestMessage, "REGISTER_DEVICE");
+
+        // The parked requests are sent when the device confirms the
+        // registration, with the address it registered with.
+        this.oslpParkedRequestStore.registered(deviceIdentification, inetAddress.getHostAddress());
     }
 
     public void confirmRegisterDevice(final byte[] deviceId, final Integer newSequenceNumber,
@@ -88,6 +112,10 @@ public class DeviceRegistrationService {
 
         this.updateDeviceSequenceNumber(deviceId, newSequenceNumber);
 
+        // The device is online and has the new sequence number, send the
+        // requests parked while it was not.
+        this.oslpParkedRequestStore.registrationConfirmed(this.findDevice(deviceId).getDeviceIdentification());
+
         LOGGER.debug("confirmRegisterDevice successful for device with UID: {}.", deviceId);
     }
 
@@ -117,11 +145,11 @@ public class DeviceRegistrationService {
         // Lookup device.
         final OslpDevice oslpDevice = this.findDevice(deviceId);
 
-        this.checkSequenceNumber(oslpDevice.getSequenceNumber(), newSequenceNumber);
+        this.checkSequenceNumber(this.oslpSequenceNumberStore.getSequenceNumber(oslpDevice), newSequenceNumber);
 
-        // Persist the new sequence number.
-        oslpDevice.setSequenceNumber(newSequenceNumber);
-        this.oslpDeviceSettingsService.updateDevice(oslpDevice);
+        // Store the new sequence number, it is written to the database in
+        // the background.
+        this.oslpSequenceNumberStore.updateSequenceNumber(oslpDevice, newSequenceNumber);
     }
 
     public void checkSequenceNumber(final byte[] deviceId, final Integer newSequenceNumber)
@@ -130,7 +158,7 @@ public class DeviceRegistrationService {
         // Lookup device.
         final OslpDevice oslpDevice = this.findDevice(deviceId);
 
-        this.checkSequenceNumber(oslpDevice.getSequenceNumber(), newSequenceNumber);
+        this.checkSequenceNumber(this.oslpSequenceNumberStore.getSequenceNumber(oslpDevice), newSequenceNumber);
     }
 
     public void checkSequenceNumber(final Integer currentSequenceNumber, final Integer newSequenceNumber)
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.opensmartgridplatform.shared.security.CertificateHelper;
+
+/**
+ * Loads the private key from a DER file, the same way the signing server
+ * does. The key is loaded on first use, so no key file is needed when
+ * in-process signing is not enabled.
+ */
+public class FileOslpPrivateKeyProvider implements OslpPrivateKeyProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileOslpPrivateKeyProvider.class);
+
+    private final String path;
+    private final String keyType;
+    private final String provider;
+
+    private volatile PrivateKey privateKey;
+
+    public FileOslpPrivateKeyProvider(final String path, final String keyType, final String provider) {
+        this.path = path;
+        this.keyType = keyType;
+        this.provider = provider;
+    }
+
+    @Override
+    public PrivateKey getPrivateKey() throws IOException {
+        PrivateKey key = this.privateKey;
+        if (key == null) {
+            synchronized (this) {
+                key = this.privateKey;
+                if (key == null) {
+                    LOGGER.info("Loading private key for in-process signing from: {}", this.path);
+                    key = CertificateHelper.createPrivateKey(this.path, this.keyType, this.provider);
+                    this.privateKey = key;
+                }
+            }
+        }
+        return key;
+    }
+}
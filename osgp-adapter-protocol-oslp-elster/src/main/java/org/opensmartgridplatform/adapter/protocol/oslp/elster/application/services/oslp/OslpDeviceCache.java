@@ -0,0 +1,177 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
+
+/**
+ * Bounded cache of OSLP devices, keyed by device UID and by device
+ * identification. Used by {@link OslpDeviceSettingsService}, which keeps the
+ * cache up to date when devices are saved or removed.
+ *
+ * The cache holds copies of the devices, and every lookup returns a new copy.
+ * Callers change the devices they get, so a device is never shared between
+ * threads, and changes only reach the cache when they are saved and
+ * committed.
+ *
+ * Invalidating a device also removes the entries under the keys of the cached
+ * copy, so a device whose UID changed by a registration is not found by its
+ * old UID.
+ */
+@ManagedResource(description = "Cache of OSLP devices")
+public class OslpDeviceCache {
+
+    private final Cache<String, OslpDevice> devicesByDeviceUid;
+    private final Cache<String, OslpDevice> devicesByDeviceIdentification;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public OslpDeviceCache(final int maximumSize, final int expireAfterWriteMinutes) {
+        this.devicesByDeviceUid = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES).build();
+        this.devicesByDeviceIdentification = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * @return The cached device with the given UID, or null when it is not
+     *         cached.
+     */
+    public OslpDevice getByDeviceUid(final String deviceUid) {
+        if (deviceUid == null) {
+            return null;
+        }
+        final OslpDevice oslpDevice = this.devicesByDeviceUid.getIfPresent(deviceUid);
+        return this.count(oslpDevice != null && deviceUid.equals(oslpDevice.getDeviceUid()) ? copy(oslpDevice)
+                : null);
+    }
+
+    /**
+     * @return The cached device with the given device identification, or null
+     *         when it is not cached.
+     */
+    public OslpDevice getByDeviceIdentification(final String deviceIdentification) {
+        if (deviceIdentification == null) {
+            return null;
+        }
+        final OslpDevice oslpDevice = this.devicesByDeviceIdentification.getIfPresent(deviceIdentification);
+        return this.count(oslpDevice != null && deviceIdentification.equals(oslpDevice.getDeviceIdentification())
+                ? copy(oslpDevice)
+                : null);
+    }
+
+    /**
+     * Caches a device that was just saved, replacing any cached instance.
+     */
+    public void put(final OslpDevice oslpDevice) {
+        this.invalidate(oslpDevice);
+        final OslpDevice cached = copy(oslpDevice);
+        if (cached.getDeviceUid() != null) {
+            this.devicesByDeviceUid.put(cached.getDeviceUid(), cached);
+        }
+        this.devicesByDeviceIdentification.put(cached.getDeviceIdentification(), cached);
+    }
+
+    /**
+     * Caches a device that was just loaded, unless another instance has been
+     * cached in the meantime. That instance was saved more recently than the
+     * loaded one was read.
+     */
+    public void putIfAbsent(final OslpDevice oslpDevice) {
+        final OslpDevice cached = copy(oslpDevice);
+        if (cached.getDeviceUid() != null) {
+            this.devicesByDeviceUid.asMap().putIfAbsent(cached.getDeviceUid(), cached);
+        }
+        this.devicesByDeviceIdentification.asMap().putIfAbsent(cached.getDeviceIdentification(), cached);
+    }
+
+    /**
+     * Removes the device under its own keys, and under the keys of the cached
+     * copies, which may still have the UID from before a registration.
+     */
+    public void invalidate(final OslpDevice oslpDevice) {
+        final OslpDevice byDeviceUid = oslpDevice.getDeviceUid() == null ? null
+                : this.devicesByDeviceUid.getIfPresent(oslpDevice.getDeviceUid());
+        final OslpDevice byDeviceIdentification = oslpDevice.getDeviceIdentification() == null ? null
+                : this.devicesByDeviceIdentification.getIfPresent(oslpDevice.getDeviceIdentification());
+
+        this.invalidateKeys(oslpDevice);
+        if (byDeviceUid != null) {
+            this.invalidateKeys(byDeviceUid);
+        }
+        if (byDeviceIdentification != null) {
+            this.invalidateKeys(byDeviceIdentification);
+        }
+    }
+
+    private void invalidateKeys(final OslpDevice oslpDevice) {
+        if (oslpDevice.getDeviceUid() != null) {
+            this.devicesByDeviceUid.invalidate(oslpDevice.getDeviceUid());
+        }
+        if (oslpDevice.getDeviceIdentification() != null) {
+            this.devicesByDeviceIdentification.invalidate(oslpDevice.getDeviceIdentification());
+        }
+    }
+
+    @ManagedOperation(description = "Removes all cached devices")
+    public void invalidateAll() {
+        this.devicesByDeviceUid.invalidateAll();
+        this.devicesByDeviceIdentification.invalidateAll();
+    }
+
+    @ManagedAttribute(description = "Number of devices taken from the cache")
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of devices that had to be loaded")
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of lookups answered from the cache")
+    public double getHitRate() {
+        final long hitCount = this.hits.get();
+        final long lookups = hitCount + this.misses.get();
+        return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+    }
+
+    @ManagedAttribute(description = "Number of cached devices")
+    public long getSize() {
+        return this.devicesByDeviceIdentification.size();
+    }
+
+    /**
+     * Copies the device with all its fields, including the id and version, so
+     * a copy can be saved like the device it was loaded as.
+     */
+    private static OslpDevice copy(final OslpDevice oslpDevice) {
+        return SerializationUtils.clone(oslpDevice);
+    }
+
+    private OslpDevice count(final OslpDevice oslpDevice) {
+        if (oslpDevice == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return oslpDevice;
+    }
+}
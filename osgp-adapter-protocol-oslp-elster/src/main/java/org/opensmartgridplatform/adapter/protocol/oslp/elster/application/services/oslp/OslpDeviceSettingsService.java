@@ -9,11 +9,17 @@ package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.servi
 
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.repositories.OslpDeviceRepository;
@@ -27,6 +33,15 @@ public class OslpDeviceSettingsService {
     @Autowired
     private OslpDeviceRepository oslpDeviceRepository;
 
+    @Autowired
+    private OslpDeviceCache oslpDeviceCache;
+
+    @Autowired
+    private OslpSequenceNumberStore oslpSequenceNumberStore;
+
+    @Resource
+    private boolean oslpDeviceCachePreload;
+
     /**
      * Constructor
      */
@@ -34,40 +49,79 @@ public class OslpDeviceSettingsService {
         // Parameterless constructor required for transactions...
     }
 
+    @PostConstruct
+    public void preloadDeviceCache() {
+        if (!this.oslpDeviceCachePreload) {
+            return;
+        }
+        final List<OslpDevice> devices = this.oslpDeviceRepository.findAll();
+        for (final OslpDevice device : devices) {
+            this.oslpDeviceCache.putIfAbsent(device);
+        }
+        LOGGER.info("preloaded {} devices in device cache", devices.size());
+    }
+
     public OslpDevice addDevice(final OslpDevice device) {
         LOGGER.info("add device: {}", device.getDeviceIdentification());
 
-        return this.oslpDeviceRepository.save(device);
+        this.oslpDeviceCache.invalidate(device);
+        return this.cacheAfterCommit(this.oslpDeviceRepository.save(device));
     }
 
     public void removeDevice(final OslpDevice device) {
         LOGGER.info("remove device: {}", device.getDeviceIdentification());
 
+        this.oslpDeviceCache.invalidate(device);
+        this.oslpSequenceNumberStore.remove(device);
         this.oslpDeviceRepository.delete(device);
+        this.invalidateAfterCompletion(device);
     }
 
     public OslpDevice updateDevice(final OslpDevice device) {
         LOGGER.info("update device: {}", device.getDeviceIdentification());
 
-        return this.oslpDeviceRepository.save(device);
+        this.oslpDeviceCache.invalidate(device);
+        this.oslpSequenceNumberStore.applyTo(device);
+        return this.cacheAfterCommit(this.oslpDeviceRepository.save(device));
     }
 
     public OslpDevice updateDeviceAndForceSave(final OslpDevice device) {
         LOGGER.info("update device and force save: {}", device.getDeviceIdentification());
 
-        return this.oslpDeviceRepository.saveAndFlush(device);
+        this.oslpDeviceCache.invalidate(device);
+        this.oslpSequenceNumberStore.applyTo(device);
+        return this.cacheAfterCommit(this.oslpDeviceRepository.saveAndFlush(device));
     }
 
+    /**
+     * Returns the device with the given UID, from the device cache when
+     * possible. A cache hit does not start a transaction, so it does not
+     * claim a database connection.
+     */
+    @Transactional(value = "transactionManager", propagation = Propagation.SUPPORTS)
     public OslpDevice getDeviceByUid(final String deviceUid) {
         LOGGER.info("get device by UID: {}", deviceUid);
 
-        return this.oslpDeviceRepository.findByDeviceUid(deviceUid);
+        final OslpDevice cached = this.oslpDeviceCache.getByDeviceUid(deviceUid);
+        if (cached != null) {
+            return cached;
+        }
+        return this.cacheLoaded(this.oslpDeviceRepository.findByDeviceUid(deviceUid));
     }
 
+    /**
+     * Returns the device with the given device identification, from the
+     * device cache when possible.
+     */
+    @Transactional(value = "transactionManager", propagation = Propagation.SUPPORTS)
     public OslpDevice getDeviceByDeviceIdentification(final String deviceIdentification) {
         LOGGER.info("get device by device identification: {}", deviceIdentification);
 
-        return this.oslpDeviceRepository.findByDeviceIdentification(deviceIdentification);
+        final OslpDevice cached = this.oslpDeviceCache.getByDeviceIdentification(deviceIdentification);
+        if (cached != null) {
+            return cached;
+        }
+        return this.cacheLoaded(this.oslpDeviceRepository.findByDeviceIdentification(deviceIdentification));
     }
 
     public List<OslpDevice> getAllDevices() {
@@ -75,4 +129,48 @@ public class OslpDeviceSettingsService {
 
         return this.oslpDeviceRepository.findAll();
     }
+
+    private OslpDevice cacheLoaded(final OslpDevice device) {
+        if (device != null) {
+            this.oslpDeviceCache.putIfAbsent(device);
+        }
+        return device;
+    }
+
+    /**
+     * Caches a copy of the saved device once the transaction has been
+     * committed, so other threads never see changes that are rolled back.
+     * The device is invalidated again when the transaction ends, because
+     * another thread may have cached the device as it was before the change
+     * while the transaction was running.
+     */
+    private OslpDevice cacheAfterCommit(final OslpDevice device) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.oslpDeviceCache.put(device);
+            return device;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(final int status) {
+                if (status == STATUS_COMMITTED) {
+                    OslpDeviceSettingsService.this.oslpDeviceCache.put(device);
+                } else {
+                    OslpDeviceSettingsService.this.oslpDeviceCache.invalidate(device);
+                }
+            }
+        });
+        return device;
+    }
+
+    private void invalidateAfterCompletion(final OslpDevice device) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(final int status) {
+                OslpDeviceSettingsService.this.oslpDeviceCache.invalidate(device);
+            }
+        });
+    }
 }
@@ -0,0 +1,433 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpParkedRequest;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.repositories.OslpParkedRequestRepository;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceResponseMessageSender;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.ParkedRequestMessage;
+import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
+import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
+import org.opensmartgridplatform.shared.exceptionhandling.TechnicalException;
+import org.opensmartgridplatform.shared.infra.jms.Constants;
+import org.opensmartgridplatform.shared.infra.jms.DeviceMessageMetadata;
+import org.opensmartgridplatform.shared.infra.jms.ProtocolResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+/**
+ * Store of requests for devices that could not be reached. Instead of
+ * failing, requests of the configured message types are parked in the
+ * database, and sent to the requests queue again when the device shows it is
+ * online by completing its registration or sending an event notification.
+ * After a registration the requests are sent when the device confirmed it,
+ * so they are signed with the sequence number agreed in the registration.
+ *
+ * A request is parked when it is received for an unreachable device, or when
+ * connecting to the device failed. For the latter the request messages of
+ * the parked message types are tracked while they are in progress, by
+ * correlation uid.
+ *
+ * A device has at most the maximum number of parked requests; requests above
+ * the maximum fail as before. Parked requests of a coalesced message type,
+ * like SET_LIGHT, are replaced by a later request of the same type. Parked
+ * requests that are replaced or expire get a NOT_OK response.
+ *
+ * The parked requests of a device are changed in a transaction, while
+ * holding the lock of the device, so concurrent requests for the device can
+ * not exceed the maximum. A parked request is deleted in the transaction that
+ * sends it again, so a failed send leaves it parked.
+ */
+@ManagedResource(description = "Store of requests for unreachable OSLP devices")
+public class OslpParkedRequestStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpParkedRequestStore.class);
+
+    /**
+     * Time a request is tracked after it is received, which covers waiting
+     * for a connect, signing and connecting.
+     */
+    private static final long TRACKED_REQUEST_EXPIRE_AFTER_MINUTES = 10;
+
+    private static final int DEVICE_LOCK_STRIPES = 64;
+
+    @Autowired
+    private OslpParkedRequestRepository oslpParkedRequestRepository;
+
+    @Autowired
+    @Qualifier("oslpRequestsJmsTemplate")
+    private JmsTemplate oslpRequestsJmsTemplate;
+
+    @Autowired
+    private DeviceResponseMessageSender deviceResponseMessageSender;
+
+    @Autowired
+    @Qualifier("transactionManager")
+    private PlatformTransactionManager transactionManager;
+
+    private final Set<String> parkedMessageTypes;
+    private final Set<String> coalescedMessageTypes;
+    private final int maxPerDevice;
+    private final long expireAfterMillis;
+
+    private final Cache<String, ObjectMessage> trackedRequests;
+    private final Cache<String, String> registeredIpAddresses;
+    private final Striped<Lock> deviceLocks = Striped.lock(DEVICE_LOCK_STRIPES);
+
+    private final AtomicLong parked = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong replaced = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService scheduler;
+
+    public OslpParkedRequestStore(final Set<String> parkedMessageTypes, final Set<String> coalescedMessageTypes,
+            final int maxPerDevice, final long expireAfterMillis, final int maxTrackedRequests) {
+        this.parkedMessageTypes = parkedMessageTypes;
+        this.coalescedMessageTypes = coalescedMessageTypes;
+        this.maxPerDevice = maxPerDevice;
+        this.expireAfterMillis = expireAfterMillis;
+        this.trackedRequests = CacheBuilder.newBuilder().maximumSize(maxTrackedRequests)
+                .expireAfterWrite(TRACKED_REQUEST_EXPIRE_AFTER_MINUTES, TimeUnit.MINUTES).build();
+        this.registeredIpAddresses = CacheBuilder.newBuilder().maximumSize(maxTrackedRequests)
+                .expireAfterWrite(TRACKED_REQUEST_EXPIRE_AFTER_MINUTES, TimeUnit.MINUTES).build();
+    }
+
+    public void start() {
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("oslp-parked-request-"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                OslpParkedRequestStore.this.expire();
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void shutdown() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+            try {
+                this.scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isParked(final String messageType) {
+        return this.parkedMessageTypes.contains(messageType);
+    }
+
+    /**
+     * Tracks the request while it is in progress, so it can be parked when
+     * connecting to the device fails.
+     */
+    public void track(final ObjectMessage message) throws JMSException {
+        if (message.getJMSCorrelationID() != null && this.isParked(message.getJMSType())) {
+            this.trackedRequests.put(message.getJMSCorrelationID(), message);
+        }
+    }
+
+    /**
+     * Parks the request that is in progress with the correlation uid, because
+     * connecting to the device failed.
+     *
+     * @return true when the request is parked, false when it should fail.
+     */
+    public boolean parkTracked(final String correlationUid) {
+        if (correlationUid == null) {
+            return false;
+        }
+        final ObjectMessage message = this.trackedRequests.getIfPresent(correlationUid);
+        if (message == null) {
+            return false;
+        }
+        this.trackedRequests.invalidate(correlationUid);
+        try {
+            return this.park(message);
+        } catch (final JMSException e) {
+            LOGGER.error("Unable to park request with correlation uid: {}", correlationUid, e);
+            return false;
+        }
+    }
+
+    /**
+     * Parks the request for the unreachable device.
+     *
+     * @return true when the request is parked, false when it should fail.
+     */
+    public boolean park(final ObjectMessage message) throws JMSException {
+        final String deviceIdentification = message.getStringProperty(Constants.DEVICE_IDENTIFICATION);
+        final String messageType = message.getJMSType();
+        if (deviceIdentification == null || message.getJMSCorrelationID() == null || !this.isParked(messageType)) {
+            return false;
+        }
+        this.trackedRequests.invalidate(message.getJMSCorrelationID());
+
+        final ParkedRequestMessage parkedRequestMessage = ParkedRequestMessage.fromMessage(message);
+        final List<OslpParkedRequest> replacedRequests = this.inTransaction(deviceIdentification,
+                new TransactionCallback<List<OslpParkedRequest>>() {
+                    @Override
+                    public List<OslpParkedRequest> doInTransaction(final TransactionStatus status) {
+                        return OslpParkedRequestStore.this.save(deviceIdentification, parkedRequestMessage);
+                    }
+                });
+        if (replacedRequests == null) {
+            LOGGER.warn("Not parking {} request for device {}, the maximum of parked requests is reached",
+                    messageType, deviceIdentification);
+            this.rejected.incrementAndGet();
+            return false;
+        }
+
+        for (final OslpParkedRequest replacedRequest : replacedRequests) {
+            this.replaced.incrementAndGet();
+            this.sendNotOk(replacedRequest, "Request replaced by a later request for the unreachable device");
+        }
+        this.parked.incrementAndGet();
+        LOGGER.info("Parked {} request {} for unreachable device {}", messageType,
+                parkedRequestMessage.getCorrelationUid(), deviceIdentification);
+        return true;
+    }
+
+    /**
+     * Sends the parked requests of the device to the requests queue again, in
+     * the order they were parked, on the thread of the store.
+     *
+     * @param ipAddress
+     *            The IP address the device registered with, or null when it
+     *            is not known.
+     */
+    public void flush(final String deviceIdentification, final String ipAddress) {
+        this.scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                OslpParkedRequestStore.this.send(deviceIdentification, ipAddress);
+            }
+        });
+    }
+
+    /**
+     * Remembers the IP address the device registered with, until the device
+     * confirms the registration.
+     */
+    public void registered(final String deviceIdentification, final String ipAddress) {
+        this.registeredIpAddresses.put(deviceIdentification, ipAddress);
+    }
+
+    /**
+     * Sends the parked requests of a device that confirmed its registration,
+     * with the IP address it registered with.
+     */
+    public void registrationConfirmed(final String deviceIdentification) {
+        final String ipAddress = this.registeredIpAddresses.getIfPresent(deviceIdentification);
+        this.registeredIpAddresses.invalidate(deviceIdentification);
+        this.flush(deviceIdentification, ipAddress);
+    }
+
+    @ManagedAttribute(description = "Number of requests parked")
+    public long getParkedCount() {
+        return this.parked.get();
+    }
+
+    @ManagedAttribute(description = "Number of parked requests sent again")
+    public long getFlushedCount() {
+        return this.flushed.get();
+    }
+
+    @ManagedAttribute(description = "Number of parked requests replaced by a later request")
+    public long getReplacedCount() {
+        return this.replaced.get();
+    }
+
+    @ManagedAttribute(description = "Number of parked requests that expired")
+    public long getExpiredCount() {
+        return this.expired.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests not parked because a device had the maximum parked")
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests in the database")
+    public long getSize() {
+        return this.oslpParkedRequestRepository.count();
+    }
+
+    /**
+     * Saves the parked request, replacing the parked requests of the same
+     * coalesced message type.
+     *
+     * @return The replaced requests, or null when the request is not parked
+     *         because the device has the maximum number of parked requests.
+     */
+    private List<OslpParkedRequest> save(final String deviceIdentification,
+            final ParkedRequestMessage parkedRequestMessage) {
+        final String messageType = parkedRequestMessage.getMessageType();
+        final List<OslpParkedRequest> replacedRequests = this.coalescedMessageTypes.contains(messageType)
+                ? this.oslpParkedRequestRepository.findByDeviceIdentificationAndMessageType(deviceIdentification,
+                        messageType)
+                : Collections.<OslpParkedRequest> emptyList();
+
+        if (this.oslpParkedRequestRepository.countByDeviceIdentification(deviceIdentification)
+                - replacedRequests.size() >= this.maxPerDevice) {
+            return null;
+        }
+
+        this.oslpParkedRequestRepository.delete(replacedRequests);
+        this.oslpParkedRequestRepository.save(new OslpParkedRequest(deviceIdentification,
+                parkedRequestMessage.getCorrelationUid(), messageType,
+                new Date(System.currentTimeMillis() + this.expireAfterMillis),
+                SerializationUtils.serialize(parkedRequestMessage)));
+        return replacedRequests;
+    }
+
+    private void send(final String deviceIdentification, final String ipAddress) {
+        try {
+            for (final OslpParkedRequest parkedRequest : this.oslpParkedRequestRepository
+                    .findByDeviceIdentificationOrderByIdAsc(deviceIdentification)) {
+                final boolean sent = this.inTransaction(deviceIdentification, new TransactionCallback<Boolean>() {
+                    @Override
+                    public Boolean doInTransaction(final TransactionStatus status) {
+                        return OslpParkedRequestStore.this.deleteAndSend(parkedRequest, ipAddress);
+                    }
+                });
+                if (sent) {
+                    this.flushed.incrementAndGet();
+                }
+            }
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unable to send parked requests for device: {}", deviceIdentification, e);
+        }
+    }
+
+    /**
+     * Deletes the parked request before sending it, so a failed send rolls
+     * back the delete and the request stays parked.
+     *
+     * @return false when the request was no longer parked.
+     */
+    private boolean deleteAndSend(final OslpParkedRequest parkedRequest, final String ipAddress) {
+        if (!this.oslpParkedRequestRepository.exists(parkedRequest.getId())) {
+            return false;
+        }
+        this.oslpParkedRequestRepository.delete(parkedRequest.getId());
+        this.oslpParkedRequestRepository.flush();
+
+        final ParkedRequestMessage message = SerializationUtils.deserialize(parkedRequest.getMessage());
+        if (ipAddress != null) {
+            message.replaceProperty(Constants.IP_ADDRESS, ipAddress);
+        }
+        this.oslpRequestsJmsTemplate.execute(new ProducerCallback<Void>() {
+            @Override
+            public Void doInJms(final Session session, final MessageProducer producer) throws JMSException {
+                producer.send(message.createMessage(session), producer.getDeliveryMode(),
+                        message.getMessagePriority(), producer.getTimeToLive());
+                return null;
+            }
+        });
+        return true;
+    }
+
+    private void expire() {
+        try {
+            for (final OslpParkedRequest parkedRequest : this.oslpParkedRequestRepository
+                    .findByExpiresAtBefore(new Date())) {
+                final boolean deleted = this.inTransaction(parkedRequest.getDeviceIdentification(),
+                        new TransactionCallback<Boolean>() {
+                            @Override
+                            public Boolean doInTransaction(final TransactionStatus status) {
+                                return OslpParkedRequestStore.this.delete(parkedRequest);
+                            }
+                        });
+                if (deleted) {
+                    this.expired.incrementAndGet();
+                    this.sendNotOk(parkedRequest, "Device was not reachable before the request expired");
+                }
+            }
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unable to expire parked requests", e);
+        }
+    }
+
+    /**
+     * @return false when the request was no longer parked.
+     */
+    private boolean delete(final OslpParkedRequest parkedRequest) {
+        if (!this.oslpParkedRequestRepository.exists(parkedRequest.getId())) {
+            return false;
+        }
+        this.oslpParkedRequestRepository.delete(parkedRequest.getId());
+        return true;
+    }
+
+    private <T> T inTransaction(final String deviceIdentification, final TransactionCallback<T> callback) {
+        final Lock lock = this.deviceLocks.get(deviceIdentification);
+        lock.lock();
+        try {
+            return this.transactionTemplate.execute(callback);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sendNotOk(final OslpParkedRequest parkedRequest, final String errorMessage) {
+        final ParkedRequestMessage message = SerializationUtils.deserialize(parkedRequest.getMessage());
+        final OsgpException osgpException = new OsgpException(ComponentType.PROTOCOL_OSLP, errorMessage,
+                new TechnicalException(ComponentType.PROTOCOL_OSLP, "Device is unreachable"));
+
+        final DeviceMessageMetadata deviceMessageMetadata = new DeviceMessageMetadata(
+                parkedRequest.getDeviceIdentification(),
+                message.getStringProperty(Constants.ORGANISATION_IDENTIFICATION), message.getCorrelationUid(),
+                message.getMessageType(), message.getMessagePriority());
+        final ProtocolResponseMessage protocolResponseMessage = new ProtocolResponseMessage.Builder()
+                .deviceMessageMetadata(deviceMessageMetadata).domain(message.getStringProperty(Constants.DOMAIN))
+                .domainVersion(message.getStringProperty(Constants.DOMAIN_VERSION))
+                .result(ResponseMessageResultType.NOT_OK).osgpException(osgpException)
+                .dataObject(message.getObject()).scheduled(message.getBooleanProperty(Constants.IS_SCHEDULED))
+                .retryCount(message.getIntProperty(Constants.RETRY_COUNT)).build();
+
+        this.deviceResponseMessageSender.send(protocolResponseMessage);
+    }
+}
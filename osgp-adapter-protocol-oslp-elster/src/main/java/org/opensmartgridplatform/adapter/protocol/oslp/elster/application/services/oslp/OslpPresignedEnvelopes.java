@@ -0,0 +1,185 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.SequenceNumberUtils;
+import org.opensmartgridplatform.oslp.Oslp;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+
+/**
+ * Envelopes of follow up steps of multi-step exchanges, signed together with
+ * the first step and kept until the step is taken, keyed by device
+ * identification and sequence number.
+ *
+ * A pre-signed envelope is only used for a step with the same sequence
+ * number, correlation uid, message type and payload. When the device
+ * answered with another sequence number than expected, or the payload of the
+ * step turns out different, the step is signed as usual. Envelopes of steps
+ * that are never taken expire.
+ */
+@ManagedResource(description = "Pre-signed envelopes of follow up OSLP requests")
+public class OslpPresignedEnvelopes {
+
+    private final Cache<String, Presigned> envelopes;
+
+    private final AtomicLong presigned = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+
+    public OslpPresignedEnvelopes(final int maximumSize, final int expireAfterWriteMinutes) {
+        this.envelopes = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * Registers an envelope of a follow up step that is sent for signing.
+     */
+    public void expect(final String deviceIdentification, final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+        this.envelopes.put(key(deviceIdentification, unsignedOslpEnvelopeDto), new Presigned(unsignedOslpEnvelopeDto));
+        this.presigned.incrementAndGet();
+    }
+
+    /**
+     * Keeps a signed envelope of a follow up step until the step is taken.
+     *
+     * @return false when the envelope is not of a follow up step, or its step
+     *         was already taken while it was being signed. Either way the
+     *         envelope has to be handled right away.
+     */
+    public boolean hold(final String deviceIdentification, final SignedOslpEnvelopeDto signedOslpEnvelopeDto) {
+        final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = signedOslpEnvelopeDto.getUnsignedOslpEnvelopeDto();
+        final String key = key(deviceIdentification, unsignedOslpEnvelopeDto);
+        final Presigned presigned = this.envelopes.getIfPresent(key);
+        if (presigned == null || !presigned.isFor(unsignedOslpEnvelopeDto)) {
+            return false;
+        }
+        synchronized (presigned) {
+            if (presigned.requested) {
+                this.envelopes.invalidate(key);
+                return false;
+            }
+            presigned.signedOslpEnvelopeDto = signedOslpEnvelopeDto;
+            return true;
+        }
+    }
+
+    /**
+     * Takes the envelope of a step. When the envelope is still being signed,
+     * the step is marked as taken and {@link #hold} lets the envelope be
+     * handled as soon as it is signed.
+     *
+     * @return The pre-signed step, with a null signed envelope while it is
+     *         still being signed, or null when the step is not pre-signed.
+     */
+    public Presigned take(final String deviceIdentification, final int sequenceNumber, final String correlationUid,
+            final String messageType, final Oslp.Message payloadMessage) {
+        final String key = key(deviceIdentification, sequenceNumber);
+        final Presigned presigned = this.envelopes.getIfPresent(key);
+        if (presigned == null) {
+            return null;
+        }
+        if (!presigned.isFor(correlationUid, messageType, payloadMessage)) {
+            // A left over of another exchange, or of an earlier attempt.
+            this.envelopes.invalidate(key);
+            return null;
+        }
+        synchronized (presigned) {
+            if (presigned.signedOslpEnvelopeDto == null) {
+                presigned.requested = true;
+            } else {
+                this.envelopes.invalidate(key);
+            }
+        }
+        this.taken.incrementAndGet();
+        return presigned;
+    }
+
+    /**
+     * Removes the envelope of a follow up step that could not be signed.
+     *
+     * @return true when the step was not taken yet, so the error does not have
+     *         to be reported. The step is signed again when it is taken.
+     */
+    public boolean signingFailed(final String deviceIdentification,
+            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+        final String key = key(deviceIdentification, unsignedOslpEnvelopeDto);
+        final Presigned presigned = this.envelopes.getIfPresent(key);
+        if (presigned == null || !presigned.isFor(unsignedOslpEnvelopeDto)) {
+            return false;
+        }
+        this.envelopes.invalidate(key);
+        synchronized (presigned) {
+            return !presigned.requested;
+        }
+    }
+
+    @ManagedAttribute(description = "Number of envelopes of follow up steps sent for signing")
+    public long getPresignedCount() {
+        return this.presigned.get();
+    }
+
+    @ManagedAttribute(description = "Number of follow up steps that used a pre-signed envelope")
+    public long getTakenCount() {
+        return this.taken.get();
+    }
+
+    @ManagedAttribute(description = "Number of pre-signed envelopes waiting for their step")
+    public long getSize() {
+        return this.envelopes.size();
+    }
+
+    private static String key(final String deviceIdentification,
+            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+        return key(deviceIdentification,
+                SequenceNumberUtils.convertByteArrayToInteger(unsignedOslpEnvelopeDto.getSequenceNumber()));
+    }
+
+    private static String key(final String deviceIdentification, final int sequenceNumber) {
+        return deviceIdentification + ":" + sequenceNumber;
+    }
+
+    public static class Presigned {
+        private final String correlationUid;
+        private final String messageType;
+        private final Oslp.Message payloadMessage;
+        private SignedOslpEnvelopeDto signedOslpEnvelopeDto;
+        private boolean requested;
+
+        Presigned(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+            this.correlationUid = unsignedOslpEnvelopeDto.getCorrelationUid();
+            this.messageType = unsignedOslpEnvelopeDto.getMessageType();
+            this.payloadMessage = unsignedOslpEnvelopeDto.getPayloadMessage();
+        }
+
+        boolean isFor(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+            return this.isFor(unsignedOslpEnvelopeDto.getCorrelationUid(), unsignedOslpEnvelopeDto.getMessageType(),
+                    unsignedOslpEnvelopeDto.getPayloadMessage());
+        }
+
+        boolean isFor(final String correlationUid, final String messageType, final Oslp.Message payloadMessage) {
+            return this.correlationUid.equals(correlationUid) && this.messageType.equals(messageType)
+                    && this.payloadMessage.equals(payloadMessage);
+        }
+
+        /**
+         * @return The signed envelope, or null while it is being signed.
+         */
+        public synchronized SignedOslpEnvelopeDto getSignedOslpEnvelopeDto() {
+            return this.signedOslpEnvelopeDto;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+
+/**
+ * Supplies the private key used to sign OSLP envelopes in-process, instead of
+ * having them signed by the signing server.
+ */
+public interface OslpPrivateKeyProvider {
+
+    /**
+     * @return The private key to sign OSLP envelopes with.
+     * @throws IOException
+     *             When the private key can not be loaded.
+     */
+    PrivateKey getPrivateKey() throws IOException;
+}
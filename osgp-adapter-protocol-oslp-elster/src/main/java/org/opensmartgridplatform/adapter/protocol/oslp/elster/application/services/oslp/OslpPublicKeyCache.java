@@ -0,0 +1,174 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
+import org.opensmartgridplatform.shared.security.CertificateHelper;
+
+/**
+ * Bounded cache of parsed device public keys, keyed by device UID and by
+ * device identification. Parsing a Base64 encoded X.509 key is a large part
+ * of validating an incoming message, while the keys of a device hardly ever
+ * change.
+ *
+ * Every entry holds the encoded key it was parsed from. A cached key is only
+ * used when it still matches the key of the given device, so a key that is
+ * updated elsewhere is never used after the device is reloaded. Key updates
+ * and revocations in this adapter invalidate the entries directly.
+ */
+@ManagedResource(description = "Cache of parsed device public keys")
+public class OslpPublicKeyCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpPublicKeyCache.class);
+
+    private final String keyType;
+    private final String provider;
+
+    private final Cache<String, CachedPublicKey> publicKeysByDeviceUid;
+    private final Cache<String, CachedPublicKey> publicKeysByDeviceIdentification;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public OslpPublicKeyCache(final String keyType, final String provider, final int maximumSize,
+            final int expireAfterAccessMinutes) {
+        this.keyType = keyType;
+        this.provider = provider;
+        this.publicKeysByDeviceUid = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES).build();
+        this.publicKeysByDeviceIdentification = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * Returns the parsed public key of the device, parsing and caching it when
+     * it is not cached yet.
+     *
+     * @param oslpDevice
+     *            The device, which must have a public key.
+     * @return The public key of the device.
+     */
+    public PublicKey getPublicKey(final OslpDevice oslpDevice) throws IOException, GeneralSecurityException {
+        final String encodedPublicKey = oslpDevice.getPublicKey();
+
+        // A device registering with a new UID still finds its key by
+        // identification, and the other way around.
+        final CachedPublicKey byDeviceUid = getIfParsedFrom(this.publicKeysByDeviceUid, oslpDevice.getDeviceUid(),
+                encodedPublicKey);
+        final CachedPublicKey cached = byDeviceUid != null ? byDeviceUid
+                : getIfParsedFrom(this.publicKeysByDeviceIdentification, oslpDevice.getDeviceIdentification(),
+                        encodedPublicKey);
+        if (cached != null) {
+            this.hits.incrementAndGet();
+            this.put(oslpDevice, cached);
+            return cached.getPublicKey();
+        }
+
+        this.misses.incrementAndGet();
+        final PublicKey publicKey = CertificateHelper.createPublicKeyFromBase64(encodedPublicKey, this.keyType,
+                this.provider);
+        this.put(oslpDevice, new CachedPublicKey(encodedPublicKey, publicKey));
+        return publicKey;
+    }
+
+    private void put(final OslpDevice oslpDevice, final CachedPublicKey cachedPublicKey) {
+        if (oslpDevice.getDeviceUid() != null) {
+            this.publicKeysByDeviceUid.put(oslpDevice.getDeviceUid(), cachedPublicKey);
+        }
+        if (oslpDevice.getDeviceIdentification() != null) {
+            this.publicKeysByDeviceIdentification.put(oslpDevice.getDeviceIdentification(), cachedPublicKey);
+        }
+    }
+
+    private static CachedPublicKey getIfParsedFrom(final Cache<String, CachedPublicKey> cache, final String key,
+            final String encodedPublicKey) {
+        if (key == null) {
+            return null;
+        }
+        final CachedPublicKey cached = cache.getIfPresent(key);
+        return cached != null && cached.isParsedFrom(encodedPublicKey) ? cached : null;
+    }
+
+    /**
+     * Removes the cached public key of the device, for instance after the key
+     * has been updated or revoked.
+     */
+    public void invalidate(final OslpDevice oslpDevice) {
+        LOGGER.debug("Invalidating cached public key of device: {}", oslpDevice.getDeviceIdentification());
+        if (oslpDevice.getDeviceUid() != null) {
+            this.publicKeysByDeviceUid.invalidate(oslpDevice.getDeviceUid());
+        }
+        if (oslpDevice.getDeviceIdentification() != null) {
+            this.publicKeysByDeviceIdentification.invalidate(oslpDevice.getDeviceIdentification());
+        }
+    }
+
+    @ManagedOperation(description = "Removes all cached public keys")
+    public void invalidateAll() {
+        this.publicKeysByDeviceUid.invalidateAll();
+        this.publicKeysByDeviceIdentification.invalidateAll();
+    }
+
+    @ManagedAttribute(description = "Number of public keys taken from the cache")
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of public keys that had to be parsed")
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of cached public keys, by device UID and by device identification")
+    public long getSize() {
+        return this.getSizeByDeviceUid() + this.getSizeByDeviceIdentification();
+    }
+
+    @ManagedAttribute(description = "Number of cached public keys by device UID")
+    public long getSizeByDeviceUid() {
+        return this.publicKeysByDeviceUid.size();
+    }
+
+    @ManagedAttribute(description = "Number of cached public keys by device identification")
+    public long getSizeByDeviceIdentification() {
+        return this.publicKeysByDeviceIdentification.size();
+    }
+
+    private static class CachedPublicKey {
+        private final String encodedPublicKey;
+        private final PublicKey publicKey;
+
+        CachedPublicKey(final String encodedPublicKey, final PublicKey publicKey) {
+            this.encodedPublicKey = encodedPublicKey;
+            this.publicKey = publicKey;
+        }
+
+        boolean isParsedFrom(final String encodedPublicKey) {
+            return this.encodedPublicKey.equals(encodedPublicKey);
+        }
+
+        PublicKey getPublicKey() {
+            return this.publicKey;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
+
+/**
+ * In-memory store of the current sequence number of every device, keyed by
+ * device identification. Sequence numbers are checked and updated in memory
+ * and written to the oslp_device table behind the scenes, in JDBC batches at
+ * a fixed interval and synchronously on shutdown.
+ *
+ * A sequence number that is not written yet is lost when the adapter
+ * crashes. To keep the devices reachable after a crash, the sequence number
+ * of a device is written immediately once it is sequenceNumberWindow steps
+ * ahead of the stored value. The stored value is therefore never more than
+ * sequenceNumberWindow - 1 steps behind, which is within the window accepted
+ * by the sequence number checks of both the platform and the device.
+ *
+ * A sequence number that can not be written stays pending, and is written
+ * again by the next flush. While the stored value of a device is a full
+ * window behind, its sequence number is written again on every lookup, and
+ * the lookup fails as long as the write fails. No new requests are sent to
+ * the device until the stored value is within the window again.
+ *
+ * The store assumes a device is handled by a single adapter instance.
+ * Entities saved by {@link OslpDeviceSettingsService} get the sequence number
+ * of this store, so a save never overwrites a newer sequence number.
+ */
+@ManagedResource(description = "Store of OSLP device sequence numbers")
+public class OslpSequenceNumberStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpSequenceNumberStore.class);
+
+    private static final String UPDATE_SEQUENCE_NUMBER = "UPDATE oslp_device SET sequence_number = ? WHERE device_identification = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int sequenceNumberWindow;
+    private final int sequenceNumberMaximum;
+    private final long flushIntervalMillis;
+
+    private final ConcurrentMap<String, SequenceNumber> sequenceNumbers = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes all writes, so a batch can never overwrite a newer value
+     * written by an immediate flush.
+     */
+    private final Object flushLock = new Object();
+
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong immediateFlushes = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    public OslpSequenceNumberStore(final JdbcTemplate jdbcTemplate, final int sequenceNumberWindow,
+            final int sequenceNumberMaximum, final long flushIntervalMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceNumberWindow = sequenceNumberWindow;
+        this.sequenceNumberMaximum = sequenceNumberMaximum;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void start() {
+        this.scheduler = Executors
+                .newSingleThreadScheduledExecutor(new CustomizableThreadFactory("oslp-sequence-number-flush-"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                OslpSequenceNumberStore.this.flush();
+            }
+        }, this.flushIntervalMillis, this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic flush and writes all pending sequence numbers.
+     */
+    public void shutdown() throws InterruptedException {
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+            this.scheduler.awaitTermination(this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        this.flush();
+    }
+
+    /**
+     * @return The current sequence number of the device, or null when the
+     *         device has none.
+     * @throws IllegalStateException
+     *             when the stored sequence number is a full window behind
+     *             and can not be written, so using the current value could
+     *             lead to reused sequence numbers after a restart.
+     */
+    public Integer getSequenceNumber(final OslpDevice oslpDevice) {
+        final SequenceNumber sequenceNumber = this.getOrCreate(oslpDevice);
+        if (sequenceNumber == null) {
+            return null;
+        }
+        final boolean flushNow;
+        synchronized (sequenceNumber) {
+            flushNow = this.stepsBehind(sequenceNumber) >= this.sequenceNumberWindow;
+        }
+        if (flushNow && !this.flush(oslpDevice.getDeviceIdentification(), sequenceNumber)) {
+            throw new IllegalStateException(
+                    "Unable to write sequence number of device: " + oslpDevice.getDeviceIdentification());
+        }
+        synchronized (sequenceNumber) {
+            return sequenceNumber.current;
+        }
+    }
+
+    /**
+     * Sets the current sequence number of the device. The new value is
+     * written right away when the stored value would otherwise fall too far
+     * behind.
+     */
+    public void updateSequenceNumber(final OslpDevice oslpDevice, final int newSequenceNumber) {
+        SequenceNumber sequenceNumber = this.getOrCreate(oslpDevice);
+        if (sequenceNumber == null) {
+            sequenceNumber = this.putIfAbsent(oslpDevice.getDeviceIdentification(),
+                    new SequenceNumber(newSequenceNumber, null));
+        }
+
+        final boolean flushNow;
+        synchronized (sequenceNumber) {
+            sequenceNumber.current = newSequenceNumber;
+            flushNow = this.stepsBehind(sequenceNumber) >= this.sequenceNumberWindow;
+        }
+
+        if (flushNow) {
+            this.immediateFlushes.incrementAndGet();
+            this.flush(oslpDevice.getDeviceIdentification(), sequenceNumber);
+        }
+    }
+
+    /**
+     * Copies the current sequence number of this store to the device, before
+     * the device is saved.
+     */
+    public void applyTo(final OslpDevice oslpDevice) {
+        final SequenceNumber sequenceNumber = this.sequenceNumbers.get(oslpDevice.getDeviceIdentification());
+        if (sequenceNumber != null) {
+            synchronized (sequenceNumber) {
+                oslpDevice.setSequenceNumber(sequenceNumber.current);
+            }
+        }
+    }
+
+    public void remove(final OslpDevice oslpDevice) {
+        this.sequenceNumbers.remove(oslpDevice.getDeviceIdentification());
+    }
+
+    /**
+     * Writes all sequence numbers that changed since they were last written,
+     * in a single JDBC batch.
+     */
+    @ManagedOperation(description = "Writes all pending sequence numbers")
+    public void flush() {
+        synchronized (this.flushLock) {
+            final List<String> deviceIdentifications = new ArrayList<>();
+            final List<Integer> values = new ArrayList<>();
+            final List<Object[]> batchArgs = new ArrayList<>();
+            for (final Map.Entry<String, SequenceNumber> entry : this.sequenceNumbers.entrySet()) {
+                final SequenceNumber sequenceNumber = entry.getValue();
+                synchronized (sequenceNumber) {
+                    if (sequenceNumber.isDirty()) {
+                        deviceIdentifications.add(entry.getKey());
+                        values.add(sequenceNumber.current);
+                        batchArgs.add(new Object[] { sequenceNumber.current, entry.getKey() });
+                    }
+                }
+            }
+            if (batchArgs.isEmpty()) {
+                return;
+            }
+
+            try {
+                this.jdbcTemplate.batchUpdate(UPDATE_SEQUENCE_NUMBER, batchArgs);
+            } catch (final DataAccessException e) {
+                this.flushFailures.incrementAndGet();
+                LOGGER.error("Unable to write {} sequence numbers", batchArgs.size(), e);
+                return;
+            }
+
+            for (int i = 0; i < deviceIdentifications.size(); i++) {
+                final SequenceNumber sequenceNumber = this.sequenceNumbers.get(deviceIdentifications.get(i));
+                if (sequenceNumber != null) {
+                    synchronized (sequenceNumber) {
+                        sequenceNumber.flushed = values.get(i);
+                    }
+                }
+            }
+            this.flushedRows.addAndGet(batchArgs.size());
+            LOGGER.debug("Wrote {} sequence numbers", batchArgs.size());
+        }
+    }
+
+    @ManagedAttribute(description = "Number of devices with a sequence number in the store")
+    public int getSize() {
+        return this.sequenceNumbers.size();
+    }
+
+    @ManagedAttribute(description = "Number of sequence numbers that are not written yet")
+    public int getPendingCount() {
+        int pending = 0;
+        for (final SequenceNumber sequenceNumber : this.sequenceNumbers.values()) {
+            synchronized (sequenceNumber) {
+                if (sequenceNumber.isDirty()) {
+                    pending++;
+                }
+            }
+        }
+        return pending;
+    }
+
+    @ManagedAttribute(description = "Number of sequence numbers written")
+    public long getFlushedRows() {
+        return this.flushedRows.get();
+    }
+
+    @ManagedAttribute(description = "Number of sequence numbers written immediately to stay within the window")
+    public long getImmediateFlushes() {
+        return this.immediateFlushes.get();
+    }
+
+    @ManagedAttribute(description = "Number of failed writes")
+    public long getFlushFailures() {
+        return this.flushFailures.get();
+    }
+
+    /**
+     * @return false when the sequence number could not be written, it stays
+     *         pending.
+     */
+    private boolean flush(final String deviceIdentification, final SequenceNumber sequenceNumber) {
+        synchronized (this.flushLock) {
+            final int value;
+            synchronized (sequenceNumber) {
+                if (!sequenceNumber.isDirty()) {
+                    return true;
+                }
+                value = sequenceNumber.current;
+            }
+
+            try {
+                this.jdbcTemplate.update(UPDATE_SEQUENCE_NUMBER, value, deviceIdentification);
+            } catch (final DataAccessException e) {
+                this.flushFailures.incrementAndGet();
+                LOGGER.error("Unable to write sequence number of device: {}", deviceIdentification, e);
+                return false;
+            }
+
+            synchronized (sequenceNumber) {
+                sequenceNumber.flushed = value;
+            }
+            this.flushedRows.incrementAndGet();
+            return true;
+        }
+    }
+
+    private SequenceNumber getOrCreate(final OslpDevice oslpDevice) {
+        final SequenceNumber sequenceNumber = this.sequenceNumbers.get(oslpDevice.getDeviceIdentification());
+        if (sequenceNumber != null || oslpDevice.getSequenceNumber() == null) {
+            return sequenceNumber;
+        }
+        // The device is not in the store yet, so its entity still has the
+        // stored sequence number.
+        return this.putIfAbsent(oslpDevice.getDeviceIdentification(),
+                new SequenceNumber(oslpDevice.getSequenceNumber(), oslpDevice.getSequenceNumber()));
+    }
+
+    private SequenceNumber putIfAbsent(final String deviceIdentification, final SequenceNumber sequenceNumber) {
+        final SequenceNumber existing = this.sequenceNumbers.putIfAbsent(deviceIdentification, sequenceNumber);
+        return existing == null ? sequenceNumber : existing;
+    }
+
+    /**
+     * @return The number of steps the stored value is behind the current
+     *         value, taking the roll over at the maximum into account.
+     */
+    private int stepsBehind(final SequenceNumber sequenceNumber) {
+        if (sequenceNumber.flushed == null) {
+            return Integer.MAX_VALUE;
+        }
+        final int range = this.sequenceNumberMaximum + 1;
+        return ((sequenceNumber.current - sequenceNumber.flushed) % range + range) % range;
+    }
+
+    private static class SequenceNumber {
+        private int current;
+        private Integer flushed;
+
+        SequenceNumber(final int current, final Integer flushed) {
+            this.current = current;
+            this.flushed = flushed;
+        }
+
+        boolean isDirty() {
+            return this.flushed == null || this.flushed != this.current;
+        }
+    }
+}
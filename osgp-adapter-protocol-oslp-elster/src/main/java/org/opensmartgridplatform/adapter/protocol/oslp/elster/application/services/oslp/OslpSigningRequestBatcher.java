@@ -0,0 +1,220 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.SigningServerRequestMessageSender;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeBatchDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
+import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
+import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+/**
+ * Groups signing requests that arrive within a short window into one message
+ * to the signing server, up to a maximum number of envelopes, so a burst of
+ * requests to many devices costs one JMS round trip instead of one per
+ * device. A batch is sent with the highest priority of its envelopes.
+ *
+ * Envelopes of responses to devices are never batched, as the device waits
+ * on the connection for them. A maximum batch size of 1 sends every request
+ * on its own, which is required as long as not all signing servers accept
+ * batches. When a batch can not be sent, every envelope of the batch is
+ * handled as an error from the signing server.
+ */
+@ManagedResource(description = "Batches of OSLP envelopes sent to the signing server")
+public class OslpSigningRequestBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpSigningRequestBatcher.class);
+
+    private static final String SIGNING_REQUEST_MESSAGE_TYPE = "SIGNING_REQUEST";
+
+    @Autowired
+    private SigningServerRequestMessageSender signingServerRequestMessageSender;
+
+    @Autowired
+    private OslpSigningService oslpSigningService;
+
+    private final int maxBatchSize;
+    private final long windowMillis;
+
+    private final Object lock = new Object();
+    private Batch pending;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong envelopesBatched = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    public OslpSigningRequestBatcher(final int maxBatchSize, final long windowMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    public void start() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("oslp-signing-batch-"));
+    }
+
+    public void shutdown() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+        }
+        final Batch batch;
+        synchronized (this.lock) {
+            batch = this.pending;
+            this.pending = null;
+        }
+        if (batch != null) {
+            this.send(batch);
+        }
+    }
+
+    /**
+     * Sends the signing request, on its own or together with the requests
+     * submitted within the window.
+     */
+    public void submit(final RequestMessage requestMessage, final int messagePriority) {
+        final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = (UnsignedOslpEnvelopeDto) requestMessage
+                .getRequest();
+        if (this.maxBatchSize <= 1 || this.scheduler == null
+                || UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE.equals(unsignedOslpEnvelopeDto.getType())) {
+            this.signingServerRequestMessageSender.send(requestMessage, SIGNING_REQUEST_MESSAGE_TYPE,
+                    messagePriority);
+            return;
+        }
+
+        Batch full = null;
+        synchronized (this.lock) {
+            if (this.pending == null) {
+                final Batch batch = new Batch();
+                this.pending = batch;
+                this.scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        OslpSigningRequestBatcher.this.flush(batch);
+                    }
+                }, this.windowMillis, TimeUnit.MILLISECONDS);
+            }
+            this.pending.add(requestMessage, messagePriority);
+            if (this.pending.size() >= this.maxBatchSize) {
+                full = this.pending;
+                this.pending = null;
+            }
+        }
+        if (full != null) {
+            this.send(full);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of batches sent to the signing server")
+    public long getBatchesSent() {
+        return this.batchesSent.get();
+    }
+
+    @ManagedAttribute(description = "Number of envelopes sent to the signing server in a batch")
+    public long getEnvelopesBatched() {
+        return this.envelopesBatched.get();
+    }
+
+    @ManagedAttribute(description = "Number of envelopes waiting for their batch to be sent")
+    public int getPendingSize() {
+        synchronized (this.lock) {
+            return this.pending == null ? 0 : this.pending.size();
+        }
+    }
+
+    private void flush(final Batch batch) {
+        synchronized (this.lock) {
+            // Already sent when it was full.
+            if (this.pending != batch) {
+                return;
+            }
+            this.pending = null;
+        }
+        this.send(batch);
+    }
+
+    private void send(final Batch batch) {
+        try {
+            if (batch.size() == 1) {
+                this.signingServerRequestMessageSender.send(batch.requestMessages.get(0), SIGNING_REQUEST_MESSAGE_TYPE,
+                        batch.messagePriority);
+                return;
+            }
+
+            final UnsignedOslpEnvelopeBatchDto batchDto = new UnsignedOslpEnvelopeBatchDto();
+            for (final RequestMessage requestMessage : batch.requestMessages) {
+                batchDto.add(requestMessage.getDeviceIdentification(),
+                        (UnsignedOslpEnvelopeDto) requestMessage.getRequest());
+            }
+            final RequestMessage first = batch.requestMessages.get(0);
+            final RequestMessage requestMessage = new RequestMessage("batch-" + UUID.randomUUID().toString(),
+                    first.getOrganisationIdentification(), first.getDeviceIdentification(), batchDto);
+
+            LOGGER.debug("Sending batch of {} envelopes to signing server", batchDto.size());
+            this.signingServerRequestMessageSender.send(requestMessage,
+                    UnsignedOslpEnvelopeBatchDto.SIGNING_BATCH_REQUEST_TYPE, batch.messagePriority);
+            this.batchesSent.incrementAndGet();
+            this.envelopesBatched.addAndGet(batchDto.size());
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unable to send batch of {} envelopes to signing server", batch.size(), e);
+            this.handleError(batch, "Unable to send envelope to signing server: " + e.getMessage());
+        }
+    }
+
+    private void handleError(final Batch batch, final String error) {
+        for (final RequestMessage requestMessage : batch.requestMessages) {
+            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = (UnsignedOslpEnvelopeDto) requestMessage
+                    .getRequest();
+            try {
+                final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                        .withCorrelationUid(unsignedOslpEnvelopeDto.getCorrelationUid())
+                        .withOrganisationIdentification(unsignedOslpEnvelopeDto.getOrganisationIdentification())
+                        .withDeviceIdentification(requestMessage.getDeviceIdentification())
+                        .withResult(ResponseMessageResultType.NOT_OK)
+                        .withOsgpException(new OsgpException(ComponentType.PROTOCOL_OSLP, error, null))
+                        .withDataObject(unsignedOslpEnvelopeDto)
+                        .withMessagePriority(unsignedOslpEnvelopeDto.getMessagePriority()).build();
+                this.oslpSigningService.handleError(requestMessage.getDeviceIdentification(), responseMessage);
+            } catch (final RuntimeException e) {
+                LOGGER.error("Unable to handle envelope for device: {} with correlationId: {}",
+                        requestMessage.getDeviceIdentification(), unsignedOslpEnvelopeDto.getCorrelationUid(), e);
+            }
+        }
+    }
+
+    private static class Batch {
+        private final List<RequestMessage> requestMessages = new ArrayList<>();
+        private int messagePriority;
+
+        void add(final RequestMessage requestMessage, final int messagePriority) {
+            this.requestMessages.add(requestMessage);
+            this.messagePriority = Math.max(this.messagePriority, messagePriority);
+        }
+
+        int size() {
+            return this.requestMessages.size();
+        }
+    }
+}
@@ -7,22 +7,33 @@
  */
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.security.PrivateKey;
+import java.util.List;
+
+import javax.annotation.Resource;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceRequestMessageProcessorMap;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceResponseMessageSender;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.OslpEnvelopeProcessor;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.SigningServerRequestMessageSender;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpChannelHandlerServer;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceMailboxes;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.SequenceNumberUtils;
 import org.opensmartgridplatform.oslp.Oslp;
 import org.opensmartgridplatform.oslp.OslpEnvelope;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeBatchDto;
 import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
 import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
+import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
 import org.opensmartgridplatform.shared.infra.jms.DeviceMessageMetadata;
 import org.opensmartgridplatform.shared.infra.jms.MessageType;
 import org.opensmartgridplatform.shared.infra.jms.ProtocolResponseMessage;
 import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
 import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,9 +61,35 @@ public class OslpSigningService {
     @Qualifier("protocolOslpDeviceRequestMessageProcessorMap")
     private DeviceRequestMessageProcessorMap deviceRequestMessageProcessorMap;
 
+    /**
+     * When set, envelopes are signed in this adapter using the key of the
+     * {@link OslpPrivateKeyProvider}, instead of by the signing server.
+     */
+    @Resource
+    private boolean oslpSigningInProcess;
+
+    @Autowired
+    private OslpPrivateKeyProvider oslpPrivateKeyProvider;
+
+    @Autowired
+    private OslpDeviceMailboxes oslpDeviceMailboxes;
+
+    @Autowired
+    private OslpPresignedEnvelopes oslpPresignedEnvelopes;
+
+    @Autowired
+    private OslpSigningRequestBatcher oslpSigningRequestBatcher;
+
+    @Resource
+    private String oslpSignature;
+
+    @Resource
+    private String oslpSignatureProvider;
+
     /**
      * Build OslpEnvelope for an OSLP request using the arguments supplied and
-     * have the envelope signed by the signing server.
+     * have the envelope signed by the signing server, or in-process when
+     * configured.
      */
     public void buildAndSignEnvelope(final String organisationIdentification, final String deviceIdentification,
             final String correlationUid, final byte[] deviceId, final byte[] sequenceNumber, final String ipAddress,
@@ -64,16 +101,78 @@ public class OslpSigningService {
         final UnsignedOslpEnvelopeDto oslpEnvelopeDto = new UnsignedOslpEnvelopeDto(sequenceNumber, deviceId,
                 payloadMessage, ipAddress, domain, domainVersion, messageType, messagePriority, retryCount, isScheduled,
                 organisationIdentification, correlationUid, extraData);
+
+        if (this.oslpSigningInProcess) {
+            this.signInProcess(oslpEnvelopeDto, deviceIdentification);
+            return;
+        }
+
         final RequestMessage requestMessage = new RequestMessage(correlationUid, organisationIdentification,
                 deviceIdentification, oslpEnvelopeDto);
 
-        // Send request message to signing server.
-        this.signingServerRequestMessageSender.send(requestMessage, SIGNING_REQUEST_MESSAGE_TYPE, messagePriority);
+        // Send request message to signing server, possibly in a batch.
+        this.oslpSigningRequestBatcher.submit(requestMessage, messagePriority);
+    }
+
+    /**
+     * Have the envelopes of consecutive steps of a multi-step exchange with a
+     * device signed at once. The first envelope is handled as soon as it is
+     * signed. The envelopes of the follow up steps are kept until their step
+     * is taken using {@link #takePresignedEnvelope}, so the exchange does not
+     * wait for the signing server between the steps.
+     */
+    public void buildAndSignEnvelopes(final String deviceIdentification,
+            final List<UnsignedOslpEnvelopeDto> unsignedOslpEnvelopeDtos) {
+
+        for (final UnsignedOslpEnvelopeDto followUp : unsignedOslpEnvelopeDtos.subList(1,
+                unsignedOslpEnvelopeDtos.size())) {
+            this.oslpPresignedEnvelopes.expect(deviceIdentification, followUp);
+        }
+
+        for (final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto : unsignedOslpEnvelopeDtos) {
+            if (this.oslpSigningInProcess) {
+                this.signInProcess(unsignedOslpEnvelopeDto, deviceIdentification);
+                continue;
+            }
+
+            final RequestMessage requestMessage = new RequestMessage(unsignedOslpEnvelopeDto.getCorrelationUid(),
+                    unsignedOslpEnvelopeDto.getOrganisationIdentification(), deviceIdentification,
+                    unsignedOslpEnvelopeDto);
+
+            // Send request message to signing server, possibly in a batch.
+            this.oslpSigningRequestBatcher.submit(requestMessage, unsignedOslpEnvelopeDto.getMessagePriority());
+        }
+    }
+
+    /**
+     * Handle the pre-signed envelope of a step of a multi-step exchange, or
+     * have it handled as soon as it is signed.
+     *
+     * @return false when the step is not pre-signed, and its envelope has to
+     *         be built and signed.
+     */
+    public boolean takePresignedEnvelope(final String deviceIdentification, final int sequenceNumber,
+            final String correlationUid, final String messageType, final Oslp.Message payloadMessage) {
+
+        final OslpPresignedEnvelopes.Presigned presigned = this.oslpPresignedEnvelopes.take(deviceIdentification,
+                sequenceNumber, correlationUid, messageType, payloadMessage);
+        if (presigned == null) {
+            return false;
+        }
+
+        LOGGER.debug("Using pre-signed envelope with sequence number {} for device: {}", sequenceNumber,
+                deviceIdentification);
+        final SignedOslpEnvelopeDto signedOslpEnvelopeDto = presigned.getSignedOslpEnvelopeDto();
+        if (signedOslpEnvelopeDto != null) {
+            this.handleSignedOslpRequest(signedOslpEnvelopeDto, deviceIdentification);
+        }
+        return true;
     }
 
     /**
      * Build OslpEnvelope for an OSLP response using the arguments supplied and
-     * have the envelope signed by the signing server.
+     * have the envelope signed by the signing server, or in-process when
+     * configured.
      */
     public void buildAndSignEnvelope(final byte[] deviceId, final byte[] sequenceNumber,
             final Oslp.Message payloadMessage, final Integer channelId,
@@ -85,6 +184,12 @@ public class OslpSigningService {
         // Create DTO to transfer data using request message.
         final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = new UnsignedOslpEnvelopeDto(sequenceNumber, deviceId,
                 payloadMessage, correlationUid);
+
+        if (this.oslpSigningInProcess) {
+            this.signInProcess(unsignedOslpEnvelopeDto, "deviceIdentification");
+            return;
+        }
+
         final RequestMessage requestMessage = new RequestMessage(correlationUid, "organisationIdentification",
                 "deviceIdentification", unsignedOslpEnvelopeDto);
 
@@ -92,6 +197,50 @@ public class OslpSigningService {
         this.signingServerRequestMessageSender.send(requestMessage, SIGNING_REQUEST_MESSAGE_TYPE);
     }
 
+    /**
+     * Sign the envelope in this adapter and handle the result the same way as
+     * a response from the signing server.
+     */
+    private void signInProcess(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto,
+            final String deviceIdentification) {
+
+        OslpEnvelope oslpEnvelope = null;
+        try {
+            final PrivateKey privateKey = this.oslpPrivateKeyProvider.getPrivateKey();
+            oslpEnvelope = new OslpEnvelope.Builder().withDeviceId(unsignedOslpEnvelopeDto.getDeviceId())
+                    .withSequenceNumber(unsignedOslpEnvelopeDto.getSequenceNumber()).withPrimaryKey(privateKey)
+                    .withSignature(this.oslpSignature).withProvider(this.oslpSignatureProvider)
+                    .withPayloadMessage(unsignedOslpEnvelopeDto.getPayloadMessage()).build();
+        } catch (final IOException e) {
+            LOGGER.error("Unable to load private key for in-process signing", e);
+        } catch (final RuntimeException e) {
+            // Signing failures are wrapped in an IllegalArgumentException.
+            LOGGER.error("Unable to sign envelope in-process", e);
+        }
+
+        if (oslpEnvelope != null) {
+            this.handleSignedOslpEnvelope(new SignedOslpEnvelopeDto(oslpEnvelope, unsignedOslpEnvelopeDto),
+                    deviceIdentification);
+            return;
+        }
+
+        LOGGER.error("Message for device: {} with correlationId: {} NOT SIGNED", deviceIdentification,
+                unsignedOslpEnvelopeDto.getCorrelationUid());
+        if (UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE.equals(unsignedOslpEnvelopeDto.getType())) {
+            // Nothing to report, the device will not receive a response.
+            return;
+        }
+        final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                .withCorrelationUid(unsignedOslpEnvelopeDto.getCorrelationUid())
+                .withOrganisationIdentification(unsignedOslpEnvelopeDto.getOrganisationIdentification())
+                .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.NOT_OK)
+                .withOsgpException(
+                        new OsgpException(ComponentType.PROTOCOL_OSLP, "Failed to build signed OslpEnvelope", null))
+                .withDataObject(unsignedOslpEnvelopeDto)
+                .withMessagePriority(unsignedOslpEnvelopeDto.getMessagePriority()).build();
+        this.handleError(deviceIdentification, responseMessage);
+    }
+
     /**
      * Handle incoming signed OslpEnvelope from signing server.
      */
@@ -110,9 +259,51 @@ public class OslpSigningService {
         }
     }
 
+    /**
+     * Handle a batch of envelopes from the signing server. Envelopes that
+     * could not be signed are handled as an error from the signing server.
+     */
+    public void handleSignedOslpEnvelopeBatch(final SignedOslpEnvelopeBatchDto signedOslpEnvelopeBatchDto) {
+
+        for (int i = 0; i < signedOslpEnvelopeBatchDto.size(); i++) {
+            final String deviceIdentification = signedOslpEnvelopeBatchDto.getDeviceIdentification(i);
+            try {
+                final SignedOslpEnvelopeDto signedOslpEnvelopeDto = signedOslpEnvelopeBatchDto
+                        .getSignedOslpEnvelopeDto(i);
+                if (signedOslpEnvelopeDto != null) {
+                    this.handleSignedOslpEnvelope(signedOslpEnvelopeDto, deviceIdentification);
+                    continue;
+                }
+
+                final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = signedOslpEnvelopeBatchDto
+                        .getFailedOslpEnvelopeDto(i);
+                LOGGER.error("Message for device: {} with correlationId: {} NOT SIGNED, error: {}",
+                        deviceIdentification, unsignedOslpEnvelopeDto.getCorrelationUid(),
+                        signedOslpEnvelopeBatchDto.getError(i));
+                final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                        .withCorrelationUid(unsignedOslpEnvelopeDto.getCorrelationUid())
+                        .withOrganisationIdentification(unsignedOslpEnvelopeDto.getOrganisationIdentification())
+                        .withDeviceIdentification(deviceIdentification)
+                        .withResult(ResponseMessageResultType.NOT_OK)
+                        .withOsgpException(
+                                new OsgpException(ComponentType.UNKNOWN, signedOslpEnvelopeBatchDto.getError(i), null))
+                        .withDataObject(unsignedOslpEnvelopeDto)
+                        .withMessagePriority(unsignedOslpEnvelopeDto.getMessagePriority()).build();
+                this.handleError(deviceIdentification, responseMessage);
+            } catch (final RuntimeException e) {
+                LOGGER.error("Unable to handle envelope {} of batch for device: {}", i, deviceIdentification, e);
+            }
+        }
+    }
+
     private void handleSignedOslpRequest(final SignedOslpEnvelopeDto signedOslpEnvelopeDto,
             final String deviceIdentification) {
 
+        // Envelopes of follow up steps wait for their step.
+        if (this.oslpPresignedEnvelopes.hold(deviceIdentification, signedOslpEnvelopeDto)) {
+            return;
+        }
+
         final OslpEnvelope oslpEnvelope = signedOslpEnvelopeDto.getOslpEnvelope();
         final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = signedOslpEnvelopeDto.getUnsignedOslpEnvelopeDto();
 
@@ -176,6 +367,21 @@ public class OslpSigningService {
 
         final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = (UnsignedOslpEnvelopeDto) responseMessage
                 .getDataObject();
+
+        // A follow up step that is not taken yet is signed again when it is.
+        if (!UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE.equals(unsignedOslpEnvelopeDto.getType())
+                && this.oslpPresignedEnvelopes.signingFailed(deviceIdentification, unsignedOslpEnvelopeDto)) {
+            LOGGER.warn("Pre-signing envelope for device: {} with correlationId: {} failed", deviceIdentification,
+                    unsignedOslpEnvelopeDto.getCorrelationUid());
+            return;
+        }
+
+        // The request will not be sent, so the device is no longer busy.
+        if (!UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE.equals(unsignedOslpEnvelopeDto.getType())) {
+            this.oslpDeviceMailboxes.exchangeFinished(deviceIdentification,
+                    SequenceNumberUtils.convertByteArrayToInteger(unsignedOslpEnvelopeDto.getSequenceNumber()));
+        }
+
         final DeviceMessageMetadata deviceMessageMetadata = new DeviceMessageMetadata(deviceIdentification,
                 unsignedOslpEnvelopeDto.getOrganisationIdentification(), unsignedOslpEnvelopeDto.getCorrelationUid(),
                 unsignedOslpEnvelopeDto.getMessageType(), responseMessage.getMessagePriority());
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.opensmartgridplatform.shared.domain.entities.AbstractEntity;
+
+/**
+ * Request for a device that could not be reached, kept until the device
+ * registers or sends an event notification, or until it expires.
+ */
+@Entity
+public class OslpParkedRequest extends AbstractEntity {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -2196484737254860117L;
+
+    @Column(nullable = false, length = 40)
+    private String deviceIdentification;
+
+    @Column(nullable = false, length = 255)
+    private String correlationUid;
+
+    @Column(nullable = false, length = 255)
+    private String messageType;
+
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expiresAt;
+
+    /**
+     * The serialized request message.
+     */
+    @Column(nullable = false)
+    private byte[] message;
+
+    public OslpParkedRequest() {
+        // Default constructor
+    }
+
+    public OslpParkedRequest(final String deviceIdentification, final String correlationUid,
+            final String messageType, final Date expiresAt, final byte[] message) {
+        this.deviceIdentification = deviceIdentification;
+        this.correlationUid = correlationUid;
+        this.messageType = messageType;
+        this.expiresAt = new Date(expiresAt.getTime());
+        this.message = message.clone();
+    }
+
+    public String getDeviceIdentification() {
+        return this.deviceIdentification;
+    }
+
+    public String getCorrelationUid() {
+        return this.correlationUid;
+    }
+
+    public String getMessageType() {
+        return this.messageType;
+    }
+
+    public Date getExpiresAt() {
+        return new Date(this.expiresAt.getTime());
+    }
+
+    public byte[] getMessage() {
+        return this.message.clone();
+    }
+}
@@ -9,20 +9,26 @@ package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
 
 import java.io.Serializable;
 
+import javax.annotation.PreDestroy;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.ObjectMessage;
 
+import org.apache.activemq.command.ActiveMQObjectMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpParkedRequestStore;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceMailboxes;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceReachability;
 import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
 import org.opensmartgridplatform.shared.exceptionhandling.NotSupportedException;
 import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
+import org.opensmartgridplatform.shared.exceptionhandling.TechnicalException;
 import org.opensmartgridplatform.shared.infra.jms.Constants;
 import org.opensmartgridplatform.shared.infra.jms.DeviceMessageMetadata;
 import org.opensmartgridplatform.shared.infra.jms.MessageProcessor;
@@ -30,6 +36,14 @@ import org.opensmartgridplatform.shared.infra.jms.MessageProcessorMap;
 import org.opensmartgridplatform.shared.infra.jms.ProtocolResponseMessage;
 import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
 
+/**
+ * Listener for device requests. Requests for a busy device are queued in the
+ * mailbox of the device and processed on the mailbox pool, after this
+ * listener returned and the JMS message was acknowledged. Queued requests
+ * therefore use a copy of the message that does not depend on the session of
+ * the listener. Requests still queued when the adapter stops are answered as
+ * not processed; only requests queued when the adapter crashes are lost.
+ */
 @Component(value = "oslpRequestsMessageListener")
 public class DeviceRequestMessageListener implements MessageListener {
 
@@ -42,6 +56,15 @@ public class DeviceRequestMessageListener implements MessageListener {
     @Autowired
     private DeviceResponseMessageSender deviceResponseMessageSender;
 
+    @Autowired
+    private OslpDeviceMailboxes oslpDeviceMailboxes;
+
+    @Autowired
+    private OslpDeviceReachability oslpDeviceReachability;
+
+    @Autowired
+    private OslpParkedRequestStore oslpParkedRequestStore;
+
     @Override
     public void onMessage(final Message message) {
         final ObjectMessage objectMessage = (ObjectMessage) message;
@@ -53,7 +76,55 @@ public class DeviceRequestMessageListener implements MessageListener {
             messagePriority = message.getJMSPriority();
             LOGGER.info("Received message of type: {} with message priority: {}", messageType, messagePriority);
             final MessageProcessor processor = this.oslpRequestMessageProcessorMap.getMessageProcessor(objectMessage);
-            processor.processMessage(objectMessage);
+            final String deviceIdentification = message.getStringProperty(Constants.DEVICE_IDENTIFICATION);
+            if (deviceIdentification == null) {
+                processor.processMessage(objectMessage);
+                return;
+            }
+
+            // Park or fail fast for a device that could not be reached
+            // recently, before spending signing and connect capacity on it.
+            if (!this.oslpDeviceReachability.allowRequest(deviceIdentification)) {
+                if (this.oslpParkedRequestStore.park(objectMessage)) {
+                    return;
+                }
+                this.sendException(objectMessage,
+                        new TechnicalException(ComponentType.PROTOCOL_OSLP, "Device is unreachable"),
+                        "Device is unreachable: " + deviceIdentification);
+                return;
+            }
+
+            this.oslpParkedRequestStore.track(objectMessage);
+
+            // Process the request when the device is idle, otherwise after
+            // the requests and exchanges before it.
+            final ObjectMessage request = detach(objectMessage);
+            final boolean accepted = this.oslpDeviceMailboxes.submit(deviceIdentification,
+                    new OslpDeviceMailboxes.Request() {
+                        @Override
+                        public void run() {
+                            try {
+                                processor.processMessage(request);
+                            } catch (final JMSException e) {
+                                LOGGER.error("Unexpected JMSException processing request for device: {}",
+                                        deviceIdentification, e);
+                                DeviceRequestMessageListener.this.sendException(request, e,
+                                        "JMSException while processing message");
+                            }
+                        }
+
+                        @Override
+                        public void dropped() {
+                            DeviceRequestMessageListener.this.sendException(request,
+                                    new TechnicalException(ComponentType.PROTOCOL_OSLP, "Adapter is shutting down"),
+                                    "Request not processed before shutdown for device: " + deviceIdentification);
+                        }
+                    });
+            if (!accepted) {
+                this.sendException(objectMessage,
+                        new TechnicalException(ComponentType.PROTOCOL_OSLP, "Too many pending requests for device"),
+                        "Too many pending requests for device: " + deviceIdentification);
+            }
         } catch (final JMSException ex) {
             LOGGER.error("Unexpected JMSException during onMessage(Message)", ex);
             this.sendException(objectMessage, ex, "JMSException while processing message");
@@ -64,6 +135,28 @@ public class DeviceRequestMessageListener implements MessageListener {
         }
     }
 
+    /**
+     * Answers the requests still queued in the mailboxes, while the response
+     * sender is still available.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.oslpDeviceMailboxes.shutdown();
+    }
+
+    /**
+     * Copies the message, including its object, so a queued request can be
+     * processed on another thread after the message was acknowledged.
+     */
+    private static ObjectMessage detach(final ObjectMessage objectMessage) throws JMSException {
+        if (!(objectMessage instanceof ActiveMQObjectMessage)) {
+            return objectMessage;
+        }
+        final ObjectMessage copy = (ObjectMessage) ((ActiveMQObjectMessage) objectMessage).copy();
+        copy.getObject();
+        return copy;
+    }
+
     private void sendException(final ObjectMessage objectMessage, final Exception exception,
             final String errorMessage) {
         try {
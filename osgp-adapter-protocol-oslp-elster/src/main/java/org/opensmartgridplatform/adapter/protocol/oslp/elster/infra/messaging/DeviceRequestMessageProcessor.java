@@ -12,9 +12,11 @@ import java.io.Serializable;
 import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.StringUtils;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpParkedRequestStore;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.device.DeviceResponse;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.device.responses.EmptyDeviceResponse;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.DeviceService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceReachability;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.services.DeviceResponseService;
 import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
 import org.opensmartgridplatform.shared.exceptionhandling.FunctionalException;
@@ -54,6 +56,12 @@ public abstract class DeviceRequestMessageProcessor implements MessageProcessor
     @Autowired
     protected DeviceResponseService deviceResponseService;
 
+    @Autowired
+    private OslpDeviceReachability oslpDeviceReachability;
+
+    @Autowired
+    private OslpParkedRequestStore oslpParkedRequestStore;
+
     @Autowired
     @Qualifier("protocolOslpDeviceRequestMessageProcessorMap")
     protected MessageProcessorMap oslpRequestMessageProcessorMap;
@@ -188,6 +196,13 @@ public abstract class DeviceRequestMessageProcessor implements MessageProcessor
             final DeviceResponse deviceResponse2, final String domain, final String domainVersion,
             final String messageType, final boolean isScheduled, final int retryCount) {
 
+        // A request that could not be sent because the device was not
+        // reachable is sent again when the device is online.
+        if (this.oslpDeviceReachability.isLastConnectFailed(deviceResponse.getDeviceIdentification())
+                && this.oslpParkedRequestStore.parkTracked(deviceResponse.getCorrelationUid())) {
+            return;
+        }
+
         final ResponseMessageResultType result = ResponseMessageResultType.NOT_OK;
         final OsgpException ex = new TechnicalException(ComponentType.PROTOCOL_OSLP,
                 StringUtils.isBlank(t.getMessage()) ? UNEXPECTED_EXCEPTION : t.getMessage(), t);
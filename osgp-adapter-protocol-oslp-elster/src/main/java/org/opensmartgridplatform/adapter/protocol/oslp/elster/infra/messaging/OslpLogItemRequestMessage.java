@@ -7,18 +7,29 @@
  */
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
 
+import java.nio.ByteBuffer;
+
 import org.apache.commons.lang3.StringUtils;
 
-import com.google.protobuf.Message;
+import org.opensmartgridplatform.oslp.OslpEnvelope;
 
+/**
+ * Log item of an OSLP message. The encoded and decoded message are rendered
+ * from the envelope when they are first requested, so log items that are
+ * dropped before they are sent cost no formatting.
+ */
 public class OslpLogItemRequestMessage {
 
     private static final int MAX_MESSAGE_LENGTH = 8000;
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private boolean incoming;
 
     private String deviceUid;
 
+    private final OslpEnvelope oslpEnvelope;
+
     private String encodedMessage;
 
     private String decodedMessage;
@@ -32,18 +43,15 @@ public class OslpLogItemRequestMessage {
     private int payloadMessageSerializedSize;
 
     public OslpLogItemRequestMessage(final String organisationIdentification, final String deviceUid,
-            final String deviceIdentification, final boolean incoming, final boolean valid, final Message message,
-            final int payloadMessageSerializedSize) {
+            final String deviceIdentification, final boolean incoming, final boolean valid,
+            final OslpEnvelope oslpEnvelope) {
         this.organisationIdentification = organisationIdentification;
         this.deviceUid = deviceUid;
         this.deviceIdentification = deviceIdentification;
         this.incoming = incoming;
         this.valid = valid;
-        this.payloadMessageSerializedSize = payloadMessageSerializedSize;
-
-        // Truncate the log-items to max length.
-        this.encodedMessage = StringUtils.substring(bytesToCArray(message.toByteArray()), 0, MAX_MESSAGE_LENGTH);
-        this.decodedMessage = StringUtils.substring(message.toString(), 0, MAX_MESSAGE_LENGTH);
+        this.payloadMessageSerializedSize = oslpEnvelope.getSize();
+        this.oslpEnvelope = oslpEnvelope;
     }
 
     public Boolean isIncoming() {
@@ -55,10 +63,18 @@ public class OslpLogItemRequestMessage {
     }
 
     public String getEncodedMessage() {
+        if (this.encodedMessage == null) {
+            // Truncate the log-items to max length.
+            this.encodedMessage = bytesToCArray(this.oslpEnvelope.getPayloadBytes(), MAX_MESSAGE_LENGTH);
+        }
         return this.encodedMessage;
     }
 
     public String getDecodedMessage() {
+        if (this.decodedMessage == null) {
+            this.decodedMessage = StringUtils.substring(this.oslpEnvelope.getPayloadMessage().toString(), 0,
+                    MAX_MESSAGE_LENGTH);
+        }
         return this.decodedMessage;
     }
 
@@ -70,17 +86,20 @@ public class OslpLogItemRequestMessage {
         return this.organisationIdentification;
     }
 
-    private static String bytesToCArray(final byte[] bytes) {
-        String s = "";
-        if (bytes.length > 0) {
-            s = javax.xml.bind.DatatypeConverter.printHexBinary(bytes);
-            // Split every two chars with
-            // ', ' to create a C array.
-            s = s.replaceAll("(.{2})", ", 0x$1");
-            // Remove the leading comma.
-            s = s.substring(2);
+    /**
+     * Writes the bytes as a C array, like "0x0A, 0x1B", truncated to the given
+     * maximum length. Only the bytes that fit are converted.
+     */
+    private static String bytesToCArray(final ByteBuffer bytes, final int maxLength) {
+        final StringBuilder sb = new StringBuilder(Math.min(maxLength, bytes.remaining() * 6));
+        for (int i = bytes.position(); i < bytes.limit() && sb.length() < maxLength; i++) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            final int b = bytes.get(i) & 0xFF;
+            sb.append("0x").append(HEX_DIGITS[b >>> 4]).append(HEX_DIGITS[b & 0x0F]);
         }
-        return s;
+        return StringUtils.substring(sb.toString(), 0, maxLength);
     }
 
     public Boolean isValid() {
@@ -7,51 +7,245 @@
  */
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.core.JmsTemplate;
-import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import org.opensmartgridplatform.shared.infra.jms.Constants;
 
+/**
+ * Sends OSLP log items to the logging component. Log items are put in a
+ * bounded queue and sent in batches by a background thread, so logging never
+ * adds broker latency to an exchange with a device.
+ *
+ * When the queue is full, new log items are dropped. With the SAMPLE
+ * overflow policy, only one in every sampleRate log items is queued once the
+ * queue is three quarters full, so some log items still get through under
+ * sustained overload.
+ */
+@ManagedResource(description = "Queue of OSLP log items sent to the logging component")
 public class OslpLogItemRequestMessageSender {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OslpLogItemRequestMessageSender.class);
 
+    private static final long POLL_TIMEOUT_MILLIS = 500;
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    public enum OverflowPolicy {
+        DROP,
+        SAMPLE
+    }
+
     @Autowired
     private JmsTemplate oslpLogItemRequestsJmsTemplate;
 
-    public void send(final OslpLogItemRequestMessage oslpLogItemRequestMessage) {
+    private final BlockingQueue<OslpLogItemRequestMessage> queue;
+    private final int highWaterMark;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private final boolean decodedMessageEnabled;
+
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread senderThread;
 
-        LOGGER.debug("Sending OslpLogItemRequestMessage");
+    public OslpLogItemRequestMessageSender(final int capacity, final int batchSize,
+            final OverflowPolicy overflowPolicy, final int sampleRate, final boolean decodedMessageEnabled) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.highWaterMark = capacity / 4 * 3;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.decodedMessageEnabled = decodedMessageEnabled;
+    }
 
-        this.oslpLogItemRequestsJmsTemplate.send(new MessageCreator() {
+    public void start() {
+        this.running = true;
+        this.senderThread = new CustomizableThreadFactory("oslp-log-item-sender-").newThread(new Runnable() {
             @Override
-            public Message createMessage(final Session session) throws JMSException {
-                final ObjectMessage objectMessage = session.createObjectMessage();
-                objectMessage.setJMSType(Constants.OSLP_LOG_ITEM_REQUEST);
-                objectMessage.setStringProperty(Constants.IS_INCOMING, oslpLogItemRequestMessage.isIncoming()
-                        .toString());
-                objectMessage.setStringProperty(Constants.DEVICE_UID, oslpLogItemRequestMessage.getDeviceUid());
-                objectMessage.setStringProperty(Constants.ENCODED_MESSAGE,
-                        oslpLogItemRequestMessage.getEncodedMessage());
-                objectMessage.setStringProperty(Constants.DECODED_MESSAGE,
-                        oslpLogItemRequestMessage.getDecodedMessage());
-                objectMessage.setStringProperty(Constants.DEVICE_IDENTIFICATION,
-                        oslpLogItemRequestMessage.getDeviceIdentification());
-                objectMessage.setStringProperty(Constants.ORGANISATION_IDENTIFICATION,
-                        oslpLogItemRequestMessage.getOrganisationIdentification());
-                objectMessage.setStringProperty(Constants.IS_VALID, oslpLogItemRequestMessage.isValid().toString());
-                objectMessage.setIntProperty(Constants.PAYLOAD_MESSAGE_SERIALIZED_SIZE,
-                        oslpLogItemRequestMessage.getPayloadMessageSerializedSize());
-                return objectMessage;
+            public void run() {
+                OslpLogItemRequestMessageSender.this.sendQueuedLogItems();
             }
         });
+        this.senderThread.start();
+    }
+
+    /**
+     * Stops accepting log items and sends the log items still queued.
+     */
+    public void shutdown() throws InterruptedException {
+        this.running = false;
+        if (this.senderThread != null) {
+            this.senderThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        if (!this.queue.isEmpty()) {
+            LOGGER.warn("Discarding {} OSLP log items on shutdown", this.queue.size());
+        }
+    }
+
+    /**
+     * Queues the log item without blocking. The log item is dropped when the
+     * queue is full or sampled out by the overflow policy.
+     */
+    public void send(final OslpLogItemRequestMessage oslpLogItemRequestMessage) {
+        if (!this.running) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+
+        if (this.overflowPolicy == OverflowPolicy.SAMPLE && this.queue.size() >= this.highWaterMark
+                && this.sampleCounter.incrementAndGet() % this.sampleRate != 0) {
+            this.sampledOut.incrementAndGet();
+            return;
+        }
+
+        if (this.queue.offer(oslpLogItemRequestMessage)) {
+            this.queued.incrementAndGet();
+        } else {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of log items waiting to be sent")
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
+    @ManagedAttribute(description = "Number of log items queued")
+    public long getQueuedCount() {
+        return this.queued.get();
+    }
+
+    @ManagedAttribute(description = "Number of log items sent")
+    public long getSentCount() {
+        return this.sent.get();
+    }
+
+    @ManagedAttribute(description = "Number of log items dropped because the queue was full")
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    @ManagedAttribute(description = "Number of log items skipped by the sample overflow policy")
+    public long getSampledOutCount() {
+        return this.sampledOut.get();
+    }
+
+    @ManagedAttribute(description = "Number of log items that could not be sent")
+    public long getFailedCount() {
+        return this.failed.get();
+    }
+
+    private void sendQueuedLogItems() {
+        final List<OslpLogItemRequestMessage> batch = new ArrayList<>(this.batchSize);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                final OslpLogItemRequestMessage first = this.queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, this.batchSize - 1);
+                this.sendBatch(batch);
+            } catch (final InterruptedException e) {
+                LOGGER.warn("Interrupted while sending OSLP log items", e);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendBatch(final List<OslpLogItemRequestMessage> batch) {
+        LOGGER.debug("Sending {} OslpLogItemRequestMessages", batch.size());
+
+        try {
+            this.oslpLogItemRequestsJmsTemplate.execute(new SessionCallback<Void>() {
+                @Override
+                public Void doInJms(final Session session) throws JMSException {
+                    OslpLogItemRequestMessageSender.this.sendBatch(session, batch);
+                    return null;
+                }
+            }, true);
+            this.sent.addAndGet(batch.size());
+        } catch (final JmsException e) {
+            this.failed.addAndGet(batch.size());
+            LOGGER.error("Unable to send {} OSLP log items", batch.size(), e);
+        }
+    }
+
+    private void sendBatch(final Session session, final List<OslpLogItemRequestMessage> batch)
+            throws JMSException {
+        final JmsTemplate jmsTemplate = this.oslpLogItemRequestsJmsTemplate;
+        Destination destination = jmsTemplate.getDefaultDestination();
+        if (destination == null) {
+            destination = jmsTemplate.getDestinationResolver().resolveDestinationName(session,
+                    jmsTemplate.getDefaultDestinationName(), jmsTemplate.isPubSubDomain());
+        }
+
+        final MessageProducer producer = session.createProducer(destination);
+        try {
+            for (final OslpLogItemRequestMessage oslpLogItemRequestMessage : batch) {
+                final Message message = this.createMessage(session, oslpLogItemRequestMessage);
+                if (jmsTemplate.isExplicitQosEnabled()) {
+                    producer.send(message, jmsTemplate.getDeliveryMode(), jmsTemplate.getPriority(),
+                            jmsTemplate.getTimeToLive());
+                } else {
+                    producer.send(message);
+                }
+            }
+            JmsUtils.commitIfNecessary(session);
+        } finally {
+            JmsUtils.closeMessageProducer(producer);
+        }
+    }
+
+    private Message createMessage(final Session session, final OslpLogItemRequestMessage oslpLogItemRequestMessage)
+            throws JMSException {
+        final ObjectMessage objectMessage = session.createObjectMessage();
+        objectMessage.setJMSType(Constants.OSLP_LOG_ITEM_REQUEST);
+        objectMessage.setStringProperty(Constants.IS_INCOMING, oslpLogItemRequestMessage.isIncoming().toString());
+        objectMessage.setStringProperty(Constants.DEVICE_UID, oslpLogItemRequestMessage.getDeviceUid());
+        objectMessage.setStringProperty(Constants.ENCODED_MESSAGE, oslpLogItemRequestMessage.getEncodedMessage());
+        objectMessage.setStringProperty(Constants.DECODED_MESSAGE,
+                this.decodedMessageEnabled ? oslpLogItemRequestMessage.getDecodedMessage() : "");
+        objectMessage.setStringProperty(Constants.DEVICE_IDENTIFICATION,
+                oslpLogItemRequestMessage.getDeviceIdentification());
+        objectMessage.setStringProperty(Constants.ORGANISATION_IDENTIFICATION,
+                oslpLogItemRequestMessage.getOrganisationIdentification());
+        objectMessage.setStringProperty(Constants.IS_VALID, oslpLogItemRequestMessage.isValid().toString());
+        objectMessage.setIntProperty(Constants.PAYLOAD_MESSAGE_SERIALIZED_SIZE,
+                oslpLogItemRequestMessage.getPayloadMessageSerializedSize());
+        return objectMessage;
     }
 }
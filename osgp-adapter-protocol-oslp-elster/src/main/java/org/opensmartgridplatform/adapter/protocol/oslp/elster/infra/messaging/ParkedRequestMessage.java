@@ -0,0 +1,106 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
+
+import java.io.Serializable;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+/**
+ * Copy of a device request message, with its type, correlation id, priority,
+ * properties and object, so the request can be stored and sent again later.
+ */
+public class ParkedRequestMessage implements Serializable {
+
+    private static final long serialVersionUID = 4817219466315512406L;
+
+    private final String messageType;
+    private final String correlationUid;
+    private final int messagePriority;
+    private final HashMap<String, Object> properties;
+    private final Serializable object;
+
+    private ParkedRequestMessage(final String messageType, final String correlationUid, final int messagePriority,
+            final HashMap<String, Object> properties, final Serializable object) {
+        this.messageType = messageType;
+        this.correlationUid = correlationUid;
+        this.messagePriority = messagePriority;
+        this.properties = properties;
+        this.object = object;
+    }
+
+    public static ParkedRequestMessage fromMessage(final ObjectMessage message) throws JMSException {
+        final HashMap<String, Object> properties = new HashMap<>();
+        final Enumeration<?> propertyNames = message.getPropertyNames();
+        while (propertyNames.hasMoreElements()) {
+            final String propertyName = (String) propertyNames.nextElement();
+            properties.put(propertyName, message.getObjectProperty(propertyName));
+        }
+        return new ParkedRequestMessage(message.getJMSType(), message.getJMSCorrelationID(),
+                message.getJMSPriority(), properties, message.getObject());
+    }
+
+    /**
+     * @return A new message with the type, correlation id, properties and
+     *         object of the original message. The priority has to be set on
+     *         the producer.
+     */
+    public ObjectMessage createMessage(final Session session) throws JMSException {
+        final ObjectMessage message = session.createObjectMessage(this.object);
+        message.setJMSType(this.messageType);
+        message.setJMSCorrelationID(this.correlationUid);
+        for (final Map.Entry<String, Object> property : this.properties.entrySet()) {
+            message.setObjectProperty(property.getKey(), property.getValue());
+        }
+        return message;
+    }
+
+    /**
+     * Replaces the value of the property, when the message has it.
+     */
+    public void replaceProperty(final String name, final Object value) {
+        if (this.properties.containsKey(name)) {
+            this.properties.put(name, value);
+        }
+    }
+
+    public String getMessageType() {
+        return this.messageType;
+    }
+
+    public String getCorrelationUid() {
+        return this.correlationUid;
+    }
+
+    public int getMessagePriority() {
+        return this.messagePriority;
+    }
+
+    public String getStringProperty(final String name) {
+        final Object value = this.properties.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    public int getIntProperty(final String name) {
+        final Object value = this.properties.get(name);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    public boolean getBooleanProperty(final String name) {
+        return Boolean.TRUE.equals(this.properties.get(name));
+    }
+
+    public Serializable getObject() {
+        return this.object;
+    }
+}
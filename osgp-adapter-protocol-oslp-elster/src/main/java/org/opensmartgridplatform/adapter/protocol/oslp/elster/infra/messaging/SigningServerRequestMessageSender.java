@@ -7,9 +7,11 @@
  */
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
 
+import java.io.IOException;
+
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
 import org.apache.activemq.command.ActiveMQDestination;
@@ -19,11 +21,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.support.converter.MessageConversionException;
 
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.SequenceNumberUtils;
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
 import org.opensmartgridplatform.shared.infra.jms.Constants;
 import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
 import org.opensmartgridplatform.shared.wsheaderattribute.priority.MessagePriorityEnum;
 
+/**
+ * Sends envelopes to the signing server. Requests are sent as object messages,
+ * or as bytes messages in the layout of the {@link OslpSigningMessageCodec}
+ * when enabled, which requires all signing servers to read that layout.
+ * Batches of envelopes are always sent as object messages.
+ * Either way the adapter announces it reads bytes messages, so signing
+ * servers that support them reply with a bytes message. Single envelopes are
+ * sent with their context properties, which come back with the reply.
+ */
 public class SigningServerRequestMessageSender {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SigningServerRequestMessageSender.class);
@@ -35,6 +50,12 @@ public class SigningServerRequestMessageSender {
     @Autowired
     private ActiveMQDestination replyToQueue;
 
+    private final boolean bytesMessages;
+
+    public SigningServerRequestMessageSender(final boolean bytesMessages) {
+        this.bytesMessages = bytesMessages;
+    }
+
     public void send(final RequestMessage requestMessage, final String messageType) {
         this.send(requestMessage, messageType, MessagePriorityEnum.DEFAULT.getPriority());
     }
@@ -47,20 +68,55 @@ public class SigningServerRequestMessageSender {
 
             @Override
             public Message createMessage(final Session session) throws JMSException {
-                final ObjectMessage objectMessage = session.createObjectMessage(requestMessage);
-                objectMessage.setJMSType(messageType);
-                objectMessage.setJMSPriority(messagePriority);
-                objectMessage.setJMSReplyTo(SigningServerRequestMessageSender.this.replyToQueue);
-                objectMessage.setJMSCorrelationID(requestMessage.getCorrelationUid());
-                objectMessage.setStringProperty(Constants.ORGANISATION_IDENTIFICATION,
+                final Message message = SigningServerRequestMessageSender.this.createBody(session, requestMessage);
+                message.setJMSType(messageType);
+                message.setJMSPriority(messagePriority);
+                message.setJMSReplyTo(SigningServerRequestMessageSender.this.replyToQueue);
+                message.setJMSCorrelationID(requestMessage.getCorrelationUid());
+                message.setStringProperty(Constants.ORGANISATION_IDENTIFICATION,
                         requestMessage.getOrganisationIdentification());
-                objectMessage.setStringProperty(Constants.DEVICE_IDENTIFICATION,
-                        requestMessage.getDeviceIdentification());
+                message.setStringProperty(Constants.DEVICE_IDENTIFICATION, requestMessage.getDeviceIdentification());
+                message.setIntProperty(OslpSigningMessageCodec.ACCEPTED_VERSION_PROPERTY,
+                        OslpSigningMessageCodec.VERSION);
+                if (requestMessage.getRequest() instanceof UnsignedOslpEnvelopeDto) {
+                    setContext(message, (UnsignedOslpEnvelopeDto) requestMessage.getRequest());
+                }
 
-                return objectMessage;
+                return message;
             }
 
         });
     }
 
+    /**
+     * Sets the {@link OslpSigningMessageCodec#CONTEXT_PROPERTIES} of the
+     * envelope.
+     */
+    private static void setContext(final Message message, final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto)
+            throws JMSException {
+        message.setStringProperty(OslpSigningMessageCodec.ENVELOPE_TYPE_PROPERTY, unsignedOslpEnvelopeDto.getType());
+        message.setStringProperty(OslpSigningMessageCodec.MESSAGE_TYPE_PROPERTY,
+                unsignedOslpEnvelopeDto.getMessageType());
+        message.setIntProperty(OslpSigningMessageCodec.SEQUENCE_NUMBER_PROPERTY,
+                SequenceNumberUtils.convertByteArrayToInteger(unsignedOslpEnvelopeDto.getSequenceNumber()));
+        message.setStringProperty(Constants.DOMAIN, unsignedOslpEnvelopeDto.getDomain());
+        message.setStringProperty(Constants.DOMAIN_VERSION, unsignedOslpEnvelopeDto.getDomainVersion());
+        message.setBooleanProperty(Constants.IS_SCHEDULED, unsignedOslpEnvelopeDto.isScheduled());
+    }
+
+    private Message createBody(final Session session, final RequestMessage requestMessage) throws JMSException {
+        // Batches are always sent as object messages.
+        if (!this.bytesMessages || !(requestMessage.getRequest() instanceof UnsignedOslpEnvelopeDto)) {
+            return session.createObjectMessage(requestMessage);
+        }
+
+        final BytesMessage bytesMessage = session.createBytesMessage();
+        try {
+            bytesMessage.writeBytes(
+                    OslpSigningMessageCodec.encode((UnsignedOslpEnvelopeDto) requestMessage.getRequest()));
+        } catch (final IOException e) {
+            throw new MessageConversionException("Unable to encode envelope for signing server", e);
+        }
+        return bytesMessage;
+    }
 }
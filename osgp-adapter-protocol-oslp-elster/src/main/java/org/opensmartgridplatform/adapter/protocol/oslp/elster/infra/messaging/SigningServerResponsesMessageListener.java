@@ -7,6 +7,9 @@
  */
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
 
+import java.io.IOException;
+
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -18,7 +21,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSigningService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.SequenceNumberUtils;
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeBatchDto;
 import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
+import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
 import org.opensmartgridplatform.shared.infra.jms.Constants;
 import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
 import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
@@ -36,6 +45,11 @@ public class SigningServerResponsesMessageListener implements MessageListener {
         try {
             LOGGER.info("Received message of type: {}", message.getJMSType());
 
+            if (message instanceof BytesMessage) {
+                this.onBytesMessage((BytesMessage) message);
+                return;
+            }
+
             final ObjectMessage objectMessage = (ObjectMessage) message;
             final String messageType = objectMessage.getJMSType();
             final int messagePriority = objectMessage.getJMSPriority();
@@ -45,10 +59,14 @@ public class SigningServerResponsesMessageListener implements MessageListener {
             final ResponseMessageResultType result = responseMessage == null ? null : responseMessage.getResult();
 
             // Check the result.
-            if (result.equals(ResponseMessageResultType.NOT_OK)) {
+            if (result == null || result.equals(ResponseMessageResultType.NOT_OK)) {
                 LOGGER.error("OslpEnvelope was not signed by signing-server. Unable to send request to device: {}",
                         deviceIdentification);
-                this.oslpSigningService.handleError(deviceIdentification, responseMessage);
+                if (responseMessage != null && responseMessage.getDataObject() instanceof UnsignedOslpEnvelopeDto) {
+                    this.oslpSigningService.handleError(deviceIdentification, responseMessage);
+                } else {
+                    this.handleErrorFromContext(objectMessage, objectMessage.getStringProperty(Constants.DESCRIPTION));
+                }
                 return;
             }
 
@@ -56,6 +74,12 @@ public class SigningServerResponsesMessageListener implements MessageListener {
                     "Read signed message, messageType: {}, messagePriority: {}, deviceIdentification: {}, result: {}, correlationId: {}",
                     messageType, messagePriority, deviceIdentification, result, correlationId);
 
+            if (responseMessage.getDataObject() instanceof SignedOslpEnvelopeBatchDto) {
+                this.oslpSigningService
+                        .handleSignedOslpEnvelopeBatch((SignedOslpEnvelopeBatchDto) responseMessage.getDataObject());
+                return;
+            }
+
             // Get the DTO object containing signed OslpEnvelope.
             final SignedOslpEnvelopeDto signedOslpEnvelopeDto = (SignedOslpEnvelopeDto) responseMessage.getDataObject();
 
@@ -64,4 +88,69 @@ public class SigningServerResponsesMessageListener implements MessageListener {
             LOGGER.error("Exception: {} ", ex.getMessage(), ex);
         }
     }
+
+    /**
+     * Handles a signed envelope in the layout of the
+     * {@link OslpSigningMessageCodec}. Signing servers only reply with a bytes
+     * message for envelopes that are signed, errors are sent as object
+     * messages.
+     */
+    private void onBytesMessage(final BytesMessage bytesMessage) throws JMSException {
+        final String deviceIdentification = bytesMessage.getStringProperty(Constants.DEVICE_IDENTIFICATION);
+        final byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(body);
+
+        final SignedOslpEnvelopeDto signedOslpEnvelopeDto;
+        try {
+            signedOslpEnvelopeDto = OslpSigningMessageCodec.decodeSigned(body);
+        } catch (final IOException e) {
+            LOGGER.error("Unable to decode signed envelope for device: {} with correlationId: {}",
+                    deviceIdentification, bytesMessage.getJMSCorrelationID(), e);
+            this.handleErrorFromContext(bytesMessage, "Unable to decode signed envelope");
+            return;
+        }
+
+        LOGGER.info("Read signed bytes message, messageType: {}, messagePriority: {}, deviceIdentification: {}, "
+                + "correlationId: {}", bytesMessage.getJMSType(), bytesMessage.getJMSPriority(), deviceIdentification,
+                bytesMessage.getJMSCorrelationID());
+
+        this.oslpSigningService.handleSignedOslpEnvelope(signedOslpEnvelopeDto, deviceIdentification);
+    }
+
+    /**
+     * Reports the failure of the envelope described by the
+     * {@link OslpSigningMessageCodec#CONTEXT_PROPERTIES} of the reply, for a
+     * reply that can not be decoded or an error reply without the envelope.
+     */
+    private void handleErrorFromContext(final Message message, final String error) throws JMSException {
+        final String correlationUid = message.getJMSCorrelationID();
+        final String organisationIdentification = message.getStringProperty(Constants.ORGANISATION_IDENTIFICATION);
+        final String deviceIdentification = message.getStringProperty(Constants.DEVICE_IDENTIFICATION);
+        if (!message.propertyExists(OslpSigningMessageCodec.SEQUENCE_NUMBER_PROPERTY)) {
+            LOGGER.error("Unable to report failure for device: {} with correlationId: {}, the reply has no context",
+                    deviceIdentification, correlationUid);
+            return;
+        }
+
+        final byte[] sequenceNumber = SequenceNumberUtils
+                .convertIntegerToByteArray(message.getIntProperty(OslpSigningMessageCodec.SEQUENCE_NUMBER_PROPERTY));
+        final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto;
+        if (UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE
+                .equals(message.getStringProperty(OslpSigningMessageCodec.ENVELOPE_TYPE_PROPERTY))) {
+            unsignedOslpEnvelopeDto = new UnsignedOslpEnvelopeDto(sequenceNumber, null, null, correlationUid);
+        } else {
+            unsignedOslpEnvelopeDto = new UnsignedOslpEnvelopeDto(sequenceNumber, null, null, null,
+                    message.getStringProperty(Constants.DOMAIN), message.getStringProperty(Constants.DOMAIN_VERSION),
+                    message.getStringProperty(OslpSigningMessageCodec.MESSAGE_TYPE_PROPERTY),
+                    message.getJMSPriority(), 0, message.getBooleanProperty(Constants.IS_SCHEDULED),
+                    organisationIdentification, correlationUid, null);
+        }
+
+        final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                .withCorrelationUid(correlationUid).withOrganisationIdentification(organisationIdentification)
+                .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.NOT_OK)
+                .withOsgpException(new OsgpException(ComponentType.PROTOCOL_OSLP, error, null))
+                .withDataObject(unsignedOslpEnvelopeDto).withMessagePriority(message.getJMSPriority()).build();
+        this.oslpSigningService.handleError(deviceIdentification, responseMessage);
+    }
 }
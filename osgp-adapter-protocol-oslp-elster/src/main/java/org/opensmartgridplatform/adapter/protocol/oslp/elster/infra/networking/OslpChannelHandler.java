@@ -8,8 +8,6 @@
 package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Resource;
 
@@ -22,13 +20,14 @@ import org.jboss.netty.channel.SimpleChannelHandler;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceSettingsService;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
-import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.repositories.OslpDeviceRepository;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.OslpLogItemRequestMessage;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.OslpLogItemRequestMessageSender;
 import org.opensmartgridplatform.core.db.api.application.services.DeviceDataService;
 import org.opensmartgridplatform.oslp.Oslp;
 import org.opensmartgridplatform.oslp.OslpEnvelope;
+import org.opensmartgridplatform.shared.exceptionhandling.NoDeviceResponseException;
 
 public abstract class OslpChannelHandler extends SimpleChannelHandler {
 
@@ -44,7 +43,7 @@ public abstract class OslpChannelHandler extends SimpleChannelHandler {
     protected int connectionTimeout;
 
     @Autowired
-    private OslpDeviceRepository oslpDeviceRepository;
+    private OslpDeviceSettingsService oslpDeviceSettingsService;
 
     @Autowired
     private OslpLogItemRequestMessageSender oslpLogItemRequestMessageSender;
@@ -52,7 +51,8 @@ public abstract class OslpChannelHandler extends SimpleChannelHandler {
     @Autowired
     private DeviceDataService deviceDataService;
 
-    protected final ConcurrentMap<Integer, OslpCallbackHandler> callbackHandlers = new ConcurrentHashMap<>();
+    @Resource(name = "oslpCallbackHandlerRegistry")
+    protected OslpChannelRegistry<OslpCallbackHandler> callbackHandlers;
 
     protected OslpChannelHandler(final Logger logger) {
         this.logger = logger;
@@ -81,6 +81,12 @@ public abstract class OslpChannelHandler extends SimpleChannelHandler {
     @Override
     public void channelClosed(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
         this.logger.info("{} Channel closed", e.getChannel().getId());
+        // A request is still pending when the channel closes without ever
+        // being connected.
+        final OslpCallbackHandler callbackHandler = this.callbackHandlers.remove(e.getChannel().getId());
+        if (callbackHandler != null) {
+            callbackHandler.getDeviceResponseHandler().handleException(new NoDeviceResponseException());
+        }
         super.channelClosed(ctx, e);
     }
 
@@ -97,7 +103,12 @@ public abstract class OslpChannelHandler extends SimpleChannelHandler {
             this.logger.info("{} Connection was (as expected) reset by the device.", channelId);
         } else {
             this.logger.warn("{} Unexpected exception from downstream. {}", channelId, e.getCause());
-            this.callbackHandlers.get(channelId).getDeviceResponseHandler().handleException(e.getCause());
+            // Removed, so closing the channel does not report the request
+            // again.
+            final OslpCallbackHandler callbackHandler = this.callbackHandlers.remove(channelId);
+            if (callbackHandler != null) {
+                callbackHandler.getDeviceResponseHandler().handleException(e.getCause());
+            }
         }
         e.getChannel().close();
     }
@@ -112,14 +123,14 @@ public abstract class OslpChannelHandler extends SimpleChannelHandler {
 
         if (StringUtils.isEmpty(deviceIdentification)) {
             // Getting the deviceIdentification from the oslpDevice instance
-            final OslpDevice oslpDevice = this.oslpDeviceRepository.findByDeviceUid(deviceUid);
+            final OslpDevice oslpDevice = this.oslpDeviceSettingsService.getDeviceByUid(deviceUid);
             if (oslpDevice != null) {
                 deviceIdentification = oslpDevice.getDeviceIdentification();
             }
         }
 
         final OslpLogItemRequestMessage oslpLogItemRequestMessage = new OslpLogItemRequestMessage(null, deviceUid,
-                deviceIdentification, incoming, isValid, message.getPayloadMessage(), message.getSize());
+                deviceIdentification, incoming, isValid, message);
 
         this.oslpLogItemRequestMessageSender.send(oslpLogItemRequestMessage);
     }
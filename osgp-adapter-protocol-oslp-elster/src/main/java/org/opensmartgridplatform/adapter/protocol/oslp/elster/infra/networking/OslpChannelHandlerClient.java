@@ -9,6 +9,9 @@ package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.PostConstruct;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
@@ -18,9 +21,12 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.DeviceRegistrationService;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceResponseMessageSender;
@@ -37,6 +43,19 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
     @Autowired
     private DeviceRegistrationService deviceRegistrationService;
 
+    @Autowired
+    private OslpConnectAdmission connectAdmission;
+
+    @Autowired
+    private OslpResponseDeadlines responseDeadlines;
+
+    @Autowired
+    private OslpDeviceReachability deviceReachability;
+
+    @Autowired
+    @Qualifier("oslpCallbackExecutor")
+    private ExecutorService callbackExecutor;
+
     public OslpChannelHandlerClient() {
         super(LOGGER);
     }
@@ -53,13 +72,36 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
         this.bootstrap = bootstrap;
     }
 
+    /**
+     * Reports a request that is still pending after the time to live of the
+     * registry as not answered by the device. Evictions run on the timer
+     * thread, so the report is made by the callback executor.
+     */
+    @PostConstruct
+    public void registerEvictionListener() {
+        this.callbackHandlers.setEvictionListener(new OslpChannelRegistry.EvictionListener<OslpCallbackHandler>() {
+            @Override
+            public void evicted(final Channel channel, final OslpCallbackHandler callbackHandler) {
+                OslpChannelHandlerClient.this.reportNoDeviceResponse(callbackHandler);
+            }
+        });
+    }
+
+    private void reportNoDeviceResponse(final OslpCallbackHandler callbackHandler) {
+        this.callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callbackHandler.getDeviceResponseHandler().handleException(new NoDeviceResponseException());
+            }
+        });
+    }
+
     @Override
     public void channelDisconnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
         final int channelId = e.getChannel().getId();
-        if (this.callbackHandlers.containsKey(channelId)) {
-            this.callbackHandlers.get(channelId).getDeviceResponseHandler()
-                    .handleException(new NoDeviceResponseException());
-            this.callbackHandlers.remove(channelId);
+        final OslpCallbackHandler callbackHandler = this.callbackHandlers.remove(channelId);
+        if (callbackHandler != null) {
+            callbackHandler.getDeviceResponseHandler().handleException(new NoDeviceResponseException());
         }
         super.channelDisconnected(ctx, e);
     }
@@ -73,7 +115,7 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
     public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
 
         final OslpEnvelope message = (OslpEnvelope) e.getMessage();
-        final Integer channelId = e.getChannel().getId();
+        final int channelId = e.getChannel().getId();
 
         if (message.isValid()) {
             if (this.isOslpResponse(message)) {
@@ -84,9 +126,12 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
                         .convertByteArrayToInteger(message.getSequenceNumber());
                 this.deviceRegistrationService.checkSequenceNumber(message.getDeviceId(), sequenceNumber);
 
-                final OslpCallbackHandler callbackHandler = this.callbackHandlers.get(channelId);
-                this.callbackHandlers.remove(channelId);
+                final OslpCallbackHandler callbackHandler = this.callbackHandlers.remove(channelId);
                 e.getChannel().close();
+                if (callbackHandler == null) {
+                    LOGGER.warn("{} Received OSLP Response for a request that is no longer pending", channelId);
+                    return;
+                }
                 callbackHandler.getDeviceResponseHandler().handleResponse(message);
 
             } else {
@@ -99,13 +144,45 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
     }
 
     public void send(final InetSocketAddress address, final OslpEnvelope request,
-            final OslpResponseHandler responseHandler, final String deviceIdentification) throws IOException {
+            final OslpResponseHandler responseHandler, final String deviceIdentification, final int messagePriority)
+            throws IOException {
+        this.connectAdmission.admit(deviceIdentification, messagePriority, new OslpConnectAdmission.Connector() {
+
+            @Override
+            public void connect() {
+                OslpChannelHandlerClient.this.connect(address, request, responseHandler, deviceIdentification);
+            }
+
+            @Override
+            public void notAdmitted(final IOException e) {
+                responseHandler.handleException(e);
+            }
+        });
+    }
+
+    private void connect(final InetSocketAddress address, final OslpEnvelope request,
+            final OslpResponseHandler responseHandler, final String deviceIdentification) {
         LOGGER.info("Sending OSLP request: {}", request.getPayloadMessage());
 
         // Open connection and send message.
         final ChannelFuture channelFuture = this.bootstrap.connect(address);
 
-        this.callbackHandlers.put(channelFuture.getChannel().getId(), new OslpCallbackHandler(responseHandler));
+        // The connection counts against the admission budget until the
+        // channel is closed, also when the connect fails. The close runs on
+        // an I/O thread, and releasing starts waiting connects.
+        channelFuture.getChannel().getCloseFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(final ChannelFuture future) {
+                OslpChannelHandlerClient.this.callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        OslpChannelHandlerClient.this.connectAdmission.release(deviceIdentification);
+                    }
+                });
+            }
+        });
+
+        this.callbackHandlers.register(channelFuture.getChannel(), new OslpCallbackHandler(responseHandler));
 
         channelFuture.addListener(new ChannelFutureListener() {
 
@@ -116,11 +193,13 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
             public void operationComplete(final ChannelFuture future) throws Exception {
 
                 if (future.isSuccess()) {
+                    OslpChannelHandlerClient.this.deviceReachability.connectSucceeded(deviceIdentification);
                     OslpChannelHandlerClient.this.write(future, address, request);
                     // What is this call below good for?
                     future.getChannel().getId();
                 } else {
                     LOGGER.info("The connection to the device {} is not successful", deviceIdentification);
+                    OslpChannelHandlerClient.this.deviceReachability.connectFailed(deviceIdentification);
                     throw new IOException("ChannelFuture - Unable to connect");
                 }
             }
@@ -148,5 +227,35 @@ public class OslpChannelHandlerClient extends OslpChannelHandler {
 
             throw e;
         }
+
+        // Give up on the response when the deadline passes. Closing the
+        // channel, also when the response arrives, cancels the deadline.
+        final Timeout responseDeadline = this.responseDeadlines.schedule(request.getPayloadMessage(),
+                new TimerTask() {
+                    @Override
+                    public void run(final Timeout timeout) {
+                        OslpChannelHandlerClient.this.responseDeadlinePassed(channel);
+                    }
+                });
+        channel.getCloseFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(final ChannelFuture future) {
+                responseDeadline.cancel();
+            }
+        });
+    }
+
+    /**
+     * Runs on the timer thread, so only the channel is closed here and the
+     * failure is reported by the callback executor.
+     */
+    private void responseDeadlinePassed(final Channel channel) {
+        final OslpCallbackHandler callbackHandler = this.callbackHandlers.remove(channel.getId());
+        if (callbackHandler == null) {
+            return;
+        }
+        LOGGER.warn("{} No response before the deadline, closing channel", channel.getId());
+        channel.close();
+        this.reportNoDeviceResponse(callbackHandler);
     }
 }
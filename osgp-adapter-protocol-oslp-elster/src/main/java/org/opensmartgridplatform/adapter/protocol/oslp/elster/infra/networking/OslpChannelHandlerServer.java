@@ -10,12 +10,13 @@ package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Resource;
 
 import org.apache.commons.codec.binary.Base64;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.joda.time.Instant;
 import org.joda.time.format.DateTimeFormat;
@@ -28,6 +29,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.DeviceManagementService;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.DeviceRegistrationService;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceSettingsService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSequenceNumberStore;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSigningService;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.exceptions.ProtocolAdapterException;
@@ -67,6 +69,9 @@ public class OslpChannelHandlerServer extends OslpChannelHandler {
     @Autowired
     private OslpDeviceSettingsService oslpDeviceSettingsService;
 
+    @Autowired
+    private OslpSequenceNumberStore oslpSequenceNumberStore;
+
     @Autowired
     private DeviceDataService deviceDataService;
 
@@ -82,18 +87,28 @@ public class OslpChannelHandlerServer extends OslpChannelHandler {
     @Value("#{${test.device.ips}}")
     private Map<String, String> testDeviceIps;
 
-    private final ConcurrentMap<Integer, Channel> channelMap = new ConcurrentHashMap<>();
+    /**
+     * Channels of devices waiting for a response that is being signed.
+     */
+    @Resource
+    private OslpChannelRegistry<Channel> oslpServerChannelRegistry;
 
     public OslpChannelHandlerServer() {
         super(LOGGER);
     }
 
-    private Channel findChannel(final Integer channelId) {
-        return this.channelMap.get(channelId);
+    private Channel takeChannel(final int channelId) {
+        return this.oslpServerChannelRegistry.remove(channelId);
+    }
+
+    private void cacheChannel(final Channel channel) {
+        this.oslpServerChannelRegistry.register(channel, channel);
     }
 
-    private void cacheChannel(final Integer channelId, final Channel channel) {
-        this.channelMap.put(channelId, channel);
+    @Override
+    public void channelClosed(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+        this.oslpServerChannelRegistry.remove(e.getChannel().getId());
+        super.channelClosed(ctx, e);
     }
 
     public void setDeviceManagementService(final DeviceManagementService deviceManagementService) {
@@ -147,7 +162,7 @@ public class OslpChannelHandlerServer extends OslpChannelHandler {
                 }
 
                 // Cache the channel so we can write the response to it later.
-                this.cacheChannel(channelId, e.getChannel());
+                this.cacheChannel(e.getChannel());
 
                 // Send message to signing server to get our response signed.
                 this.oslpSigningService.buildAndSignEnvelope(message.getDeviceId(), message.getSequenceNumber(),
@@ -161,7 +176,8 @@ public class OslpChannelHandlerServer extends OslpChannelHandler {
     /**
      * Called when a signed OSLP envelope arrives from signing server. The
      * envelope will be sent to the device which is waiting for a response. The
-     * channel for the waiting device should be present in the channelMap.
+     * channel for the waiting device should be present in the channel
+     * registry.
      *
      * @param signedOslpEnvelopeDto
      *            DTO containing signed OslpEnvelope.
@@ -169,9 +185,8 @@ public class OslpChannelHandlerServer extends OslpChannelHandler {
     public void processSignedOslpEnvelope(final SignedOslpEnvelopeDto signedOslpEnvelopeDto) {
 
         // Try to find the channel.
-        final Integer channelId = Integer
-                .parseInt(signedOslpEnvelopeDto.getUnsignedOslpEnvelopeDto().getCorrelationUid());
-        final Channel channel = this.findChannel(channelId);
+        final int channelId = Integer.parseInt(signedOslpEnvelopeDto.getUnsignedOslpEnvelopeDto().getCorrelationUid());
+        final Channel channel = this.takeChannel(channelId);
         if (channel == null) {
             LOGGER.error("Unable to find channel for channelId: {}. Can't send response message to device.", channelId);
             return;
@@ -214,7 +229,8 @@ public class OslpChannelHandlerServer extends OslpChannelHandler {
         // Save the security related values in the OSLP database.
         oslpDevice.updateRegistrationData(deviceUid, registerRequest.getDeviceType().toString(),
                 registerRequest.getRandomDevice());
-        oslpDevice.setSequenceNumber(SequenceNumberUtils.convertByteArrayToInteger(sequenceNumber));
+        this.oslpSequenceNumberStore.updateSequenceNumber(oslpDevice,
+                SequenceNumberUtils.convertByteArrayToInteger(sequenceNumber));
         oslpDevice = this.oslpDeviceSettingsService.updateDevice(oslpDevice);
 
         // Return current date and time in UTC so the device can sync the clock.
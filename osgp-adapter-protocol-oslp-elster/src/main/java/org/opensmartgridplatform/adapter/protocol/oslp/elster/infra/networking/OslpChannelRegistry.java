@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Registry of values belonging to open channels, like the channel of a device
+ * waiting for a signed response or the handler of a pending request. Entries
+ * are removed by the channel handlers when the exchange finishes or the
+ * channel is closed. Entries that are still present when their time to live
+ * expires are evicted and their channel is closed, so an exchange that never
+ * finishes can not keep a channel open forever.
+ *
+ * @param <T>
+ *            The type of the registered values.
+ */
+@ManagedResource(description = "Registry of values belonging to open OSLP channels")
+public class OslpChannelRegistry<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpChannelRegistry.class);
+
+    /**
+     * Called when an entry is evicted, before its channel is closed.
+     */
+    public interface EvictionListener<T> {
+        void evicted(Channel channel, T value);
+    }
+
+    private final ConcurrentMap<Integer, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private final Timer timer;
+    private final long timeToLiveMillis;
+
+    private volatile EvictionListener<T> evictionListener;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public OslpChannelRegistry(final Timer timer, final long timeToLiveMillis) {
+        this.timer = timer;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    public void setEvictionListener(final EvictionListener<T> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Registers the value for the channel, replacing any value registered
+     * before.
+     */
+    public void register(final Channel channel, final T value) {
+        final Entry<T> entry = new Entry<>(channel, value);
+        entry.timeout = this.timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(final Timeout timeout) {
+                OslpChannelRegistry.this.evict(entry);
+            }
+        }, this.timeToLiveMillis, TimeUnit.MILLISECONDS);
+
+        final Entry<T> previous = this.entries.put(channel.getId(), entry);
+        if (previous != null) {
+            previous.timeout.cancel();
+        }
+    }
+
+    /**
+     * @return The value registered for the channel, or null.
+     */
+    public T get(final int channelId) {
+        final Entry<T> entry = this.entries.get(channelId);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Removes the entry of the channel.
+     *
+     * @return The value that was registered for the channel, or null.
+     */
+    public T remove(final int channelId) {
+        final Entry<T> entry = this.entries.remove(channelId);
+        if (entry == null) {
+            return null;
+        }
+        entry.timeout.cancel();
+        return entry.value;
+    }
+
+    @ManagedAttribute(description = "Number of registered channels")
+    public int getSize() {
+        return this.entries.size();
+    }
+
+    @ManagedAttribute(description = "Number of entries evicted after their time to live")
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    @ManagedAttribute(description = "Time to live of an entry in milliseconds")
+    public long getTimeToLiveMillis() {
+        return this.timeToLiveMillis;
+    }
+
+    private void evict(final Entry<T> entry) {
+        final Channel channel = entry.channel;
+        if (!this.entries.remove(channel.getId(), entry)) {
+            return;
+        }
+        this.evictions.incrementAndGet();
+        LOGGER.warn("{} Evicting channel after {} ms", channel.getId(), this.timeToLiveMillis);
+
+        final EvictionListener<T> listener = this.evictionListener;
+        if (listener != null) {
+            try {
+                listener.evicted(channel, entry.value);
+            } catch (final RuntimeException e) {
+                LOGGER.error("{} Exception while evicting channel", channel.getId(), e);
+            }
+        }
+        channel.close();
+    }
+
+    private static class Entry<T> {
+        private final Channel channel;
+        private final T value;
+        private volatile Timeout timeout;
+
+        Entry(final Channel channel, final T value) {
+            this.channel = channel;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Admission control of outgoing connections to devices. A connection counts
+ * from the connect attempt until the channel is closed, so the budgets limit
+ * the number of sockets held open for devices, including devices that do not
+ * answer within the connect timeout.
+ *
+ * A connect is admitted when both the global budget and the budget of the
+ * device allow it. Otherwise it waits in a queue ordered by message priority,
+ * highest first, and by arrival within the same priority. Released budget is
+ * handed to the first waiting connect that fits. A connect that waited longer
+ * than the maximum queue wait is not attempted anymore.
+ */
+@ManagedResource(description = "Admission control of outgoing OSLP connections")
+public class OslpConnectAdmission {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpConnectAdmission.class);
+
+    /**
+     * Connect to a device, run when the connect is admitted.
+     */
+    public interface Connector {
+
+        void connect();
+
+        /**
+         * Called instead of connect when the connect waited too long.
+         */
+        void notAdmitted(IOException e);
+    }
+
+    private static final Comparator<PendingConnect> PRIORITY_ORDER = new Comparator<PendingConnect>() {
+        @Override
+        public int compare(final PendingConnect a, final PendingConnect b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            return Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private final int maxConnects;
+    private final int maxConnectsPerDevice;
+    private final int maxPendingConnects;
+    private final long maxQueueWaitMillis;
+
+    private final TreeSet<PendingConnect> pending = new TreeSet<>(PRIORITY_ORDER);
+    private final Map<String, Integer> connectsPerDevice = new HashMap<>();
+    private int connects;
+    private long sequence;
+
+    private final AtomicLong admittedFromQueue = new AtomicLong();
+    private final AtomicLong totalQueueWaitMillis = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public OslpConnectAdmission(final int maxConnects, final int maxConnectsPerDevice, final int maxPendingConnects,
+            final long maxQueueWaitMillis) {
+        this.maxConnects = maxConnects;
+        this.maxConnectsPerDevice = maxConnectsPerDevice;
+        this.maxPendingConnects = maxPendingConnects;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+    }
+
+    /**
+     * Connects on the calling thread when the budgets allow it, or queues the
+     * connect until they do. Every admitted connect must be followed by a call
+     * to {@link #release(String)} when its channel is closed.
+     *
+     * @throws IOException
+     *             When too many connects are waiting already.
+     */
+    public void admit(final String deviceIdentification, final int priority, final Connector connector)
+            throws IOException {
+        synchronized (this) {
+            if (!this.fits(deviceIdentification)) {
+                if (this.pending.size() >= this.maxPendingConnects) {
+                    this.rejected.incrementAndGet();
+                    throw new IOException("Too many connections waiting, not connecting to " + deviceIdentification);
+                }
+                this.pending.add(new PendingConnect(deviceIdentification, priority, this.sequence++, connector));
+                return;
+            }
+            this.acquire(deviceIdentification);
+        }
+
+        try {
+            connector.connect();
+        } catch (final RuntimeException e) {
+            this.release(deviceIdentification);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the budget of a closed connection and starts the waiting
+     * connects that fit in the released budget, on the calling thread.
+     * Starting a connect can report to the device response handler, so this
+     * must not be called from a Netty I/O thread.
+     */
+    public void release(final String deviceIdentification) {
+        synchronized (this) {
+            this.connects--;
+            final Integer deviceConnects = this.connectsPerDevice.get(deviceIdentification);
+            if (deviceConnects == null || deviceConnects <= 1) {
+                this.connectsPerDevice.remove(deviceIdentification);
+            } else {
+                this.connectsPerDevice.put(deviceIdentification, deviceConnects - 1);
+            }
+        }
+
+        PendingConnect next;
+        while ((next = this.nextAdmitted()) != null) {
+            this.start(next);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of connections attempted or open")
+    public synchronized int getConnects() {
+        return this.connects;
+    }
+
+    @ManagedAttribute(description = "Maximum number of connections attempted or open")
+    public int getMaxConnects() {
+        return this.maxConnects;
+    }
+
+    @ManagedAttribute(description = "Number of connects waiting for budget")
+    public synchronized int getPendingConnects() {
+        return this.pending.size();
+    }
+
+    @ManagedAttribute(description = "Age in milliseconds of the oldest connect waiting for budget")
+    public synchronized long getOldestPendingConnectAgeMillis() {
+        long oldest = 0;
+        final long now = System.currentTimeMillis();
+        for (final PendingConnect pendingConnect : this.pending) {
+            oldest = Math.max(oldest, now - pendingConnect.queuedAt);
+        }
+        return oldest;
+    }
+
+    @ManagedAttribute(description = "Average time in milliseconds a queued connect waited for budget")
+    public long getAverageQueueWaitMillis() {
+        final long admitted = this.admittedFromQueue.get();
+        return admitted == 0 ? 0 : this.totalQueueWaitMillis.get() / admitted;
+    }
+
+    @ManagedAttribute(description = "Number of connects rejected because too many connects were waiting")
+    public long getRejectedConnects() {
+        return this.rejected.get();
+    }
+
+    @ManagedAttribute(description = "Number of connects dropped after waiting longer than the maximum queue wait")
+    public long getExpiredConnects() {
+        return this.expired.get();
+    }
+
+    private boolean fits(final String deviceIdentification) {
+        final Integer deviceConnects = this.connectsPerDevice.get(deviceIdentification);
+        return this.connects < this.maxConnects
+                && (deviceConnects == null || deviceConnects < this.maxConnectsPerDevice);
+    }
+
+    private void acquire(final String deviceIdentification) {
+        this.connects++;
+        final Integer deviceConnects = this.connectsPerDevice.get(deviceIdentification);
+        this.connectsPerDevice.put(deviceIdentification, deviceConnects == null ? 1 : deviceConnects + 1);
+    }
+
+    /**
+     * Takes the first waiting connect that fits in the budget, acquiring its
+     * budget. Expired connects are taken without budget. Whether a connect
+     * expired is decided here only, so a connect that acquired budget is
+     * always started.
+     */
+    private synchronized PendingConnect nextAdmitted() {
+        if (this.connects >= this.maxConnects) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        final Iterator<PendingConnect> iterator = this.pending.iterator();
+        while (iterator.hasNext()) {
+            final PendingConnect pendingConnect = iterator.next();
+            pendingConnect.waitMillis = now - pendingConnect.queuedAt;
+            if (pendingConnect.waitMillis > this.maxQueueWaitMillis) {
+                iterator.remove();
+                pendingConnect.expired = true;
+                return pendingConnect;
+            }
+            if (this.fits(pendingConnect.deviceIdentification)) {
+                iterator.remove();
+                this.acquire(pendingConnect.deviceIdentification);
+                return pendingConnect;
+            }
+        }
+        return null;
+    }
+
+    private void start(final PendingConnect pendingConnect) {
+        final long waitMillis = pendingConnect.waitMillis;
+        if (pendingConnect.expired) {
+            this.expired.incrementAndGet();
+            LOGGER.warn("Not connecting to device: {} after waiting {} ms", pendingConnect.deviceIdentification,
+                    waitMillis);
+            pendingConnect.connector.notAdmitted(
+                    new IOException("Connection to " + pendingConnect.deviceIdentification + " not admitted in time"));
+            return;
+        }
+
+        this.admittedFromQueue.incrementAndGet();
+        this.totalQueueWaitMillis.addAndGet(waitMillis);
+        try {
+            pendingConnect.connector.connect();
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unable to connect to device: {}", pendingConnect.deviceIdentification, e);
+            this.release(pendingConnect.deviceIdentification);
+            pendingConnect.connector.notAdmitted(new IOException(e.getMessage(), e));
+        }
+    }
+
+    private static class PendingConnect {
+        private final String deviceIdentification;
+        private final int priority;
+        private final long sequence;
+        private final Connector connector;
+        private final long queuedAt = System.currentTimeMillis();
+        private long waitMillis;
+        private boolean expired;
+
+        PendingConnect(final String deviceIdentification, final int priority, final long sequence,
+                final Connector connector) {
+            this.deviceIdentification = deviceIdentification;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.connector = connector;
+        }
+    }
+}
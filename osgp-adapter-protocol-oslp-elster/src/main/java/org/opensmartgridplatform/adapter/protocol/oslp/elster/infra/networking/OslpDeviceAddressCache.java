@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of the socket addresses of devices, keyed by device
+ * identification. Resolving an address may block on a name lookup, so it is
+ * only done when the device has no cached address, or when the IP address
+ * of a request differs from the one the cached address was resolved from.
+ *
+ * Loopback addresses get the local client port, other addresses the client
+ * port. Entries expire after a while, so host names are resolved again.
+ */
+@ManagedResource(description = "Cache of resolved device addresses")
+public class OslpDeviceAddressCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpDeviceAddressCache.class);
+
+    private final int oslpPortClient;
+    private final int oslpPortClientLocal;
+
+    private final Cache<String, CachedAddress> addresses;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong resolutions = new AtomicLong();
+    private final AtomicLong totalResolutionNanos = new AtomicLong();
+    private final AtomicLong maxResolutionNanos = new AtomicLong();
+
+    public OslpDeviceAddressCache(final int oslpPortClient, final int oslpPortClientLocal, final int maximumSize,
+            final int expireAfterWriteMinutes) {
+        this.oslpPortClient = oslpPortClient;
+        this.oslpPortClientLocal = oslpPortClientLocal;
+        this.addresses = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * @return The socket address of the device, resolved from the given IP
+     *         address or host name.
+     */
+    public InetSocketAddress getAddress(final String deviceIdentification, final String ipAddress)
+            throws UnknownHostException {
+        final CachedAddress cached = this.addresses.getIfPresent(deviceIdentification);
+        if (cached != null && cached.ipAddress.equals(ipAddress)) {
+            this.hits.incrementAndGet();
+            return cached.address;
+        }
+
+        final InetSocketAddress address = this.createAddress(this.resolve(ipAddress));
+        this.addresses.put(deviceIdentification, new CachedAddress(ipAddress, address));
+        return address;
+    }
+
+    /**
+     * Removes the cached address of the device, for instance after the device
+     * registered with a new IP address.
+     */
+    public void invalidate(final String deviceIdentification) {
+        LOGGER.debug("Invalidating cached address of device: {}", deviceIdentification);
+        this.addresses.invalidate(deviceIdentification);
+    }
+
+    @ManagedOperation(description = "Removes all cached addresses")
+    public void invalidateAll() {
+        this.addresses.invalidateAll();
+    }
+
+    @ManagedAttribute(description = "Number of addresses taken from the cache")
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of addresses that had to be resolved")
+    public long getResolutionCount() {
+        return this.resolutions.get();
+    }
+
+    @ManagedAttribute(description = "Average time in microseconds to resolve an address")
+    public long getAverageResolutionMicros() {
+        final long resolutionCount = this.resolutions.get();
+        return resolutionCount == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMicros(this.totalResolutionNanos.get() / resolutionCount);
+    }
+
+    @ManagedAttribute(description = "Longest time in microseconds to resolve an address")
+    public long getMaxResolutionMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.maxResolutionNanos.get());
+    }
+
+    @ManagedAttribute(description = "Number of cached addresses")
+    public long getSize() {
+        return this.addresses.size();
+    }
+
+    private InetAddress resolve(final String ipAddress) throws UnknownHostException {
+        final long start = System.nanoTime();
+        try {
+            return InetAddress.getByName(ipAddress);
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            this.resolutions.incrementAndGet();
+            this.totalResolutionNanos.addAndGet(nanos);
+            long max = this.maxResolutionNanos.get();
+            while (nanos > max && !this.maxResolutionNanos.compareAndSet(max, nanos)) {
+                max = this.maxResolutionNanos.get();
+            }
+        }
+    }
+
+    /**
+     * Return the correct port, depending on loopback or external.
+     */
+    private InetSocketAddress createAddress(final InetAddress address) {
+        if (address.isLoopbackAddress()) {
+            return new InetSocketAddress(address, this.oslpPortClientLocal);
+        }
+
+        return new InetSocketAddress(address, this.oslpPortClient);
+    }
+
+    private static class CachedAddress {
+        private final String ipAddress;
+        private final InetSocketAddress address;
+
+        CachedAddress(final String ipAddress, final InetSocketAddress address) {
+            this.ipAddress = ipAddress;
+            this.address = address;
+        }
+    }
+}
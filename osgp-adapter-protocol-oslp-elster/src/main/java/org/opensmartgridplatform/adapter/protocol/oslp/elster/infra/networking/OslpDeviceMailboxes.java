@@ -0,0 +1,376 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Mailboxes of device requests, one per device identification. A device only
+ * has one request or OSLP exchange in progress at a time, so two requests can
+ * never be signed with the same sequence number. Requests for different
+ * devices are handled in parallel.
+ *
+ * A mailbox is busy while a request is being processed and while an exchange
+ * started for the device, from signing the request until the device
+ * responds, has not finished. Follow up exchanges, like the next page of a
+ * schedule, are started before the previous exchange finishes and keep the
+ * mailbox busy. Requests submitted to a busy mailbox are queued, up to a
+ * maximum per device. Queued requests are run on a shared pool, one request
+ * per mailbox at a time, so a device with many requests can not starve the
+ * other devices. An exchange that does not finish within the exchange
+ * timeout, for instance because the signing server never responds, is
+ * abandoned so the mailbox can continue.
+ *
+ * Requests that are still queued when the mailboxes are shut down are not
+ * processed; they are dropped and told so, so they can be answered.
+ */
+@ManagedResource(description = "Mailboxes serializing the requests per OSLP device")
+public class OslpDeviceMailboxes {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpDeviceMailboxes.class);
+
+    /**
+     * Request of a device, processed when the mailbox of the device is idle.
+     */
+    public interface Request extends Runnable {
+
+        /**
+         * Called instead of run when the request is dropped, because the
+         * mailboxes are shut down before it could be processed.
+         */
+        void dropped();
+    }
+
+    private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final ExecutorService executorService;
+    private final Timer timer;
+    private final int maxQueuedRequests;
+    private final long exchangeTimeoutMillis;
+
+    private final AtomicLong queuedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong droppedRequests = new AtomicLong();
+    private final AtomicLong timedOutExchanges = new AtomicLong();
+    private final AtomicLong maxQueueWaitMillis = new AtomicLong();
+
+    public OslpDeviceMailboxes(final Timer timer, final int poolSize, final int maxQueuedRequests,
+            final long exchangeTimeoutMillis) {
+        this.timer = timer;
+        this.executorService = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("oslp-mailbox-"));
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.exchangeTimeoutMillis = exchangeTimeoutMillis;
+    }
+
+    /**
+     * Stops processing queued requests and drops the requests that are still
+     * queued. Requests queued after the shutdown are dropped as soon as their
+     * turn comes.
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+
+        final List<QueuedRequest> dropped = new ArrayList<>();
+        for (final Mailbox mailbox : this.mailboxes.values()) {
+            synchronized (mailbox) {
+                dropped.addAll(mailbox.queue);
+                mailbox.queue.clear();
+            }
+        }
+        if (!dropped.isEmpty()) {
+            LOGGER.warn("Dropping {} queued requests on shutdown", dropped.size());
+        }
+        for (final QueuedRequest queuedRequest : dropped) {
+            this.drop(queuedRequest.request);
+        }
+    }
+
+    /**
+     * Processes the request of the device on the calling thread when the
+     * mailbox of the device is idle, or queues it until the mailbox is idle.
+     *
+     * @return false when the request is rejected because too many requests
+     *         are queued for the device.
+     */
+    public boolean submit(final String deviceIdentification, final Request request) {
+        while (true) {
+            final Mailbox mailbox = this.getOrCreateMailbox(deviceIdentification);
+            synchronized (mailbox) {
+                if (mailbox.removed) {
+                    continue;
+                }
+                if (mailbox.isBusy()) {
+                    if (mailbox.queue.size() >= this.maxQueuedRequests) {
+                        this.rejectedRequests.incrementAndGet();
+                        LOGGER.warn("Rejecting request for device: {}, {} requests queued", deviceIdentification,
+                                mailbox.queue.size());
+                        return false;
+                    }
+                    mailbox.queue.add(new QueuedRequest(request));
+                    this.queuedRequests.incrementAndGet();
+                    return true;
+                }
+                mailbox.processing = true;
+            }
+            this.process(mailbox, request);
+            return true;
+        }
+    }
+
+    /**
+     * Marks the start of an exchange with the device. The mailbox of the
+     * device stays busy until the exchange with the given sequence number
+     * finishes or times out.
+     */
+    public void exchangeStarted(final String deviceIdentification, final int sequenceNumber) {
+        while (true) {
+            final Mailbox mailbox = this.getOrCreateMailbox(deviceIdentification);
+            synchronized (mailbox) {
+                if (mailbox.removed) {
+                    continue;
+                }
+                final Timeout timeout = this.timer.newTimeout(new TimerTask() {
+                    @Override
+                    public void run(final Timeout timeout) {
+                        OslpDeviceMailboxes.this.exchangeTimedOut(mailbox, sequenceNumber, timeout);
+                    }
+                }, this.exchangeTimeoutMillis, TimeUnit.MILLISECONDS);
+                final Timeout previous = mailbox.exchanges.put(sequenceNumber, timeout);
+                if (previous != null) {
+                    previous.cancel();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the exchange with the given sequence number, which
+     * lets the next queued request of the device proceed. Exchanges that are
+     * not in progress, for instance because they timed out, are ignored.
+     */
+    public void exchangeFinished(final String deviceIdentification, final int sequenceNumber) {
+        final Mailbox mailbox = this.mailboxes.get(deviceIdentification);
+        if (mailbox == null) {
+            return;
+        }
+        synchronized (mailbox) {
+            final Timeout timeout = mailbox.exchanges.remove(sequenceNumber);
+            if (timeout == null) {
+                return;
+            }
+            timeout.cancel();
+        }
+        this.processNext(mailbox);
+    }
+
+    @ManagedAttribute(description = "Number of devices with a request or exchange in progress")
+    public int getMailboxes() {
+        return this.mailboxes.size();
+    }
+
+    @ManagedAttribute(description = "Number of requests waiting for their device")
+    public int getQueuedRequests() {
+        int queued = 0;
+        for (final Mailbox mailbox : this.mailboxes.values()) {
+            synchronized (mailbox) {
+                queued += mailbox.queue.size();
+            }
+        }
+        return queued;
+    }
+
+    @ManagedAttribute(description = "Age in milliseconds of the oldest request waiting for its device")
+    public long getOldestQueuedRequestAgeMillis() {
+        long oldest = 0;
+        for (final Mailbox mailbox : this.mailboxes.values()) {
+            oldest = Math.max(oldest, mailbox.getOldestQueuedRequestAgeMillis());
+        }
+        return oldest;
+    }
+
+    @ManagedAttribute(description = "Longest time in milliseconds a request waited for its device")
+    public long getMaxQueueWaitMillis() {
+        return this.maxQueueWaitMillis.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests queued because their device was busy")
+    public long getQueuedRequestCount() {
+        return this.queuedRequests.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests rejected because too many requests were queued")
+    public long getRejectedRequestCount() {
+        return this.rejectedRequests.get();
+    }
+
+    @ManagedAttribute(description = "Number of queued requests dropped because of a shutdown")
+    public long getDroppedRequestCount() {
+        return this.droppedRequests.get();
+    }
+
+    @ManagedAttribute(description = "Number of exchanges abandoned after the exchange timeout")
+    public long getTimedOutExchangeCount() {
+        return this.timedOutExchanges.get();
+    }
+
+    @ManagedOperation(description = "Returns the number of requests waiting for the device")
+    public int getQueuedRequests(final String deviceIdentification) {
+        final Mailbox mailbox = this.mailboxes.get(deviceIdentification);
+        if (mailbox == null) {
+            return 0;
+        }
+        synchronized (mailbox) {
+            return mailbox.queue.size();
+        }
+    }
+
+    @ManagedOperation(description = "Returns the age in milliseconds of the oldest request waiting for the device")
+    public long getOldestQueuedRequestAgeMillis(final String deviceIdentification) {
+        final Mailbox mailbox = this.mailboxes.get(deviceIdentification);
+        return mailbox == null ? 0 : mailbox.getOldestQueuedRequestAgeMillis();
+    }
+
+    private Mailbox getOrCreateMailbox(final String deviceIdentification) {
+        final Mailbox mailbox = this.mailboxes.get(deviceIdentification);
+        if (mailbox != null) {
+            return mailbox;
+        }
+        final Mailbox created = new Mailbox(deviceIdentification);
+        final Mailbox existing = this.mailboxes.putIfAbsent(deviceIdentification, created);
+        return existing == null ? created : existing;
+    }
+
+    private void process(final Mailbox mailbox, final Request request) {
+        try {
+            request.run();
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unexpected exception processing request for device: {}", mailbox.deviceIdentification, e);
+        } finally {
+            synchronized (mailbox) {
+                mailbox.processing = false;
+            }
+            this.processNext(mailbox);
+        }
+    }
+
+    /**
+     * Hands the next queued request of an idle mailbox to the pool, or removes
+     * the mailbox when nothing is queued.
+     */
+    private void processNext(final Mailbox mailbox) {
+        final QueuedRequest next;
+        synchronized (mailbox) {
+            if (mailbox.isBusy()) {
+                return;
+            }
+            next = mailbox.queue.poll();
+            if (next == null) {
+                mailbox.removed = true;
+                this.mailboxes.remove(mailbox.deviceIdentification, mailbox);
+                return;
+            }
+            mailbox.processing = true;
+        }
+
+        final long waitMillis = System.currentTimeMillis() - next.queuedAt;
+        long max = this.maxQueueWaitMillis.get();
+        while (waitMillis > max && !this.maxQueueWaitMillis.compareAndSet(max, waitMillis)) {
+            max = this.maxQueueWaitMillis.get();
+        }
+
+        try {
+            this.executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    OslpDeviceMailboxes.this.process(mailbox, next.request);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            LOGGER.warn("Unable to process queued request for device: {}", mailbox.deviceIdentification, e);
+            synchronized (mailbox) {
+                mailbox.processing = false;
+            }
+            this.drop(next.request);
+            this.processNext(mailbox);
+        }
+    }
+
+    private void drop(final Request request) {
+        this.droppedRequests.incrementAndGet();
+        try {
+            request.dropped();
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unexpected exception dropping request", e);
+        }
+    }
+
+    private void exchangeTimedOut(final Mailbox mailbox, final int sequenceNumber, final Timeout timeout) {
+        synchronized (mailbox) {
+            if (!mailbox.exchanges.remove(sequenceNumber, timeout)) {
+                return;
+            }
+        }
+        this.timedOutExchanges.incrementAndGet();
+        LOGGER.warn("Exchange with sequence number {} for device: {} did not finish within {} ms", sequenceNumber,
+                mailbox.deviceIdentification, this.exchangeTimeoutMillis);
+        this.processNext(mailbox);
+    }
+
+    private static class Mailbox {
+        private final String deviceIdentification;
+        private final Queue<QueuedRequest> queue = new ArrayDeque<>();
+        private final Map<Integer, Timeout> exchanges = new HashMap<>();
+        private boolean processing;
+        private boolean removed;
+
+        Mailbox(final String deviceIdentification) {
+            this.deviceIdentification = deviceIdentification;
+        }
+
+        boolean isBusy() {
+            return this.processing || !this.exchanges.isEmpty();
+        }
+
+        synchronized long getOldestQueuedRequestAgeMillis() {
+            final QueuedRequest oldest = this.queue.peek();
+            return oldest == null ? 0 : System.currentTimeMillis() - oldest.queuedAt;
+        }
+    }
+
+    private static class QueuedRequest {
+        private final Request request;
+        private final long queuedAt = System.currentTimeMillis();
+
+        QueuedRequest(final Request request) {
+            this.request = request;
+        }
+    }
+}
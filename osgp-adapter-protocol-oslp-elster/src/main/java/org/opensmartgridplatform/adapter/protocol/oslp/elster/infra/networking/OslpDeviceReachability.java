@@ -0,0 +1,186 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Reachability of devices, tracked from the outcome of connects to the
+ * devices and from the registrations and event notifications the devices
+ * send.
+ *
+ * A device becomes unreachable after a number of failed connects in a row.
+ * Requests for an unreachable device fail fast or are parked, without
+ * signing or connecting, until the backoff has passed. The first request after the
+ * backoff is let through as a probe. When the probe fails to connect as
+ * well, the backoff doubles, up to the maximum. A successful connect, a
+ * registration or an event notification makes the device reachable again.
+ * A probe that never gets to connect, for instance because signing failed,
+ * just lets the next probe through after another backoff.
+ */
+@ManagedResource(description = "Reachability of OSLP devices")
+public class OslpDeviceReachability {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpDeviceReachability.class);
+
+    private final ConcurrentMap<String, Reachability> devices = new ConcurrentHashMap<>();
+
+    private final int failureThreshold;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+
+    public OslpDeviceReachability(final int failureThreshold, final long initialBackoffMillis,
+            final long maxBackoffMillis) {
+        this.failureThreshold = failureThreshold;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * @return false when the device is unreachable and the request should
+     *         fail fast, true when the request may connect to the device.
+     */
+    public boolean allowRequest(final String deviceIdentification) {
+        final Reachability reachability = this.devices.get(deviceIdentification);
+        if (reachability == null) {
+            return true;
+        }
+
+        synchronized (reachability) {
+            if (reachability.consecutiveFailures < this.failureThreshold) {
+                return true;
+            }
+            final long now = this.currentTimeMillis();
+            if (now < reachability.nextProbeAt) {
+                this.rejectedRequests.incrementAndGet();
+                return false;
+            }
+            // Let this request through as the probe. Other requests wait for
+            // its outcome, or for the next probe when it has none.
+            reachability.nextProbeAt = now + reachability.backoffMillis;
+        }
+        this.probes.incrementAndGet();
+        LOGGER.info("Probing unreachable device: {}", deviceIdentification);
+        return true;
+    }
+
+    public void connectFailed(final String deviceIdentification) {
+        Reachability reachability = this.devices.get(deviceIdentification);
+        if (reachability == null) {
+            final Reachability created = new Reachability();
+            reachability = this.devices.putIfAbsent(deviceIdentification, created);
+            if (reachability == null) {
+                reachability = created;
+            }
+        }
+
+        synchronized (reachability) {
+            reachability.consecutiveFailures++;
+            if (reachability.consecutiveFailures < this.failureThreshold) {
+                return;
+            }
+            if (reachability.consecutiveFailures == this.failureThreshold) {
+                reachability.backoffMillis = this.initialBackoffMillis;
+                LOGGER.warn("Device {} is unreachable after {} failed connects", deviceIdentification,
+                        reachability.consecutiveFailures);
+            } else {
+                reachability.backoffMillis = Math.min(reachability.backoffMillis * 2, this.maxBackoffMillis);
+            }
+            reachability.nextProbeAt = this.currentTimeMillis() + reachability.backoffMillis;
+        }
+    }
+
+    public void connectSucceeded(final String deviceIdentification) {
+        this.reachable(deviceIdentification);
+    }
+
+    /**
+     * Makes the device reachable, because it registered or sent an event
+     * notification.
+     */
+    public void deviceSeen(final String deviceIdentification) {
+        this.reachable(deviceIdentification);
+    }
+
+    public boolean isUnreachable(final String deviceIdentification) {
+        final Reachability reachability = this.devices.get(deviceIdentification);
+        if (reachability == null) {
+            return false;
+        }
+        synchronized (reachability) {
+            return reachability.consecutiveFailures >= this.failureThreshold;
+        }
+    }
+
+    /**
+     * @return true when the last connect to the device failed.
+     */
+    public boolean isLastConnectFailed(final String deviceIdentification) {
+        final Reachability reachability = this.devices.get(deviceIdentification);
+        if (reachability == null) {
+            return false;
+        }
+        synchronized (reachability) {
+            return reachability.consecutiveFailures > 0;
+        }
+    }
+
+    @ManagedOperation(description = "Makes all devices reachable")
+    public void resetAll() {
+        this.devices.clear();
+    }
+
+    @ManagedAttribute(description = "Number of unreachable devices")
+    public int getUnreachableDeviceCount() {
+        int count = 0;
+        for (final String deviceIdentification : this.devices.keySet()) {
+            if (this.isUnreachable(deviceIdentification)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @ManagedAttribute(description = "Number of requests failed fast for unreachable devices")
+    public long getRejectedRequestCount() {
+        return this.rejectedRequests.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests let through to probe unreachable devices")
+    public long getProbeCount() {
+        return this.probes.get();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void reachable(final String deviceIdentification) {
+        final Reachability reachability = this.devices.remove(deviceIdentification);
+        if (reachability != null && reachability.consecutiveFailures >= this.failureThreshold) {
+            LOGGER.info("Device {} is reachable again", deviceIdentification);
+        }
+    }
+
+    private static class Reachability {
+        private int consecutiveFailures;
+        private long backoffMillis;
+        private long nextProbeAt;
+    }
+}
@@ -9,9 +9,6 @@ package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -24,6 +21,7 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.LocalTime;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.mapping.OslpMapper;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceSettingsService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSequenceNumberStore;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSigningService;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.device.DeviceMessageStatus;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.device.DeviceRequest;
@@ -61,6 +59,7 @@ import org.opensmartgridplatform.dto.valueobjects.LinkTypeDto;
 import org.opensmartgridplatform.dto.valueobjects.PageInfoDto;
 import org.opensmartgridplatform.dto.valueobjects.PowerUsageDataDto;
 import org.opensmartgridplatform.dto.valueobjects.PowerUsageHistoryResponseMessageDataContainerDto;
+import org.opensmartgridplatform.dto.valueobjects.ResumeScheduleMessageDataContainerDto;
 import org.opensmartgridplatform.dto.valueobjects.ScheduleDto;
 import org.opensmartgridplatform.dto.valueobjects.ScheduleEntryDto;
 import org.opensmartgridplatform.dto.valueobjects.ScheduleMessageDataContainerDto;
@@ -70,8 +69,10 @@ import org.opensmartgridplatform.oslp.Oslp.GetFirmwareVersionRequest;
 import org.opensmartgridplatform.oslp.Oslp.GetStatusRequest;
 import org.opensmartgridplatform.oslp.Oslp.SetScheduleRequest;
 import org.opensmartgridplatform.oslp.OslpEnvelope;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
 import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
 import org.opensmartgridplatform.shared.exceptionhandling.ConnectionFailureException;
+import org.opensmartgridplatform.shared.infra.jms.MessageType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -95,13 +96,13 @@ public class OslpDeviceService implements DeviceService {
     private OslpMapper mapper;
 
     @Resource
-    private int oslpPortClient;
+    private boolean executeResumeScheduleAfterSetLight;
 
     @Resource
-    private int oslpPortClientLocal;
+    private int oslpPresignFollowUpRequests;
 
     @Resource
-    private boolean executeResumeScheduleAfterSetLight;
+    private Integer sequenceNumberMaximum;
 
     @Autowired
     private OslpDeviceSettingsService oslpDeviceSettingsService;
@@ -112,6 +113,21 @@ public class OslpDeviceService implements DeviceService {
     @Autowired
     private OslpSigningService oslpSigningService;
 
+    @Autowired
+    private OslpSequenceNumberStore oslpSequenceNumberStore;
+
+    @Autowired
+    private OslpDeviceMailboxes oslpDeviceMailboxes;
+
+    @Autowired
+    private OslpDeviceAddressCache oslpDeviceAddressCache;
+
+    @Autowired
+    private OslpPowerUsageHistoryStore oslpPowerUsageHistoryStore;
+
+    @Autowired
+    private OslpSchedulePaging oslpSchedulePaging;
+
     @Override
     public void startSelfTest(final DeviceRequest deviceRequest) {
         LOGGER.info("startSelfTest() for device: {}.", deviceRequest.getDeviceIdentification());
@@ -435,7 +451,7 @@ public class OslpDeviceService implements DeviceService {
     }
 
     private void processOslpRequestSetSchedule(final SetScheduleDeviceRequest deviceRequest) {
-        final int pageSize = 5;
+        final int pageSize = this.getSetSchedulePageSize(deviceRequest);
         final int numberOfPages = (int) Math
                 .ceil((double) deviceRequest.getScheduleMessageDataContainer().getSchedule().getScheduleList().size()
                         / pageSize);
@@ -450,6 +466,21 @@ public class OslpDeviceService implements DeviceService {
         }
     }
 
+    /**
+     * @return The number of schedules per page that fit in a request to the
+     *         device.
+     */
+    private int getSetSchedulePageSize(final SetScheduleDeviceRequest deviceRequest) {
+        final OslpDevice oslpDevice = this.oslpDeviceSettingsService
+                .getDeviceByDeviceIdentification(deviceRequest.getDeviceIdentification());
+        final String deviceType = oslpDevice == null ? null : oslpDevice.getDeviceType();
+
+        return this.oslpSchedulePaging.getPageSize(deviceType,
+                this.convertToOslpSchedules(
+                        deviceRequest.getScheduleMessageDataContainer().getSchedule().getScheduleList()),
+                this.mapper.map(deviceRequest.getRelayType(), Oslp.RelayType.class));
+    }
+
     private void processOslpRequestGetConfigurationBeforeSetSchedule(final SetScheduleDeviceRequest deviceRequest) {
         LOGGER.debug("Processing get configuration before set schedule request for device: {}.",
                 deviceRequest.getDeviceIdentification());
@@ -495,7 +526,8 @@ public class OslpDeviceService implements DeviceService {
             this.doProcessOslpRequestSetScheduleSingle(oslpRequest, deviceRequest, deviceResponseHandler, ipAddress);
         } else {
             final Pager pager = new Pager(
-                    deviceRequest.getScheduleMessageDataContainer().getSchedule().getScheduleList().size(), 5);
+                    deviceRequest.getScheduleMessageDataContainer().getSchedule().getScheduleList().size(),
+                    pageInfo.getPageSize());
             pager.setCurrentPage(pageInfo.getCurrentPage());
             pager.setNumberOfPages(pageInfo.getTotalPages());
             this.doProcessOslpRequestSetSchedulePaged(oslpRequest, deviceRequest, deviceResponseHandler, ipAddress,
@@ -774,6 +806,24 @@ public class OslpDeviceService implements DeviceService {
     }
 
     private void buildOslpRequestSetSchedulePaged(final SetScheduleDeviceRequest deviceRequest, final Pager pager) {
+        final int scheduleCount = deviceRequest.getScheduleMessageDataContainer().getSchedule().getScheduleList()
+                .size();
+
+        // The next pages are known already, so they are signed along.
+        final List<OslpRequestStep> followUpSteps = new ArrayList<>();
+        for (int page = pager.getCurrentPage() + 1; page <= Math.min(pager.getNumberOfPages(),
+                pager.getCurrentPage() + this.oslpPresignFollowUpRequests); page++) {
+            final Pager followUpPager = new Pager(scheduleCount, pager.getPageSize());
+            followUpPager.setCurrentPage(page);
+            followUpPager.setNumberOfPages(pager.getNumberOfPages());
+            followUpSteps.add(this.createSetSchedulePageStep(deviceRequest, followUpPager));
+        }
+
+        this.buildAndSignEnvelopes(this.createSetSchedulePageStep(deviceRequest, pager), followUpSteps);
+    }
+
+    private OslpRequestStep createSetSchedulePageStep(final SetScheduleDeviceRequest deviceRequest,
+            final Pager pager) {
 
         final List<Oslp.Schedule> oslpSchedules = this
                 .convertToOslpSchedules(deviceRequest.getScheduleMessageDataContainer().getSchedule().getScheduleList()
@@ -793,7 +843,7 @@ public class OslpDeviceService implements DeviceService {
         final ScheduleMessageDataContainerDto scheduleMessageDataContainer = new ScheduleMessageDataContainerDto.Builder(
                 schedule).withPageInfo(pageInfo).build();
 
-        this.buildAndSignEnvelope(deviceRequest,
+        return new OslpRequestStep(deviceRequest,
                 Oslp.Message.newBuilder().setSetScheduleRequest(oslpRequestBuilder.build()).build(),
                 scheduleMessageDataContainer);
     }
@@ -977,10 +1027,10 @@ public class OslpDeviceService implements DeviceService {
     public void getPowerUsageHistory(final GetPowerUsageHistoryDeviceRequest deviceRequest) {
         LOGGER.info("getPowerUsageHistory() for device: {}.", deviceRequest.getDeviceIdentification());
 
-        final Pager pager = new Pager();
-        final List<PowerUsageDataDto> powerUsageHistoryData = new ArrayList<>();
+        // Start without the pages of an earlier attempt of the request.
+        this.oslpPowerUsageHistoryStore.discard(deviceRequest.getCorrelationUid());
 
-        this.buildOslpRequestGetPowerUsageHistory(deviceRequest, pager, powerUsageHistoryData);
+        this.buildOslpRequestGetPowerUsageHistory(deviceRequest, new Pager());
     }
 
     @Override
@@ -992,21 +1042,29 @@ public class OslpDeviceService implements DeviceService {
 
         this.saveOslpRequestLogEntry(deviceRequest, oslpRequest);
 
-        final List<PowerUsageDataDto> powerUsageHistoryData = powerUsageHistoryResponseMessageDataContainer
-                .getPowerUsageData();
         final PageInfoDto pageInfo = powerUsageHistoryResponseMessageDataContainer.getPageInfo();
         final Pager pager = new Pager(pageInfo.getTotalPages(), pageInfo.getPageSize(), pageInfo.getCurrentPage());
 
+        // The pages received so far are kept in the store. A request signed
+        // before the store was used still carries them.
+        final List<PowerUsageDataDto> carriedPowerUsageData = powerUsageHistoryResponseMessageDataContainer
+                .getPowerUsageData();
+        if (carriedPowerUsageData != null && !carriedPowerUsageData.isEmpty()) {
+            this.oslpPowerUsageHistoryStore.addPages(deviceRequest.getCorrelationUid(), 1,
+                    pager.getCurrentPage() - 1, carriedPowerUsageData);
+        }
+
         final OslpResponseHandler oslpResponseHandler = new OslpResponseHandler() {
 
             @Override
             public void handleResponse(final OslpEnvelope oslpResponse) {
                 OslpDeviceService.this.handleOslpResponseGetPowerUsageHistory(deviceRequest, oslpResponse, pager,
-                        powerUsageHistoryData, deviceResponseHandler);
+                        deviceResponseHandler);
             }
 
             @Override
             public void handleException(final Throwable t) {
+                OslpDeviceService.this.oslpPowerUsageHistoryStore.discard(deviceRequest.getCorrelationUid());
                 OslpDeviceService.this.handleException(t, deviceRequest, deviceResponseHandler);
             }
         };
@@ -1015,16 +1073,15 @@ public class OslpDeviceService implements DeviceService {
     }
 
     private void processOslpRequestGetPowerUsageHistory(final GetPowerUsageHistoryDeviceRequest deviceRequest,
-            final Pager pager, final List<PowerUsageDataDto> powerUsageHistoryData) {
+            final Pager pager) {
         LOGGER.info("GetPowerUsageHistory() for device: {}, page: {} of {}", deviceRequest.getDeviceIdentification(),
                 pager.getCurrentPage(), pager.getNumberOfPages());
 
-        this.buildOslpRequestGetPowerUsageHistory(deviceRequest, pager, powerUsageHistoryData);
+        this.buildOslpRequestGetPowerUsageHistory(deviceRequest, pager);
     }
 
     private void handleOslpResponseGetPowerUsageHistory(final GetPowerUsageHistoryDeviceRequest deviceRequest,
-            final OslpEnvelope oslpResponse, final Pager pager, final List<PowerUsageDataDto> powerUsageHistoryData,
-            final DeviceResponseHandler deviceResponseHandler) {
+            final OslpEnvelope oslpResponse, final Pager pager, final DeviceResponseHandler deviceResponseHandler) {
 
         this.saveOslpResponseLogEntry(deviceRequest, oslpResponse);
 
@@ -1032,13 +1089,14 @@ public class OslpDeviceService implements DeviceService {
 
         // Get response status
         DeviceMessageStatus status;
+        List<PowerUsageDataDto> pagePowerUsageData = Collections.emptyList();
 
         if (oslpResponse.getPayloadMessage().hasGetPowerUsageHistoryResponse()) {
             final Oslp.GetPowerUsageHistoryResponse getPowerUsageHistoryResponse = oslpResponse.getPayloadMessage()
                     .getGetPowerUsageHistoryResponse();
             status = this.mapper.map(getPowerUsageHistoryResponse.getStatus(), DeviceMessageStatus.class);
-            powerUsageHistoryData.addAll(this.mapper.mapAsList(getPowerUsageHistoryResponse.getPowerUsageDataList(),
-                    PowerUsageDataDto.class));
+            pagePowerUsageData = this.mapper.mapAsList(getPowerUsageHistoryResponse.getPowerUsageDataList(),
+                    PowerUsageDataDto.class);
 
             if (pager.getNumberOfPages() == 1 && getPowerUsageHistoryResponse.hasPageInfo()) {
                 pager.setNumberOfPages(getPowerUsageHistoryResponse.getPageInfo().getTotalPages());
@@ -1052,17 +1110,32 @@ public class OslpDeviceService implements DeviceService {
             // Stop processing pages and handle device response.
             this.updateSequenceNumber(deviceRequest.getDeviceIdentification(), oslpResponse);
 
+            // Assemble the history of all pages once.
+            final List<PowerUsageDataDto> powerUsageHistoryData = this.oslpPowerUsageHistoryStore
+                    .take(deviceRequest.getCorrelationUid(), pager.getCurrentPage() - 1);
+            if (powerUsageHistoryData == null) {
+                LOGGER.error("Pages of the power usage history of device: {} were removed from the store",
+                        deviceRequest.getDeviceIdentification());
+                deviceResponseHandler.handleResponse(
+                        new GetPowerUsageHistoryDeviceResponse(deviceRequest, DeviceMessageStatus.FAILURE, null));
+                return;
+            }
+            powerUsageHistoryData.addAll(pagePowerUsageData);
+
             final GetPowerUsageHistoryDeviceResponse deviceResponse = new GetPowerUsageHistoryDeviceResponse(
                     deviceRequest, status, powerUsageHistoryData);
             deviceResponseHandler.handleResponse(deviceResponse);
 
         } else {
-            // Process next page
+            // Keep the page and process next page
+            this.oslpPowerUsageHistoryStore.addPage(deviceRequest.getCorrelationUid(), pager.getCurrentPage(),
+                    pagePowerUsageData);
             pager.nextPage();
             try {
-                this.processOslpRequestGetPowerUsageHistory(deviceRequest, pager, powerUsageHistoryData);
+                this.processOslpRequestGetPowerUsageHistory(deviceRequest, pager);
             } catch (final Exception e) {
                 LOGGER.error("Exception", e);
+                this.oslpPowerUsageHistoryStore.discard(deviceRequest.getCorrelationUid());
                 final GetPowerUsageHistoryDeviceResponse deviceResponse = new GetPowerUsageHistoryDeviceResponse(
                         deviceRequest, DeviceMessageStatus.FAILURE, null);
                 deviceResponseHandler.handleResponse(deviceResponse);
@@ -1071,7 +1144,21 @@ public class OslpDeviceService implements DeviceService {
     }
 
     private void buildOslpRequestGetPowerUsageHistory(final GetPowerUsageHistoryDeviceRequest deviceRequest,
-            final Pager pager, final List<PowerUsageDataDto> powerUsageHistoryData) {
+            final Pager pager) {
+        // Once the number of pages is known, the next pages only differ in
+        // their page number, so they are signed along.
+        final List<OslpRequestStep> followUpSteps = new ArrayList<>();
+        for (int page = pager.getCurrentPage() + 1; page <= Math.min(pager.getNumberOfPages(),
+                pager.getCurrentPage() + this.oslpPresignFollowUpRequests); page++) {
+            followUpSteps.add(this.createGetPowerUsageHistoryPageStep(deviceRequest,
+                    new Pager(pager.getNumberOfPages(), pager.getPageSize(), page)));
+        }
+
+        this.buildAndSignEnvelopes(this.createGetPowerUsageHistoryPageStep(deviceRequest, pager), followUpSteps);
+    }
+
+    private OslpRequestStep createGetPowerUsageHistoryPageStep(final GetPowerUsageHistoryDeviceRequest deviceRequest,
+            final Pager pager) {
         final Oslp.HistoryTermType oslpHistoryTermType = this.mapper
                 .map(deviceRequest.getPowerUsageHistoryContainer().getHistoryTermType(), Oslp.HistoryTermType.class);
         final Oslp.TimePeriod.Builder oslpTimePeriodBuilder = Oslp.TimePeriod.newBuilder();
@@ -1084,8 +1171,10 @@ public class OslpDeviceService implements DeviceService {
                 .newBuilder().setTimePeriod(oslpTimePeriodBuilder.setStartTime(startTime).setEndTime(endTime))
                 .setTermType(oslpHistoryTermType).setPage(pager.getCurrentPage()).build();
 
+        // Only the page cursor travels along with the request, the pages
+        // received so far are kept in the power usage history store.
         final PowerUsageHistoryResponseMessageDataContainerDto powerUsageHistoryResponseMessageDataContainer = new PowerUsageHistoryResponseMessageDataContainerDto(
-                powerUsageHistoryData);
+                new ArrayList<PowerUsageDataDto>());
         final PageInfoDto pageInfo = new PageInfoDto(pager.getCurrentPage(), pager.getPageSize(),
                 pager.getNumberOfPages());
         powerUsageHistoryResponseMessageDataContainer.setPageInfo(pageInfo);
@@ -1098,7 +1187,7 @@ public class OslpDeviceService implements DeviceService {
         powerUsageHistoryResponseMessageDataContainer
                 .setRequestContainer(deviceRequest.getPowerUsageHistoryContainer());
 
-        this.buildAndSignEnvelope(deviceRequest,
+        return new OslpRequestStep(deviceRequest,
                 Oslp.Message.newBuilder().setGetPowerUsageHistoryRequest(getPowerUsageHistoryRequest).build(),
                 powerUsageHistoryResponseMessageDataContainer);
     }
@@ -1368,17 +1457,22 @@ public class OslpDeviceService implements DeviceService {
     }
 
     private void buildOslpRequestResumeSchedule(final ResumeScheduleDeviceRequest deviceRequest) {
+        this.buildAndSignEnvelope(deviceRequest,
+                this.createResumeScheduleRequest(deviceRequest.getResumeScheduleContainer()),
+                deviceRequest.getResumeScheduleContainer());
+    }
+
+    private Oslp.Message createResumeScheduleRequest(
+            final ResumeScheduleMessageDataContainerDto resumeScheduleContainer) {
         final Oslp.ResumeScheduleRequest.Builder resumeScheduleRequestBuilder = Oslp.ResumeScheduleRequest.newBuilder();
-        if (deviceRequest.getResumeScheduleContainer().getIndex() != null) {
-            resumeScheduleRequestBuilder.setIndex(ByteString
-                    .copyFrom(new byte[] { deviceRequest.getResumeScheduleContainer().getIndex().byteValue() }));
+        if (resumeScheduleContainer.getIndex() != null) {
+            resumeScheduleRequestBuilder
+                    .setIndex(ByteString.copyFrom(new byte[] { resumeScheduleContainer.getIndex().byteValue() }));
 
         }
-        resumeScheduleRequestBuilder.setImmediate(deviceRequest.getResumeScheduleContainer().isImmediate());
+        resumeScheduleRequestBuilder.setImmediate(resumeScheduleContainer.isImmediate());
 
-        this.buildAndSignEnvelope(deviceRequest,
-                Oslp.Message.newBuilder().setResumeScheduleRequest(resumeScheduleRequestBuilder.build()).build(),
-                deviceRequest.getResumeScheduleContainer());
+        return Oslp.Message.newBuilder().setResumeScheduleRequest(resumeScheduleRequestBuilder.build()).build();
     }
 
     private void buildOslpRequestSetConfiguration(final SetConfigurationDeviceRequest deviceRequest) {
@@ -1419,9 +1513,32 @@ public class OslpDeviceService implements DeviceService {
             setLightRequestBuilder.addValues(this.buildLightValue(lightValue));
         }
 
-        this.buildAndSignEnvelope(deviceRequest,
+        final OslpRequestStep setLightStep = new OslpRequestStep(deviceRequest,
                 Oslp.Message.newBuilder().setSetLightRequest(setLightRequestBuilder.build()).build(),
                 deviceRequest.getLightValuesContainer());
+
+        if (!this.executeResumeScheduleAfterSetLight || this.oslpPresignFollowUpRequests == 0) {
+            this.buildAndSignEnvelopes(setLightStep, Collections.<OslpRequestStep> emptyList());
+            return;
+        }
+
+        // The resume schedule that follows a successful set light, the same
+        // as the one built by the set light message processor, is signed
+        // along.
+        final ResumeScheduleMessageDataContainerDto resumeScheduleMessageDataContainer = new ResumeScheduleMessageDataContainerDto(
+                0, false);
+        final DeviceRequest resumeScheduleDeviceRequest = DeviceRequest.newBuilder()
+                .organisationIdentification(deviceRequest.getOrganisationIdentification())
+                .deviceIdentification(deviceRequest.getDeviceIdentification())
+                .correlationUid(deviceRequest.getCorrelationUid()).domain(deviceRequest.getDomain())
+                .domainVersion(deviceRequest.getDomainVersion()).messageType(MessageType.RESUME_SCHEDULE.name())
+                .messagePriority(deviceRequest.getMessagePriority()).ipAddress(deviceRequest.getIpAddress())
+                .retryCount(deviceRequest.getRetryCount()).isScheduled(deviceRequest.isScheduled()).build();
+        final OslpRequestStep resumeScheduleStep = new OslpRequestStep(resumeScheduleDeviceRequest,
+                this.createResumeScheduleRequest(resumeScheduleMessageDataContainer),
+                resumeScheduleMessageDataContainer);
+
+        this.buildAndSignEnvelopes(setLightStep, Collections.singletonList(resumeScheduleStep));
     }
 
     private void buildOslpRequestSetReboot(final DeviceRequest deviceRequest) {
@@ -1896,7 +2013,21 @@ public class OslpDeviceService implements DeviceService {
 
     private void buildAndSignEnvelope(final DeviceRequest deviceRequest, final Oslp.Message payloadMessage,
             final Serializable extraData) {
+        this.buildAndSignEnvelopes(new OslpRequestStep(deviceRequest, payloadMessage, extraData),
+                Collections.<OslpRequestStep> emptyList());
+    }
+
+    /**
+     * Builds and signs the envelope of a step of a multi-step exchange, unless
+     * it was signed along with an earlier step. The envelopes of the follow up
+     * steps are signed along, with the sequence numbers the device will
+     * expect when it answers each step in turn.
+     */
+    private void buildAndSignEnvelopes(final OslpRequestStep step, final List<OslpRequestStep> followUpSteps) {
 
+        final DeviceRequest deviceRequest = step.deviceRequest;
+        final Oslp.Message payloadMessage = step.payloadMessage;
+        final Serializable extraData = step.extraData;
         final String deviceIdentification = deviceRequest.getDeviceIdentification();
         final String organisationIdentification = deviceRequest.getOrganisationIdentification();
         final String correlationUid = deviceRequest.getCorrelationUid();
@@ -1917,11 +2048,51 @@ public class OslpDeviceService implements DeviceService {
         }
 
         final byte[] deviceId = Base64.decodeBase64(oslpDevice.getDeviceUid());
-        final byte[] sequenceNumber = SequenceNumberUtils.convertIntegerToByteArray(oslpDevice.getSequenceNumber());
+        final int nextSequenceNumber = this.oslpSequenceNumberStore.getSequenceNumber(oslpDevice);
+        final byte[] sequenceNumber = SequenceNumberUtils.convertIntegerToByteArray(nextSequenceNumber);
 
-        this.oslpSigningService.buildAndSignEnvelope(organisationIdentification, deviceIdentification, correlationUid,
-                deviceId, sequenceNumber, ipAddress, domain, domainVersion, messageType, messagePriority, retryCount,
-                isScheduled, payloadMessage, extraData);
+        // The device is busy until the exchange with this sequence number
+        // finishes.
+        this.oslpDeviceMailboxes.exchangeStarted(deviceIdentification, nextSequenceNumber);
+        try {
+            if (this.oslpSigningService.takePresignedEnvelope(deviceIdentification, nextSequenceNumber,
+                    correlationUid, messageType, payloadMessage)) {
+                return;
+            }
+
+            if (followUpSteps.isEmpty()) {
+                this.oslpSigningService.buildAndSignEnvelope(organisationIdentification, deviceIdentification,
+                        correlationUid, deviceId, sequenceNumber, ipAddress, domain, domainVersion, messageType,
+                        messagePriority, retryCount, isScheduled, payloadMessage, extraData);
+                return;
+            }
+
+            final List<UnsignedOslpEnvelopeDto> unsignedOslpEnvelopeDtos = new ArrayList<>();
+            unsignedOslpEnvelopeDtos.add(this.createUnsignedOslpEnvelopeDto(step, deviceId, nextSequenceNumber));
+            int followUpSequenceNumber = nextSequenceNumber;
+            for (final OslpRequestStep followUpStep : followUpSteps) {
+                // The device answers with the next sequence number, which the
+                // next request uses.
+                followUpSequenceNumber = followUpSequenceNumber >= this.sequenceNumberMaximum ? 0
+                        : followUpSequenceNumber + 1;
+                unsignedOslpEnvelopeDtos
+                        .add(this.createUnsignedOslpEnvelopeDto(followUpStep, deviceId, followUpSequenceNumber));
+            }
+            this.oslpSigningService.buildAndSignEnvelopes(deviceIdentification, unsignedOslpEnvelopeDtos);
+        } catch (final RuntimeException e) {
+            this.oslpDeviceMailboxes.exchangeFinished(deviceIdentification, nextSequenceNumber);
+            throw e;
+        }
+    }
+
+    private UnsignedOslpEnvelopeDto createUnsignedOslpEnvelopeDto(final OslpRequestStep step, final byte[] deviceId,
+            final int sequenceNumber) {
+        final DeviceRequest deviceRequest = step.deviceRequest;
+        return new UnsignedOslpEnvelopeDto(SequenceNumberUtils.convertIntegerToByteArray(sequenceNumber), deviceId,
+                step.payloadMessage, deviceRequest.getIpAddress(), deviceRequest.getDomain(),
+                deviceRequest.getDomainVersion(), deviceRequest.getMessageType(), deviceRequest.getMessagePriority(),
+                deviceRequest.getRetryCount(), deviceRequest.isScheduled(), deviceRequest.getOrganisationIdentification(),
+                deviceRequest.getCorrelationUid(), step.extraData);
     }
 
     private Oslp.LightValue buildLightValue(final LightValueDto lightValue) {
@@ -1940,31 +2111,13 @@ public class OslpDeviceService implements DeviceService {
         return builder.build();
     }
 
-    /**
-     * Return the correct port, depending on loopback or external.
-     */
-    private InetSocketAddress createAddress(final InetAddress address) {
-        if (address.isLoopbackAddress()) {
-            return new InetSocketAddress(address, this.oslpPortClientLocal);
-        }
-
-        return new InetSocketAddress(address, this.oslpPortClient);
-    }
-
-    private InetSocketAddress createAddress(final String ipAddress) throws UnknownHostException {
-        final InetAddress inetAddress = InetAddress.getByName(ipAddress);
-
-        return this.createAddress(inetAddress);
-    }
-
     private void saveOslpResponseLogEntry(final DeviceRequest deviceRequest, final OslpEnvelope oslpResponse) {
         final OslpDevice oslpDevice = this.oslpDeviceSettingsService
                 .getDeviceByDeviceIdentification(deviceRequest.getDeviceIdentification());
 
         final OslpLogItemRequestMessage oslpLogItemRequestMessage = new OslpLogItemRequestMessage(
                 deviceRequest.getOrganisationIdentification(), oslpDevice.getDeviceUid(),
-                deviceRequest.getDeviceIdentification(), true, oslpResponse.isValid(), oslpResponse.getPayloadMessage(),
-                oslpResponse.getSize());
+                deviceRequest.getDeviceIdentification(), true, oslpResponse.isValid(), oslpResponse);
 
         this.oslpLogItemRequestMessageSender.send(oslpLogItemRequestMessage);
     }
@@ -1975,8 +2128,7 @@ public class OslpDeviceService implements DeviceService {
 
         final OslpLogItemRequestMessage oslpLogItemRequestMessage = new OslpLogItemRequestMessage(
                 deviceRequest.getOrganisationIdentification(), oslpDevice.getDeviceUid(),
-                deviceRequest.getDeviceIdentification(), false, true, oslpRequest.getPayloadMessage(),
-                oslpRequest.getSize());
+                deviceRequest.getDeviceIdentification(), false, true, oslpRequest);
 
         this.oslpLogItemRequestMessageSender.send(oslpLogItemRequestMessage);
     }
@@ -1986,30 +2138,68 @@ public class OslpDeviceService implements DeviceService {
 
         final OslpDevice oslpDevice = this.oslpDeviceSettingsService
                 .getDeviceByDeviceIdentification(deviceIdentification);
-        oslpDevice.setSequenceNumber(sequenceNumber);
-        this.oslpDeviceSettingsService.updateDeviceAndForceSave(oslpDevice);
+        this.oslpSequenceNumberStore.updateSequenceNumber(oslpDevice, sequenceNumber);
     }
 
     private void sendMessage(final String ipAddress, final OslpEnvelope oslpRequest,
             final OslpResponseHandler oslpResponseHandler, final DeviceRequest deviceRequest) throws IOException {
+        final String deviceIdentification = deviceRequest.getDeviceIdentification();
+        final int sequenceNumber = SequenceNumberUtils.convertByteArrayToInteger(oslpRequest.getSequenceNumber());
+
+        // Finish the exchange after the response is handled, so follow up
+        // exchanges started by the handler keep the device busy.
+        final OslpResponseHandler exchangeFinishingResponseHandler = new OslpResponseHandler() {
+
+            @Override
+            public void handleResponse(final OslpEnvelope oslpResponse) {
+                try {
+                    oslpResponseHandler.handleResponse(oslpResponse);
+                } finally {
+                    OslpDeviceService.this.oslpDeviceMailboxes.exchangeFinished(deviceIdentification,
+                            sequenceNumber);
+                }
+            }
+
+            @Override
+            public void handleException(final Throwable t) {
+                try {
+                    oslpResponseHandler.handleException(t);
+                } finally {
+                    OslpDeviceService.this.oslpDeviceMailboxes.exchangeFinished(deviceIdentification,
+                            sequenceNumber);
+                }
+            }
+        };
+
         try {
-            this.oslpChannelHandler.send(this.createAddress(ipAddress), oslpRequest, oslpResponseHandler,
-                    deviceRequest.getDeviceIdentification());
+            this.oslpChannelHandler.send(this.oslpDeviceAddressCache.getAddress(deviceIdentification, ipAddress),
+                    oslpRequest, exchangeFinishingResponseHandler, deviceIdentification,
+                    deviceRequest.getMessagePriority());
         } catch (final Exception e) {
             LOGGER.error("Exception during sendMessage()", e);
+            this.oslpDeviceMailboxes.exchangeFinished(deviceIdentification, sequenceNumber);
             throw new IOException(e.getMessage());
         }
     }
 
-    // === PROTECTED SETTERS FOR TESTING ===
-
-    public void setOslpPortClient(final int oslpPortClient) {
-        this.oslpPortClient = oslpPortClient;
+    /**
+     * A request to the device, with the data that travels along with it to be
+     * signed.
+     */
+    private static class OslpRequestStep {
+        private final DeviceRequest deviceRequest;
+        private final Oslp.Message payloadMessage;
+        private final Serializable extraData;
+
+        OslpRequestStep(final DeviceRequest deviceRequest, final Oslp.Message payloadMessage,
+                final Serializable extraData) {
+            this.deviceRequest = deviceRequest;
+            this.payloadMessage = payloadMessage;
+            this.extraData = extraData;
+        }
     }
 
-    public void setOslpPortClientLocal(final int oslpPortClientLocal) {
-        this.oslpPortClientLocal = oslpPortClientLocal;
-    }
+    // === PROTECTED SETTERS FOR TESTING ===
 
     public void setMapper(final OslpMapper mapper) {
         this.mapper = mapper;
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.netty.channel.socket.nio.NioWorker;
+import org.jboss.netty.channel.socket.nio.WorkerPool;
+import org.jboss.netty.util.ExternalResourceReleasable;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Fixed size pool of Netty I/O workers with named threads. Channels are
+ * assigned to the workers round robin.
+ *
+ * The pending tasks of a worker are not visible, so the pool measures how
+ * long a task waits before its worker runs it. Every read of the latencies
+ * queues a probe task on each worker and returns the latencies measured by
+ * the previous probes. A worker with a high latency is too busy to serve its
+ * channels in time.
+ */
+@ManagedResource(description = "Netty I/O workers of OSLP channels")
+public class OslpNioWorkerPool implements WorkerPool<NioWorker>, ExternalResourceReleasable {
+
+    private final ExecutorService executorService;
+    private final NioWorker[] workers;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicLongArray taskLatenciesMillis;
+
+    public OslpNioWorkerPool(final String threadNamePrefix, final int workerCount) {
+        this.executorService = Executors.newCachedThreadPool(new CustomizableThreadFactory(threadNamePrefix));
+        this.workers = new NioWorker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            this.workers[i] = new NioWorker(this.executorService, ThreadNameDeterminer.CURRENT);
+        }
+        this.taskLatenciesMillis = new AtomicLongArray(workerCount);
+    }
+
+    @Override
+    public NioWorker nextWorker() {
+        return this.workers[Math.abs(this.nextWorker.getAndIncrement() % this.workers.length)];
+    }
+
+    @Override
+    public void rebuildSelectors() {
+        for (final NioWorker worker : this.workers) {
+            worker.rebuildSelector();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (final NioWorker worker : this.workers) {
+            worker.shutdown();
+        }
+    }
+
+    @Override
+    public void releaseExternalResources() {
+        this.shutdown();
+        this.executorService.shutdown();
+    }
+
+    @ManagedAttribute(description = "Number of I/O workers")
+    public int getWorkerCount() {
+        return this.workers.length;
+    }
+
+    @ManagedAttribute(description = "Time in milliseconds the last probe task waited for each I/O worker")
+    public long[] getWorkerTaskLatenciesMillis() {
+        final long[] latencies = new long[this.workers.length];
+        for (int i = 0; i < this.workers.length; i++) {
+            latencies[i] = this.taskLatenciesMillis.get(i);
+            this.probe(i);
+        }
+        return latencies;
+    }
+
+    @ManagedAttribute(description = "Highest time in milliseconds the last probe tasks waited for an I/O worker")
+    public long getMaxWorkerTaskLatencyMillis() {
+        long max = 0;
+        for (final long latency : this.getWorkerTaskLatenciesMillis()) {
+            max = Math.max(max, latency);
+        }
+        return max;
+    }
+
+    private void probe(final int index) {
+        final long queuedAt = System.currentTimeMillis();
+        this.workers[index].executeInIoThread(new Runnable() {
+            @Override
+            public void run() {
+                OslpNioWorkerPool.this.taskLatenciesMillis.set(index, System.currentTimeMillis() - queuedAt);
+            }
+        }, true);
+    }
+}
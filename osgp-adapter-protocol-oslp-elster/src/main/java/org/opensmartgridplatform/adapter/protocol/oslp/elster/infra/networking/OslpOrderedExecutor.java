@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.ObjectSizeEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Worker pool for the OSLP channel pipelines. Decoded envelopes are handed
+ * from the Netty I/O threads to this pool, so signature validation, database
+ * access and JMS sends never stall the socket reads of other devices.
+ *
+ * Events of a channel are handled in order, events of different channels in
+ * parallel. Every received message counts as one pending event. When a
+ * channel has too many pending events, reading from that channel is
+ * suspended until the backlog is handled. When the pool as a whole has too
+ * many pending events, the I/O thread waits before queueing more. Events
+ * rejected after shutdown are counted and their channel is closed.
+ */
+@ManagedResource(description = "Worker pool handling decoded OSLP messages")
+public class OslpOrderedExecutor extends OrderedMemoryAwareThreadPoolExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpOrderedExecutor.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Counts every message as a single pending event, so the memory limits of
+     * the executor act as limits on the number of pending events.
+     */
+    private static final ObjectSizeEstimator EVENT_COUNT_ESTIMATOR = new ObjectSizeEstimator() {
+        @Override
+        public int estimateSize(final Object o) {
+            return 1;
+        }
+    };
+
+    private final AtomicLong rejectedEvents = new AtomicLong();
+
+    public OslpOrderedExecutor(final int poolSize, final int maxChannelPendingEvents,
+            final int maxTotalPendingEvents) {
+        super(poolSize, maxChannelPendingEvents, maxTotalPendingEvents, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                EVENT_COUNT_ESTIMATOR, new CustomizableThreadFactory("oslp-worker-"));
+
+        this.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+                OslpOrderedExecutor.this.rejectedEvents.incrementAndGet();
+                if (r instanceof ChannelEventRunnable) {
+                    final ChannelEventRunnable event = (ChannelEventRunnable) r;
+                    LOGGER.warn("{} Rejected OSLP event, closing channel", event.getEvent().getChannel().getId());
+                    event.getEvent().getChannel().close();
+                } else {
+                    LOGGER.warn("Rejected OSLP task: {}", r);
+                }
+            }
+        });
+    }
+
+    @ManagedAttribute(description = "Number of threads handling events")
+    public int getActiveThreads() {
+        return this.getActiveCount();
+    }
+
+    @ManagedAttribute(description = "Number of threads in the pool")
+    public int getThreads() {
+        return this.getPoolSize();
+    }
+
+    @ManagedAttribute(description = "Number of channels waiting for a thread")
+    public int getPendingChannels() {
+        return this.getQueue().size();
+    }
+
+    @ManagedAttribute(description = "Number of channel event batches handled")
+    public long getCompletedTasks() {
+        return this.getCompletedTaskCount();
+    }
+
+    @ManagedAttribute(description = "Number of events rejected by the pool")
+    public long getRejectedEvents() {
+        return this.rejectedEvents.get();
+    }
+
+    @ManagedAttribute(description = "Maximum number of pending events per channel")
+    public long getMaxChannelPendingEvents() {
+        return this.getMaxChannelMemorySize();
+    }
+
+    @ManagedAttribute(description = "Maximum number of pending events in total")
+    public long getMaxTotalPendingEvents() {
+        return this.getMaxTotalMemorySize();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.opensmartgridplatform.dto.valueobjects.PowerUsageDataDto;
+
+/**
+ * Power usage history received from devices, page by page, keyed by the
+ * correlation uid of the request. The pages received so far stay in the
+ * adapter while the request for the next page is signed, instead of
+ * travelling along to the signing server and back. The history is taken out
+ * when the last page arrives. Histories of requests that do not finish are
+ * removed after the time to live.
+ *
+ * The store keeps track of the pages added for a request, so a history that
+ * was evicted or expired while paging is not taken as complete.
+ */
+@ManagedResource(description = "Power usage history pages received from OSLP devices")
+public class OslpPowerUsageHistoryStore {
+
+    private final Cache<String, History> histories;
+
+    public OslpPowerUsageHistoryStore(final int maximumSize, final int expireAfterWriteMinutes) {
+        this.histories = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * Adds the power usage data of a page to the history of the request.
+     */
+    public void addPage(final String correlationUid, final int page, final List<PowerUsageDataDto> powerUsageData) {
+        this.addPages(correlationUid, page, page, powerUsageData);
+    }
+
+    /**
+     * Adds the power usage data of consecutive pages to the history of the
+     * request. The history is incomplete when the pages do not follow the
+     * pages added before.
+     */
+    public void addPages(final String correlationUid, final int fromPage, final int toPage,
+            final List<PowerUsageDataDto> powerUsageData) {
+        synchronized (this.histories) {
+            History history = this.histories.getIfPresent(correlationUid);
+            if (history == null) {
+                history = new History();
+            }
+            if (history.pages != fromPage - 1) {
+                history.complete = false;
+            }
+            history.pages = toPage;
+            if (powerUsageData != null) {
+                history.powerUsageData.addAll(powerUsageData);
+            }
+            // Put the history again to restart its time to live.
+            this.histories.put(correlationUid, history);
+        }
+    }
+
+    /**
+     * Removes the history of the request.
+     *
+     * @param pages
+     *            The number of pages that should have been added for the
+     *            request.
+     * @return The power usage data of all pages added for the request, which
+     *         is empty when no pages should have been added, or null when
+     *         pages are missing.
+     */
+    public List<PowerUsageDataDto> take(final String correlationUid, final int pages) {
+        synchronized (this.histories) {
+            final History history = this.histories.getIfPresent(correlationUid);
+            this.histories.invalidate(correlationUid);
+            if (history == null) {
+                return pages == 0 ? new ArrayList<PowerUsageDataDto>() : null;
+            }
+            return history.complete && history.pages == pages ? history.powerUsageData : null;
+        }
+    }
+
+    public void discard(final String correlationUid) {
+        this.histories.invalidate(correlationUid);
+    }
+
+    @ManagedAttribute(description = "Number of requests with pages in the store")
+    public long getSize() {
+        return this.histories.size();
+    }
+
+    private static class History {
+        private final List<PowerUsageDataDto> powerUsageData = new ArrayList<>();
+        private int pages;
+        private boolean complete = true;
+    }
+}
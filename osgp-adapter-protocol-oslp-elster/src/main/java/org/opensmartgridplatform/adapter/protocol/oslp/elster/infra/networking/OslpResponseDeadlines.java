@@ -0,0 +1,134 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+
+import org.opensmartgridplatform.oslp.Oslp;
+
+/**
+ * Deadlines for the responses of devices to OSLP requests. Every request
+ * type uses the default deadline, unless an override is configured for it.
+ * Overrides are configured as a comma separated list of request types with
+ * their deadline in milliseconds, like
+ * {@code UpdateFirmwareRequest=120000,GetPowerUsageHistoryRequest=90000}.
+ */
+@ManagedResource(description = "Deadlines for the responses of devices to OSLP requests")
+public class OslpResponseDeadlines {
+
+    private static final String UNKNOWN_MESSAGE_TYPE = "Unknown";
+
+    private final Timer timer;
+    private final long defaultDeadlineMillis;
+    private final Map<String, Long> deadlineMillisByMessageType = new HashMap<>();
+
+    private final AtomicLong expired = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> expiredByMessageType = new ConcurrentHashMap<>();
+
+    public OslpResponseDeadlines(final Timer timer, final long defaultDeadlineMillis, final String overrides) {
+        this.timer = timer;
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+        for (final String override : StringUtils.split(StringUtils.defaultString(overrides), ',')) {
+            final String[] messageTypeAndDeadline = StringUtils.split(override, '=');
+            if (messageTypeAndDeadline.length != 2) {
+                throw new IllegalArgumentException("Invalid response deadline override: " + override);
+            }
+            this.deadlineMillisByMessageType.put(messageTypeAndDeadline[0].trim(),
+                    Long.parseLong(messageTypeAndDeadline[1].trim()));
+        }
+    }
+
+    /**
+     * Schedules the task to run when the deadline for the response to the
+     * request passes. The returned timeout must be cancelled when the
+     * exchange ends before the deadline.
+     */
+    public Timeout schedule(final Oslp.Message request, final TimerTask task) {
+        final String messageType = getMessageType(request);
+        return this.timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(final Timeout timeout) throws Exception {
+                OslpResponseDeadlines.this.countExpired(messageType);
+                task.run(timeout);
+            }
+        }, this.getDeadlineMillis(messageType), TimeUnit.MILLISECONDS);
+    }
+
+    public long getDeadlineMillis(final String messageType) {
+        final Long deadlineMillis = this.deadlineMillisByMessageType.get(messageType);
+        return deadlineMillis == null ? this.defaultDeadlineMillis : deadlineMillis;
+    }
+
+    @ManagedAttribute(description = "Default response deadline in milliseconds")
+    public long getDefaultDeadlineMillis() {
+        return this.defaultDeadlineMillis;
+    }
+
+    @ManagedAttribute(description = "Longest response deadline of all request types in milliseconds")
+    public long getMaxDeadlineMillis() {
+        long max = this.defaultDeadlineMillis;
+        for (final long deadlineMillis : this.deadlineMillisByMessageType.values()) {
+            max = Math.max(max, deadlineMillis);
+        }
+        return max;
+    }
+
+    @ManagedAttribute(description = "Number of requests without a response before their deadline")
+    public long getExpiredCount() {
+        return this.expired.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests without a response before their deadline, per request type")
+    public Map<String, Long> getExpiredCountByMessageType() {
+        final Map<String, Long> counts = new HashMap<>();
+        for (final Map.Entry<String, AtomicLong> entry : this.expiredByMessageType.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return The name of the request type set in the message, like
+     *         SetLightRequest.
+     */
+    static String getMessageType(final Oslp.Message message) {
+        for (final FieldDescriptor field : message.getAllFields().keySet()) {
+            if (field.getType() == FieldDescriptor.Type.MESSAGE) {
+                return field.getMessageType().getName();
+            }
+        }
+        return UNKNOWN_MESSAGE_TYPE;
+    }
+
+    private void countExpired(final String messageType) {
+        this.expired.incrementAndGet();
+        AtomicLong count = this.expiredByMessageType.get(messageType);
+        if (count == null) {
+            final AtomicLong created = new AtomicLong();
+            count = this.expiredByMessageType.putIfAbsent(messageType, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+}
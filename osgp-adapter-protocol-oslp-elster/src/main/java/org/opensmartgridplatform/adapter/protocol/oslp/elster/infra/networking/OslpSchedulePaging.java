@@ -0,0 +1,124 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.CodedOutputStream;
+
+import org.opensmartgridplatform.oslp.Oslp;
+
+/**
+ * Page size of paged set schedule requests, computed from the serialized
+ * size of the schedules. The page size is the largest number of schedules,
+ * up to the maximum page size, for which every page fits in the maximum
+ * frame size. All pages have the same page size, as announced in the page
+ * info of the requests.
+ *
+ * Both maxima can be overridden per device type, as a comma separated list
+ * of device types with their maximum, like {@code SSLD=50}.
+ */
+public class OslpSchedulePaging {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OslpSchedulePaging.class);
+
+    /**
+     * Maximum number of schedules devices accept in one request.
+     */
+    private static final int MAX_SCHEDULES_PER_REQUEST = 50;
+
+    private static final int SCHEDULES_FIELD_NUMBER = Oslp.SetScheduleRequest.SCHEDULES_FIELD_NUMBER;
+
+    private final int defaultMaxPageSize;
+    private final Map<String, Integer> maxPageSizeByDeviceType;
+    private final int defaultMaxFrameBytes;
+    private final Map<String, Integer> maxFrameBytesByDeviceType;
+
+    public OslpSchedulePaging(final int defaultMaxPageSize, final String maxPageSizeOverrides,
+            final int defaultMaxFrameBytes, final String maxFrameBytesOverrides) {
+        this.defaultMaxPageSize = defaultMaxPageSize;
+        this.maxPageSizeByDeviceType = parseOverrides(maxPageSizeOverrides);
+        this.defaultMaxFrameBytes = defaultMaxFrameBytes;
+        this.maxFrameBytesByDeviceType = parseOverrides(maxFrameBytesOverrides);
+    }
+
+    /**
+     * @return The number of schedules per page for a device of the device
+     *         type, which may be null when the type is not known.
+     */
+    public int getPageSize(final String deviceType, final List<Oslp.Schedule> schedules,
+            final Oslp.RelayType scheduleType) {
+        final int maxPageSize = Math.min(getMaximum(this.maxPageSizeByDeviceType, deviceType, this.defaultMaxPageSize),
+                MAX_SCHEDULES_PER_REQUEST);
+        final int maxFrameBytes = getMaximum(this.maxFrameBytesByDeviceType, deviceType, this.defaultMaxFrameBytes);
+
+        final int[] scheduleBytes = new int[schedules.size()];
+        for (int i = 0; i < scheduleBytes.length; i++) {
+            scheduleBytes[i] = CodedOutputStream.computeMessageSize(SCHEDULES_FIELD_NUMBER, schedules.get(i));
+        }
+
+        for (int pageSize = Math.min(maxPageSize, Math.max(schedules.size(), 1)); pageSize > 1; pageSize--) {
+            if (this.fits(scheduleBytes, pageSize, scheduleType, maxFrameBytes)) {
+                return pageSize;
+            }
+        }
+        if (!this.fits(scheduleBytes, 1, scheduleType, maxFrameBytes)) {
+            LOGGER.warn("A single schedule does not fit in the maximum frame size of {} bytes for device type {}",
+                    maxFrameBytes, deviceType);
+        }
+        return 1;
+    }
+
+    private boolean fits(final int[] scheduleBytes, final int pageSize, final Oslp.RelayType scheduleType,
+            final int maxFrameBytes) {
+        final int numberOfPages = (scheduleBytes.length + pageSize - 1) / pageSize;
+        // The page info takes the most bytes on the last page.
+        final Oslp.SetScheduleRequest.Builder request = Oslp.SetScheduleRequest.newBuilder()
+                .setPageInfo(Oslp.PageInfo.newBuilder().setCurrentPage(numberOfPages).setPageSize(pageSize)
+                        .setTotalPages(numberOfPages));
+        if (scheduleType != null) {
+            request.setScheduleType(scheduleType);
+        }
+        final int requestBytes = request.buildPartial().getSerializedSize();
+
+        for (int from = 0; from < scheduleBytes.length; from += pageSize) {
+            int pageBytes = requestBytes;
+            for (int i = from; i < Math.min(from + pageSize, scheduleBytes.length); i++) {
+                pageBytes += scheduleBytes[i];
+            }
+            if (pageBytes > maxFrameBytes) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getMaximum(final Map<String, Integer> maximumByDeviceType, final String deviceType,
+            final int defaultMaximum) {
+        final Integer maximum = deviceType == null ? null : maximumByDeviceType.get(deviceType);
+        return maximum == null ? defaultMaximum : maximum;
+    }
+
+    private static Map<String, Integer> parseOverrides(final String overrides) {
+        final Map<String, Integer> maximumByDeviceType = new HashMap<>();
+        for (final String override : StringUtils.split(StringUtils.defaultString(overrides), ',')) {
+            final String[] deviceTypeAndMaximum = StringUtils.split(override, '=');
+            if (deviceTypeAndMaximum.length != 2) {
+                throw new IllegalArgumentException("Invalid schedule paging override: " + override);
+            }
+            maximumByDeviceType.put(deviceTypeAndMaximum[0].trim(), Integer.parseInt(deviceTypeAndMaximum[1].trim()));
+        }
+        return maximumByDeviceType;
+    }
+}
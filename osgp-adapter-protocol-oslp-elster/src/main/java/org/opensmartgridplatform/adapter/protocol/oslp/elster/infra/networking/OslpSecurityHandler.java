@@ -18,22 +18,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpDeviceSettingsService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpPublicKeyCache;
 import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
 import org.opensmartgridplatform.oslp.OslpEnvelope;
-import org.opensmartgridplatform.shared.security.CertificateHelper;
 
 public class OslpSecurityHandler extends SimpleChannelHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OslpSecurityHandler.class);
 
     @Autowired
-    private String oslpSignatureProvider;
-
-    @Autowired
-    private String oslpKeyType;
+    private OslpDeviceSettingsService oslpDeviceSettingsService;
 
     @Autowired
-    private OslpDeviceSettingsService oslpDeviceSettingsService;
+    private OslpPublicKeyCache oslpPublicKeyCache;
 
     @Override
     public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent evt) throws Exception {
@@ -62,8 +59,7 @@ public class OslpSecurityHandler extends SimpleChannelHandler {
         // When device is unknown or publickey is not available, the message is
         // not valid.
         if (oslpDevice != null && oslpDevice.getPublicKey() != null) {
-            final PublicKey publicKey = CertificateHelper.createPublicKeyFromBase64(oslpDevice.getPublicKey(),
-                    this.oslpKeyType, this.oslpSignatureProvider);
+            final PublicKey publicKey = this.oslpPublicKeyCache.getPublicKey(oslpDevice);
 
             message.validate(publicKey);
         }
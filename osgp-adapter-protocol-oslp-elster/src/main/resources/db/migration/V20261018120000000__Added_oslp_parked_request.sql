@@ -0,0 +1,42 @@
+CREATE TABLE oslp_parked_request (
+    id bigint NOT NULL,
+    creation_time timestamp without time zone NOT NULL,
+    modification_time timestamp without time zone NOT NULL,
+    version bigint,
+    device_identification character varying(40) NOT NULL,
+    correlation_uid character varying(255) NOT NULL,
+    message_type character varying(255) NOT NULL,
+    expires_at timestamp without time zone NOT NULL,
+    message bytea NOT NULL
+);
+
+ALTER TABLE public.oslp_parked_request OWNER TO osp_admin;
+
+
+CREATE SEQUENCE oslp_parked_request_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+ALTER TABLE public.oslp_parked_request_id_seq OWNER TO osp_admin;
+
+
+ALTER SEQUENCE oslp_parked_request_id_seq OWNED BY oslp_parked_request.id;
+
+ALTER TABLE ONLY oslp_parked_request ALTER COLUMN id SET DEFAULT nextval('oslp_parked_request_id_seq'::regclass);
+
+
+ALTER TABLE ONLY oslp_parked_request
+    ADD CONSTRAINT oslp_parked_request_pkey PRIMARY KEY (id);
+
+CREATE INDEX oslp_parked_request_device_identification_idx ON oslp_parked_request (device_identification);
+
+CREATE INDEX oslp_parked_request_expires_at_idx ON oslp_parked_request (expires_at);
+
+COMMENT ON COLUMN oslp_parked_request.device_identification IS 'Identification of the device the request is for.';
+COMMENT ON COLUMN oslp_parked_request.correlation_uid IS 'Correlation UID of the request.';
+COMMENT ON COLUMN oslp_parked_request.message_type IS 'Message type of the request.';
+COMMENT ON COLUMN oslp_parked_request.expires_at IS 'Time after which the request fails instead of being sent to the device.';
+COMMENT ON COLUMN oslp_parked_request.message IS 'The serialized request message.';
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
+
+public class OslpDeviceCacheTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+
+    private final OslpDeviceCache cache = new OslpDeviceCache(100, 10);
+
+    @Test
+    public void changesToReturnedDeviceAreNotCached() {
+        this.cache.put(this.device("uid-1"));
+
+        final OslpDevice returned = this.cache.getByDeviceIdentification(DEVICE_IDENTIFICATION);
+        returned.updatePublicKey("changed");
+
+        Assert.assertNotSame(returned, this.cache.getByDeviceIdentification(DEVICE_IDENTIFICATION));
+        Assert.assertNull(this.cache.getByDeviceIdentification(DEVICE_IDENTIFICATION).getPublicKey());
+        Assert.assertNull(this.cache.getByDeviceUid("uid-1").getPublicKey());
+    }
+
+    @Test
+    public void changesToPutDeviceAreNotCached() {
+        final OslpDevice device = this.device("uid-1");
+        this.cache.put(device);
+
+        device.updatePublicKey("changed");
+
+        Assert.assertNull(this.cache.getByDeviceUid("uid-1").getPublicKey());
+    }
+
+    @Test
+    public void oldUidIsEvictedWhenUidChanges() {
+        this.cache.put(this.device("uid-1"));
+
+        final OslpDevice registered = this.cache.getByDeviceIdentification(DEVICE_IDENTIFICATION);
+        registered.updateRegistrationData(new byte[] { 1, 2, 3 }, OslpDevice.SSLD_TYPE, 42);
+        this.cache.invalidate(registered);
+
+        Assert.assertNull(this.cache.getByDeviceUid("uid-1"));
+        Assert.assertNull(this.cache.getByDeviceIdentification(DEVICE_IDENTIFICATION));
+
+        this.cache.put(registered);
+
+        Assert.assertNull(this.cache.getByDeviceUid("uid-1"));
+        Assert.assertEquals(registered.getDeviceUid(),
+                this.cache.getByDeviceIdentification(DEVICE_IDENTIFICATION).getDeviceUid());
+        Assert.assertEquals(1, this.cache.getSize());
+    }
+
+    private OslpDevice device(final String deviceUid) {
+        return new OslpDevice(deviceUid, DEVICE_IDENTIFICATION, OslpDevice.SSLD_TYPE);
+    }
+}
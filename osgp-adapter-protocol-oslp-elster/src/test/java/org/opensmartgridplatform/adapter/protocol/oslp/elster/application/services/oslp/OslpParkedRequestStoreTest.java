@@ -0,0 +1,175 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpParkedRequest;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.repositories.OslpParkedRequestRepository;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceResponseMessageSender;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.ParkedRequestMessage;
+import org.opensmartgridplatform.shared.infra.jms.Constants;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+
+public class OslpParkedRequestStoreTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+    private static final String SET_LIGHT = "SET_LIGHT";
+
+    private final OslpParkedRequestRepository repository = mock(OslpParkedRequestRepository.class);
+    private final JmsTemplate jmsTemplate = mock(JmsTemplate.class);
+    private final DeviceResponseMessageSender deviceResponseMessageSender = mock(DeviceResponseMessageSender.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final TransactionStatus transactionStatus = mock(TransactionStatus.class);
+
+    private final OslpParkedRequestStore store = new OslpParkedRequestStore(Collections.singleton(SET_LIGHT),
+            new HashSet<>(Collections.singleton(SET_LIGHT)), 2, 60000, 100);
+
+    @Before
+    public void setUp() {
+        when(this.transactionManager.getTransaction(any(TransactionDefinition.class)))
+                .thenReturn(this.transactionStatus);
+        ReflectionTestUtils.setField(this.store, "oslpParkedRequestRepository", this.repository);
+        ReflectionTestUtils.setField(this.store, "oslpRequestsJmsTemplate", this.jmsTemplate);
+        ReflectionTestUtils.setField(this.store, "deviceResponseMessageSender", this.deviceResponseMessageSender);
+        ReflectionTestUtils.setField(this.store, "transactionManager", this.transactionManager);
+        this.store.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.store.shutdown();
+    }
+
+    @Test
+    public void parkedRequestIsReplacedAtTheMaximum() throws JMSException {
+        final OslpParkedRequest parkedRequest = this.parkedRequest("correlation-1");
+        final List<OslpParkedRequest> parkedRequests = Collections.singletonList(parkedRequest);
+        when(this.repository.findByDeviceIdentificationAndMessageType(DEVICE_IDENTIFICATION, SET_LIGHT))
+                .thenReturn(parkedRequests);
+        when(this.repository.countByDeviceIdentification(DEVICE_IDENTIFICATION)).thenReturn(2L);
+
+        Assert.assertTrue(this.store.park(this.message("correlation-2")));
+
+        verify(this.repository).delete(parkedRequests);
+        verify(this.repository).save(any(OslpParkedRequest.class));
+        verify(this.deviceResponseMessageSender).send(any(ResponseMessage.class));
+        verify(this.transactionManager).commit(this.transactionStatus);
+        Assert.assertEquals(1, this.store.getReplacedCount());
+    }
+
+    @Test
+    public void rejectedRequestDoesNotReplaceParkedRequest() throws JMSException {
+        when(this.repository.findByDeviceIdentificationAndMessageType(DEVICE_IDENTIFICATION, SET_LIGHT))
+                .thenReturn(Collections.singletonList(this.parkedRequest("correlation-1")));
+        when(this.repository.countByDeviceIdentification(DEVICE_IDENTIFICATION)).thenReturn(3L);
+
+        Assert.assertFalse(this.store.park(this.message("correlation-2")));
+
+        verify(this.repository, never()).delete(any(Iterable.class));
+        verify(this.repository, never()).save(any(OslpParkedRequest.class));
+        verify(this.deviceResponseMessageSender, never()).send(any(ResponseMessage.class));
+        Assert.assertEquals(0, this.store.getReplacedCount());
+        Assert.assertEquals(1, this.store.getRejectedCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedSendLeavesRequestParked() throws JMSException {
+        when(this.repository.findByDeviceIdentificationOrderByIdAsc(DEVICE_IDENTIFICATION))
+                .thenReturn(Collections.singletonList(this.parkedRequest("correlation-1")));
+        when(this.repository.exists(anyLong())).thenReturn(true);
+        when(this.jmsTemplate.execute(any(ProducerCallback.class)))
+                .thenThrow(new UncategorizedJmsException("Broker unavailable"));
+
+        this.store.flush(DEVICE_IDENTIFICATION, null);
+        this.store.shutdown();
+
+        verify(this.transactionManager).rollback(this.transactionStatus);
+        verify(this.transactionManager, never()).commit(this.transactionStatus);
+        Assert.assertEquals(0, this.store.getFlushedCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void parkedRequestIsSentWithRegisteredAddressWhenRegistrationIsConfirmed() throws JMSException {
+        final ActiveMQObjectMessage message = this.message("correlation-1");
+        message.setStringProperty(Constants.IP_ADDRESS, "10.0.0.1");
+        when(this.repository.findByDeviceIdentificationOrderByIdAsc(DEVICE_IDENTIFICATION))
+                .thenReturn(Collections.singletonList(new OslpParkedRequest(DEVICE_IDENTIFICATION, "correlation-1",
+                        SET_LIGHT, new Date(System.currentTimeMillis() + 60000),
+                        SerializationUtils.serialize(ParkedRequestMessage.fromMessage(message)))));
+        when(this.repository.exists(anyLong())).thenReturn(true);
+
+        this.store.registered(DEVICE_IDENTIFICATION, "10.0.0.2");
+        verify(this.repository, never()).findByDeviceIdentificationOrderByIdAsc(DEVICE_IDENTIFICATION);
+
+        this.store.registrationConfirmed(DEVICE_IDENTIFICATION);
+        this.store.shutdown();
+
+        final ArgumentCaptor<ProducerCallback> callback = ArgumentCaptor.forClass(ProducerCallback.class);
+        verify(this.jmsTemplate).execute(callback.capture());
+        final Session session = mock(Session.class);
+        when(session.createObjectMessage(any(Serializable.class))).thenReturn(new ActiveMQObjectMessage());
+        final MessageProducer producer = mock(MessageProducer.class);
+        callback.getValue().doInJms(session, producer);
+
+        final ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(producer).send(sent.capture(), anyInt(), anyInt(), anyLong());
+        Assert.assertEquals("10.0.0.2", sent.getValue().getStringProperty(Constants.IP_ADDRESS));
+        Assert.assertEquals(1, this.store.getFlushedCount());
+    }
+
+    private ActiveMQObjectMessage message(final String correlationUid) throws JMSException {
+        final ActiveMQObjectMessage message = new ActiveMQObjectMessage();
+        message.setJMSType(SET_LIGHT);
+        message.setJMSCorrelationID(correlationUid);
+        message.setStringProperty(Constants.DEVICE_IDENTIFICATION, DEVICE_IDENTIFICATION);
+        message.setStringProperty(Constants.ORGANISATION_IDENTIFICATION, "organisation-1");
+        message.setObject("request");
+        return message;
+    }
+
+    private OslpParkedRequest parkedRequest(final String correlationUid) throws JMSException {
+        return new OslpParkedRequest(DEVICE_IDENTIFICATION, correlationUid, SET_LIGHT,
+                new Date(System.currentTimeMillis() + 60000),
+                SerializationUtils.serialize(ParkedRequestMessage.fromMessage(this.message(correlationUid))));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.SequenceNumberUtils;
+import org.opensmartgridplatform.oslp.Oslp;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+
+public class OslpPresignedEnvelopesTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+    private static final String CORRELATION_UID = "correlation-1";
+    private static final String MESSAGE_TYPE = "GET_POWER_USAGE_HISTORY";
+
+    private final OslpPresignedEnvelopes presignedEnvelopes = new OslpPresignedEnvelopes(100, 10);
+
+    @Test
+    public void signedEnvelopeIsHeldUntilTaken() {
+        final UnsignedOslpEnvelopeDto unsigned = this.unsigned(11, 2);
+        final SignedOslpEnvelopeDto signed = new SignedOslpEnvelopeDto(null, unsigned);
+        this.presignedEnvelopes.expect(DEVICE_IDENTIFICATION, unsigned);
+
+        Assert.assertTrue(this.presignedEnvelopes.hold(DEVICE_IDENTIFICATION, signed));
+
+        final OslpPresignedEnvelopes.Presigned presigned = this.presignedEnvelopes.take(DEVICE_IDENTIFICATION, 11,
+                CORRELATION_UID, MESSAGE_TYPE, this.payload(2));
+        Assert.assertSame(signed, presigned.getSignedOslpEnvelopeDto());
+        Assert.assertNull(this.presignedEnvelopes.take(DEVICE_IDENTIFICATION, 11, CORRELATION_UID, MESSAGE_TYPE,
+                this.payload(2)));
+    }
+
+    @Test
+    public void envelopeTakenBeforeSignedIsHandledWhenSigned() {
+        final UnsignedOslpEnvelopeDto unsigned = this.unsigned(11, 2);
+        this.presignedEnvelopes.expect(DEVICE_IDENTIFICATION, unsigned);
+
+        final OslpPresignedEnvelopes.Presigned presigned = this.presignedEnvelopes.take(DEVICE_IDENTIFICATION, 11,
+                CORRELATION_UID, MESSAGE_TYPE, this.payload(2));
+        Assert.assertNotNull(presigned);
+        Assert.assertNull(presigned.getSignedOslpEnvelopeDto());
+
+        Assert.assertFalse(
+                this.presignedEnvelopes.hold(DEVICE_IDENTIFICATION, new SignedOslpEnvelopeDto(null, unsigned)));
+        Assert.assertEquals(0, this.presignedEnvelopes.getSize());
+    }
+
+    @Test
+    public void envelopeIsNotUsedForOtherStep() {
+        this.presignedEnvelopes.expect(DEVICE_IDENTIFICATION, this.unsigned(11, 2));
+
+        Assert.assertNull(this.presignedEnvelopes.take(DEVICE_IDENTIFICATION, 12, CORRELATION_UID, MESSAGE_TYPE,
+                this.payload(2)));
+        Assert.assertNull(this.presignedEnvelopes.take(DEVICE_IDENTIFICATION, 11, CORRELATION_UID, MESSAGE_TYPE,
+                this.payload(3)));
+        Assert.assertEquals(0, this.presignedEnvelopes.getSize());
+    }
+
+    @Test
+    public void failedSigningIsOnlyReportedForTakenStep() {
+        final UnsignedOslpEnvelopeDto unsigned = this.unsigned(11, 2);
+        this.presignedEnvelopes.expect(DEVICE_IDENTIFICATION, unsigned);
+        Assert.assertTrue(this.presignedEnvelopes.signingFailed(DEVICE_IDENTIFICATION, unsigned));
+
+        this.presignedEnvelopes.expect(DEVICE_IDENTIFICATION, unsigned);
+        this.presignedEnvelopes.take(DEVICE_IDENTIFICATION, 11, CORRELATION_UID, MESSAGE_TYPE, this.payload(2));
+        Assert.assertFalse(this.presignedEnvelopes.signingFailed(DEVICE_IDENTIFICATION, unsigned));
+    }
+
+    private UnsignedOslpEnvelopeDto unsigned(final int sequenceNumber, final int page) {
+        return new UnsignedOslpEnvelopeDto(SequenceNumberUtils.convertIntegerToByteArray(sequenceNumber),
+                new byte[] { 1, 2, 3 }, this.payload(page), "127.0.0.1", "PUBLIC_LIGHTING", "1.0", MESSAGE_TYPE, 4,
+                0, false, "organisation-1", CORRELATION_UID, null);
+    }
+
+    private Oslp.Message payload(final int page) {
+        return Oslp.Message.newBuilder().setGetPowerUsageHistoryRequest(Oslp.GetPowerUsageHistoryRequest.newBuilder()
+                .setTimePeriod(Oslp.TimePeriod.newBuilder().setStartTime("20261001000000")
+                        .setEndTime("20261018000000"))
+                .setTermType(Oslp.HistoryTermType.Short).setPage(page)).build();
+    }
+}
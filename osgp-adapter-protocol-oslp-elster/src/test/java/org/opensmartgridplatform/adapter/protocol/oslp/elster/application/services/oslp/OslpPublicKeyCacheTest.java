@@ -0,0 +1,72 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
+
+public class OslpPublicKeyCacheTest {
+
+    private final OslpPublicKeyCache cache = new OslpPublicKeyCache("EC", "SunEC", 100, 10);
+
+    @Test
+    public void keyIsFoundByIdentificationWithoutUid() throws IOException, GeneralSecurityException {
+        final String encodedPublicKey = encodedPublicKey();
+
+        final PublicKey parsed = this.cache.getPublicKey(this.device(null, encodedPublicKey));
+        final PublicKey cached = this.cache.getPublicKey(this.device(null, encodedPublicKey));
+
+        Assert.assertSame(parsed, cached);
+        Assert.assertEquals(1, this.cache.getMissCount());
+        Assert.assertEquals(1, this.cache.getHitCount());
+    }
+
+    @Test
+    public void keyIsFoundByIdentificationAfterUidChanged() throws IOException, GeneralSecurityException {
+        final String encodedPublicKey = encodedPublicKey();
+
+        final PublicKey parsed = this.cache.getPublicKey(this.device("uid-1", encodedPublicKey));
+        final PublicKey cached = this.cache.getPublicKey(this.device("uid-2", encodedPublicKey));
+
+        Assert.assertSame(parsed, cached);
+        Assert.assertEquals(1, this.cache.getMissCount());
+        Assert.assertEquals(2, this.cache.getSizeByDeviceUid());
+        Assert.assertEquals(1, this.cache.getSizeByDeviceIdentification());
+        Assert.assertEquals(3, this.cache.getSize());
+    }
+
+    @Test
+    public void changedKeyIsParsedAgain() throws IOException, GeneralSecurityException {
+        final PublicKey first = this.cache.getPublicKey(this.device("uid-1", encodedPublicKey()));
+        final PublicKey second = this.cache.getPublicKey(this.device("uid-1", encodedPublicKey()));
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(2, this.cache.getMissCount());
+        Assert.assertEquals(0, this.cache.getHitCount());
+    }
+
+    private OslpDevice device(final String deviceUid, final String encodedPublicKey) {
+        final OslpDevice oslpDevice = new OslpDevice(deviceUid, "device-1", OslpDevice.SSLD_TYPE);
+        oslpDevice.updatePublicKey(encodedPublicKey);
+        return oslpDevice;
+    }
+
+    private static String encodedPublicKey() throws GeneralSecurityException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        return Base64.encodeBase64String(generator.generateKeyPair().getPublic().getEncoded());
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.domain.entities.OslpDevice;
+
+public class OslpSequenceNumberStoreTest {
+
+    private static final int WINDOW = 6;
+    private static final int MAXIMUM = 65535;
+
+    private final List<Object[]> writes = new ArrayList<>();
+
+    private boolean failWrites;
+
+    private OslpSequenceNumberStore store;
+
+    private OslpDevice device;
+
+    @Before
+    public void setUp() {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+            @Override
+            public int update(final String sql, final Object... args) {
+                OslpSequenceNumberStoreTest.this.failIfRequested();
+                OslpSequenceNumberStoreTest.this.writes.add(args);
+                return 1;
+            }
+
+            @Override
+            public int[] batchUpdate(final String sql, final List<Object[]> batchArgs) {
+                OslpSequenceNumberStoreTest.this.failIfRequested();
+                OslpSequenceNumberStoreTest.this.writes.addAll(batchArgs);
+                return new int[batchArgs.size()];
+            }
+        };
+        this.store = new OslpSequenceNumberStore(jdbcTemplate, WINDOW, MAXIMUM, 1000);
+        this.device = new OslpDevice("uid", "SSLD_000-00-01", OslpDevice.SSLD_TYPE);
+        this.device.setSequenceNumber(100);
+    }
+
+    @Test
+    public void updatesAreKeptInMemoryWithinTheWindow() {
+        for (int sequenceNumber = 101; sequenceNumber < 100 + WINDOW; sequenceNumber++) {
+            this.store.updateSequenceNumber(this.device, sequenceNumber);
+        }
+
+        Assert.assertEquals(Integer.valueOf(100 + WINDOW - 1), this.store.getSequenceNumber(this.device));
+        Assert.assertTrue(this.writes.isEmpty());
+    }
+
+    @Test
+    public void updateIsWrittenImmediatelyAtTheWindow() {
+        for (int sequenceNumber = 101; sequenceNumber <= 100 + WINDOW; sequenceNumber++) {
+            this.store.updateSequenceNumber(this.device, sequenceNumber);
+        }
+
+        Assert.assertEquals(1, this.writes.size());
+        Assert.assertEquals(100 + WINDOW, this.writes.get(0)[0]);
+    }
+
+    @Test
+    public void stepsAreCountedOverTheRollOver() {
+        this.device.setSequenceNumber(MAXIMUM - 1);
+
+        this.store.updateSequenceNumber(this.device, MAXIMUM);
+        this.store.updateSequenceNumber(this.device, 0);
+        this.store.updateSequenceNumber(this.device, 1);
+
+        Assert.assertTrue(this.writes.isEmpty());
+    }
+
+    @Test
+    public void flushWritesPendingSequenceNumbersOnce() {
+        this.store.updateSequenceNumber(this.device, 101);
+
+        this.store.flush();
+        this.store.flush();
+
+        Assert.assertEquals(1, this.writes.size());
+        Assert.assertEquals(101, this.writes.get(0)[0]);
+        Assert.assertEquals("SSLD_000-00-01", this.writes.get(0)[1]);
+        Assert.assertEquals(0, this.store.getPendingCount());
+    }
+
+    @Test
+    public void failedWriteStaysPendingUntilItSucceeds() {
+        this.store.updateSequenceNumber(this.device, 101);
+        this.failWrites = true;
+
+        this.store.flush();
+
+        Assert.assertEquals(1, this.store.getPendingCount());
+        Assert.assertEquals(1, this.store.getFlushFailures());
+
+        this.failWrites = false;
+        this.store.flush();
+
+        Assert.assertEquals(0, this.store.getPendingCount());
+        Assert.assertEquals(101, this.writes.get(0)[0]);
+    }
+
+    @Test
+    public void noSequenceNumberIsIssuedBeyondTheWindowWhileWritesFail() {
+        this.failWrites = true;
+        for (int sequenceNumber = 101; sequenceNumber <= 100 + WINDOW; sequenceNumber++) {
+            this.store.updateSequenceNumber(this.device, sequenceNumber);
+        }
+
+        try {
+            this.store.getSequenceNumber(this.device);
+            Assert.fail("Expected the lookup to fail while the sequence number can not be written");
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(this.writes.isEmpty());
+        }
+
+        this.failWrites = false;
+
+        Assert.assertEquals(Integer.valueOf(100 + WINDOW), this.store.getSequenceNumber(this.device));
+        Assert.assertEquals(1, this.writes.size());
+    }
+
+    @Test
+    public void applyToCopiesTheCurrentSequenceNumber() {
+        this.store.updateSequenceNumber(this.device, 103);
+        final OslpDevice stale = new OslpDevice("uid", "SSLD_000-00-01", OslpDevice.SSLD_TYPE);
+        stale.setSequenceNumber(100);
+
+        this.store.applyTo(stale);
+
+        Assert.assertEquals(Integer.valueOf(103), stale.getSequenceNumber());
+    }
+
+    private void failIfRequested() {
+        if (this.failWrites) {
+            throw new DataAccessResourceFailureException("Database not available");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.SigningServerRequestMessageSender;
+import org.opensmartgridplatform.oslp.Oslp;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeBatchDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+public class OslpSigningRequestBatcherTest {
+
+    private static final byte[] SEQUENCE_NUMBER = new byte[] { 0, 1 };
+    private static final byte[] DEVICE_ID = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+    private static final String SIGNING_REQUEST = "SIGNING_REQUEST";
+
+    private final SigningServerRequestMessageSender sender = mock(SigningServerRequestMessageSender.class);
+    private final OslpSigningService oslpSigningService = mock(OslpSigningService.class);
+
+    private OslpSigningRequestBatcher batcher;
+
+    @After
+    public void tearDown() {
+        this.batcher.shutdown();
+    }
+
+    @Test
+    public void batchIsSentWhenTheWindowCloses() {
+        this.start(10, 50);
+
+        this.batcher.submit(this.request("device-1", "correlation-1"), 4);
+        this.batcher.submit(this.request("device-2", "correlation-2"), 6);
+
+        final ArgumentCaptor<RequestMessage> request = ArgumentCaptor.forClass(RequestMessage.class);
+        verify(this.sender, timeout(1000)).send(request.capture(),
+                eq(UnsignedOslpEnvelopeBatchDto.SIGNING_BATCH_REQUEST_TYPE), eq(6));
+        final UnsignedOslpEnvelopeBatchDto batch = (UnsignedOslpEnvelopeBatchDto) request.getValue().getRequest();
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals("device-1", batch.getDeviceIdentification(0));
+        Assert.assertEquals("device-2", batch.getDeviceIdentification(1));
+        Assert.assertEquals(0, this.batcher.getPendingSize());
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaitingForTheWindow() {
+        this.start(2, 60000);
+
+        this.batcher.submit(this.request("device-1", "correlation-1"), 4);
+        this.batcher.submit(this.request("device-2", "correlation-2"), 4);
+
+        verify(this.sender).send(any(RequestMessage.class),
+                eq(UnsignedOslpEnvelopeBatchDto.SIGNING_BATCH_REQUEST_TYPE), eq(4));
+        Assert.assertEquals(0, this.batcher.getPendingSize());
+        Assert.assertEquals(1, this.batcher.getBatchesSent());
+        Assert.assertEquals(2, this.batcher.getEnvelopesBatched());
+    }
+
+    @Test
+    public void responseToDeviceIsNotBatched() {
+        this.start(10, 60000);
+        final UnsignedOslpEnvelopeDto response = new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER, DEVICE_ID,
+                this.payload(), "correlation-1");
+        final RequestMessage requestMessage = new RequestMessage("correlation-1", "organisation-1", "device-1",
+                response);
+
+        this.batcher.submit(requestMessage, 4);
+
+        verify(this.sender).send(requestMessage, SIGNING_REQUEST, 4);
+        Assert.assertEquals(0, this.batcher.getPendingSize());
+    }
+
+    @Test
+    public void envelopesOfBatchThatCanNotBeSentAreHandledAsErrors() {
+        this.start(2, 60000);
+        doThrow(new IllegalStateException("Broker unavailable")).when(this.sender).send(any(RequestMessage.class),
+                anyString(), anyInt());
+
+        this.batcher.submit(this.request("device-1", "correlation-1"), 4);
+        this.batcher.submit(this.request("device-2", "correlation-2"), 4);
+
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.oslpSigningService, times(2)).handleError(anyString(), response.capture());
+        final List<ResponseMessage> responses = response.getAllValues();
+        Assert.assertEquals("correlation-1", responses.get(0).getCorrelationUid());
+        Assert.assertEquals("correlation-2", responses.get(1).getCorrelationUid());
+        for (final ResponseMessage responseMessage : responses) {
+            Assert.assertEquals(ResponseMessageResultType.NOT_OK, responseMessage.getResult());
+            Assert.assertTrue(responseMessage.getDataObject() instanceof UnsignedOslpEnvelopeDto);
+        }
+        Assert.assertEquals(0, this.batcher.getBatchesSent());
+    }
+
+    private void start(final int maxBatchSize, final long windowMillis) {
+        this.batcher = new OslpSigningRequestBatcher(maxBatchSize, windowMillis);
+        ReflectionTestUtils.setField(this.batcher, "signingServerRequestMessageSender", this.sender);
+        ReflectionTestUtils.setField(this.batcher, "oslpSigningService", this.oslpSigningService);
+        this.batcher.start();
+    }
+
+    private RequestMessage request(final String deviceIdentification, final String correlationUid) {
+        final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER,
+                DEVICE_ID, this.payload(), "127.0.0.1", "PUBLIC_LIGHTING", "1.0", "GET_STATUS", 4, 0, false,
+                "organisation-1", correlationUid, null);
+        return new RequestMessage(correlationUid, "organisation-1", deviceIdentification, unsignedOslpEnvelopeDto);
+    }
+
+    private Oslp.Message payload() {
+        return Oslp.Message.newBuilder().setGetStatusRequest(Oslp.GetStatusRequest.newBuilder()).build();
+    }
+}
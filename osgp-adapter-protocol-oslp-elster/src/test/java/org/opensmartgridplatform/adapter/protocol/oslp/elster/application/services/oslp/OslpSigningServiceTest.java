@@ -0,0 +1,77 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.KeyPairGenerator;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging.DeviceResponseMessageSender;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceMailboxes;
+import org.opensmartgridplatform.oslp.Oslp;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OslpSigningServiceTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+    private static final String CORRELATION_UID = "correlation-1";
+
+    @Mock
+    private DeviceResponseMessageSender deviceResponseMessageSender;
+
+    @Mock
+    private OslpPrivateKeyProvider oslpPrivateKeyProvider;
+
+    @Mock
+    private OslpDeviceMailboxes oslpDeviceMailboxes;
+
+    @Mock
+    private OslpPresignedEnvelopes oslpPresignedEnvelopes;
+
+    @InjectMocks
+    private OslpSigningService oslpSigningService;
+
+    @Before
+    public void setUp() throws Exception {
+        ReflectionTestUtils.setField(this.oslpSigningService, "oslpSigningInProcess", true);
+        ReflectionTestUtils.setField(this.oslpSigningService, "oslpSignatureProvider", "SunEC");
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        when(this.oslpPrivateKeyProvider.getPrivateKey()).thenReturn(generator.generateKeyPair().getPrivate());
+    }
+
+    @Test
+    public void failureToSignInProcessIsReportedAsNotOk() {
+        ReflectionTestUtils.setField(this.oslpSigningService, "oslpSignature", "UnknownSignatureAlgorithm");
+
+        this.oslpSigningService.buildAndSignEnvelope("organisation-1", DEVICE_IDENTIFICATION, CORRELATION_UID,
+                new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }, new byte[] { 0, 1 }, "127.0.0.1",
+                "PUBLIC_LIGHTING", "1.0", "GET_STATUS", 4, 0, false,
+                Oslp.Message.newBuilder().setGetStatusRequest(Oslp.GetStatusRequest.newBuilder()).build(), null);
+
+        verify(this.oslpDeviceMailboxes).exchangeFinished(DEVICE_IDENTIFICATION, 1);
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.deviceResponseMessageSender).send(response.capture());
+        Assert.assertEquals(ResponseMessageResultType.NOT_OK, response.getValue().getResult());
+        Assert.assertEquals(CORRELATION_UID, response.getValue().getCorrelationUid());
+        Assert.assertNotNull(response.getValue().getOsgpException());
+    }
+}
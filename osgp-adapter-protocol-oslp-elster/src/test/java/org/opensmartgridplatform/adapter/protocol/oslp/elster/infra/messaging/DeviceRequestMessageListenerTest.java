@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.jms.JMSException;
+import javax.jms.ObjectMessage;
+
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpParkedRequestStore;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceMailboxes;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.OslpDeviceReachability;
+import org.opensmartgridplatform.shared.infra.jms.Constants;
+import org.opensmartgridplatform.shared.infra.jms.MessageProcessor;
+import org.opensmartgridplatform.shared.infra.jms.MessageProcessorMap;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceRequestMessageListenerTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+
+    @Mock
+    private MessageProcessorMap oslpRequestMessageProcessorMap;
+
+    @Mock
+    private DeviceResponseMessageSender deviceResponseMessageSender;
+
+    @Mock
+    private OslpDeviceMailboxes oslpDeviceMailboxes;
+
+    @Mock
+    private OslpDeviceReachability oslpDeviceReachability;
+
+    @Mock
+    private OslpParkedRequestStore oslpParkedRequestStore;
+
+    @Mock
+    private MessageProcessor processor;
+
+    @InjectMocks
+    private DeviceRequestMessageListener listener;
+
+    @Before
+    public void setUp() throws JMSException {
+        when(this.oslpRequestMessageProcessorMap.getMessageProcessor(any(ObjectMessage.class)))
+                .thenReturn(this.processor);
+        when(this.oslpDeviceReachability.allowRequest(DEVICE_IDENTIFICATION)).thenReturn(true);
+        when(this.oslpDeviceMailboxes.submit(eq(DEVICE_IDENTIFICATION), any(OslpDeviceMailboxes.Request.class)))
+                .thenReturn(true);
+    }
+
+    @Test
+    public void queuedRequestIsProcessedWithCopyOfMessage() throws JMSException {
+        final ActiveMQObjectMessage message = new ActiveMQObjectMessage();
+        message.setStringProperty(Constants.DEVICE_IDENTIFICATION, DEVICE_IDENTIFICATION);
+        message.setObject("request");
+
+        this.listener.onMessage(message);
+        verify(this.processor, never()).processMessage(any(ObjectMessage.class));
+        this.queuedRequest().run();
+
+        final ArgumentCaptor<ObjectMessage> processed = ArgumentCaptor.forClass(ObjectMessage.class);
+        verify(this.processor).processMessage(processed.capture());
+        Assert.assertNotSame(message, processed.getValue());
+        Assert.assertEquals(DEVICE_IDENTIFICATION,
+                processed.getValue().getStringProperty(Constants.DEVICE_IDENTIFICATION));
+        Assert.assertEquals("request", processed.getValue().getObject());
+    }
+
+    @Test
+    public void failureOfQueuedRequestIsReportedAsNotOk() throws JMSException {
+        final ObjectMessage message = mock(ObjectMessage.class);
+        when(message.getStringProperty(Constants.DEVICE_IDENTIFICATION)).thenReturn(DEVICE_IDENTIFICATION);
+        doThrow(new JMSException("failed")).when(this.processor).processMessage(message);
+
+        this.listener.onMessage(message);
+        this.queuedRequest().run();
+
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.deviceResponseMessageSender).send(response.capture());
+        Assert.assertEquals(ResponseMessageResultType.NOT_OK, response.getValue().getResult());
+    }
+
+    @Test
+    public void droppedRequestIsReportedAsNotOk() throws JMSException {
+        final ActiveMQObjectMessage message = new ActiveMQObjectMessage();
+        message.setStringProperty(Constants.DEVICE_IDENTIFICATION, DEVICE_IDENTIFICATION);
+        message.setObject("request");
+
+        this.listener.onMessage(message);
+        this.queuedRequest().dropped();
+
+        verify(this.processor, never()).processMessage(any(ObjectMessage.class));
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.deviceResponseMessageSender).send(response.capture());
+        Assert.assertEquals(ResponseMessageResultType.NOT_OK, response.getValue().getResult());
+    }
+
+    private OslpDeviceMailboxes.Request queuedRequest() {
+        final ArgumentCaptor<OslpDeviceMailboxes.Request> request = ArgumentCaptor
+                .forClass(OslpDeviceMailboxes.Request.class);
+        verify(this.oslpDeviceMailboxes).submit(eq(DEVICE_IDENTIFICATION), request.capture());
+        return request.getValue();
+    }
+}
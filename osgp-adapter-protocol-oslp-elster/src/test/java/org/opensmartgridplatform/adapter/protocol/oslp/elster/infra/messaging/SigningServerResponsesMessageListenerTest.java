@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.messaging;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.application.services.oslp.OslpSigningService;
+import org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking.SequenceNumberUtils;
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
+import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
+import org.opensmartgridplatform.shared.infra.jms.Constants;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SigningServerResponsesMessageListenerTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+    private static final String CORRELATION_UID = "correlation-1";
+    private static final int SEQUENCE_NUMBER = 42;
+
+    @Mock
+    private OslpSigningService oslpSigningService;
+
+    @InjectMocks
+    private SigningServerResponsesMessageListener listener;
+
+    @Test
+    public void undecodableSignedEnvelopeIsReportedAsNotOk() throws JMSException {
+        final ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        this.setContext(message);
+        message.writeBytes(new byte[] { 99, 1, 2, 3 });
+        message.reset();
+
+        this.listener.onMessage(message);
+
+        this.verifyNotOkReported();
+    }
+
+    @Test
+    public void errorReplyWithoutEnvelopeIsReportedAsNotOk() throws JMSException {
+        final ActiveMQObjectMessage message = new ActiveMQObjectMessage();
+        this.setContext(message);
+        message.setObject(ResponseMessage.newResponseMessageBuilder().withCorrelationUid(CORRELATION_UID)
+                .withOrganisationIdentification("organisation-1").withDeviceIdentification(DEVICE_IDENTIFICATION)
+                .withResult(ResponseMessageResultType.NOT_OK)
+                .withOsgpException(new OsgpException(ComponentType.UNKNOWN, "Unable to decode envelope to sign", null))
+                .build());
+
+        this.listener.onMessage(message);
+
+        this.verifyNotOkReported();
+    }
+
+    private void setContext(final ActiveMQMessage message) throws JMSException {
+        message.setJMSType("SIGNING_RESPONSE");
+        message.setJMSCorrelationID(CORRELATION_UID);
+        message.setStringProperty(Constants.ORGANISATION_IDENTIFICATION, "organisation-1");
+        message.setStringProperty(Constants.DEVICE_IDENTIFICATION, DEVICE_IDENTIFICATION);
+        message.setStringProperty(OslpSigningMessageCodec.ENVELOPE_TYPE_PROPERTY,
+                UnsignedOslpEnvelopeDto.OSLP_REQUEST_TYPE);
+        message.setStringProperty(OslpSigningMessageCodec.MESSAGE_TYPE_PROPERTY, "GET_STATUS");
+        message.setIntProperty(OslpSigningMessageCodec.SEQUENCE_NUMBER_PROPERTY, SEQUENCE_NUMBER);
+        message.setStringProperty(Constants.DOMAIN, "PUBLIC_LIGHTING");
+        message.setStringProperty(Constants.DOMAIN_VERSION, "1.0");
+        message.setBooleanProperty(Constants.IS_SCHEDULED, false);
+    }
+
+    private void verifyNotOkReported() {
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.oslpSigningService).handleError(eq(DEVICE_IDENTIFICATION), response.capture());
+        Assert.assertEquals(ResponseMessageResultType.NOT_OK, response.getValue().getResult());
+        Assert.assertEquals(CORRELATION_UID, response.getValue().getCorrelationUid());
+
+        final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = (UnsignedOslpEnvelopeDto) response.getValue()
+                .getDataObject();
+        Assert.assertEquals(SEQUENCE_NUMBER,
+                SequenceNumberUtils.convertByteArrayToInteger(unsignedOslpEnvelopeDto.getSequenceNumber()).intValue());
+        Assert.assertEquals("GET_STATUS", unsignedOslpEnvelopeDto.getMessageType());
+        Assert.assertEquals("PUBLIC_LIGHTING", unsignedOslpEnvelopeDto.getDomain());
+        Assert.assertEquals(CORRELATION_UID, unsignedOslpEnvelopeDto.getCorrelationUid());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.opensmartgridplatform.oslp.OslpEnvelope;
+
+public class OslpChannelHandlerTest {
+
+    private static final int CHANNEL_ID = 7;
+
+    private final HashedWheelTimer timer = new HashedWheelTimer();
+    private final List<Throwable> reported = new ArrayList<>();
+
+    private final OslpChannelHandlerClient handler = new OslpChannelHandlerClient();
+    private final ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+    private final Channel channel = mock(Channel.class);
+
+    @Before
+    public void setUp() {
+        when(this.channel.getId()).thenReturn(CHANNEL_ID);
+        this.handler.callbackHandlers = new OslpChannelRegistry<>(this.timer, 60000);
+        this.handler.callbackHandlers.register(this.channel, new OslpCallbackHandler(new OslpResponseHandler() {
+            @Override
+            public void handleResponse(final OslpEnvelope oslpResponse) {
+                Assert.fail("Unexpected response");
+            }
+
+            @Override
+            public void handleException(final Throwable t) {
+                OslpChannelHandlerTest.this.reported.add(t);
+            }
+        }));
+    }
+
+    @After
+    public void tearDown() {
+        this.timer.stop();
+    }
+
+    @Test
+    public void failedConnectIsReportedOnce() throws Exception {
+        final ConnectException cause = new ConnectException("Connection refused");
+        final ExceptionEvent exceptionEvent = mock(ExceptionEvent.class);
+        when(exceptionEvent.getChannel()).thenReturn(this.channel);
+        when(exceptionEvent.getCause()).thenReturn(cause);
+        final ChannelStateEvent closedEvent = mock(ChannelStateEvent.class);
+        when(closedEvent.getChannel()).thenReturn(this.channel);
+
+        this.handler.exceptionCaught(this.ctx, exceptionEvent);
+        this.handler.channelClosed(this.ctx, closedEvent);
+
+        Assert.assertEquals(1, this.reported.size());
+        Assert.assertSame(cause, this.reported.get(0));
+        Assert.assertEquals(0, this.handler.callbackHandlers.getSize());
+    }
+
+    @Test
+    public void channelClosedWithoutExceptionIsReportedOnce() throws Exception {
+        final ChannelStateEvent closedEvent = mock(ChannelStateEvent.class);
+        when(closedEvent.getChannel()).thenReturn(this.channel);
+
+        this.handler.channelClosed(this.ctx, closedEvent);
+        this.handler.channelClosed(this.ctx, closedEvent);
+
+        Assert.assertEquals(1, this.reported.size());
+    }
+}
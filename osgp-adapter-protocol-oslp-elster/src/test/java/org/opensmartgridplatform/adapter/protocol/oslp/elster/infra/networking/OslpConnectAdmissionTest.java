@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OslpConnectAdmissionTest {
+
+    private final List<String> connected = new ArrayList<>();
+
+    @Test
+    public void connectsWithinBudgetImmediately() throws IOException {
+        final OslpConnectAdmission admission = new OslpConnectAdmission(2, 1, 10, 60000);
+
+        admission.admit("device-1", 4, this.connector("device-1"));
+        admission.admit("device-2", 4, this.connector("device-2"));
+
+        Assert.assertEquals(Arrays.asList("device-1", "device-2"), this.connected);
+        Assert.assertEquals(2, admission.getConnects());
+    }
+
+    @Test
+    public void waitingConnectsStartByPriority() throws IOException {
+        final OslpConnectAdmission admission = new OslpConnectAdmission(1, 1, 10, 60000);
+        admission.admit("device-1", 4, this.connector("device-1"));
+
+        admission.admit("device-2", 2, this.connector("device-2"));
+        admission.admit("device-3", 6, this.connector("device-3"));
+        Assert.assertEquals(2, admission.getPendingConnects());
+
+        admission.release("device-1");
+        Assert.assertEquals(Arrays.asList("device-1", "device-3"), this.connected);
+
+        admission.release("device-3");
+        Assert.assertEquals(Arrays.asList("device-1", "device-3", "device-2"), this.connected);
+    }
+
+    @Test
+    public void secondConnectToSameDeviceWaits() throws IOException {
+        final OslpConnectAdmission admission = new OslpConnectAdmission(10, 1, 10, 60000);
+        admission.admit("device-1", 4, this.connector("device-1 first"));
+        admission.admit("device-1", 4, this.connector("device-1 second"));
+        admission.admit("device-2", 4, this.connector("device-2"));
+
+        Assert.assertEquals(Arrays.asList("device-1 first", "device-2"), this.connected);
+
+        admission.release("device-1");
+        Assert.assertEquals(Arrays.asList("device-1 first", "device-2", "device-1 second"), this.connected);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsWhenTooManyConnectsWait() throws IOException {
+        final OslpConnectAdmission admission = new OslpConnectAdmission(1, 1, 1, 60000);
+        admission.admit("device-1", 4, this.connector("device-1"));
+        admission.admit("device-2", 4, this.connector("device-2"));
+
+        admission.admit("device-3", 4, this.connector("device-3"));
+    }
+
+    @Test
+    public void expiredConnectDoesNotKeepBudget() throws IOException, InterruptedException {
+        final OslpConnectAdmission admission = new OslpConnectAdmission(1, 1, 10, 0);
+        admission.admit("device-1", 4, this.connector("device-1"));
+        final List<String> notAdmitted = new ArrayList<>();
+        admission.admit("device-2", 4, new OslpConnectAdmission.Connector() {
+            @Override
+            public void connect() {
+                Assert.fail("Connected after expiry: device-2");
+            }
+
+            @Override
+            public void notAdmitted(final IOException e) {
+                notAdmitted.add("device-2");
+            }
+        });
+        Thread.sleep(5);
+
+        admission.release("device-1");
+
+        Assert.assertEquals(Arrays.asList("device-2"), notAdmitted);
+        Assert.assertEquals(0, admission.getConnects());
+        Assert.assertEquals(1, admission.getExpiredConnects());
+        admission.admit("device-3", 4, this.connector("device-3"));
+        Assert.assertEquals(Arrays.asList("device-1", "device-3"), this.connected);
+    }
+
+    private OslpConnectAdmission.Connector connector(final String name) {
+        return new OslpConnectAdmission.Connector() {
+            @Override
+            public void connect() {
+                OslpConnectAdmissionTest.this.connected.add(name);
+            }
+
+            @Override
+            public void notAdmitted(final IOException e) {
+                Assert.fail("Not admitted: " + name);
+            }
+        };
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OslpDeviceMailboxesTest {
+
+    private static final String DEVICE = "SSLD_000-00-01";
+    private static final String OTHER_DEVICE = "SSLD_000-00-02";
+
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final List<String> dropped = new CopyOnWriteArrayList<>();
+
+    private HashedWheelTimer timer;
+
+    private OslpDeviceMailboxes mailboxes;
+
+    @Before
+    public void setUp() {
+        this.timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        this.mailboxes = new OslpDeviceMailboxes(this.timer, 2, 2, 200);
+    }
+
+    @After
+    public void tearDown() {
+        this.mailboxes.shutdown();
+        this.timer.stop();
+    }
+
+    @Test
+    public void requestForIdleDeviceIsProcessedImmediately() {
+        Assert.assertTrue(this.mailboxes.submit(DEVICE, this.request("first")));
+
+        Assert.assertEquals(Collections.singletonList("first"), this.processed);
+        Assert.assertEquals(0, this.mailboxes.getMailboxes());
+    }
+
+    @Test
+    public void requestWaitsForExchangeOfSameDevice() throws InterruptedException {
+        this.mailboxes.submit(DEVICE, this.exchange("first", 1));
+        final CountDownLatch second = new CountDownLatch(1);
+        this.mailboxes.submit(DEVICE, this.request("second", second));
+        this.mailboxes.submit(OTHER_DEVICE, this.request("other"));
+
+        Assert.assertEquals(1, this.mailboxes.getQueuedRequests(DEVICE));
+        Assert.assertFalse(this.processed.contains("second"));
+        Assert.assertTrue(this.processed.contains("other"));
+
+        this.mailboxes.exchangeFinished(DEVICE, 1);
+
+        Assert.assertTrue(second.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(this.processed.contains("second"));
+    }
+
+    @Test
+    public void finishingUnknownExchangeDoesNotReleaseDevice() {
+        this.mailboxes.submit(DEVICE, this.exchange("first", 1));
+        this.mailboxes.submit(DEVICE, this.request("second"));
+
+        this.mailboxes.exchangeFinished(DEVICE, 2);
+
+        Assert.assertEquals(1, this.mailboxes.getQueuedRequests(DEVICE));
+    }
+
+    @Test
+    public void requestsAboveMaximumAreRejected() {
+        this.mailboxes.submit(DEVICE, this.exchange("first", 1));
+
+        Assert.assertTrue(this.mailboxes.submit(DEVICE, this.request("second")));
+        Assert.assertTrue(this.mailboxes.submit(DEVICE, this.request("third")));
+        Assert.assertFalse(this.mailboxes.submit(DEVICE, this.request("fourth")));
+        Assert.assertEquals(1, this.mailboxes.getRejectedRequestCount());
+    }
+
+    @Test
+    public void exchangeThatTimesOutReleasesDevice() throws InterruptedException {
+        this.mailboxes.submit(DEVICE, this.exchange("first", 1));
+        final CountDownLatch second = new CountDownLatch(1);
+        this.mailboxes.submit(DEVICE, this.request("second", second));
+
+        Assert.assertTrue(second.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(1, this.mailboxes.getTimedOutExchangeCount());
+    }
+
+    @Test
+    public void queuedRequestsAreDroppedOnShutdown() {
+        this.mailboxes.submit(DEVICE, this.exchange("first", 1));
+        this.mailboxes.submit(DEVICE, this.request("second"));
+        this.mailboxes.submit(DEVICE, this.request("third"));
+
+        this.mailboxes.shutdown();
+
+        Assert.assertEquals(Arrays.asList("second", "third"), this.dropped);
+        Assert.assertEquals(0, this.mailboxes.getQueuedRequests(DEVICE));
+        Assert.assertEquals(2, this.mailboxes.getDroppedRequestCount());
+    }
+
+    @Test
+    public void requestQueuedAfterShutdownIsDropped() {
+        this.mailboxes.submit(DEVICE, this.exchange("first", 1));
+        this.mailboxes.shutdown();
+        this.mailboxes.submit(DEVICE, this.request("second"));
+
+        this.mailboxes.exchangeFinished(DEVICE, 1);
+
+        Assert.assertEquals(Collections.singletonList("second"), this.dropped);
+        Assert.assertFalse(this.processed.contains("second"));
+    }
+
+    private OslpDeviceMailboxes.Request request(final String name) {
+        return this.request(name, new CountDownLatch(1));
+    }
+
+    private OslpDeviceMailboxes.Request request(final String name, final CountDownLatch done) {
+        return new OslpDeviceMailboxes.Request() {
+            @Override
+            public void run() {
+                OslpDeviceMailboxesTest.this.processed.add(name);
+                done.countDown();
+            }
+
+            @Override
+            public void dropped() {
+                OslpDeviceMailboxesTest.this.dropped.add(name);
+            }
+        };
+    }
+
+    private OslpDeviceMailboxes.Request exchange(final String name, final int sequenceNumber) {
+        return new OslpDeviceMailboxes.Request() {
+            @Override
+            public void run() {
+                OslpDeviceMailboxesTest.this.processed.add(name);
+                OslpDeviceMailboxesTest.this.mailboxes.exchangeStarted(DEVICE, sequenceNumber);
+            }
+
+            @Override
+            public void dropped() {
+                OslpDeviceMailboxesTest.this.dropped.add(name);
+            }
+        };
+    }
+}
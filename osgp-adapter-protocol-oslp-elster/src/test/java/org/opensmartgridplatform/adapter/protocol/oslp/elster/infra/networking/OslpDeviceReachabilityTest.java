@@ -0,0 +1,74 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OslpDeviceReachabilityTest {
+
+    private long now = 1000;
+
+    private final OslpDeviceReachability reachability = new OslpDeviceReachability(2, 100, 300) {
+        @Override
+        long currentTimeMillis() {
+            return OslpDeviceReachabilityTest.this.now;
+        }
+    };
+
+    @Test
+    public void failsFastAfterThresholdOfFailedConnects() {
+        this.reachability.connectFailed("device-1");
+        Assert.assertTrue(this.reachability.allowRequest("device-1"));
+
+        this.reachability.connectFailed("device-1");
+        Assert.assertFalse(this.reachability.allowRequest("device-1"));
+        Assert.assertTrue(this.reachability.allowRequest("device-2"));
+        Assert.assertEquals(1, this.reachability.getUnreachableDeviceCount());
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterBackoff() {
+        this.reachability.connectFailed("device-1");
+        this.reachability.connectFailed("device-1");
+
+        this.now += 100;
+        Assert.assertTrue(this.reachability.allowRequest("device-1"));
+        Assert.assertFalse(this.reachability.allowRequest("device-1"));
+        Assert.assertEquals(1, this.reachability.getProbeCount());
+    }
+
+    @Test
+    public void doublesBackoffUpToMaximumOnFailedProbes() {
+        this.reachability.connectFailed("device-1");
+        this.reachability.connectFailed("device-1");
+        this.reachability.connectFailed("device-1");
+
+        this.now += 199;
+        Assert.assertFalse(this.reachability.allowRequest("device-1"));
+        this.now += 1;
+        Assert.assertTrue(this.reachability.allowRequest("device-1"));
+
+        this.reachability.connectFailed("device-1");
+        this.reachability.connectFailed("device-1");
+        this.now += 299;
+        Assert.assertFalse(this.reachability.allowRequest("device-1"));
+        this.now += 1;
+        Assert.assertTrue(this.reachability.allowRequest("device-1"));
+    }
+
+    @Test
+    public void becomesReachableWhenDeviceIsSeen() {
+        this.reachability.connectFailed("device-1");
+        this.reachability.connectFailed("device-1");
+
+        this.reachability.deviceSeen("device-1");
+        Assert.assertTrue(this.reachability.allowRequest("device-1"));
+        Assert.assertFalse(this.reachability.isUnreachable("device-1"));
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.dto.valueobjects.PowerUsageDataDto;
+
+public class OslpPowerUsageHistoryStoreTest {
+
+    private static final String CORRELATION_UID = "correlation-1";
+    private static final String OTHER_CORRELATION_UID = "correlation-2";
+
+    private final OslpPowerUsageHistoryStore store = new OslpPowerUsageHistoryStore(1, 30);
+
+    @Test
+    public void historyHoldsAllPagesInOrder() {
+        final PowerUsageDataDto first = mock(PowerUsageDataDto.class);
+        final PowerUsageDataDto second = mock(PowerUsageDataDto.class);
+
+        this.store.addPage(CORRELATION_UID, 1, Collections.singletonList(first));
+        this.store.addPage(CORRELATION_UID, 2, Collections.<PowerUsageDataDto> emptyList());
+        this.store.addPage(CORRELATION_UID, 3, Collections.singletonList(second));
+
+        Assert.assertEquals(Arrays.asList(first, second), this.store.take(CORRELATION_UID, 3));
+        Assert.assertEquals(0, this.store.getSize());
+    }
+
+    @Test
+    public void historyOfSinglePageIsEmpty() {
+        final List<PowerUsageDataDto> history = this.store.take(CORRELATION_UID, 0);
+
+        Assert.assertNotNull(history);
+        Assert.assertTrue(history.isEmpty());
+    }
+
+    @Test
+    public void historyEvictedWhilePagingIsMissing() {
+        this.store.addPage(CORRELATION_UID, 1, Collections.singletonList(mock(PowerUsageDataDto.class)));
+        this.store.addPage(OTHER_CORRELATION_UID, 1, Collections.singletonList(mock(PowerUsageDataDto.class)));
+        this.store.addPage(CORRELATION_UID, 2, Collections.singletonList(mock(PowerUsageDataDto.class)));
+
+        Assert.assertNull(this.store.take(CORRELATION_UID, 2));
+    }
+
+    @Test
+    public void historyEvictedBeforeLastPageIsMissing() {
+        this.store.addPage(CORRELATION_UID, 1, Collections.singletonList(mock(PowerUsageDataDto.class)));
+        this.store.addPage(OTHER_CORRELATION_UID, 1, Collections.singletonList(mock(PowerUsageDataDto.class)));
+
+        Assert.assertNull(this.store.take(CORRELATION_UID, 1));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.adapter.protocol.oslp.elster.infra.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.oslp.Oslp;
+
+public class OslpSchedulePagingTest {
+
+    @Test
+    public void defaultPageSizeStaysFive() {
+        final OslpSchedulePaging paging = new OslpSchedulePaging(5, null, 1024, null);
+
+        Assert.assertEquals(5, paging.getPageSize("SSLD", this.schedules(12), Oslp.RelayType.LIGHT));
+    }
+
+    @Test
+    public void pageSizeOfDeviceTypeIsOverridden() {
+        final OslpSchedulePaging paging = new OslpSchedulePaging(5, "SSLD=50", 1024, null);
+
+        Assert.assertEquals(12, paging.getPageSize("SSLD", this.schedules(12), Oslp.RelayType.LIGHT));
+        Assert.assertEquals(5, paging.getPageSize("PSLD", this.schedules(12), Oslp.RelayType.LIGHT));
+        Assert.assertEquals(5, paging.getPageSize(null, this.schedules(12), Oslp.RelayType.LIGHT));
+    }
+
+    @Test
+    public void pagesFitInMaximumFrameSize() {
+        final OslpSchedulePaging paging = new OslpSchedulePaging(50, null, 1024, "SSLD=60");
+        final List<Oslp.Schedule> schedules = this.schedules(12);
+
+        final int pageSize = paging.getPageSize("SSLD", schedules, Oslp.RelayType.LIGHT);
+
+        Assert.assertEquals(3, pageSize);
+        final Oslp.SetScheduleRequest page = Oslp.SetScheduleRequest.newBuilder()
+                .addAllSchedules(schedules.subList(0, pageSize)).setScheduleType(Oslp.RelayType.LIGHT)
+                .setPageInfo(Oslp.PageInfo.newBuilder().setCurrentPage(4).setPageSize(pageSize).setTotalPages(4))
+                .build();
+        Assert.assertTrue(page.getSerializedSize() <= 60);
+    }
+
+    private List<Oslp.Schedule> schedules(final int count) {
+        final List<Oslp.Schedule> schedules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            schedules.add(Oslp.Schedule.newBuilder().setWeekday(Oslp.Weekday.MONDAY)
+                    .setActionTime(Oslp.ActionTime.ABSOLUTETIME).setTime("180000").build());
+        }
+        return schedules;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the OSLP benchmarks with the GC profiler enabled, so the results show
+ * the bytes allocated per operation next to the throughput and the latency
+ * percentiles. Accepts the regular JMH command line options, for example a
+ * regular expression to select benchmarks:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar OslpCodecBenchmark -p securitySettings=ECDSA
+ * </pre>
+ */
+public final class OslpBenchmarkRunner {
+
+    private OslpBenchmarkRunner() {
+        // Empty constructor for static main class.
+    }
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class).build();
+
+        new Runner(options).run();
+    }
+}
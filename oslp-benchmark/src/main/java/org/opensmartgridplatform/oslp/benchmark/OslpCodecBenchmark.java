@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.opensmartgridplatform.oslp.OslpDecoder;
+import org.opensmartgridplatform.oslp.OslpEncoder;
+import org.opensmartgridplatform.oslp.OslpEnvelope;
+
+/**
+ * Measures the {@link OslpEncoder} and {@link OslpDecoder} through Netty
+ * embedders, so the handlers run exactly as they do in a channel pipeline.
+ * Signing is done once during setup and is not part of the measurement.
+ * Every invocation encodes a fresh envelope holding the signed security key,
+ * so the payload is serialized each time, as it is for an envelope that has
+ * not been sent before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OslpCodecBenchmark {
+
+    @Param
+    private OslpPayloads payload;
+
+    @Param
+    private OslpSecuritySettings securitySettings;
+
+    private OslpEnvelope signedEnvelope;
+    private OslpEnvelope envelope;
+    private byte[] frame;
+
+    private EncoderEmbedder<ChannelBuffer> encoder;
+    private DecoderEmbedder<OslpEnvelope> decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.signedEnvelope = new OslpEnvelope.Builder().withSignature(this.securitySettings.getSignature())
+                .withProvider(this.securitySettings.getProvider())
+                .withPrimaryKey(this.securitySettings.createPrivateKey())
+                .withDeviceId(new byte[] { 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 })
+                .withSequenceNumber(new byte[] { 0, 1 }).withPayloadMessage(this.payload.create()).build();
+
+        this.encoder = new EncoderEmbedder<ChannelBuffer>(new OslpEncoder());
+        this.decoder = new DecoderEmbedder<OslpEnvelope>(new OslpDecoder(this.securitySettings.getSignature(),
+                this.securitySettings.getProvider()));
+
+        this.encoder.offer(this.signedEnvelope);
+        final ChannelBuffer encoded = this.encoder.poll();
+        this.frame = new byte[encoded.readableBytes()];
+        encoded.readBytes(this.frame);
+    }
+
+    /**
+     * Builds an envelope from the fields of the signed envelope, without its
+     * frame or sign bytes.
+     */
+    @Setup(Level.Invocation)
+    public void setUpEnvelope() {
+        this.envelope = new OslpEnvelope.Builder().withSecurityKey(this.signedEnvelope.getSecurityKey())
+                .withDeviceId(this.signedEnvelope.getDeviceId())
+                .withSequenceNumber(this.signedEnvelope.getSequenceNumber())
+                .withPayloadMessage(this.signedEnvelope.getPayloadMessage()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.encoder.finish();
+        this.decoder.finish();
+    }
+
+    @Benchmark
+    public ChannelBuffer encode() {
+        this.encoder.offer(this.envelope);
+        return this.encoder.poll();
+    }
+
+    @Benchmark
+    public OslpEnvelope decode() {
+        this.decoder.offer(ChannelBuffers.wrappedBuffer(this.frame));
+        return this.decoder.poll();
+    }
+}
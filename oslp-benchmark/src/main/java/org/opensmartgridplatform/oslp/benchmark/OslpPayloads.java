@@ -0,0 +1,95 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp.benchmark;
+
+import com.google.protobuf.ByteString;
+
+import org.opensmartgridplatform.oslp.Oslp;
+import org.opensmartgridplatform.oslp.Oslp.Message;
+
+/**
+ * Realistic OSLP payloads used by the benchmarks, sized to the maximum counts
+ * documented in oslp.proto.
+ */
+public enum OslpPayloads {
+
+    REGISTER_DEVICE_REQUEST {
+        @Override
+        public Message create() {
+            return Message.newBuilder()
+                    .setRegisterDeviceRequest(Oslp.RegisterDeviceRequest.newBuilder()
+                            .setDeviceIdentification("SSLD_000-00-01")
+                            .setIpAddress(ByteString.copyFrom(new byte[] { 10, 0, 0, 1 }))
+                            .setDeviceType(Oslp.DeviceType.SSLD).setHasSchedule(true).setRandomDevice(53568))
+                    .build();
+        }
+    },
+
+    EVENT_NOTIFICATION_REQUEST {
+        @Override
+        public Message create() {
+            final Oslp.EventNotificationRequest.Builder request = Oslp.EventNotificationRequest.newBuilder();
+            for (int i = 0; i < 6; i++) {
+                request.addNotifications(Oslp.EventNotification.newBuilder()
+                        .setEvent(i % 2 == 0 ? Oslp.Event.LIGHT_EVENTS_LIGHT_ON : Oslp.Event.LIGHT_EVENTS_LIGHT_OFF)
+                        .setIndex(ByteString.copyFrom(new byte[] { (byte) (i + 1) }))
+                        .setDescription("Light switched by schedule entry " + i)
+                        .setTimestamp(String.format("201801010%d0000", i)));
+            }
+            return Message.newBuilder().setEventNotificationRequest(request).build();
+        }
+    },
+
+    SET_SCHEDULE_REQUEST {
+        @Override
+        public Message create() {
+            final Oslp.SetScheduleRequest.Builder request = Oslp.SetScheduleRequest.newBuilder()
+                    .setScheduleType(Oslp.RelayType.LIGHT);
+            for (int i = 0; i < 50; i++) {
+                request.addSchedules(Oslp.Schedule.newBuilder()
+                        .setWeekday(Oslp.Weekday.ABSOLUTEDAY).setStartDay("20180101").setEndDay("20181231")
+                        .setActionTime(i % 2 == 0 ? Oslp.ActionTime.SUNSET : Oslp.ActionTime.SUNRISE)
+                        .setWindow(Oslp.Window.newBuilder().setMinutesBefore(15).setMinutesAfter(15))
+                        .addValue(Oslp.LightValue.newBuilder().setIndex(ByteString.copyFrom(new byte[] { 1 }))
+                                .setOn(i % 2 == 0).setDimValue(ByteString.copyFrom(new byte[] { 100 })))
+                        .setTriggerType(Oslp.TriggerType.LIGHT_TRIGGER).setMinimumLightsOn(600).setIndex(i)
+                        .setIsEnabled(true));
+            }
+            request.setPageInfo(Oslp.PageInfo.newBuilder().setCurrentPage(1).setPageSize(50).setTotalPages(1));
+            return Message.newBuilder().setSetScheduleRequest(request).build();
+        }
+    },
+
+    GET_POWER_USAGE_HISTORY_RESPONSE {
+        @Override
+        public Message create() {
+            final Oslp.GetPowerUsageHistoryResponse.Builder response = Oslp.GetPowerUsageHistoryResponse.newBuilder()
+                    .setStatus(Oslp.Status.OK);
+            for (int i = 0; i < 20; i++) {
+                final Oslp.SsldData.Builder ssldData = Oslp.SsldData.newBuilder().setActualCurrent1(1200)
+                        .setActualCurrent2(1210).setActualCurrent3(1190).setActualPower1(276).setActualPower2(278)
+                        .setActualPower3(274).setAveragePowerFactor1(9).setAveragePowerFactor2(9)
+                        .setAveragePowerFactor3(10);
+                for (int relay = 1; relay <= 4; relay++) {
+                    ssldData.addRelayData(Oslp.RelayData.newBuilder()
+                            .setIndex(ByteString.copyFrom(new byte[] { (byte) relay }))
+                            .setTotalLightingMinutes(120000 + i * 60));
+                }
+                response.addPowerUsageData(Oslp.PowerUsageData.newBuilder()
+                        .setRecordTime(String.format("201801%02d000000", i + 1)).setMeterType(Oslp.MeterType.P1)
+                        .setTotalConsumedEnergy(1500000L + i * 1000L).setActualConsumedPower(828)
+                        .setPsldData(Oslp.PsldData.newBuilder().setTotalLightingHours(2000 + i))
+                        .setSsldData(ssldData));
+            }
+            response.setPageInfo(Oslp.PageInfo.newBuilder().setCurrentPage(1).setPageSize(20).setTotalPages(3));
+            return Message.newBuilder().setGetPowerUsageHistoryResponse(response).build();
+        }
+    };
+
+    public abstract Message create();
+}
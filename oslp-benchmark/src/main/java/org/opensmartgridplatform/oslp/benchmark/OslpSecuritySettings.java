@@ -0,0 +1,77 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp.benchmark;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import org.opensmartgridplatform.oslp.OslpUtils;
+import org.opensmartgridplatform.shared.security.CertificateHelper;
+
+/**
+ * Security settings supported by OSLP, with the key pairs of the oslp unit
+ * tests.
+ */
+public enum OslpSecuritySettings {
+
+    ECDSA("EC", "SHA256withECDSA", "SunEC",
+            "MIGHAgEAMBMGByqGSM49AgEGCCqGSM49AwEHBG0wawIBAQQg8ydsIOMoTlBPn6rJezELYFLUUuQe"
+                    + "3GvrhI3TDJj1yNyhRANCAAQ0UmJgxWImQ5wgepQ65nlsK0lvYb/GW6nx4ngLgncDZmWH3Pck8eC1"
+                    + "xsKg1goWpvl7P1um4cIjKyBwfqf8FxZa",
+            "MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAENFJiYMViJkOcIHqUOuZ5bCtJb2G/xlup8eJ4C4J3"
+                    + "A2Zlh9z3JPHgtcbCoNYKFqb5ez9bpuHCIysgcH6n/BcWWg=="),
+
+    RSA_ENCRYPTED_HASH("RSA", OslpUtils.FALLBACK_SIGNATURE, "SunRsaSign",
+            "MIICeAIBADANBgkqhkiG9w0BAQEFAASCAmIwggJeAgEAAoGBAMZLix1u8mSOk8LrMW7wZHgskw0J"
+                    + "VY/EECl5BaxZKtJxIwB3W/9zaceYMgbBSE+7RcjAheRGncmF3DvuD0j40937PyV3OE48YsfPVecP"
+                    + "Xa+NIfVpYWwGa2QEYYvjBZ5FjD6zeubCe80fKhB2bXLM1SDXiuvoemSt161rC4m8hUvXAgMBAAEC"
+                    + "gYEAvOZ6QC/Q+bpZSPaEwQqAq3rLG0ApIivEub1wih7njFH65hbOrStlOZ7jCUxXdp0QfY3p/uzG"
+                    + "o5PBmdXO+dUQ/lcpZSJzvmlf1gfEZAL7088pe9fyvwLRuiCOzw6b+j5AoQLfXrFv3fDZlWf1z82q"
+                    + "Dc8cGNspYrvCSnjSRG4izQECQQD51biejn12Qan57c7nbF++xgaRmBQcURDFhFltb7vGajoYwSvp"
+                    + "9w42pTNL29yAPlFqx9X+FsLCu58g4TJUlDRtAkEAyzA7ET8Az3PqXcL6VwykZQE37HVnLZwb7d4u"
+                    + "y7+TIqXCuGDkHAjQ4bsHrGzheJI8fgqyOmvGxMY3P658aCyu0wJABJQPExDHadBgPg1GmmUZCBT2"
+                    + "79oanD48EXKQdPn0NfmiYOvBU0NMxmGWpBA+ZTc/JLbOzB48qXbovqCB3JzurQJBAJ/iufgeLZMQ"
+                    + "0ZEqRjeNeScJyGnHEIOxXcDVntkxTKRs70aK57Svsz6NH8KsgtePqw47eHfEK0rX9s2jjb2ju4UC"
+                    + "QQDUw3UoM9nLSmPBqPhWpNiTThOISZNmTMXEmEvb0D3A0Tpmbu6ciTr1sJRUFQi4WRTaxaqM3sdj" + "cPjXvilnNkk6",
+            "MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQDGS4sdbvJkjpPC6zFu8GR4LJMNCVWPxBApeQWs"
+                    + "WSrScSMAd1v/c2nHmDIGwUhPu0XIwIXkRp3Jhdw77g9I+NPd+z8ldzhOPGLHz1XnD12vjSH1aWFs"
+                    + "BmtkBGGL4wWeRYw+s3rmwnvNHyoQdm1yzNUg14rr6HpkrdetawuJvIVL1wIDAQAB");
+
+    private final String keyType;
+    private final String signature;
+    private final String provider;
+    private final String privateKeyBase64;
+    private final String publicKeyBase64;
+
+    private OslpSecuritySettings(final String keyType, final String signature, final String provider,
+            final String privateKeyBase64, final String publicKeyBase64) {
+        this.keyType = keyType;
+        this.signature = signature;
+        this.provider = provider;
+        this.privateKeyBase64 = privateKeyBase64;
+        this.publicKeyBase64 = publicKeyBase64;
+    }
+
+    public String getSignature() {
+        return this.signature;
+    }
+
+    public String getProvider() {
+        return this.provider;
+    }
+
+    public PrivateKey createPrivateKey() throws IOException, GeneralSecurityException {
+        return CertificateHelper.createPrivateKeyFromBase64(this.privateKeyBase64, this.keyType, this.provider);
+    }
+
+    public PublicKey createPublicKey() throws IOException, GeneralSecurityException {
+        return CertificateHelper.createPublicKeyFromBase64(this.publicKeyBase64, this.keyType, this.provider);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp.benchmark;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.opensmartgridplatform.oslp.Oslp.Message;
+import org.opensmartgridplatform.oslp.OslpDecoder;
+import org.opensmartgridplatform.oslp.OslpEnvelope;
+import org.opensmartgridplatform.oslp.OslpUtils;
+
+/**
+ * Measures building a signed {@link OslpEnvelope}, validating a received
+ * envelope and creating the bytes to sign. The received envelope is decoded
+ * from its frame by the {@link OslpDecoder} before every invocation, so
+ * validation takes the same path as for a message from a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OslpSigningBenchmark {
+
+    private static final byte[] DEVICE_ID = new byte[] { 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 };
+    private static final byte[] SEQUENCE_NUMBER = new byte[] { 0, 1 };
+
+    @Param
+    private OslpPayloads payload;
+
+    @Param
+    private OslpSecuritySettings securitySettings;
+
+    private Message payloadMessage;
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+    private OslpEnvelope signedEnvelope;
+    private byte[] frame;
+    private DecoderEmbedder<OslpEnvelope> decoder;
+    private OslpEnvelope received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.payloadMessage = this.payload.create();
+        this.privateKey = this.securitySettings.createPrivateKey();
+        this.publicKey = this.securitySettings.createPublicKey();
+        this.signedEnvelope = this.buildSigned();
+        this.frame = this.signedEnvelope.toFrame();
+        this.decoder = new DecoderEmbedder<OslpEnvelope>(new OslpDecoder(this.securitySettings.getSignature(),
+                this.securitySettings.getProvider()));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpReceived() {
+        this.decoder.offer(ChannelBuffers.wrappedBuffer(this.frame));
+        this.received = this.decoder.poll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.decoder.finish();
+    }
+
+    @Benchmark
+    public OslpEnvelope buildSigned() {
+        return new OslpEnvelope.Builder().withSignature(this.securitySettings.getSignature())
+                .withProvider(this.securitySettings.getProvider()).withPrimaryKey(this.privateKey)
+                .withDeviceId(DEVICE_ID).withSequenceNumber(SEQUENCE_NUMBER).withPayloadMessage(this.payloadMessage)
+                .build();
+    }
+
+    /**
+     * Validates an envelope freshly decoded from a frame.
+     */
+    @Benchmark
+    public boolean validate() {
+        return this.received.validate(this.publicKey);
+    }
+
+    @Benchmark
+    public byte[] createSignBytes() {
+        return OslpUtils.createSignBytes(this.signedEnvelope);
+    }
+}
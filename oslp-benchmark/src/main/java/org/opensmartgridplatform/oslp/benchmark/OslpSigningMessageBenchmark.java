@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.opensmartgridplatform.oslp.OslpEnvelope;
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+
+/**
+ * Compares the bodies of the messages exchanged with the signing server:
+ * Java serialization of the request and response messages, as sent in JMS
+ * object messages, against the layout of the {@link OslpSigningMessageCodec},
+ * as sent in JMS bytes messages. Each benchmark writes a body and reads it
+ * back, as sender and receiver do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OslpSigningMessageBenchmark {
+
+    private static final byte[] DEVICE_ID = new byte[] { 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 };
+    private static final byte[] SEQUENCE_NUMBER = new byte[] { 0, 1 };
+
+    @Param
+    private OslpPayloads payload;
+
+    private RequestMessage requestMessage;
+    private UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto;
+    private ResponseMessage responseMessage;
+    private SignedOslpEnvelopeDto signedOslpEnvelopeDto;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.unsignedOslpEnvelopeDto = new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER, DEVICE_ID, this.payload.create(),
+                "10.0.0.1", "PUBLIC_LIGHTING", "1.0", "SET_LIGHT", 4, 0, false, "test-org",
+                "test-org|||SSLD_000-00-01|||20261018000000000", null);
+        this.requestMessage = new RequestMessage(this.unsignedOslpEnvelopeDto.getCorrelationUid(),
+                this.unsignedOslpEnvelopeDto.getOrganisationIdentification(), "SSLD_000-00-01",
+                this.unsignedOslpEnvelopeDto);
+
+        final OslpEnvelope envelope = new OslpEnvelope.Builder()
+                .withSignature(OslpSecuritySettings.ECDSA.getSignature())
+                .withProvider(OslpSecuritySettings.ECDSA.getProvider())
+                .withPrimaryKey(OslpSecuritySettings.ECDSA.createPrivateKey()).withDeviceId(DEVICE_ID)
+                .withSequenceNumber(SEQUENCE_NUMBER)
+                .withPayloadMessage(this.unsignedOslpEnvelopeDto.getPayloadMessage()).build();
+        this.signedOslpEnvelopeDto = new SignedOslpEnvelopeDto(envelope, this.unsignedOslpEnvelopeDto);
+        this.responseMessage = ResponseMessage.newResponseMessageBuilder()
+                .withCorrelationUid(this.unsignedOslpEnvelopeDto.getCorrelationUid())
+                .withOrganisationIdentification("test-org").withDeviceIdentification("SSLD_000-00-01")
+                .withResult(ResponseMessageResultType.OK).withDataObject(this.signedOslpEnvelopeDto)
+                .withMessagePriority(4).build();
+    }
+
+    @Benchmark
+    public Object serializedRequest() throws IOException, ClassNotFoundException {
+        return deserialize(serialize(this.requestMessage));
+    }
+
+    @Benchmark
+    public UnsignedOslpEnvelopeDto compactRequest() throws IOException {
+        return OslpSigningMessageCodec.decodeUnsigned(OslpSigningMessageCodec.encode(this.unsignedOslpEnvelopeDto));
+    }
+
+    @Benchmark
+    public Object serializedResponse() throws IOException, ClassNotFoundException {
+        return deserialize(serialize(this.responseMessage));
+    }
+
+    /**
+     * Includes decoding the envelope from the frame, which the adapter needs
+     * for logging and sequence numbers.
+     */
+    @Benchmark
+    public OslpEnvelope compactResponse() throws IOException {
+        return OslpSigningMessageCodec.decodeSigned(OslpSigningMessageCodec.encode(this.signedOslpEnvelopeDto))
+                .getOslpEnvelope();
+    }
+
+    private static byte[] serialize(final Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(final byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
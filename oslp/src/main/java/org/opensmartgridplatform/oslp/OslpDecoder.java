@@ -7,105 +7,79 @@
  */
 package org.opensmartgridplatform.oslp;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 
-public class OslpDecoder extends ReplayingDecoder<OslpDecoder.DecodingState> {
+/**
+ * Length field based decoder for OSLP frames. A frame is only decoded once the
+ * complete header and the payload announced by the length indicator are
+ * available, so no decoding work is repeated for partially received frames.
+ * The frame is read once into the arrays held by the envelope and the payload
+ * is parsed from those bytes without further copies.
+ */
+public class OslpDecoder extends FrameDecoder {
     private static final Logger LOGGER = LoggerFactory.getLogger(OslpDecoder.class);
 
-    private final String signature;
-    private final String provider;
-
-    public static enum DecodingState {
-        SECURITY_KEY,
-        SEQUENCE_NUMBER,
-        DEVICE_ID,
-        LENGTH_INDICATOR,
-        PAYLOAD_MESSAGE;
-    }
+    /**
+     * Length of the header preceding the payload: security key, sequence
+     * number, device id and length indicator.
+     */
+    public static final int HEADER_LENGTH = OslpEnvelope.SECURITY_KEY_LENGTH + OslpEnvelope.SEQUENCE_NUMBER_LENGTH
+            + OslpEnvelope.DEVICE_ID_LENGTH + OslpEnvelope.MANUFACTURER_ID_LENGTH
+            + OslpEnvelope.LENGTH_INDICATOR_LENGTH;
 
-    private OslpEnvelope.Builder builder;
+    private static final int LENGTH_INDICATOR_OFFSET = HEADER_LENGTH - OslpEnvelope.LENGTH_INDICATOR_LENGTH;
 
-    private int length;
+    private final String signature;
+    private final String provider;
 
     public OslpDecoder(final String signature, final String provider) {
         LOGGER.debug("Created new decoder");
         this.signature = signature;
         this.provider = provider;
-
-        this.reset();
     }
 
     @Override
-    protected Object decode(final ChannelHandlerContext ctx, final org.jboss.netty.channel.Channel channel,
-            final ChannelBuffer buffer, final DecodingState state) throws UnknownOslpDecodingStateException,
-            InvalidProtocolBufferException {
-        LOGGER.debug("Decoding state: {}", state.toString());
+    protected Object decode(final ChannelHandlerContext ctx, final Channel channel, final ChannelBuffer buffer)
+            throws IOException {
 
-        if (state.compareTo(DecodingState.SECURITY_KEY) == 0) {
-            this.decodeSecurityKey(buffer);
-            this.checkpoint(DecodingState.SEQUENCE_NUMBER);
+        if (buffer.readableBytes() < HEADER_LENGTH) {
+            return null;
         }
 
-        if (state.compareTo(DecodingState.SEQUENCE_NUMBER) <= 0) {
-            this.decodeSequenceNumber(buffer);
-            this.checkpoint(DecodingState.DEVICE_ID);
+        // Unlike the read* methods, the get* methods do not increase the
+        // reader index, so the frame is left untouched until it is complete.
+        final int start = buffer.readerIndex();
+        final int length = buffer.getUnsignedShort(start + LENGTH_INDICATOR_OFFSET);
+        if (buffer.readableBytes() < HEADER_LENGTH + length) {
+            return null;
         }
 
-        if (state.compareTo(DecodingState.DEVICE_ID) <= 0) {
-            this.decodeDeviceId(buffer);
-            this.checkpoint(DecodingState.LENGTH_INDICATOR);
-        }
+        LOGGER.debug("Decoding frame with payload length: {}", length);
 
-        if (state.compareTo(DecodingState.LENGTH_INDICATOR) <= 0) {
-            this.decodeLengthIndicator(buffer);
-            this.checkpoint(DecodingState.PAYLOAD_MESSAGE);
-        }
+        // The signed part of the frame is kept as received, so validation and
+        // logging do not need to serialize the payload again.
+        final byte[] securityKey = new byte[OslpEnvelope.SECURITY_KEY_LENGTH];
+        final byte[] signBytes = new byte[OslpEnvelope.PAYLOAD_OFFSET + length];
+        buffer.readBytes(securityKey);
+        buffer.readBytes(signBytes);
 
-        if (state.compareTo(DecodingState.PAYLOAD_MESSAGE) <= 0) {
-            this.builder.withPayloadMessage(Oslp.Message.parseFrom(buffer.readBytes(this.length).array()));
-            this.checkpoint(DecodingState.SECURITY_KEY);
-            try {
-                return this.builder.withSignature(this.signature).withProvider(this.provider).build();
-            } finally {
-                this.reset();
-            }
-        } else {
-            // Should not get here
-            throw new UnknownOslpDecodingStateException(state.name());
-        }
-    }
-
-    private void decodeSecurityKey(final ChannelBuffer buffer) {
-        this.builder.withSecurityKey(buffer.readBytes(OslpEnvelope.SECURITY_KEY_LENGTH).toByteBuffer().array());
-    }
-
-    private void decodeSequenceNumber(final ChannelBuffer buffer) {
-        this.builder.withSequenceNumber(buffer.readBytes(OslpEnvelope.SEQUENCE_NUMBER_LENGTH).toByteBuffer().array());
-
-    }
-
-    private void decodeDeviceId(final ChannelBuffer buffer) {
-        this.builder.withDeviceId(buffer.readBytes(OslpEnvelope.DEVICE_ID_LENGTH + OslpEnvelope.MANUFACTURER_ID_LENGTH)
-                .toByteBuffer().array());
-    }
-
-    private void decodeLengthIndicator(final ChannelBuffer buffer) {
-        this.length = buffer.getUnsignedShort(buffer.readerIndex());
-        // Unlike the read* methods, the get* methods do not increase the reader index. 
-        // If we wouldn't update the reader index the bytes read while trying to read the payload
-        // would also contain the length indicator (which would cause the payload parsing to fail).
-        buffer.readerIndex(buffer.readerIndex() + OslpEnvelope.LENGTH_INDICATOR_LENGTH);
-    }
+        final byte[] sequenceNumber = Arrays.copyOfRange(signBytes, 0, OslpEnvelope.SEQUENCE_NUMBER_LENGTH);
+        final byte[] deviceId = Arrays.copyOfRange(signBytes, OslpEnvelope.SEQUENCE_NUMBER_LENGTH,
+                OslpEnvelope.PAYLOAD_OFFSET - OslpEnvelope.LENGTH_INDICATOR_LENGTH);
+        final Oslp.Message payloadMessage = Oslp.Message
+                .parseFrom(CodedInputStream.newInstance(signBytes, OslpEnvelope.PAYLOAD_OFFSET, length));
 
-    private void reset() {
-        this.checkpoint(DecodingState.SECURITY_KEY);
-        this.builder = new OslpEnvelope.Builder();
-        this.length = 0;
+        return OslpEnvelope.decoded(this.signature, this.provider, securityKey, sequenceNumber, deviceId,
+                payloadMessage, signBytes);
     }
 }
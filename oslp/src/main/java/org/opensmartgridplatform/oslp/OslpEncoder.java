@@ -15,17 +15,14 @@ import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
 public class OslpEncoder extends OneToOneEncoder {
     private static ChannelBuffer encodeMessage(OslpEnvelope envelope) {
-        int size = envelope.getSize();
-
-        ChannelBuffer buffer = ChannelBuffers.buffer(size);
-
-        buffer.writeBytes(envelope.getSecurityKey());
-        buffer.writeBytes(envelope.getSequenceNumber());
-        buffer.writeBytes(envelope.getDeviceId());
-        buffer.writeBytes(envelope.getLengthIndicator());
-        buffer.writeBytes(envelope.getPayloadMessage().toByteArray());
-
-        return buffer;
+        if (envelope.hasFrame()) {
+            // Envelopes signed elsewhere arrive as complete frames.
+            return ChannelBuffers.wrappedBuffer(envelope.toFrame());
+        }
+        // The sign bytes hold the sequence number, device id, length
+        // indicator and payload exactly as they go on the wire, so the frame
+        // is the security key followed by the sign bytes.
+        return ChannelBuffers.wrappedBuffer(envelope.getSecurityKeyBytes(), envelope.getSignBytes());
     }
 
     @Override
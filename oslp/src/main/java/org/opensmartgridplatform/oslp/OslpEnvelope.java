@@ -7,7 +7,9 @@
  */
 package org.opensmartgridplatform.oslp;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -15,6 +17,8 @@ import java.util.Arrays;
 
 import org.apache.commons.lang3.ArrayUtils;
 
+import com.google.protobuf.CodedInputStream;
+
 import org.opensmartgridplatform.oslp.Oslp.Message;
 
 /**
@@ -57,6 +61,13 @@ public class OslpEnvelope implements Serializable {
      */
     public static final int LENGTH_INDICATOR_LENGTH = 2;
 
+    /**
+     * Offset of the payload in the sign bytes: sequence number, device id and
+     * length indicator.
+     */
+    static final int PAYLOAD_OFFSET = SEQUENCE_NUMBER_LENGTH + DEVICE_ID_LENGTH + MANUFACTURER_ID_LENGTH
+            + LENGTH_INDICATOR_LENGTH;
+
     /**
      * Buffer for security key bytes.
      */
@@ -88,9 +99,10 @@ public class OslpEnvelope implements Serializable {
     private String provider;
 
     /**
-     * PrivateKey used for signing.
+     * PrivateKey used for signing. Only needed while building the envelope,
+     * so it is never serialized along with the envelope.
      */
-    private PrivateKey privateKey;
+    private transient PrivateKey privateKey;
 
     /**
      * Indicates whether message is valid. Only available after validate method
@@ -98,6 +110,22 @@ public class OslpEnvelope implements Serializable {
      */
     private boolean valid;
 
+    /**
+     * Wire representation of the envelope excluding the security key, which
+     * is the part that is signed. Computed once from the payload and shared by
+     * signing, validation, encoding and logging. Cleared whenever one of the
+     * signed fields changes.
+     */
+    private transient byte[] signBytes;
+
+    /**
+     * Complete wire representation of the envelope: the security key followed
+     * by the sign bytes. Set for envelopes created from a frame, and cached
+     * once an envelope is turned into a frame. Cleared whenever one of the
+     * fields in the frame changes.
+     */
+    private transient byte[] frame;
+
     /**
      * Default constructor.
      */
@@ -140,6 +168,90 @@ public class OslpEnvelope implements Serializable {
         }
     }
 
+    /**
+     * Creates an envelope for a frame received by the {@link OslpDecoder}. The
+     * given arrays are freshly read from the channel and owned by the new
+     * envelope, so they are not copied again. The sign bytes are the bytes as
+     * received, so validation does not need to serialize the payload again.
+     */
+    static OslpEnvelope decoded(final String signature, final String provider, final byte[] securityKey,
+            final byte[] sequenceNumber, final byte[] deviceId, final Message payloadMessage,
+            final byte[] signBytes) {
+        final OslpEnvelope envelope = new OslpEnvelope();
+        envelope.signature = signature;
+        envelope.provider = provider;
+        envelope.securityKey = securityKey;
+        envelope.sequenceNumber = sequenceNumber;
+        envelope.deviceId = deviceId;
+        envelope.payloadMessage = payloadMessage;
+        envelope.signBytes = signBytes;
+        return envelope;
+    }
+
+    /**
+     * Creates an envelope for a complete frame as created by {@link #toFrame()}.
+     * The frame is owned by the new envelope and written to the channel as is,
+     * so the envelope is not encoded again. The payload is parsed from the
+     * frame, the sign bytes are taken from it when they are needed.
+     *
+     * The envelope has no signature, provider or private key, so it can only
+     * be sent: {@link #validate(PublicKey)} fails on it.
+     *
+     * @throws IllegalArgumentException
+     *             when the frame is not a valid OSLP frame.
+     */
+    public static OslpEnvelope fromFrame(final byte[] frame) {
+        if (frame == null || frame.length < OslpDecoder.HEADER_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Frame is shorter than the header length: " + OslpDecoder.HEADER_LENGTH);
+        }
+        final int signBytesOffset = SECURITY_KEY_LENGTH;
+        final int payloadOffset = signBytesOffset + PAYLOAD_OFFSET;
+        final int length = ((frame[payloadOffset - 2] & 0xFF) << 8) | (frame[payloadOffset - 1] & 0xFF);
+        if (frame.length != payloadOffset + length) {
+            throw new IllegalArgumentException(
+                    "Frame length " + frame.length + " does not match payload length " + length);
+        }
+
+        final OslpEnvelope envelope = new OslpEnvelope();
+        envelope.securityKey = Arrays.copyOfRange(frame, 0, signBytesOffset);
+        envelope.sequenceNumber = Arrays.copyOfRange(frame, signBytesOffset,
+                signBytesOffset + SEQUENCE_NUMBER_LENGTH);
+        envelope.deviceId = Arrays.copyOfRange(frame, signBytesOffset + SEQUENCE_NUMBER_LENGTH,
+                payloadOffset - LENGTH_INDICATOR_LENGTH);
+        try {
+            envelope.payloadMessage = Message.parseFrom(CodedInputStream.newInstance(frame, payloadOffset, length));
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Frame does not contain a valid OSLP payload", e);
+        }
+        envelope.frame = frame;
+        return envelope;
+    }
+
+    /**
+     * @return the complete frame as it is sent to a device: the security key
+     *         followed by the sign bytes. The frame is created on first use
+     *         only. The returned array is shared and must not be modified.
+     */
+    public byte[] toFrame() {
+        if (this.frame == null) {
+            final byte[] bytes = this.getSignBytes();
+            final byte[] newFrame = new byte[this.securityKey.length + bytes.length];
+            System.arraycopy(this.securityKey, 0, newFrame, 0, this.securityKey.length);
+            System.arraycopy(bytes, 0, newFrame, this.securityKey.length, bytes.length);
+            this.frame = newFrame;
+        }
+        return this.frame;
+    }
+
+    /**
+     * @return whether this envelope holds its complete frame, so it can be
+     *         written without encoding it.
+     */
+    boolean hasFrame() {
+        return this.frame != null;
+    }
+
     /**
      * @return security key bytes.
      */
@@ -159,6 +271,7 @@ public class OslpEnvelope implements Serializable {
             }
             this.securityKey = Arrays.copyOf(newSecurityKey, newSecurityKey.length);
         }
+        this.frame = null;
     }
 
     /**
@@ -166,17 +279,45 @@ public class OslpEnvelope implements Serializable {
      *         envelope.
      */
     public byte[] getLengthIndicator() {
-        int messageLength = 0;
+        final int payloadOffset = this.getPayloadOffset();
+        return Arrays.copyOfRange(this.getSignBytes(), payloadOffset - LENGTH_INDICATOR_LENGTH, payloadOffset);
+    }
 
-        if (this.payloadMessage != null) {
-            messageLength += this.payloadMessage.getSerializedSize();
-        }
+    /**
+     * @return read-only view on the serialized OSLP payload.
+     */
+    public ByteBuffer getPayloadBytes() {
+        final byte[] bytes = this.getSignBytes();
+        final int payloadOffset = this.getPayloadOffset();
+        return ByteBuffer.wrap(bytes, payloadOffset, bytes.length - payloadOffset).slice().asReadOnlyBuffer();
+    }
 
-        final byte[] sizeBytes = new byte[LENGTH_INDICATOR_LENGTH];
-        sizeBytes[0] = (byte) ((messageLength >>> 8) & 0xFF);
-        sizeBytes[1] = (byte) (messageLength & 0xFF);
+    private int getPayloadOffset() {
+        return this.sequenceNumber.length + this.deviceId.length + LENGTH_INDICATOR_LENGTH;
+    }
 
-        return sizeBytes;
+    /**
+     * @return the bytes which are signed: sequence number, device id, length
+     *         indicator and payload. The payload is serialized on first use
+     *         only. The returned array is shared and must not be modified.
+     */
+    byte[] getSignBytes() {
+        if (this.signBytes == null) {
+            if (this.frame != null) {
+                this.signBytes = Arrays.copyOfRange(this.frame, this.securityKey.length, this.frame.length);
+            } else {
+                this.signBytes = OslpUtils.createSignBytes(this);
+            }
+        }
+        return this.signBytes;
+    }
+
+    /**
+     * @return the security key without copying it. The returned array is
+     *         shared and must not be modified.
+     */
+    byte[] getSecurityKeyBytes() {
+        return this.securityKey;
     }
 
     /**
@@ -199,6 +340,8 @@ public class OslpEnvelope implements Serializable {
             }
             this.sequenceNumber = Arrays.copyOf(newSequenceNumber, newSequenceNumber.length);
         }
+        this.signBytes = null;
+        this.frame = null;
     }
 
     /**
@@ -227,6 +370,8 @@ public class OslpEnvelope implements Serializable {
             // field.
             this.deviceId = Arrays.copyOf(newDeviceId, newDeviceId.length);
         }
+        this.signBytes = null;
+        this.frame = null;
     }
 
     /**
@@ -241,6 +386,8 @@ public class OslpEnvelope implements Serializable {
      */
     public void setPayloadMessage(final Message payloadMessage) {
         this.payloadMessage = payloadMessage;
+        this.signBytes = null;
+        this.frame = null;
     }
 
     /**
@@ -252,7 +399,7 @@ public class OslpEnvelope implements Serializable {
      */
     public boolean validate(final PublicKey publicKey) {
         try {
-            this.valid = OslpUtils.validateSignature(OslpUtils.createSignBytes(this), this.getSecurityKey(), publicKey,
+            this.valid = OslpUtils.validateSignature(this.getSignBytes(), this.securityKey, publicKey,
                     this.signature, this.provider);
         } catch (final GeneralSecurityException e) {
             throw new IllegalArgumentException(SECURITY_CONFIG_EXCEPTION, e);
@@ -276,7 +423,7 @@ public class OslpEnvelope implements Serializable {
     private void setSecurityKey() {
         try {
             // Calculate and encrypt hash
-            final byte[] sig = OslpUtils.createSignature(OslpUtils.createSignBytes(this), this.privateKey,
+            final byte[] sig = OslpUtils.createSignature(this.getSignBytes(), this.privateKey,
                     this.signature, this.provider);
             System.arraycopy(sig, 0, this.securityKey, 0, sig.length);
         } catch (final GeneralSecurityException e) {
@@ -306,9 +453,6 @@ public class OslpEnvelope implements Serializable {
                 : that.payloadMessage != null) {
             return false;
         }
-        if (this.privateKey != null ? !this.privateKey.equals(that.privateKey) : that.privateKey != null) {
-            return false;
-        }
         if (!Arrays.equals(this.securityKey, that.securityKey)) {
             return false;
         }
@@ -326,14 +470,14 @@ public class OslpEnvelope implements Serializable {
         result = 31 * result + (this.payloadMessage != null ? this.payloadMessage.hashCode() : 0);
         result = 31 * result + (this.signature != null ? this.signature.hashCode() : 0);
         result = 31 * result + (this.provider != null ? this.provider.hashCode() : 0);
-        result = 31 * result + (this.privateKey != null ? this.privateKey.hashCode() : 0);
         return result;
     }
 
     public int getSize() {
-        return OslpEnvelope.SECURITY_KEY_LENGTH + OslpEnvelope.SEQUENCE_NUMBER_LENGTH
-                + OslpEnvelope.MANUFACTURER_ID_LENGTH + OslpEnvelope.DEVICE_ID_LENGTH
-                + OslpEnvelope.LENGTH_INDICATOR_LENGTH + this.payloadMessage.getSerializedSize();
+        if (this.frame != null) {
+            return this.frame.length;
+        }
+        return OslpEnvelope.SECURITY_KEY_LENGTH + this.getSignBytes().length;
     }
 
     /**
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.opensmartgridplatform.oslp.Oslp.Message;
+import org.opensmartgridplatform.shared.infra.jms.Constants;
+
+/**
+ * Compact binary layout of the envelope DTOs exchanged with the signing
+ * server, used as the body of JMS bytes messages instead of Java
+ * serialization. A message starts with the layout version, followed by
+ * length prefixed fields. The OSLP payload is written in its protobuf
+ * encoding. Extra data is written as a string or an integer when it is one,
+ * and using Java serialization otherwise.
+ */
+public final class OslpSigningMessageCodec {
+
+    /**
+     * Version of the layout written by this codec.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * JMS property with which a sender of requests announces the layout
+     * version it can read, so the reply can be sent as a bytes message. Senders
+     * that do not set it get their reply as an object message.
+     */
+    public static final String ACCEPTED_VERSION_PROPERTY = "AcceptedSigningMessageVersion";
+
+    /**
+     * JMS properties with the type, message type and sequence number of the
+     * envelope to sign.
+     */
+    public static final String ENVELOPE_TYPE_PROPERTY = "SigningEnvelopeType";
+    public static final String MESSAGE_TYPE_PROPERTY = "SigningMessageType";
+    public static final String SEQUENCE_NUMBER_PROPERTY = "SigningSequenceNumber";
+
+    /**
+     * JMS properties with the context of a single envelope to sign. The
+     * signing server copies them from the request to the reply, so a reply
+     * that can not be decoded, or the error reply to a request that can not
+     * be decoded, can still be answered.
+     */
+    public static final List<String> CONTEXT_PROPERTIES = Collections
+            .unmodifiableList(Arrays.asList(ENVELOPE_TYPE_PROPERTY, MESSAGE_TYPE_PROPERTY, SEQUENCE_NUMBER_PROPERTY,
+                    Constants.DOMAIN, Constants.DOMAIN_VERSION, Constants.IS_SCHEDULED));
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final byte TYPE_REQUEST = 0;
+    private static final byte TYPE_RESPONSE = 1;
+
+    private static final byte EXTRA_DATA_NULL = 0;
+    private static final byte EXTRA_DATA_STRING = 1;
+    private static final byte EXTRA_DATA_INTEGER = 2;
+    private static final byte EXTRA_DATA_SERIALIZED = 3;
+
+    private OslpSigningMessageCodec() {
+        // Private constructor for utility class.
+    }
+
+    public static byte[] encode(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeUnsigned(out, unsignedOslpEnvelopeDto);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static byte[] encode(final SignedOslpEnvelopeDto signedOslpEnvelopeDto) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeBytes(out, signedOslpEnvelopeDto.getFrame());
+        writeUnsigned(out, signedOslpEnvelopeDto.getUnsignedOslpEnvelopeDto());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException
+     *             when the bytes are not of a supported layout version, or
+     *             are not a valid unsigned envelope.
+     */
+    public static UnsignedOslpEnvelopeDto decodeUnsigned(final byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        readVersion(in);
+        return readUnsigned(in);
+    }
+
+    /**
+     * @throws IOException
+     *             when the bytes are not of a supported layout version, or
+     *             are not a valid signed envelope.
+     */
+    public static SignedOslpEnvelopeDto decodeSigned(final byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        readVersion(in);
+        final byte[] frame = readBytes(in);
+        final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = readUnsigned(in);
+        if (frame == null) {
+            throw new IOException("Signed envelope without frame");
+        }
+        return SignedOslpEnvelopeDto.fromFrame(frame, unsignedOslpEnvelopeDto);
+    }
+
+    private static void readVersion(final DataInputStream in) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported signing message version: " + version);
+        }
+    }
+
+    private static void writeUnsigned(final DataOutputStream out, final UnsignedOslpEnvelopeDto dto)
+            throws IOException {
+        final boolean response = UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE.equals(dto.getType());
+        out.writeByte(response ? TYPE_RESPONSE : TYPE_REQUEST);
+        writeBytes(out, dto.getSequenceNumber());
+        writeBytes(out, dto.getDeviceId());
+        writeBytes(out, dto.getPayloadMessage() == null ? null : dto.getPayloadMessage().toByteArray());
+        writeString(out, dto.getCorrelationUid());
+        if (response) {
+            return;
+        }
+        writeString(out, dto.getIpAddress());
+        writeString(out, dto.getDomain());
+        writeString(out, dto.getDomainVersion());
+        writeString(out, dto.getMessageType());
+        out.writeInt(dto.getMessagePriority());
+        out.writeInt(dto.getRetryCount());
+        out.writeBoolean(dto.isScheduled());
+        writeString(out, dto.getOrganisationIdentification());
+        writeExtraData(out, dto.getExtraData());
+    }
+
+    private static UnsignedOslpEnvelopeDto readUnsigned(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        final byte[] sequenceNumber = readBytes(in);
+        final byte[] deviceId = readBytes(in);
+        final byte[] payload = readBytes(in);
+        final Message payloadMessage = payload == null ? null : Message.parseFrom(payload);
+        final String correlationUid = readString(in);
+        if (type == TYPE_RESPONSE) {
+            return new UnsignedOslpEnvelopeDto(sequenceNumber, deviceId, payloadMessage, correlationUid);
+        }
+        if (type != TYPE_REQUEST) {
+            throw new IOException("Unknown envelope type: " + type);
+        }
+        final String ipAddress = readString(in);
+        final String domain = readString(in);
+        final String domainVersion = readString(in);
+        final String messageType = readString(in);
+        final int messagePriority = in.readInt();
+        final int retryCount = in.readInt();
+        final boolean isScheduled = in.readBoolean();
+        final String organisationIdentification = readString(in);
+        final Serializable extraData = readExtraData(in);
+        return new UnsignedOslpEnvelopeDto(sequenceNumber, deviceId, payloadMessage, ipAddress, domain,
+                domainVersion, messageType, messagePriority, retryCount, isScheduled, organisationIdentification,
+                correlationUid, extraData);
+    }
+
+    private static void writeExtraData(final DataOutputStream out, final Serializable extraData) throws IOException {
+        if (extraData == null) {
+            out.writeByte(EXTRA_DATA_NULL);
+        } else if (extraData instanceof String) {
+            out.writeByte(EXTRA_DATA_STRING);
+            writeString(out, (String) extraData);
+        } else if (extraData instanceof Integer) {
+            out.writeByte(EXTRA_DATA_INTEGER);
+            out.writeInt((Integer) extraData);
+        } else {
+            final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(serialized)) {
+                objectOut.writeObject(extraData);
+            }
+            out.writeByte(EXTRA_DATA_SERIALIZED);
+            writeBytes(out, serialized.toByteArray());
+        }
+    }
+
+    private static Serializable readExtraData(final DataInputStream in) throws IOException {
+        final byte kind = in.readByte();
+        switch (kind) {
+        case EXTRA_DATA_NULL:
+            return null;
+        case EXTRA_DATA_STRING:
+            return readString(in);
+        case EXTRA_DATA_INTEGER:
+            return in.readInt();
+        case EXTRA_DATA_SERIALIZED:
+            try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+                return (Serializable) objectIn.readObject();
+            } catch (final ClassNotFoundException e) {
+                throw new IOException("Unknown class of extra data", e);
+            }
+        default:
+            throw new IOException("Unknown extra data kind: " + kind);
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid field length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -7,11 +7,11 @@
  */
 package org.opensmartgridplatform.oslp;
 
+import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.Signature;
 import java.util.Arrays;
 
@@ -23,6 +23,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import org.opensmartgridplatform.oslp.Oslp.Message;
 
 /**
  * Utility methods to ease usage of OSLP.
@@ -93,14 +96,34 @@ public final class OslpUtils {
     }
 
     /**
-     * Combine all bytes which need to be signed from the OSLP envelope.
+     * Combine all bytes which need to be signed from the OSLP envelope. The
+     * payload is serialized directly into the resulting array.
      *
      * @return array of bytes which can be signed
      */
     public static byte[] createSignBytes(final OslpEnvelope envelope) {
-        byte[] message = ArrayUtils.addAll(envelope.getSequenceNumber(), envelope.getDeviceId());
-        message = ArrayUtils.addAll(message, envelope.getLengthIndicator());
-        message = ArrayUtils.addAll(message, envelope.getPayloadMessage().toByteArray());
+        final byte[] sequenceNumber = envelope.getSequenceNumber();
+        final byte[] deviceId = envelope.getDeviceId();
+        final Message payloadMessage = envelope.getPayloadMessage();
+        final int payloadLength = payloadMessage == null ? 0 : payloadMessage.getSerializedSize();
+        final int payloadOffset = sequenceNumber.length + deviceId.length + OslpEnvelope.LENGTH_INDICATOR_LENGTH;
+
+        final byte[] message = new byte[payloadOffset + payloadLength];
+        System.arraycopy(sequenceNumber, 0, message, 0, sequenceNumber.length);
+        System.arraycopy(deviceId, 0, message, sequenceNumber.length, deviceId.length);
+        message[payloadOffset - 2] = (byte) ((payloadLength >>> 8) & 0xFF);
+        message[payloadOffset - 1] = (byte) (payloadLength & 0xFF);
+
+        if (payloadMessage != null) {
+            final CodedOutputStream output = CodedOutputStream.newInstance(message, payloadOffset, payloadLength);
+            try {
+                payloadMessage.writeTo(output);
+            } catch (final IOException e) {
+                // Writing to a byte array of the serialized size cannot fail.
+                throw new IllegalStateException("Unable to serialize OSLP payload", e);
+            }
+            output.checkNoSpaceLeft();
+        }
 
         return message;
     }
@@ -129,8 +152,8 @@ public final class OslpUtils {
         }
 
         // Use real signature
-        final Signature signatureBuilder = Signature.getInstance(signature, provider);
-        signatureBuilder.initSign(privateKey, new SecureRandom());
+        final Signature signatureBuilder = SecurityInstancePool.getSignature(signature, provider);
+        signatureBuilder.initSign(privateKey, SecurityInstancePool.getSecureRandom());
         signatureBuilder.update(message);
         return signatureBuilder.sign();
     }
@@ -162,7 +185,7 @@ public final class OslpUtils {
         }
 
         // Using ECDSA as signature
-        final Signature signatureBuilder = Signature.getInstance(signature, provider);
+        final Signature signatureBuilder = SecurityInstancePool.getSignature(signature, provider);
         signatureBuilder.initVerify(publicKey);
         signatureBuilder.update(message);
         
@@ -188,14 +211,14 @@ public final class OslpUtils {
         final byte[] hash = createHash(message);
 
         // Encrypt the hash
-        final Cipher cipher = Cipher.getInstance(FALLBACK_CIPHER);
+        final Cipher cipher = SecurityInstancePool.getCipher(FALLBACK_CIPHER);
         cipher.init(Cipher.ENCRYPT_MODE, privateKey);
         return cipher.doFinal(hash);
     }
 
     private static byte[] createHash(final byte[] message) throws GeneralSecurityException {
         // Create digest Hash
-        final MessageDigest digest = MessageDigest.getInstance(FALLBACK_DIGEST);
+        final MessageDigest digest = SecurityInstancePool.getMessageDigest(FALLBACK_DIGEST);
         return digest.digest(message);
     }
 
@@ -207,7 +230,7 @@ public final class OslpUtils {
 
         try {
             // Decrypt security key hash
-            final Cipher cipher = Cipher.getInstance(FALLBACK_CIPHER);
+            final Cipher cipher = SecurityInstancePool.getCipher(FALLBACK_CIPHER);
             cipher.init(Cipher.DECRYPT_MODE, publicKey);
             final byte[] messageHash = cipher.doFinal(securityKey);
 
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+/**
+ * Thread confined pool of JCA instances used for signing and validating OSLP
+ * messages. Looking up a provider and constructing a {@link Signature},
+ * {@link Cipher} or {@link MessageDigest} is expensive compared to using one,
+ * so each thread keeps one instance per algorithm and provider. Instances are
+ * never shared between threads and are always initialized before use, so no
+ * state leaks from one message to the next.
+ */
+final class SecurityInstancePool {
+
+    /**
+     * {@link SecureRandom} is thread safe, one instance is shared for all
+     * signatures.
+     */
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = new ThreadLocal<Map<String, Signature>>() {
+        @Override
+        protected Map<String, Signature> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = new ThreadLocal<Map<String, Cipher>>() {
+        @Override
+        protected Map<String, Cipher> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = new ThreadLocal<Map<String, MessageDigest>>() {
+        @Override
+        protected Map<String, MessageDigest> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private SecurityInstancePool() {
+        // Empty constructor for static helper class.
+    }
+
+    public static SecureRandom getSecureRandom() {
+        return SECURE_RANDOM;
+    }
+
+    /**
+     * @return the {@link Signature} of the current thread for the given
+     *         algorithm and provider. Failed lookups are not cached, so an
+     *         incorrect configuration keeps failing the same way.
+     */
+    public static Signature getSignature(final String algorithm, final String provider)
+            throws GeneralSecurityException {
+        final Map<String, Signature> signatures = SIGNATURES.get();
+        final String key = algorithm + '/' + provider;
+        Signature signature = signatures.get(key);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm, provider);
+            signatures.put(key, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * @return the {@link Cipher} of the current thread for the given
+     *         transformation.
+     */
+    public static Cipher getCipher(final String transformation) throws GeneralSecurityException {
+        final Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * @return the reset {@link MessageDigest} of the current thread for the
+     *         given algorithm.
+     */
+    public static MessageDigest getMessageDigest(final String algorithm) throws GeneralSecurityException {
+        final Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.io.Serializable;
+
+/**
+ * Results of signing the envelopes of an {@link UnsignedOslpEnvelopeBatchDto},
+ * in the same order. Every envelope is either signed or failed with an error
+ * description, independent of the other envelopes in the batch.
+ */
+public class SignedOslpEnvelopeBatchDto implements Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = 4412968250513318617L;
+
+    private final String[] deviceIdentifications;
+    private final SignedOslpEnvelopeDto[] signedOslpEnvelopeDtos;
+
+    /**
+     * The envelopes that failed, the signed envelopes hold their own.
+     */
+    private final UnsignedOslpEnvelopeDto[] failedOslpEnvelopeDtos;
+    private final String[] errors;
+
+    public SignedOslpEnvelopeBatchDto(final UnsignedOslpEnvelopeBatchDto unsignedOslpEnvelopeBatchDto) {
+        final int size = unsignedOslpEnvelopeBatchDto.size();
+        this.deviceIdentifications = new String[size];
+        this.signedOslpEnvelopeDtos = new SignedOslpEnvelopeDto[size];
+        this.failedOslpEnvelopeDtos = new UnsignedOslpEnvelopeDto[size];
+        this.errors = new String[size];
+        for (int i = 0; i < size; i++) {
+            this.deviceIdentifications[i] = unsignedOslpEnvelopeBatchDto.getDeviceIdentification(i);
+        }
+    }
+
+    public synchronized void setSigned(final int index, final SignedOslpEnvelopeDto signedOslpEnvelopeDto) {
+        this.signedOslpEnvelopeDtos[index] = signedOslpEnvelopeDto;
+    }
+
+    public synchronized void setFailed(final int index, final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto,
+            final String error) {
+        this.failedOslpEnvelopeDtos[index] = unsignedOslpEnvelopeDto;
+        this.errors[index] = error;
+    }
+
+    public int size() {
+        return this.deviceIdentifications.length;
+    }
+
+    public String getDeviceIdentification(final int index) {
+        return this.deviceIdentifications[index];
+    }
+
+    /**
+     * @return The signed envelope, or null when signing failed.
+     */
+    public synchronized SignedOslpEnvelopeDto getSignedOslpEnvelopeDto(final int index) {
+        return this.signedOslpEnvelopeDtos[index];
+    }
+
+    /**
+     * @return The envelope that could not be signed, or null when it is
+     *         signed.
+     */
+    public synchronized UnsignedOslpEnvelopeDto getFailedOslpEnvelopeDto(final int index) {
+        return this.failedOslpEnvelopeDtos[index];
+    }
+
+    /**
+     * @return Description of the error when signing failed, or null.
+     */
+    public synchronized String getError(final int index) {
+        return this.errors[index];
+    }
+}
@@ -17,22 +17,67 @@ public class SignedOslpEnvelopeDto implements Serializable {
     private static final long serialVersionUID = 2598572730380822536L;
 
     /**
-     * The signed envelope which can be sent to a device.
+     * The signed envelope which can be sent to a device. Only set by signing
+     * servers that do not send the frame yet.
      */
     private OslpEnvelope oslpEnvelope;
 
+    /**
+     * The signed envelope as it is sent to a device, see
+     * {@link OslpEnvelope#toFrame()}.
+     */
+    private byte[] frame;
+
     /**
      * The DTO which was sent to the signing server.
      */
     private UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto;
 
+    /**
+     * The envelope of the frame, created on first use.
+     */
+    private transient OslpEnvelope frameOslpEnvelope;
+
     public SignedOslpEnvelopeDto(final OslpEnvelope oslpEnvelope, final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
-        this.oslpEnvelope = oslpEnvelope;
+        if (oslpEnvelope != null) {
+            this.frame = oslpEnvelope.toFrame();
+            this.frameOslpEnvelope = oslpEnvelope;
+        }
         this.unsignedOslpEnvelopeDto = unsignedOslpEnvelopeDto;
     }
 
+    /**
+     * Creates the DTO for a frame read by the {@link OslpSigningMessageCodec}.
+     */
+    static SignedOslpEnvelopeDto fromFrame(final byte[] frame, final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+        final SignedOslpEnvelopeDto signedOslpEnvelopeDto = new SignedOslpEnvelopeDto(null, unsignedOslpEnvelopeDto);
+        signedOslpEnvelopeDto.frame = frame;
+        return signedOslpEnvelopeDto;
+    }
+
+    /**
+     * @return The signed envelope. For a frame the envelope holds the frame,
+     *         so it is written to the device without encoding it again.
+     */
     public OslpEnvelope getOslpEnvelope() {
-        return this.oslpEnvelope;
+        if (this.oslpEnvelope != null) {
+            return this.oslpEnvelope;
+        }
+        if (this.frameOslpEnvelope == null && this.frame != null) {
+            this.frameOslpEnvelope = OslpEnvelope.fromFrame(this.frame);
+        }
+        return this.frameOslpEnvelope;
+    }
+
+    /**
+     * @return The signed envelope as it is sent to a device. The returned array
+     *         is shared and must not be modified.
+     */
+    public byte[] getFrame() {
+        if (this.frame == null && this.oslpEnvelope != null) {
+            return this.oslpEnvelope.toFrame();
+        }
+        return this.frame;
     }
 
     public UnsignedOslpEnvelopeDto getUnsignedOslpEnvelopeDto() {
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envelopes sent to the signing server in one request, each with the device
+ * identification of the device it is meant for. The signing server replies
+ * with a {@link SignedOslpEnvelopeBatchDto} holding the results in the same
+ * order.
+ */
+public class UnsignedOslpEnvelopeBatchDto implements Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -2046180783622387152L;
+
+    public static final String SIGNING_BATCH_REQUEST_TYPE = "SIGNING_BATCH_REQUEST";
+    public static final String SIGNING_BATCH_RESPONSE_TYPE = "SIGNING_BATCH_RESPONSE";
+
+    private final List<String> deviceIdentifications = new ArrayList<>();
+    private final List<UnsignedOslpEnvelopeDto> unsignedOslpEnvelopeDtos = new ArrayList<>();
+
+    public void add(final String deviceIdentification, final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+        this.deviceIdentifications.add(deviceIdentification);
+        this.unsignedOslpEnvelopeDtos.add(unsignedOslpEnvelopeDto);
+    }
+
+    public int size() {
+        return this.unsignedOslpEnvelopeDtos.size();
+    }
+
+    public String getDeviceIdentification(final int index) {
+        return this.deviceIdentifications.get(index);
+    }
+
+    public UnsignedOslpEnvelopeDto getUnsignedOslpEnvelopeDto(final int index) {
+        return this.unsignedOslpEnvelopeDtos.get(index);
+    }
+}
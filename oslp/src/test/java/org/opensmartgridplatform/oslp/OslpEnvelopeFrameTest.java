@@ -0,0 +1,98 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.oslp.Oslp.Message;
+
+public class OslpEnvelopeFrameTest {
+
+    @Test
+    public void envelopeIsCreatedFromItsFrame() {
+        final OslpEnvelope envelope = this.envelope();
+
+        final OslpEnvelope fromFrame = OslpEnvelope.fromFrame(envelope.toFrame());
+
+        Assert.assertArrayEquals(envelope.getSecurityKey(), fromFrame.getSecurityKey());
+        Assert.assertArrayEquals(envelope.getSequenceNumber(), fromFrame.getSequenceNumber());
+        Assert.assertArrayEquals(envelope.getDeviceId(), fromFrame.getDeviceId());
+        Assert.assertEquals(envelope.getPayloadMessage(), fromFrame.getPayloadMessage());
+        Assert.assertArrayEquals(envelope.getSignBytes(), fromFrame.getSignBytes());
+        Assert.assertEquals(envelope.getSize(), fromFrame.getSize());
+    }
+
+    @Test
+    public void frameIsSentAsReceivedFromTheSigningServer() {
+        final byte[] frame = this.envelope().toFrame();
+
+        final SignedOslpEnvelopeDto dto = new SignedOslpEnvelopeDto(OslpEnvelope.fromFrame(frame), null);
+
+        Assert.assertSame(frame, dto.getFrame());
+        Assert.assertSame(frame, dto.getOslpEnvelope().toFrame());
+    }
+
+    @Test
+    public void frameIsCreatedAgainWhenEnvelopeChanges() {
+        final OslpEnvelope envelope = OslpEnvelope.fromFrame(this.envelope().toFrame());
+
+        envelope.setSequenceNumber(new byte[] { 0, 2 });
+
+        Assert.assertEquals(2, envelope.toFrame()[OslpEnvelope.SECURITY_KEY_LENGTH + 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedFrameIsRejected() {
+        final byte[] frame = this.envelope().toFrame();
+
+        OslpEnvelope.fromFrame(Arrays.copyOf(frame, frame.length - 1));
+    }
+
+    @Test
+    public void envelopeWithPrivateKeyIsEqualAfterSerialization()
+            throws GeneralSecurityException, IOException, ClassNotFoundException {
+        final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(256);
+        final OslpEnvelope envelope = new OslpEnvelope.Builder()
+                .withSecurityKey(new byte[OslpEnvelope.SECURITY_KEY_LENGTH]).withSequenceNumber(new byte[] { 0, 1 })
+                .withDeviceId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 })
+                .withPrimaryKey(keyPairGenerator.generateKeyPair().getPrivate()).build();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(envelope);
+        }
+        final OslpEnvelope received;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            received = (OslpEnvelope) in.readObject();
+        }
+
+        Assert.assertEquals(envelope, received);
+        Assert.assertEquals(envelope.hashCode(), received.hashCode());
+    }
+
+    private OslpEnvelope envelope() {
+        final byte[] securityKey = new byte[OslpEnvelope.SECURITY_KEY_LENGTH];
+        Arrays.fill(securityKey, (byte) 7);
+        final Message payload = Message.newBuilder()
+                .setGetStatusRequest(Oslp.GetStatusRequest.newBuilder()).build();
+        return new OslpEnvelope.Builder().withSecurityKey(securityKey).withSequenceNumber(new byte[] { 0, 1 })
+                .withDeviceId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }).withPayloadMessage(payload)
+                .build();
+    }
+}
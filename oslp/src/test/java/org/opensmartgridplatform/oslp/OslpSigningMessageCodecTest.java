@@ -0,0 +1,107 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opensmartgridplatform.oslp.Oslp.Message;
+
+public class OslpSigningMessageCodecTest {
+
+    private static final byte[] SEQUENCE_NUMBER = new byte[] { 0, 1 };
+    private static final byte[] DEVICE_ID = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+
+    @Test
+    public void requestIsDecodedAsEncoded() throws IOException {
+        final UnsignedOslpEnvelopeDto request = this.request(42);
+
+        final UnsignedOslpEnvelopeDto decoded = OslpSigningMessageCodec
+                .decodeUnsigned(OslpSigningMessageCodec.encode(request));
+
+        Assert.assertEquals(UnsignedOslpEnvelopeDto.OSLP_REQUEST_TYPE, decoded.getType());
+        Assert.assertArrayEquals(SEQUENCE_NUMBER, decoded.getSequenceNumber());
+        Assert.assertArrayEquals(DEVICE_ID, decoded.getDeviceId());
+        Assert.assertEquals(request.getPayloadMessage(), decoded.getPayloadMessage());
+        Assert.assertEquals("127.0.0.1", decoded.getIpAddress());
+        Assert.assertEquals("PUBLIC_LIGHTING", decoded.getDomain());
+        Assert.assertNull(decoded.getDomainVersion());
+        Assert.assertEquals("GET_STATUS", decoded.getMessageType());
+        Assert.assertEquals(4, decoded.getMessagePriority());
+        Assert.assertEquals(2, decoded.getRetryCount());
+        Assert.assertTrue(decoded.isScheduled());
+        Assert.assertEquals("organisation-1", decoded.getOrganisationIdentification());
+        Assert.assertEquals("correlation-1", decoded.getCorrelationUid());
+        Assert.assertEquals(42, decoded.getExtraData());
+    }
+
+    @Test
+    public void extraDataWithoutCompactEncodingIsSerialized() throws IOException {
+        final ArrayList<String> extraData = new ArrayList<>(Arrays.asList("a", "b"));
+
+        final UnsignedOslpEnvelopeDto decoded = OslpSigningMessageCodec
+                .decodeUnsigned(OslpSigningMessageCodec.encode(this.request(extraData)));
+
+        Assert.assertEquals(extraData, decoded.getExtraData());
+    }
+
+    @Test
+    public void signedResponseKeepsFrame() throws IOException {
+        final UnsignedOslpEnvelopeDto response = new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER, DEVICE_ID,
+                this.payload(), "7");
+        final OslpEnvelope envelope = new OslpEnvelope.Builder()
+                .withSecurityKey(new byte[OslpEnvelope.SECURITY_KEY_LENGTH]).withSequenceNumber(SEQUENCE_NUMBER)
+                .withDeviceId(DEVICE_ID).withPayloadMessage(this.payload()).build();
+
+        final SignedOslpEnvelopeDto decoded = OslpSigningMessageCodec
+                .decodeSigned(OslpSigningMessageCodec.encode(new SignedOslpEnvelopeDto(envelope, response)));
+
+        Assert.assertArrayEquals(envelope.toFrame(), decoded.getFrame());
+        Assert.assertEquals(this.payload(), decoded.getOslpEnvelope().getPayloadMessage());
+        Assert.assertEquals(UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE,
+                decoded.getUnsignedOslpEnvelopeDto().getType());
+        Assert.assertEquals("7", decoded.getUnsignedOslpEnvelopeDto().getCorrelationUid());
+    }
+
+    @Test
+    public void compactEncodingIsSmallerThanSerialization() throws IOException {
+        final UnsignedOslpEnvelopeDto request = this.request(null);
+        final OslpEnvelope envelope = new OslpEnvelope.Builder()
+                .withSecurityKey(new byte[OslpEnvelope.SECURITY_KEY_LENGTH]).withSequenceNumber(SEQUENCE_NUMBER)
+                .withDeviceId(DEVICE_ID).withPayloadMessage(this.payload()).build();
+        final SignedOslpEnvelopeDto response = new SignedOslpEnvelopeDto(envelope, request);
+
+        Assert.assertTrue(
+                OslpSigningMessageCodec.encode(request).length < SerializationUtils.serialize(request).length);
+        Assert.assertTrue(
+                OslpSigningMessageCodec.encode(response).length < SerializationUtils.serialize(response).length);
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionIsRejected() throws IOException {
+        final byte[] bytes = OslpSigningMessageCodec.encode(this.request(null));
+        bytes[0] = (byte) (OslpSigningMessageCodec.VERSION + 1);
+
+        OslpSigningMessageCodec.decodeUnsigned(bytes);
+    }
+
+    private UnsignedOslpEnvelopeDto request(final Serializable extraData) {
+        return new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER, DEVICE_ID, this.payload(), "127.0.0.1", "PUBLIC_LIGHTING",
+                null, "GET_STATUS", 4, 2, true, "organisation-1", "correlation-1", extraData);
+    }
+
+    private Message payload() {
+        return Message.newBuilder().setGetStatusRequest(Oslp.GetStatusRequest.newBuilder()).build();
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+
+import org.junit.Test;
+import org.opensmartgridplatform.shared.security.CertificateHelper;
+
+/**
+ * Unittests for the signing and validation in {@link OslpUtils}, comparing
+ * the results of the pooled JCA instances with freshly created ones.
+ */
+public class OslpUtilsTest {
+
+    private static final String EC_PRIVATE_KEY_BASE_64 = "MIGHAgEAMBMGByqGSM49AgEGCCqGSM49AwEHBG0wawIBAQQg8ydsIOMoTlBPn6rJezELYFLUUuQe"
+            + "3GvrhI3TDJj1yNyhRANCAAQ0UmJgxWImQ5wgepQ65nlsK0lvYb/GW6nx4ngLgncDZmWH3Pck8eC1"
+            + "xsKg1goWpvl7P1um4cIjKyBwfqf8FxZa";
+
+    private static final String EC_PUBLIC_KEY_BASE_64 = "MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAENFJiYMViJkOcIHqUOuZ5bCtJb2G/xlup8eJ4C4J3"
+            + "A2Zlh9z3JPHgtcbCoNYKFqb5ez9bpuHCIysgcH6n/BcWWg==";
+
+    private static final String RSA_PRIVATE_KEY_BASE_64 = "MIICeAIBADANBgkqhkiG9w0BAQEFAASCAmIwggJeAgEAAoGBAMZLix1u8mSOk8LrMW7wZHgskw0J"
+            + "VY/EECl5BaxZKtJxIwB3W/9zaceYMgbBSE+7RcjAheRGncmF3DvuD0j40937PyV3OE48YsfPVecP"
+            + "Xa+NIfVpYWwGa2QEYYvjBZ5FjD6zeubCe80fKhB2bXLM1SDXiuvoemSt161rC4m8hUvXAgMBAAEC"
+            + "gYEAvOZ6QC/Q+bpZSPaEwQqAq3rLG0ApIivEub1wih7njFH65hbOrStlOZ7jCUxXdp0QfY3p/uzG"
+            + "o5PBmdXO+dUQ/lcpZSJzvmlf1gfEZAL7088pe9fyvwLRuiCOzw6b+j5AoQLfXrFv3fDZlWf1z82q"
+            + "Dc8cGNspYrvCSnjSRG4izQECQQD51biejn12Qan57c7nbF++xgaRmBQcURDFhFltb7vGajoYwSvp"
+            + "9w42pTNL29yAPlFqx9X+FsLCu58g4TJUlDRtAkEAyzA7ET8Az3PqXcL6VwykZQE37HVnLZwb7d4u"
+            + "y7+TIqXCuGDkHAjQ4bsHrGzheJI8fgqyOmvGxMY3P658aCyu0wJABJQPExDHadBgPg1GmmUZCBT2"
+            + "79oanD48EXKQdPn0NfmiYOvBU0NMxmGWpBA+ZTc/JLbOzB48qXbovqCB3JzurQJBAJ/iufgeLZMQ"
+            + "0ZEqRjeNeScJyGnHEIOxXcDVntkxTKRs70aK57Svsz6NH8KsgtePqw47eHfEK0rX9s2jjb2ju4UC"
+            + "QQDUw3UoM9nLSmPBqPhWpNiTThOISZNmTMXEmEvb0D3A0Tpmbu6ciTr1sJRUFQi4WRTaxaqM3sdj" + "cPjXvilnNkk6";
+
+    private static final String RSA_PUBLIC_KEY_BASE_64 = "MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQDGS4sdbvJkjpPC6zFu8GR4LJMNCVWPxBApeQWs"
+            + "WSrScSMAd1v/c2nHmDIGwUhPu0XIwIXkRp3Jhdw77g9I+NPd+z8ldzhOPGLHz1XnD12vjSH1aWFs"
+            + "BmtkBGGL4wWeRYw+s3rmwnvNHyoQdm1yzNUg14rr6HpkrdetawuJvIVL1wIDAQAB";
+
+    private static final String EC_SIGNATURE = "SHA256withECDSA";
+    private static final String EC_PROVIDER = "SunEC";
+    private static final String RSA_PROVIDER = "SunRsaSign";
+
+    private static final byte[] MESSAGE = "sequence number, device id, length indicator and payload".getBytes();
+
+    @Test
+    public void rsaFallbackSignatureMatchesFreshCipher() throws Exception {
+        final PrivateKey privateKey = CertificateHelper.createPrivateKeyFromBase64(RSA_PRIVATE_KEY_BASE_64, "RSA",
+                RSA_PROVIDER);
+
+        final MessageDigest digest = MessageDigest.getInstance(OslpUtils.FALLBACK_DIGEST);
+        final Cipher cipher = Cipher.getInstance(OslpUtils.FALLBACK_CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, privateKey);
+        final byte[] expected = cipher.doFinal(digest.digest(MESSAGE));
+
+        // Sign twice to make sure the pooled instances are reused correctly.
+        assertArrayEquals(expected, OslpUtils.createSignature(MESSAGE, privateKey, OslpUtils.FALLBACK_SIGNATURE,
+                RSA_PROVIDER));
+        assertArrayEquals(expected, OslpUtils.createSignature(MESSAGE, privateKey, OslpUtils.FALLBACK_SIGNATURE,
+                RSA_PROVIDER));
+    }
+
+    @Test
+    public void rsaFallbackValidation() throws Exception {
+        final PrivateKey privateKey = CertificateHelper.createPrivateKeyFromBase64(RSA_PRIVATE_KEY_BASE_64, "RSA",
+                RSA_PROVIDER);
+        final PublicKey publicKey = CertificateHelper.createPublicKeyFromBase64(RSA_PUBLIC_KEY_BASE_64, "RSA",
+                RSA_PROVIDER);
+
+        final byte[] securityKey = OslpUtils.createSignature(MESSAGE, privateKey, OslpUtils.FALLBACK_SIGNATURE,
+                RSA_PROVIDER);
+
+        assertTrue(OslpUtils.validateSignature(MESSAGE, securityKey, publicKey, OslpUtils.FALLBACK_SIGNATURE,
+                RSA_PROVIDER));
+        assertFalse(OslpUtils.validateSignature(Arrays.copyOf(MESSAGE, MESSAGE.length - 1), securityKey, publicKey,
+                OslpUtils.FALLBACK_SIGNATURE, RSA_PROVIDER));
+        // The pooled cipher must still be usable after a failed validation.
+        assertTrue(OslpUtils.validateSignature(MESSAGE, securityKey, publicKey, OslpUtils.FALLBACK_SIGNATURE,
+                RSA_PROVIDER));
+    }
+
+    @Test
+    public void ecdsaSignatureVerifiesWithFreshSignature() throws Exception {
+        final PrivateKey privateKey = CertificateHelper.createPrivateKeyFromBase64(EC_PRIVATE_KEY_BASE_64, "EC",
+                EC_PROVIDER);
+        final PublicKey publicKey = CertificateHelper.createPublicKeyFromBase64(EC_PUBLIC_KEY_BASE_64, "EC",
+                EC_PROVIDER);
+
+        for (int i = 0; i < 10; i++) {
+            final byte[] sig = OslpUtils.createSignature(MESSAGE, privateKey, EC_SIGNATURE, EC_PROVIDER);
+
+            final Signature verifier = Signature.getInstance(EC_SIGNATURE, EC_PROVIDER);
+            verifier.initVerify(publicKey);
+            verifier.update(MESSAGE);
+            assertTrue(verifier.verify(sig));
+        }
+    }
+
+    @Test
+    public void ecdsaPaddedSecurityKeyIsTruncatedBeforeValidation() throws Exception {
+        final PrivateKey privateKey = CertificateHelper.createPrivateKeyFromBase64(EC_PRIVATE_KEY_BASE_64, "EC",
+                EC_PROVIDER);
+        final PublicKey publicKey = CertificateHelper.createPublicKeyFromBase64(EC_PUBLIC_KEY_BASE_64, "EC",
+                EC_PROVIDER);
+
+        final Signature signer = Signature.getInstance(EC_SIGNATURE, EC_PROVIDER);
+        signer.initSign(privateKey, new SecureRandom());
+        signer.update(MESSAGE);
+        final byte[] securityKey = Arrays.copyOf(signer.sign(), OslpEnvelope.SECURITY_KEY_LENGTH);
+
+        assertTrue(OslpUtils.validateSignature(MESSAGE, securityKey, publicKey, EC_SIGNATURE, EC_PROVIDER));
+        assertFalse(OslpUtils.validateSignature(Arrays.copyOf(MESSAGE, MESSAGE.length - 1), securityKey, publicKey,
+                EC_SIGNATURE, EC_PROVIDER));
+        assertTrue(OslpUtils.validateSignature(MESSAGE, securityKey, publicKey, EC_SIGNATURE, EC_PROVIDER));
+    }
+
+    @Test
+    public void ecdsaSignAndValidateConcurrently() throws Exception {
+        final PrivateKey privateKey = CertificateHelper.createPrivateKeyFromBase64(EC_PRIVATE_KEY_BASE_64, "EC",
+                EC_PROVIDER);
+        final PublicKey publicKey = CertificateHelper.createPublicKeyFromBase64(EC_PUBLIC_KEY_BASE_64, "EC",
+                EC_PROVIDER);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final byte[] message = Arrays.copyOf(MESSAGE, MESSAGE.length + 1);
+                message[MESSAGE.length] = (byte) i;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        final byte[] securityKey = Arrays.copyOf(
+                                OslpUtils.createSignature(message, privateKey, EC_SIGNATURE, EC_PROVIDER),
+                                OslpEnvelope.SECURITY_KEY_LENGTH);
+                        return OslpUtils.validateSignature(message, securityKey, publicKey, EC_SIGNATURE,
+                                EC_PROVIDER);
+                    }
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.oslp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignedOslpEnvelopeBatchDtoTest {
+
+    private static final byte[] SEQUENCE_NUMBER = new byte[] { 0, 1 };
+    private static final byte[] DEVICE_ID = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+
+    @Test
+    public void resultsKeepTheOrderOfTheBatch() throws IOException, ClassNotFoundException {
+        final UnsignedOslpEnvelopeBatchDto batch = new UnsignedOslpEnvelopeBatchDto();
+        batch.add("device-1", this.unsigned("correlation-1"));
+        batch.add("device-2", this.unsigned("correlation-2"));
+
+        final SignedOslpEnvelopeBatchDto results = new SignedOslpEnvelopeBatchDto(batch);
+        final OslpEnvelope envelope = new OslpEnvelope.Builder()
+                .withSecurityKey(new byte[OslpEnvelope.SECURITY_KEY_LENGTH]).withSequenceNumber(SEQUENCE_NUMBER)
+                .withDeviceId(DEVICE_ID).withPayloadMessage(this.payload()).build();
+        results.setFailed(1, batch.getUnsignedOslpEnvelopeDto(1), "failed");
+        results.setSigned(0, new SignedOslpEnvelopeDto(envelope, batch.getUnsignedOslpEnvelopeDto(0)));
+
+        final SignedOslpEnvelopeBatchDto received = this.serializeAndDeserialize(results);
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals("device-1", received.getDeviceIdentification(0));
+        Assert.assertArrayEquals(envelope.toFrame(), received.getSignedOslpEnvelopeDto(0).getFrame());
+        Assert.assertNull(received.getFailedOslpEnvelopeDto(0));
+        Assert.assertEquals("device-2", received.getDeviceIdentification(1));
+        Assert.assertNull(received.getSignedOslpEnvelopeDto(1));
+        Assert.assertEquals("correlation-2", received.getFailedOslpEnvelopeDto(1).getCorrelationUid());
+        Assert.assertEquals("failed", received.getError(1));
+    }
+
+    private SignedOslpEnvelopeBatchDto serializeAndDeserialize(final SignedOslpEnvelopeBatchDto results)
+            throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(results);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (SignedOslpEnvelopeBatchDto) in.readObject();
+        }
+    }
+
+    private UnsignedOslpEnvelopeDto unsigned(final String correlationUid) {
+        return new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER, DEVICE_ID, this.payload(), "127.0.0.1",
+                "PUBLIC_LIGHTING", "1.0", "GET_STATUS", 4, 0, false, "organisation-1", correlationUid, null);
+    }
+
+    private Oslp.Message payload() {
+        return Oslp.Message.newBuilder().setGetStatusRequest(Oslp.GetStatusRequest.newBuilder()).build();
+    }
+}
@@ -16,12 +16,15 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.PropertySources;
+import org.springframework.jmx.support.RegistrationPolicy;
 
 import org.opensmartgridplatform.shared.application.config.AbstractConfig;
 import org.opensmartgridplatform.shared.exceptionhandling.EncrypterException;
 import org.opensmartgridplatform.shared.security.CertificateHelper;
+import org.opensmartgridplatform.signing.server.application.services.SigningWorkerPool;
 import org.opensmartgridplatform.signing.server.domain.exceptions.SigningServerException;
 
 /**
@@ -29,6 +32,7 @@ import org.opensmartgridplatform.signing.server.domain.exceptions.SigningServerE
  */
 @Configuration
 @ComponentScan(basePackages = {"org.opensmartgridplatform.signing.server"})
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
 @PropertySources({ @PropertySource("classpath:signing-server.properties"),
         @PropertySource(value = "file:${osgp/Global/config}", ignoreResourceNotFound = true),
         @PropertySource(value = "file:${osgp/SigningServer/config}", ignoreResourceNotFound = true), })
@@ -40,6 +44,8 @@ public class ApplicationContext extends AbstractConfig {
     private static final String PROPERTY_NAME_SIGNING_SERVER_SECURITY_KEYTYPE = "signing.server.security.keytype";
     private static final String PROPERTY_NAME_SIGNING_SERVER_SECURITY_SIGNATURE = "signing.server.security.signature";
     private static final String PROPERTY_NAME_SIGNING_SERVER_SECURITY_PROVIDER = "signing.server.security.provider";
+    private static final String PROPERTY_NAME_SIGNING_SERVER_WORKER_POOL_SIZE = "signing.server.worker.pool.size";
+    private static final String PROPERTY_NAME_SIGNING_SERVER_WORKER_MAX_QUEUED_REQUESTS = "signing.server.worker.max.queued.requests";
 
     @Bean
     @Qualifier("signingServerPrivateKey")
@@ -73,4 +79,12 @@ public class ApplicationContext extends AbstractConfig {
     public String signature() {
         return this.environment.getRequiredProperty(PROPERTY_NAME_SIGNING_SERVER_SECURITY_SIGNATURE);
     }
+
+    @Bean(destroyMethod = "shutdown")
+    public SigningWorkerPool signingWorkerPool() {
+        return new SigningWorkerPool(
+                Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_SIGNING_SERVER_WORKER_POOL_SIZE)),
+                Integer.parseInt(
+                        this.environment.getRequiredProperty(PROPERTY_NAME_SIGNING_SERVER_WORKER_MAX_QUEUED_REQUESTS)));
+    }
 }
@@ -8,6 +8,8 @@
 package org.opensmartgridplatform.signing.server.application.services;
 
 import java.security.PrivateKey;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Resource;
 import javax.jms.Destination;
@@ -20,7 +22,9 @@ import org.springframework.stereotype.Service;
 
 import org.opensmartgridplatform.oslp.Oslp.Message;
 import org.opensmartgridplatform.oslp.OslpEnvelope;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeBatchDto;
 import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeBatchDto;
 import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
 import org.opensmartgridplatform.shared.exceptionhandling.ComponentType;
 import org.opensmartgridplatform.shared.exceptionhandling.OsgpException;
@@ -34,6 +38,8 @@ public class SigningService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SigningService.class);
 
+    private static final String SIGNING_RESPONSE_MESSAGE_TYPE = "SIGNING_RESPONSE";
+
     @Autowired
     @Qualifier("signingServerPrivateKey")
     private PrivateKey privateKey;
@@ -49,8 +55,19 @@ public class SigningService {
     @Autowired
     private SigningServerResponseMessageSender signingServerResponseMessageSender;
 
+    @Autowired
+    private SigningWorkerPool signingWorkerPool;
+
+    /**
+     * Has the envelope signed by the {@link SigningWorkerPool} and the result
+     * sent to the reply-to queue, as a bytes message when requested and the
+     * envelope is signed. Responses to devices are signed first, because the
+     * device waits for them on an open connection. The context properties of
+     * the request are sent along with the reply.
+     */
     public void sign(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto, final String correlationUid,
-            final String deviceIdentification, final Destination replyToQueue) {
+            final String deviceIdentification, final Destination replyToQueue, final boolean bytesMessageReply,
+            final Map<String, Object> context) {
 
         // Check the basics.
         if (unsignedOslpEnvelopeDto == null) {
@@ -66,48 +83,171 @@ public class SigningService {
                 correlationUid);
 
         // Sign the message.
-        this.doSignMessage(unsignedOslpEnvelopeDto, correlationUid, deviceIdentification, replyToQueue);
+        this.signingWorkerPool.submit(getPriority(unsignedOslpEnvelopeDto), new Runnable() {
+            @Override
+            public void run() {
+                SigningService.this.doSignMessage(unsignedOslpEnvelopeDto, correlationUid, deviceIdentification,
+                        replyToQueue, bytesMessageReply, context);
+            }
+        });
     }
 
-    private void doSignMessage(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto, final String correlationUid,
-            final String deviceIdentification, final Destination replyToQueue) {
+    /**
+     * Has the envelopes of the batch signed in parallel by the
+     * {@link SigningWorkerPool}, and sends one reply with the results when
+     * all envelopes are handled. An envelope that can not be signed is
+     * reported in the reply, without affecting the other envelopes.
+     */
+    public void signBatch(final UnsignedOslpEnvelopeBatchDto unsignedOslpEnvelopeBatchDto,
+            final String correlationUid, final String organisationIdentification, final String deviceIdentification,
+            final Destination replyToQueue) {
+
+        if (unsignedOslpEnvelopeBatchDto == null || unsignedOslpEnvelopeBatchDto.size() == 0) {
+            LOGGER.error("UnsignedOslpEnvelopeBatchDto instance is null or empty, unable to sign messages");
+            return;
+        }
+        if (replyToQueue == null) {
+            LOGGER.error("Destination replyToQueue is null, unable to send response to protocol-adapter");
+            return;
+        }
+
+        LOGGER.info("Received batch of {} messages to sign with correlationId: {}",
+                unsignedOslpEnvelopeBatchDto.size(), correlationUid);
+
+        final SignedOslpEnvelopeBatchDto signedOslpEnvelopeBatchDto = new SignedOslpEnvelopeBatchDto(
+                unsignedOslpEnvelopeBatchDto);
+        final AtomicInteger remaining = new AtomicInteger(unsignedOslpEnvelopeBatchDto.size());
+        int messagePriority = 0;
+        for (int i = 0; i < unsignedOslpEnvelopeBatchDto.size(); i++) {
+            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = unsignedOslpEnvelopeBatchDto
+                    .getUnsignedOslpEnvelopeDto(i);
+            messagePriority = Math.max(messagePriority, getPriority(unsignedOslpEnvelopeDto));
+        }
+        final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                .withCorrelationUid(correlationUid).withOrganisationIdentification(organisationIdentification)
+                .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.OK)
+                .withDataObject(signedOslpEnvelopeBatchDto).withMessagePriority(messagePriority).build();
+
+        for (int i = 0; i < unsignedOslpEnvelopeBatchDto.size(); i++) {
+            final int index = i;
+            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = unsignedOslpEnvelopeBatchDto
+                    .getUnsignedOslpEnvelopeDto(i);
+            this.signingWorkerPool.submit(getPriority(unsignedOslpEnvelopeDto), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        signedOslpEnvelopeBatchDto.setSigned(index, new SignedOslpEnvelopeDto(
+                                SigningService.this.buildSignedEnvelope(unsignedOslpEnvelopeDto),
+                                unsignedOslpEnvelopeDto));
+                    } catch (final RuntimeException e) {
+                        LOGGER.error("Message for device: {} with correlationId: {} NOT SIGNED",
+                                unsignedOslpEnvelopeBatchDto.getDeviceIdentification(index),
+                                unsignedOslpEnvelopeDto.getCorrelationUid(), e);
+                        signedOslpEnvelopeBatchDto.setFailed(index, unsignedOslpEnvelopeDto,
+                                "Failed to build signed OslpEnvelope: " + e.getMessage());
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        LOGGER.info("Batch with correlationId: {} signed, sending response to protocol-adapter",
+                                correlationUid);
+                        SigningService.this.signingServerResponseMessageSender.send(responseMessage,
+                                UnsignedOslpEnvelopeBatchDto.SIGNING_BATCH_RESPONSE_TYPE, replyToQueue, false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Responses to devices get the highest priority, because the device waits
+     * for them on an open connection.
+     */
+    private static int getPriority(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
+        return UnsignedOslpEnvelopeDto.OSLP_RESPONSE_TYPE.equals(unsignedOslpEnvelopeDto.getType())
+                ? SigningWorkerPool.MAX_PRIORITY
+                : unsignedOslpEnvelopeDto.getMessagePriority();
+    }
 
+    private OslpEnvelope buildSignedEnvelope(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto) {
         final byte[] deviceId = unsignedOslpEnvelopeDto.getDeviceId();
         final byte[] sequenceNumber = unsignedOslpEnvelopeDto.getSequenceNumber();
         final Message payloadMessage = unsignedOslpEnvelopeDto.getPayloadMessage();
-        final String organisationIdentification = unsignedOslpEnvelopeDto.getOrganisationIdentification();
-        final int messagePriority = unsignedOslpEnvelopeDto.getMessagePriority();
 
+        final long start = System.nanoTime();
         final OslpEnvelope oslpEnvelope = new OslpEnvelope.Builder().withDeviceId(deviceId)
                 .withSequenceNumber(sequenceNumber).withPrimaryKey(this.privateKey).withSignature(this.signature)
                 .withProvider(this.signatureProvider).withPayloadMessage(payloadMessage).build();
+        this.signingWorkerPool.signed(System.nanoTime() - start);
+        return oslpEnvelope;
+    }
 
-        ResponseMessage responseMessage;
+    /**
+     * Signs the envelope and sends the reply. The request was acknowledged
+     * when it was handed to the pool, so an envelope that can not be signed,
+     * or a signed reply that can not be sent, is answered with an error reply.
+     */
+    private void doSignMessage(final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto, final String correlationUid,
+            final String deviceIdentification, final Destination replyToQueue, final boolean bytesMessageReply,
+            final Map<String, Object> context) {
 
-        if (oslpEnvelope == null) {
-            LOGGER.error("Message for device: {} with correlationId: {} NOT SIGNED, sending error to protocol-adapter",
-                    deviceIdentification, correlationUid);
+        final String organisationIdentification = unsignedOslpEnvelopeDto.getOrganisationIdentification();
+        final int messagePriority = unsignedOslpEnvelopeDto.getMessagePriority();
 
-            responseMessage = ResponseMessage.newResponseMessageBuilder().withCorrelationUid(correlationUid)
-                    .withOrganisationIdentification(organisationIdentification)
-                    .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.NOT_OK)
-                    .withOsgpException(
-                            new OsgpException(ComponentType.UNKNOWN, "Failed to build signed OslpEnvelope", null))
-                    .withDataObject(unsignedOslpEnvelopeDto).withMessagePriority(messagePriority).build();
+        try {
+            final OslpEnvelope oslpEnvelope = this.buildSignedEnvelope(unsignedOslpEnvelopeDto);
 
-        } else {
             LOGGER.info("Message for device: {} with correlationId: {} signed, sending response to protocol-adapter",
                     deviceIdentification, correlationUid);
 
             final SignedOslpEnvelopeDto signedOslpEnvelopeDto = new SignedOslpEnvelopeDto(oslpEnvelope,
                     unsignedOslpEnvelopeDto);
 
-            responseMessage = ResponseMessage.newResponseMessageBuilder().withCorrelationUid(correlationUid)
-                    .withOrganisationIdentification(organisationIdentification)
+            final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                    .withCorrelationUid(correlationUid).withOrganisationIdentification(organisationIdentification)
                     .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.OK)
                     .withDataObject(signedOslpEnvelopeDto).withMessagePriority(messagePriority).build();
+
+            this.signingServerResponseMessageSender.send(responseMessage, SIGNING_RESPONSE_MESSAGE_TYPE,
+                    replyToQueue, bytesMessageReply, context);
+        } catch (final RuntimeException e) {
+            LOGGER.error("Message for device: {} with correlationId: {} NOT SIGNED, sending error to protocol-adapter",
+                    deviceIdentification, correlationUid, e);
+
+            final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                    .withCorrelationUid(correlationUid).withOrganisationIdentification(organisationIdentification)
+                    .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.NOT_OK)
+                    .withOsgpException(new OsgpException(ComponentType.UNKNOWN,
+                            "Failed to build signed OslpEnvelope: " + e.getMessage(), null))
+                    .withDataObject(unsignedOslpEnvelopeDto).withMessagePriority(messagePriority).build();
+
+            this.signingServerResponseMessageSender.send(responseMessage, SIGNING_RESPONSE_MESSAGE_TYPE,
+                    replyToQueue, false, context);
+        }
+    }
+
+    /**
+     * Sends an error reply for a request that can not be decoded, with the
+     * context properties of the request, so the protocol adapter can report
+     * the failure.
+     */
+    public void reportUndecodable(final String correlationUid, final String organisationIdentification,
+            final String deviceIdentification, final int messagePriority, final Destination replyToQueue,
+            final Map<String, Object> context) {
+
+        if (replyToQueue == null) {
+            LOGGER.error("Destination replyToQueue is null, unable to send response to protocol-adapter");
+            return;
         }
 
-        this.signingServerResponseMessageSender.send(responseMessage, "SIGNING_RESPONSE", replyToQueue);
+        LOGGER.error("Message for device: {} with correlationId: {} NOT DECODED, sending error to protocol-adapter",
+                deviceIdentification, correlationUid);
+
+        final ResponseMessage responseMessage = ResponseMessage.newResponseMessageBuilder()
+                .withCorrelationUid(correlationUid).withOrganisationIdentification(organisationIdentification)
+                .withDeviceIdentification(deviceIdentification).withResult(ResponseMessageResultType.NOT_OK)
+                .withOsgpException(new OsgpException(ComponentType.UNKNOWN, "Unable to decode envelope to sign", null))
+                .withMessagePriority(messagePriority).build();
+
+        this.signingServerResponseMessageSender.send(responseMessage, SIGNING_RESPONSE_MESSAGE_TYPE, replyToQueue,
+                false, context);
     }
 }
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.signing.server.application.services;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Pool of workers signing envelopes, sized to the number of cores by default,
+ * so signing does not run on the JMS listener threads and one signing server
+ * can use all of its cores. Waiting requests are taken by priority, highest
+ * first, and in order of arrival within a priority, so urgent device commands
+ * do not wait behind bulk jobs.
+ *
+ * When the maximum number of requests is waiting, a request is signed on the
+ * submitting listener thread instead, which slows down taking requests from
+ * the queue of the broker until the workers catch up.
+ *
+ * A request is acknowledged to the broker when it is handed to the pool, so
+ * requests still waiting are lost when the signing server crashes. The
+ * protocol adapter then abandons the exchange after its exchange timeout. On
+ * shutdown the pool signs the waiting requests before it stops.
+ */
+@ManagedResource(description = "Workers signing OSLP envelopes")
+public class SigningWorkerPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SigningWorkerPool.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Highest JMS message priority.
+     */
+    public static final int MAX_PRIORITY = 9;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxQueuedRequests;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray queuedPerPriority = new AtomicLongArray(MAX_PRIORITY + 1);
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong signedCount = new AtomicLong();
+    private final AtomicLong totalSignNanos = new AtomicLong();
+    private final AtomicLong maxSignNanos = new AtomicLong();
+    private final AtomicLong maxQueueWaitMillis = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    /**
+     * @param poolSize
+     *            number of workers, or 0 for the number of available
+     *            processors.
+     */
+    public SigningWorkerPool(final int poolSize, final int maxQueuedRequests) {
+        final int workers = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new CustomizableThreadFactory("signing-worker-"));
+        this.maxQueuedRequests = maxQueuedRequests;
+        LOGGER.info("Signing with {} workers", workers);
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Stopped signing with {} requests waiting", this.queued.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Has the request signed by a worker, or on the calling thread when too
+     * many requests are waiting.
+     *
+     * @param priority
+     *            JMS message priority of the request, from 0 to
+     *            {@link #MAX_PRIORITY}.
+     */
+    public void submit(final int priority, final Runnable request) {
+        int waiting;
+        do {
+            waiting = this.queued.get();
+            if (waiting >= this.maxQueuedRequests) {
+                this.callerRunsCount.incrementAndGet();
+                request.run();
+                return;
+            }
+        } while (!this.queued.compareAndSet(waiting, waiting + 1));
+
+        final int boundedPriority = Math.max(0, Math.min(priority, MAX_PRIORITY));
+        this.queuedPerPriority.incrementAndGet(boundedPriority);
+        this.executor.execute(new PrioritizedRequest(boundedPriority, this.sequence.getAndIncrement(), request));
+    }
+
+    /**
+     * Records the time it took to sign an envelope.
+     */
+    public void signed(final long signNanos) {
+        this.signedCount.incrementAndGet();
+        this.totalSignNanos.addAndGet(signNanos);
+        updateMax(this.maxSignNanos, signNanos);
+    }
+
+    @ManagedAttribute(description = "Number of workers")
+    public int getPoolSize() {
+        return this.executor.getCorePoolSize();
+    }
+
+    @ManagedAttribute(description = "Number of requests waiting for a worker")
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    @ManagedOperation(description = "Returns the number of requests of the priority waiting for a worker")
+    public long getQueueDepth(final int priority) {
+        return this.queuedPerPriority.get(Math.max(0, Math.min(priority, MAX_PRIORITY)));
+    }
+
+    @ManagedAttribute(description = "Number of envelopes signed")
+    public long getSignedCount() {
+        return this.signedCount.get();
+    }
+
+    @ManagedAttribute(description = "Average time in microseconds it took to sign an envelope")
+    public long getAverageSignMicros() {
+        final long count = this.signedCount.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(this.totalSignNanos.get() / count);
+    }
+
+    @ManagedAttribute(description = "Longest time in microseconds it took to sign an envelope")
+    public long getMaxSignMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.maxSignNanos.get());
+    }
+
+    @ManagedAttribute(description = "Longest time in milliseconds a request waited for a worker")
+    public long getMaxQueueWaitMillis() {
+        return this.maxQueueWaitMillis.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests signed on the listener thread because too many were waiting")
+    public long getCallerRunsCount() {
+        return this.callerRunsCount.get();
+    }
+
+    private static void updateMax(final AtomicLong maximum, final long value) {
+        long max = maximum.get();
+        while (value > max && !maximum.compareAndSet(max, value)) {
+            max = maximum.get();
+        }
+    }
+
+    private class PrioritizedRequest implements Runnable, Comparable<PrioritizedRequest> {
+        private final int priority;
+        private final long sequence;
+        private final Runnable request;
+        private final long queuedAt = System.currentTimeMillis();
+
+        PrioritizedRequest(final int priority, final long sequence, final Runnable request) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            SigningWorkerPool.this.queued.decrementAndGet();
+            SigningWorkerPool.this.queuedPerPriority.decrementAndGet(this.priority);
+            updateMax(SigningWorkerPool.this.maxQueueWaitMillis, System.currentTimeMillis() - this.queuedAt);
+            try {
+                this.request.run();
+            } catch (final RuntimeException e) {
+                LOGGER.error("Unexpected exception while signing", e);
+            }
+        }
+
+        @Override
+        public int compareTo(final PrioritizedRequest other) {
+            if (this.priority != other.priority) {
+                return other.priority - this.priority;
+            }
+            return Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
@@ -7,6 +7,12 @@
  */
 package org.opensmartgridplatform.signing.server.infra.messaging;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -19,11 +25,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeBatchDto;
 import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
 import org.opensmartgridplatform.shared.infra.jms.Constants;
 import org.opensmartgridplatform.shared.infra.jms.RequestMessage;
 import org.opensmartgridplatform.signing.server.application.services.SigningService;
+import org.opensmartgridplatform.signing.server.application.services.SigningWorkerPool;
 
+/**
+ * Receives envelopes to sign, either as object messages or as bytes messages
+ * in the layout of the {@link OslpSigningMessageCodec}. The signed envelope is
+ * sent back as a bytes message when the request is one, or when the sender
+ * announces it reads the layout version of this server. Batches of envelopes
+ * are received as object messages, and replied to with one object message.
+ * A request that can not be decoded gets an error reply. Requests are
+ * acknowledged once they are handed to the {@link SigningWorkerPool}.
+ */
 @Component(value = "signingServerRequestsMessageListener")
 public class SigningServerRequestMessageListener implements MessageListener {
 
@@ -36,17 +54,26 @@ public class SigningServerRequestMessageListener implements MessageListener {
     @Override
     public void onMessage(final Message message) {
         try {
-            final ObjectMessage objectMessage = (ObjectMessage) message;
-            final Destination replyToQueue = objectMessage.getJMSReplyTo();
-            final int messagePriority = objectMessage.getJMSPriority();
-            final RequestMessage requestMessage = (RequestMessage) objectMessage.getObject();
-            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = (UnsignedOslpEnvelopeDto) requestMessage
-                    .getRequest();
-            final String correlationUid = objectMessage.getJMSCorrelationID();
-            final String deviceIdentification = objectMessage.getStringProperty(Constants.DEVICE_IDENTIFICATION);
+            final Destination replyToQueue = message.getJMSReplyTo();
+            final int messagePriority = message.getJMSPriority();
+            final Serializable request = this.getRequest(message);
+            if (request instanceof UnsignedOslpEnvelopeBatchDto) {
+                this.onBatch(message, (UnsignedOslpEnvelopeBatchDto) request);
+                return;
+            }
+            final String correlationUid = message.getJMSCorrelationID();
+            final String deviceIdentification = message.getStringProperty(Constants.DEVICE_IDENTIFICATION);
+            if (!(request instanceof UnsignedOslpEnvelopeDto)) {
+                this.signingService.reportUndecodable(correlationUid,
+                        message.getStringProperty(Constants.ORGANISATION_IDENTIFICATION), deviceIdentification,
+                        messagePriority, replyToQueue, getContext(message));
+                return;
+            }
+            final UnsignedOslpEnvelopeDto unsignedOslpEnvelopeDto = (UnsignedOslpEnvelopeDto) request;
+            final boolean bytesMessageReply = message instanceof BytesMessage || acceptsBytesMessage(message);
 
             LOGGER.info("Received message of type: {}, for device: {} with correlationId: {} and replyToQueue: {}",
-                    objectMessage.getJMSType(), deviceIdentification, correlationUid, replyToQueue.toString());
+                    message.getJMSType(), deviceIdentification, correlationUid, replyToQueue.toString());
 
             LOGGER.debug("-----------------------------------------------------------------------------");
             LOGGER.debug("messagePriority: {}", messagePriority);
@@ -69,10 +96,69 @@ public class SigningServerRequestMessageListener implements MessageListener {
             LOGGER.debug("unsignedOslpEnvelopeDto.isScheduled() : {}", unsignedOslpEnvelopeDto.isScheduled());
             LOGGER.debug("-----------------------------------------------------------------------------");
 
-            this.signingService.sign(unsignedOslpEnvelopeDto, correlationUid, deviceIdentification, replyToQueue);
+            this.signingService.sign(unsignedOslpEnvelopeDto, correlationUid, deviceIdentification, replyToQueue,
+                    bytesMessageReply, getContext(message));
 
         } catch (final JMSException ex) {
             LOGGER.error("Exception: {} ", ex.getMessage(), ex);
         }
     }
+
+    private void onBatch(final Message message, final UnsignedOslpEnvelopeBatchDto unsignedOslpEnvelopeBatchDto)
+            throws JMSException {
+        LOGGER.info("Received message of type: {} with correlationId: {} and replyToQueue: {}", message.getJMSType(),
+                message.getJMSCorrelationID(), message.getJMSReplyTo());
+
+        this.signingService.signBatch(unsignedOslpEnvelopeBatchDto, message.getJMSCorrelationID(),
+                message.getStringProperty(Constants.ORGANISATION_IDENTIFICATION),
+                message.getStringProperty(Constants.DEVICE_IDENTIFICATION), message.getJMSReplyTo());
+    }
+
+    /**
+     * @return The envelope or batch of envelopes to sign, or null when the
+     *         message can not be decoded.
+     */
+    private Serializable getRequest(final Message message) throws JMSException {
+        if (!(message instanceof BytesMessage)) {
+            final RequestMessage requestMessage;
+            try {
+                requestMessage = (RequestMessage) ((ObjectMessage) message).getObject();
+            } catch (final JMSException e) {
+                LOGGER.error("Unable to read envelope to sign with correlationId: {}", message.getJMSCorrelationID(),
+                        e);
+                return null;
+            }
+            return requestMessage == null ? null : requestMessage.getRequest();
+        }
+
+        final BytesMessage bytesMessage = (BytesMessage) message;
+        final byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(body);
+        try {
+            return OslpSigningMessageCodec.decodeUnsigned(body);
+        } catch (final IOException e) {
+            LOGGER.error("Unable to decode envelope to sign with correlationId: {}", message.getJMSCorrelationID(),
+                    e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The context properties of a single envelope request, which are
+     *         sent along with the reply.
+     */
+    private static Map<String, Object> getContext(final Message message) throws JMSException {
+        final Map<String, Object> context = new HashMap<>();
+        for (final String name : OslpSigningMessageCodec.CONTEXT_PROPERTIES) {
+            if (message.propertyExists(name)) {
+                context.put(name, message.getObjectProperty(name));
+            }
+        }
+        return context;
+    }
+
+    private static boolean acceptsBytesMessage(final Message message) throws JMSException {
+        return message.propertyExists(OslpSigningMessageCodec.ACCEPTED_VERSION_PROPERTY) && message
+                .getIntProperty(OslpSigningMessageCodec.ACCEPTED_VERSION_PROPERTY) >= OslpSigningMessageCodec.VERSION;
+    }
 }
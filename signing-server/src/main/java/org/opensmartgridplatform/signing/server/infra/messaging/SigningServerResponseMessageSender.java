@@ -7,10 +7,14 @@
  */
 package org.opensmartgridplatform.signing.server.infra.messaging;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
 import org.apache.commons.lang3.StringUtils;
@@ -19,7 +23,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.support.converter.MessageConversionException;
 
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeDto;
 import org.opensmartgridplatform.shared.infra.jms.Constants;
 import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
 
@@ -30,14 +37,29 @@ public class SigningServerResponseMessageSender {
     @Autowired
     private JmsTemplate responsesJmsTemplate;
 
-    public void send(final ResponseMessage responseMessage, final String messageType, final Destination replyToQueue) {
+    /**
+     * Sends the response, as a bytes message in the layout of the
+     * {@link OslpSigningMessageCodec} when requested, which requires the data
+     * object to be a {@link SignedOslpEnvelopeDto}.
+     */
+    public void send(final ResponseMessage responseMessage, final String messageType, final Destination replyToQueue,
+            final boolean bytesMessage) {
+        this.send(responseMessage, messageType, replyToQueue, bytesMessage, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * Sends the response with the given properties, like the
+     * {@link OslpSigningMessageCodec#CONTEXT_PROPERTIES} of the request.
+     */
+    public void send(final ResponseMessage responseMessage, final String messageType, final Destination replyToQueue,
+            final boolean bytesMessage, final Map<String, Object> properties) {
 
         if (!this.checkMessage(responseMessage)) {
             LOGGER.error("Response message failed check, not sending response.");
             return;
         }
 
-        this.sendMessage(responseMessage, messageType, replyToQueue);
+        this.sendMessage(responseMessage, messageType, replyToQueue, bytesMessage, properties);
     }
 
     private boolean checkMessage(final ResponseMessage msg) {
@@ -62,25 +84,39 @@ public class SigningServerResponseMessageSender {
     }
 
     private void sendMessage(final ResponseMessage responseMessage, final String messageType,
-            final Destination replyToQueue) {
+            final Destination replyToQueue, final boolean bytesMessage, final Map<String, Object> properties) {
 
         this.responsesJmsTemplate.send(replyToQueue, new MessageCreator() {
             @Override
             public Message createMessage(final Session session) throws JMSException {
-                final ObjectMessage objectMessage = session.createObjectMessage(responseMessage);
-                objectMessage.setJMSCorrelationID(responseMessage.getCorrelationUid());
-                objectMessage.setJMSType(messageType);
-                objectMessage.setJMSPriority(responseMessage.getMessagePriority());
-                objectMessage.setStringProperty(Constants.ORGANISATION_IDENTIFICATION,
+                final Message message = bytesMessage ? createBytesMessage(session, responseMessage)
+                        : session.createObjectMessage(responseMessage);
+                message.setJMSCorrelationID(responseMessage.getCorrelationUid());
+                message.setJMSType(messageType);
+                message.setJMSPriority(responseMessage.getMessagePriority());
+                message.setStringProperty(Constants.ORGANISATION_IDENTIFICATION,
                         responseMessage.getOrganisationIdentification());
-                objectMessage.setStringProperty(Constants.DEVICE_IDENTIFICATION,
-                        responseMessage.getDeviceIdentification());
+                message.setStringProperty(Constants.DEVICE_IDENTIFICATION, responseMessage.getDeviceIdentification());
                 if (responseMessage.getOsgpException() != null) {
-                    objectMessage.setStringProperty(Constants.DESCRIPTION,
-                            responseMessage.getOsgpException().getMessage());
+                    message.setStringProperty(Constants.DESCRIPTION, responseMessage.getOsgpException().getMessage());
+                }
+                for (final Map.Entry<String, Object> property : properties.entrySet()) {
+                    message.setObjectProperty(property.getKey(), property.getValue());
                 }
-                return objectMessage;
+                return message;
             }
         });
     }
+
+    private static Message createBytesMessage(final Session session, final ResponseMessage responseMessage)
+            throws JMSException {
+        final BytesMessage bytesMessage = session.createBytesMessage();
+        try {
+            bytesMessage.writeBytes(
+                    OslpSigningMessageCodec.encode((SignedOslpEnvelopeDto) responseMessage.getDataObject()));
+        } catch (final IOException e) {
+            throw new MessageConversionException("Unable to encode signed envelope", e);
+        }
+        return bytesMessage;
+    }
 }
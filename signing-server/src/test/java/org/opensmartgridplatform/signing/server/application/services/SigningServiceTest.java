@@ -0,0 +1,166 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.signing.server.application.services;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Destination;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.opensmartgridplatform.oslp.Oslp;
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.oslp.SignedOslpEnvelopeBatchDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeBatchDto;
+import org.opensmartgridplatform.oslp.UnsignedOslpEnvelopeDto;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessage;
+import org.opensmartgridplatform.shared.infra.jms.ResponseMessageResultType;
+import org.opensmartgridplatform.signing.server.infra.messaging.SigningServerResponseMessageSender;
+
+public class SigningServiceTest {
+
+    private static final byte[] SEQUENCE_NUMBER = new byte[] { 0, 1 };
+    private static final byte[] DEVICE_ID = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+    private static final byte[] INVALID_DEVICE_ID = new byte[] { 1, 2, 3 };
+    private static final Map<String, Object> CONTEXT = Collections
+            .<String, Object> singletonMap(OslpSigningMessageCodec.MESSAGE_TYPE_PROPERTY, "GET_STATUS");
+
+    private final SigningWorkerPool signingWorkerPool = mock(SigningWorkerPool.class);
+    private final SigningServerResponseMessageSender sender = mock(SigningServerResponseMessageSender.class);
+    private final Destination replyToQueue = new ActiveMQQueue("signing.responses");
+
+    private final List<Runnable> submitted = new ArrayList<>();
+
+    private final SigningService signingService = new SigningService();
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC", "SunEC");
+        keyPairGenerator.initialize(256);
+        ReflectionTestUtils.setField(this.signingService, "privateKey", keyPairGenerator.generateKeyPair().getPrivate());
+        ReflectionTestUtils.setField(this.signingService, "signatureProvider", "SunEC");
+        ReflectionTestUtils.setField(this.signingService, "signature", "SHA256withECDSA");
+        ReflectionTestUtils.setField(this.signingService, "signingWorkerPool", this.signingWorkerPool);
+        ReflectionTestUtils.setField(this.signingService, "signingServerResponseMessageSender", this.sender);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                SigningServiceTest.this.submitted.add((Runnable) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(this.signingWorkerPool).submit(anyInt(), any(Runnable.class));
+    }
+
+    @Test
+    public void envelopeThatCanNotBeSignedIsReportedInTheBatch() {
+        final UnsignedOslpEnvelopeBatchDto batch = new UnsignedOslpEnvelopeBatchDto();
+        batch.add("device-1", this.unsigned(DEVICE_ID, "correlation-1"));
+        batch.add("device-2", this.unsigned(INVALID_DEVICE_ID, "correlation-2"));
+
+        this.signingService.signBatch(batch, "batch-1", "organisation-1", "device-1", this.replyToQueue);
+        this.runSubmitted();
+
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.sender).send(response.capture(), eq(UnsignedOslpEnvelopeBatchDto.SIGNING_BATCH_RESPONSE_TYPE),
+                eq(this.replyToQueue), eq(false));
+        final SignedOslpEnvelopeBatchDto results = (SignedOslpEnvelopeBatchDto) response.getValue()
+                .getDataObject();
+        Assert.assertEquals(2, results.size());
+        Assert.assertNotNull(results.getSignedOslpEnvelopeDto(0));
+        Assert.assertNull(results.getError(0));
+        Assert.assertNull(results.getSignedOslpEnvelopeDto(1));
+        Assert.assertEquals("correlation-2", results.getFailedOslpEnvelopeDto(1).getCorrelationUid());
+        Assert.assertNotNull(results.getError(1));
+    }
+
+    @Test
+    public void replyIsSentOnceWhenAllEnvelopesAreHandled() {
+        final UnsignedOslpEnvelopeBatchDto batch = new UnsignedOslpEnvelopeBatchDto();
+        batch.add("device-1", this.unsigned(DEVICE_ID, "correlation-1"));
+        batch.add("device-2", this.unsigned(DEVICE_ID, "correlation-2"));
+        batch.add("device-3", this.unsigned(DEVICE_ID, "correlation-3"));
+
+        this.signingService.signBatch(batch, "batch-1", "organisation-1", "device-1", this.replyToQueue);
+        Assert.assertEquals(3, this.submitted.size());
+
+        this.submitted.get(2).run();
+        this.submitted.get(0).run();
+        verify(this.sender, never()).send(any(ResponseMessage.class), anyString(), any(Destination.class),
+                anyBoolean());
+
+        this.submitted.get(1).run();
+        verify(this.sender).send(any(ResponseMessage.class),
+                eq(UnsignedOslpEnvelopeBatchDto.SIGNING_BATCH_RESPONSE_TYPE), eq(this.replyToQueue), eq(false));
+    }
+
+    @Test
+    public void envelopeThatCanNotBeSignedIsAnsweredWithError() {
+        this.signingService.sign(this.unsigned(INVALID_DEVICE_ID, "correlation-1"), "correlation-1", "device-1",
+                this.replyToQueue, true, CONTEXT);
+        this.runSubmitted();
+
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.sender).send(response.capture(), eq("SIGNING_RESPONSE"), eq(this.replyToQueue), eq(false),
+                eq(CONTEXT));
+        Assert.assertEquals(ResponseMessageResultType.NOT_OK, response.getValue().getResult());
+    }
+
+    @Test
+    public void replyThatCanNotBeSentIsAnsweredWithError() {
+        doThrow(new IllegalStateException("Broker unavailable")).when(this.sender).send(any(ResponseMessage.class),
+                anyString(), any(Destination.class), eq(true), anyMapOf(String.class, Object.class));
+
+        this.signingService.sign(this.unsigned(DEVICE_ID, "correlation-1"), "correlation-1", "device-1",
+                this.replyToQueue, true, CONTEXT);
+        this.runSubmitted();
+
+        final ArgumentCaptor<ResponseMessage> response = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(this.sender).send(response.capture(), eq("SIGNING_RESPONSE"), eq(this.replyToQueue), eq(false),
+                eq(CONTEXT));
+        Assert.assertEquals(ResponseMessageResultType.NOT_OK, response.getValue().getResult());
+    }
+
+    private void runSubmitted() {
+        for (final Runnable request : this.submitted) {
+            request.run();
+        }
+    }
+
+    private UnsignedOslpEnvelopeDto unsigned(final byte[] deviceId, final String correlationUid) {
+        return new UnsignedOslpEnvelopeDto(SEQUENCE_NUMBER, deviceId, this.payload(), "127.0.0.1", "PUBLIC_LIGHTING",
+                "1.0", "GET_STATUS", 4, 0, false, "organisation-1", correlationUid, null);
+    }
+
+    private Oslp.Message payload() {
+        return Oslp.Message.newBuilder().setGetStatusRequest(Oslp.GetStatusRequest.newBuilder()).build();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.signing.server.application.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SigningWorkerPoolTest {
+
+    private final List<String> signed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private SigningWorkerPool pool;
+
+    @After
+    public void tearDown() {
+        this.release.countDown();
+        this.pool.shutdown();
+    }
+
+    @Test
+    public void waitingRequestsAreSignedByPriorityAndInOrderOfArrival() throws InterruptedException {
+        this.pool = new SigningWorkerPool(1, 100);
+        final CountDownLatch busy = this.occupyWorker();
+
+        this.pool.submit(1, this.request("low-1"));
+        this.pool.submit(5, this.request("high-1"));
+        this.pool.submit(1, this.request("low-2"));
+        this.pool.submit(SigningWorkerPool.MAX_PRIORITY, this.request("response"));
+        this.pool.submit(5, this.request("high-2"));
+        Assert.assertEquals(5, this.pool.getQueueDepth());
+        Assert.assertEquals(2, this.pool.getQueueDepth(5));
+
+        this.release.countDown();
+        busy.await(1, TimeUnit.SECONDS);
+        this.pool.shutdown();
+
+        Assert.assertEquals(Arrays.asList("response", "high-1", "high-2", "low-1", "low-2"), this.signed);
+        Assert.assertEquals(0, this.pool.getQueueDepth());
+    }
+
+    @Test
+    public void requestAboveMaximumIsSignedOnCallingThread() {
+        this.pool = new SigningWorkerPool(1, 1);
+        this.occupyWorker();
+
+        this.pool.submit(4, this.request("waiting"));
+        this.pool.submit(4, this.request("caller"));
+
+        Assert.assertEquals(Arrays.asList("caller"), this.signed);
+        Assert.assertEquals(1, this.pool.getCallerRunsCount());
+        Assert.assertEquals(1, this.pool.getQueueDepth());
+    }
+
+    @Test
+    public void shutdownSignsWaitingRequests() {
+        this.pool = new SigningWorkerPool(1, 100);
+        this.occupyWorker();
+        this.pool.submit(4, this.request("waiting"));
+
+        this.release.countDown();
+        this.pool.shutdown();
+
+        Assert.assertEquals(Arrays.asList("waiting"), this.signed);
+    }
+
+    /**
+     * Keeps the only worker busy until the release, so the next requests
+     * wait in the queue.
+     *
+     * @return latch counted down when the worker is released.
+     */
+    private CountDownLatch occupyWorker() {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        this.pool.submit(0, new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    SigningWorkerPoolTest.this.release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                released.countDown();
+            }
+        });
+        try {
+            started.await(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return released;
+    }
+
+    private Runnable request(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                SigningWorkerPoolTest.this.signed.add(name);
+            }
+        };
+    }
+}
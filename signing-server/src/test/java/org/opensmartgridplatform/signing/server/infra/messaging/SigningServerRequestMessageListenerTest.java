@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015 Smart Society Services B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.opensmartgridplatform.signing.server.infra.messaging;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import org.opensmartgridplatform.oslp.OslpSigningMessageCodec;
+import org.opensmartgridplatform.shared.infra.jms.Constants;
+import org.opensmartgridplatform.signing.server.application.services.SigningService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SigningServerRequestMessageListenerTest {
+
+    private static final String DEVICE_IDENTIFICATION = "device-1";
+    private static final String CORRELATION_UID = "correlation-1";
+
+    @Mock
+    private SigningService signingService;
+
+    @InjectMocks
+    private SigningServerRequestMessageListener listener;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void undecodableRequestGetsErrorReply() throws JMSException {
+        final ActiveMQQueue replyToQueue = new ActiveMQQueue("signing.responses");
+        final ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setJMSCorrelationID(CORRELATION_UID);
+        message.setJMSReplyTo(replyToQueue);
+        message.setJMSPriority(4);
+        message.setStringProperty(Constants.ORGANISATION_IDENTIFICATION, "organisation-1");
+        message.setStringProperty(Constants.DEVICE_IDENTIFICATION, DEVICE_IDENTIFICATION);
+        message.setIntProperty(OslpSigningMessageCodec.SEQUENCE_NUMBER_PROPERTY, 42);
+        message.writeBytes(new byte[] { 99, 1, 2, 3 });
+        message.reset();
+
+        this.listener.onMessage(message);
+
+        final ArgumentCaptor<Map> context = ArgumentCaptor.forClass(Map.class);
+        verify(this.signingService).reportUndecodable(eq(CORRELATION_UID), eq("organisation-1"),
+                eq(DEVICE_IDENTIFICATION), eq(4), eq(replyToQueue), context.capture());
+        Assert.assertEquals(42, context.getValue().get(OslpSigningMessageCodec.SEQUENCE_NUMBER_PROPERTY));
+    }
+}
@@ -12,7 +12,9 @@ import java.net.InetSocketAddress;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
@@ -28,8 +30,14 @@ import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.socket.nio.NioClientBossPool;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerBossPool;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.MessageSource;
@@ -44,6 +52,7 @@ import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.core.env.Environment;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
@@ -101,6 +110,8 @@ public class ApplicationContext {
     private static final String PROPERTY_NAME_MESSAGESOURCE_USE_CODE_AS_DEFAULT_MESSAGE = "message.source.use.code.as.default.message";
 
     private static final String PROPERTY_NAME_OSLP_TIMEOUT_CONNECT = "oslp.timeout.connect";
+    private static final String PROPERTY_NAME_OSLP_CLIENT_WORKER_COUNT = "oslp.client.worker.count";
+    private static final String PROPERTY_NAME_OSLP_SERVER_WORKER_COUNT = "oslp.server.worker.count";
 
     private static final String PROPERTY_NAME_OSLP_PORT_CLIENT = "oslp.port.client";
     private static final String PROPERTY_NAME_OSLP_ELSTER_PORT_CLIENT = "oslp.elster.port.client";
@@ -261,8 +272,12 @@ public class ApplicationContext {
 
     @Bean(destroyMethod = "releaseExternalResources")
     public ClientBootstrap clientBootstrap() {
-        final ChannelFactory factory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
-                Executors.newCachedThreadPool());
+        final ChannelFactory factory = new NioClientSocketChannelFactory(
+                new NioClientBossPool(this.namedThreadPool("oslp-client-boss-"), 1, this.oslpTimer(),
+                        ThreadNameDeterminer.CURRENT),
+                new NioWorkerPool(this.namedThreadPool("oslp-client-worker-"),
+                        Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_CLIENT_WORKER_COUNT)),
+                        ThreadNameDeterminer.CURRENT));
 
         final ChannelPipelineFactory pipelineFactory = () -> {
             final ChannelPipeline pipeline = ApplicationContext.this.createPipeLine();
@@ -283,8 +298,7 @@ public class ApplicationContext {
 
     @Bean(destroyMethod = "releaseExternalResources")
     public ServerBootstrap serverBootstrap() {
-        final ChannelFactory factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
-                Executors.newCachedThreadPool());
+        final ChannelFactory factory = this.serverChannelFactory();
 
         final ServerBootstrap bootstrap = new ServerBootstrap(factory);
 
@@ -304,8 +318,7 @@ public class ApplicationContext {
 
     @Bean(destroyMethod = "releaseExternalResources")
     public ServerBootstrap serverBootstrapElster() {
-        final ChannelFactory factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
-                Executors.newCachedThreadPool());
+        final ChannelFactory factory = this.serverChannelFactory();
 
         final ServerBootstrap bootstrap = new ServerBootstrap(factory);
 
@@ -323,6 +336,26 @@ public class ApplicationContext {
         return bootstrap;
     }
 
+    private ChannelFactory serverChannelFactory() {
+        return new NioServerSocketChannelFactory(
+                new NioServerBossPool(this.namedThreadPool("oslp-server-boss-"), 1, ThreadNameDeterminer.CURRENT),
+                new NioWorkerPool(this.namedThreadPool("oslp-server-worker-"),
+                        Integer.parseInt(this.environment.getRequiredProperty(PROPERTY_NAME_OSLP_SERVER_WORKER_COUNT)),
+                        ThreadNameDeterminer.CURRENT));
+    }
+
+    private ExecutorService namedThreadPool(final String threadNamePrefix) {
+        return Executors.newCachedThreadPool(new CustomizableThreadFactory(threadNamePrefix));
+    }
+
+    /**
+     * Timer wheel for the connect time outs of the client bootstrap.
+     */
+    @Bean(destroyMethod = "stop")
+    public Timer oslpTimer() {
+        return new HashedWheelTimer(new CustomizableThreadFactory("oslp-timer-"), 100, TimeUnit.MILLISECONDS);
+    }
+
     private ChannelPipeline createPipeLine() {
         final ChannelPipeline pipeline = Channels.pipeline();
 